@@ -118,6 +118,8 @@ public class StorageInfo extends AbstractPersistent {
   private static final String DEFAULT_MAX_CONCURRENT_VOLUMES = "10";
   private static final String DEFAULT_MAX_CONCURRENT_SNAPSHOTS = "3";
   private static final String DEFAULT_MAX_SNAP_DELTAS = "0";
+  private static final String DEFAULT_SNAPSHOT_COMPRESSION_WORKERS = "2";
+  private static final String DEFAULT_SNAPSHOT_PART_TRANSFERS = "3";
 
   @Transient
   private static Logger LOG = Logger.getLogger(StorageInfo.class);
@@ -197,6 +199,17 @@ public class StorageInfo extends AbstractPersistent {
   @Column(name = "max_snapshot_deltas")
   private Integer maxSnapshotDeltas;
 
+  @ConfigurableField(description = "Number of threads compressing a snapshot for upload to objectstorage gateway",
+      displayName = "Snapshot Compression Workers", initial = DEFAULT_SNAPSHOT_COMPRESSION_WORKERS,
+      changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_compression_workers")
+  private Integer snapshotCompressionWorkers;
+
+  @ConfigurableField(description = "Maximum number of parts of a snapshot that are uploaded to or downloaded from objectstorage gateway at a given time",
+      displayName = "Snapshot Part Transfers", initial = DEFAULT_SNAPSHOT_PART_TRANSFERS, changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_part_transfers")
+  private Integer snapshotPartTransfers;
+
   public StorageInfo() {
     this.name = StorageProperties.NAME;
   }
@@ -325,6 +338,22 @@ public class StorageInfo extends AbstractPersistent {
     this.maxSnapshotDeltas = maxSnapshotDeltas;
   }
 
+  public Integer getSnapshotCompressionWorkers() {
+    return snapshotCompressionWorkers;
+  }
+
+  public void setSnapshotCompressionWorkers(Integer snapshotCompressionWorkers) {
+    this.snapshotCompressionWorkers = snapshotCompressionWorkers;
+  }
+
+  public Integer getSnapshotPartTransfers() {
+    return snapshotPartTransfers;
+  }
+
+  public void setSnapshotPartTransfers(Integer snapshotPartTransfers) {
+    this.snapshotPartTransfers = snapshotPartTransfers;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj)
@@ -400,6 +429,12 @@ public class StorageInfo extends AbstractPersistent {
     if (maxSnapshotDeltas == null) {
       maxSnapshotDeltas = Integer.valueOf(DEFAULT_MAX_SNAP_DELTAS);
     }
+    if (snapshotCompressionWorkers == null) {
+      snapshotCompressionWorkers = Integer.valueOf(DEFAULT_SNAPSHOT_COMPRESSION_WORKERS);
+    }
+    if (snapshotPartTransfers == null) {
+      snapshotPartTransfers = Integer.valueOf(DEFAULT_SNAPSHOT_PART_TRANSFERS);
+    }
   }
 
   private static StorageInfo getDefaultInstance() {
@@ -418,6 +453,8 @@ public class StorageInfo extends AbstractPersistent {
     info.setMaxConcurrentVolumes(Integer.valueOf(DEFAULT_MAX_CONCURRENT_VOLUMES));
     info.setMaxConcurrentSnapshots(Integer.valueOf(DEFAULT_MAX_CONCURRENT_SNAPSHOTS));
     info.setMaxSnapshotDeltas(Integer.valueOf(DEFAULT_MAX_SNAP_DELTAS));
+    info.setSnapshotCompressionWorkers(Integer.valueOf(DEFAULT_SNAPSHOT_COMPRESSION_WORKERS));
+    info.setSnapshotPartTransfers(Integer.valueOf(DEFAULT_SNAPSHOT_PART_TRANSFERS));
     return info;
   }
 
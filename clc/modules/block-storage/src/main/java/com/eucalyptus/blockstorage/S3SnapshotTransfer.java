@@ -67,20 +67,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.zip.GZIPInputStream;
@@ -112,7 +118,6 @@ import com.amazonaws.services.s3.model.UploadPartResult;
 import com.eucalyptus.auth.principal.BaseRole;
 import com.eucalyptus.blockstorage.async.SnapshotTransferCleaner;
 import com.eucalyptus.blockstorage.entities.SnapshotPart;
-import com.eucalyptus.blockstorage.entities.SnapshotPart.SnapshotPartState;
 import com.eucalyptus.blockstorage.entities.SnapshotTransferConfiguration;
 import com.eucalyptus.blockstorage.entities.SnapshotUploadInfo;
 import com.eucalyptus.blockstorage.entities.SnapshotUploadInfo.SnapshotUploadState;
@@ -152,8 +157,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   // For multipart upload
   private String uploadId;
 
-  // Initiate for every request
-  private EucaS3Client eucaS3Client;
+  // Initiate for every request, shared by the part and range tasks of a transfer
+  private volatile EucaS3Client eucaS3Client;
 
   // Instantiate from database for uploads
   private Long partSize;
@@ -161,6 +166,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   private Integer transferTimeout;
   private Integer readBufferSize;
   private Integer writeBufferSize;
+  private Integer compressionWorkers;
+  private Integer partTransfers;
 
   // Static parameters
   private static BaseRole role;
@@ -168,6 +175,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   // Constants
   private static final Integer REFRESH_TOKEN_RETRIES = 1;
   private static final String UNCOMPRESSED_SIZE_KEY = "uncompressedsize";
+  private static final long DOWNLOAD_RANGE_SIZE = 8 * 1024 * 1024;
 
   public S3SnapshotTransfer() throws SnapshotTransferException {
     initializeEucaS3Client();
@@ -238,8 +246,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   /**
    * Compresses the snapshot and uploads it to a bucket in objectstorage gateway as a single or multipart upload based on the configuration in
-   * {@link StorageInfo}. Bucket name should be configured before invoking this method. It can be looked up and initialized by
-   * {@link #prepareForUpload()} or explicitly set using {@link #setBucketName(String)}
+   * {@link StorageInfo}. Blocks of the snapshot are compressed in parallel and multipart upload parts are uploaded concurrently. Bucket name should
+   * be configured before invoking this method. It can be looked up and initialized by {@link #prepareForUpload()} or explicitly set using
+   * {@link #setBucketName(String)}
    * 
    * @param sourceFileName absolute path to the snapshot on the file system
    */
@@ -249,17 +258,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     loadTransferConfig(); // Load the transfer configuration parameters from database
 
     Boolean error = Boolean.FALSE;
-    ArrayBlockingQueue<SnapshotPart> partQueue = null;
     SnapshotPart part = null;
     SnapshotUploadInfo snapUploadInfo = null;
-    Future<List<PartETag>> uploadPartsFuture = null;
+    Deque<Future<byte[]>> compressedBlocks = new ArrayDeque<Future<byte[]>>();
+    Deque<Integer> compressedBlockInputSizes = new ArrayDeque<Integer>();
+    List<Future<PartETag>> uploadPartFutures = new ArrayList<Future<PartETag>>();
+    Semaphore spooledParts = new Semaphore(queueSize);
+    Semaphore partUploads = new Semaphore(partTransfers);
     Future<String> completeUploadFuture = null;
 
-    byte[] buffer = new byte[readBufferSize];
     Long readOffset = 0L;
     Long bytesRead = 0L;
     Long bytesWritten = 0L;
-    int len;
     int partNumber = 1;
 
     try {
@@ -269,29 +279,27 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
       // Setup the snapshot and part entities.
       snapUploadInfo = SnapshotUploadInfo.create(snapshotId, bucketName, keyName);
+      acquirePartSpool(spooledParts);
       Path zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf(partNumber));
       part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
 
       InputStream inputStream = storageResource.getInputStream();
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      GZIPOutputStream gzipStream = new GZIPOutputStream(baos);
       FileOutputStream outputStream = new FileOutputStream(zipFilePath.toString());
 
       try {
-        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk in chunks of size " + partSize + " bytes or greater");
-        while ((len = inputStream.read(buffer)) > 0) {
-          bytesRead += len;
-          gzipStream.write(buffer, 0, len);
-
-          if ((bytesWritten + baos.size()) < partSize) {
-            baos.writeTo(outputStream);
-            bytesWritten += baos.size();
-            baos.reset();
-          } else {
-            gzipStream.close();
-            baos.writeTo(outputStream); // Order is important. Closing the gzip stream flushes stuff
-            bytesWritten += baos.size();
-            baos.reset();
+        // Each block of the snapshot is compressed independently as a gzip member, the members are written to the parts in order which results
+        // in a valid (multi-member) gzip stream. Parts are uploaded concurrently as they are created.
+        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk using " + compressionWorkers + " workers in chunks of size "
+            + partSize + " bytes or greater");
+        boolean endOfInput = compressBlocks(inputStream, compressedBlocks, compressedBlockInputSizes, false);
+        while (!compressedBlocks.isEmpty()) {
+          byte[] compressed = compressedBlocks.remove().get(transferTimeout, TimeUnit.HOURS);
+          outputStream.write(compressed);
+          bytesWritten += compressed.length;
+          bytesRead += compressedBlockInputSizes.remove();
+          endOfInput = compressBlocks(inputStream, compressedBlocks, compressedBlockInputSizes, endOfInput);
+
+          if (bytesWritten >= partSize && !compressedBlocks.isEmpty()) {
             outputStream.close();
 
             if (partNumber > 1) {// Update the part status
@@ -302,19 +310,11 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
               uploadId = initiateMulitpartUpload(uncompressedSize);
               snapUploadInfo = snapUploadInfo.updateUploadId(uploadId); // update uploadId so its available for future parts
               part = part.updateStateCreated(uploadId, bytesWritten, bytesRead, Boolean.FALSE);
-              partQueue = new ArrayBlockingQueue<SnapshotPart>(queueSize);
-              uploadPartsFuture = SnapshotTransferThreadPool.add(new UploadPartTask(partQueue, progressCallback));
-            }
-
-            // Check for the future task before adding part to the queue.
-            if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-              // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-              throw new SnapshotUploadPartException(
-                  "Error uploading parts, aborting part creation process. Check previous log messages for the exact error");
             }
 
-            // Add part to the queue
-            partQueue.put(part);
+            // Check for failed uploads before adding another part
+            checkPartUploads(uploadPartFutures);
+            uploadPartFutures.add(SnapshotTransferThreadPool.add(new UploadPartTask(part, partUploads, spooledParts, progressCallback)));
 
             // Prep the metadata for the next part
             readOffset += bytesRead;
@@ -322,18 +322,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             bytesWritten = 0L;
 
             // Setup the part entity for next part
+            acquirePartSpool(spooledParts);
             zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf((++partNumber)));
             part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
-
-            gzipStream = new GZIPOutputStream(baos);
             outputStream = new FileOutputStream(zipFilePath.toString());
           }
         }
 
-        gzipStream.close();
-        baos.writeTo(outputStream);
-        bytesWritten += baos.size();
-        baos.reset();
+        if (bytesWritten == 0 && partNumber == 1) { // empty snapshot, upload an empty gzip stream
+          byte[] compressed = new CompressBlockTask(new byte[0], 0).call();
+          outputStream.write(compressed);
+          bytesWritten += compressed.length;
+        }
         outputStream.close();
         inputStream.close();
 
@@ -354,13 +354,6 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
           }
         }
-        if (gzipStream != null) {
-          try {
-            gzipStream.close();
-          } catch (Exception e) {
-
-          }
-        }
         if (outputStream != null) {
           try {
             outputStream.close();
@@ -368,20 +361,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
           }
         }
-        baos.reset();
+        for (Future<byte[]> compressedBlock : compressedBlocks) {
+          compressedBlock.cancel(true);
+        }
+        compressedBlocks.clear();
       }
 
       if (partNumber > 1) {
-        // Check for the future task before adding the last part to the queue.
-        if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-          // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-          throw new SnapshotUploadPartException(
-              "Error uploading parts, aborting part upload process. Check previous log messages for the exact error");
-        }
-        // Add the last part to the queue
-        partQueue.put(part);
+        // Check for failed uploads before adding the last part
+        checkPartUploads(uploadPartFutures);
+        // Add the last part
+        uploadPartFutures.add(SnapshotTransferThreadPool.add(new UploadPartTask(part, partUploads, spooledParts, progressCallback)));
         // Kick off the completion task
-        completeUploadFuture = SnapshotTransferThreadPool.add(new CompleteMpuTask(uploadPartsFuture, snapUploadInfo, partNumber));
+        completeUploadFuture = SnapshotTransferThreadPool.add(new CompleteMpuTask(uploadPartFutures, snapUploadInfo, partNumber));
       } else {
         try {
           LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + bytesWritten
@@ -406,11 +398,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     } finally {
       if (error) {
         abortUpload(snapUploadInfo);
-        if (partQueue != null) {
-          partQueue.clear();
-        }
-        if (uploadPartsFuture != null && !uploadPartsFuture.isDone()) {
-          uploadPartsFuture.cancel(true);
+        for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+          if (!uploadPartFuture.isDone()) {
+            uploadPartFuture.cancel(true);
+          }
         }
         if (completeUploadFuture != null && !completeUploadFuture.isDone()) {
           completeUploadFuture.cancel(true);
@@ -449,21 +440,21 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   }
 
   /**
-   * Downloads the compressed snapshot from objectstorage gateway to the filesystem
+   * Downloads the compressed snapshot from objectstorage gateway to the filesystem. Larger snapshots are fetched using parallel ranged requests
    */
   public void download(StorageResource storageResource) throws SnapshotTransferException {
     validateInput();
     loadTransferConfig();
 
-    S3Object snapObj = download();
+    InputStream snapshotContent = openSnapshotContent();
 
-    if (snapObj != null && snapObj.getObjectContent() != null) {
+    if (snapshotContent != null) {
       byte[] buffer = new byte[10 * readBufferSize];
       int len;
       GZIPInputStream gzipInputStream = null;
 
       try {
-        gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
+        gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapshotContent, buffer.length * 3), buffer.length * 2);
 
         if (storageResource.isDownloadSynchronous()) { // Download and unzip snapshot to the storage device directly
           OutputStream outputStream = null;
@@ -583,7 +574,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
         }
         try {
-          snapObj.getObjectContent().close();
+          snapshotContent.close();
         } catch (Exception e) {
 
         }
@@ -681,6 +672,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     this.transferTimeout = info.getSnapshotTransferTimeoutInHours();
     this.readBufferSize = info.getReadBufferSizeInMB() * 1024 * 1024;
     this.writeBufferSize = info.getWriteBufferSizeInMB() * 1024 * 1024;
+    this.compressionWorkers = info.getSnapshotCompressionWorkers();
+    this.partTransfers = info.getSnapshotPartTransfers();
   }
 
   private void validateInput() throws SnapshotTransferException {
@@ -974,88 +967,341 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return output;
   }
 
-  public static abstract class UploadPart implements Callable<List<PartETag>> {
+  /**
+   * Keeps up to {@link #compressionWorkers} blocks of the input compressing in the background
+   * 
+   * @return true if the end of the input was reached
+   */
+  private boolean compressBlocks(InputStream inputStream, Deque<Future<byte[]>> compressedBlocks, Deque<Integer> compressedBlockInputSizes,
+      boolean endOfInput) throws Exception {
+    while (!endOfInput && compressedBlocks.size() < compressionWorkers) {
+      byte[] block = new byte[readBufferSize];
+      int length = readBlock(inputStream, block);
+      if (length > 0) {
+        compressedBlocks.add(SnapshotTransferThreadPool.add(new CompressBlockTask(block, length)));
+        compressedBlockInputSizes.add(length);
+      }
+      endOfInput = length < block.length;
+    }
+    return endOfInput;
+  }
+
+  private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+    int total = 0;
+    int len;
+    while (total < block.length && (len = inputStream.read(block, total, block.length - total)) > 0) {
+      total += len;
+    }
+    return total;
+  }
+
+  private void acquirePartSpool(Semaphore spooledParts) throws Exception {
+    if (!spooledParts.tryAcquire(transferTimeout, TimeUnit.HOURS)) {
+      throw new SnapshotUploadPartException("Timed out waiting on part uploads for " + snapshotId + " after " + transferTimeout + " hours");
+    }
+  }
+
+  private void checkPartUploads(List<Future<PartETag>> uploadPartFutures) throws Exception {
+    for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+      if (uploadPartFuture.isDone()) {
+        try {
+          uploadPartFuture.get();
+        } catch (Exception e) {
+          throw new SnapshotUploadPartException("Error uploading parts, aborting part creation process. Check previous log messages for the exact error",
+              e);
+        }
+      }
+    }
+  }
+
+  private InputStream openSnapshotContent() throws SnapshotTransferException {
+    if (partTransfers > 1) {
+      long objectSize = getObjectSize();
+      if (objectSize > DOWNLOAD_RANGE_SIZE) {
+        LOG.debug("Downloading snapshot from objectstorage using " + partTransfers + " ranged requests in parallel: snapshotId=" + snapshotId
+            + ", bucket=" + bucketName + ", key=" + keyName);
+        return new RangedDownloadInputStream(objectSize);
+      }
+    }
+    S3Object snapObj = download();
+    return snapObj != null ? new ContentLengthInputStream(snapObj.getObjectContent(), snapObj.getObjectMetadata().getContentLength()) : null;
+  }
+
+  private long getObjectSize() throws SnapshotTransferException {
+    try {
+      return retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
+
+        @Override
+        @Nullable
+        public ObjectMetadata apply(@Nullable GetObjectMetadataRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          return eucaS3Client.getObjectMetadata(arg0);
+        }
+
+      }, new GetObjectMetadataRequest(bucketName, keyName), REFRESH_TOKEN_RETRIES).getContentLength();
+    } catch (Exception e) {
+      LOG.warn("Failed to get snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
+      throw new SnapshotTransferException("Failed to get snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
+          + ", key=" + keyName, e);
+    }
+  }
+
+  public static abstract class UploadPart implements Callable<PartETag> {
   }
 
   class UploadPartTask extends UploadPart {
 
-    private ArrayBlockingQueue<SnapshotPart> partQueue;
+    private SnapshotPart part;
+    private Semaphore partUploads;
+    private Semaphore spooledParts;
     private SnapshotProgressCallback progressCallback;
-    private List<PartETag> partETags;
 
-    public UploadPartTask(ArrayBlockingQueue<SnapshotPart> partQueue, SnapshotProgressCallback progressCallback) throws EucalyptusCloudException {
-      if (partQueue == null || progressCallback == null) {
-        throw new EucalyptusCloudException("Invalid constructor parameters. Cannot proceed without part queue and or snapshot progress callback");
+    public UploadPartTask(SnapshotPart part, Semaphore partUploads, Semaphore spooledParts, SnapshotProgressCallback progressCallback)
+        throws EucalyptusCloudException {
+      if (part == null || progressCallback == null) {
+        throw new EucalyptusCloudException("Invalid constructor parameters. Cannot proceed without snapshot part and or snapshot progress callback");
       }
-      this.partQueue = partQueue;
+      this.part = part;
+      this.partUploads = partUploads;
+      this.spooledParts = spooledParts;
       this.progressCallback = progressCallback;
-      this.partETags = new ArrayList<PartETag>();
     }
 
     @Override
-    public List<PartETag> call() throws Exception {
-      Boolean error = Boolean.FALSE;
-      Boolean isLast = Boolean.FALSE;
+    public PartETag call() throws Exception {
+      boolean acquired = false;
+      try {
+        partUploads.acquire();
+        acquired = true;
+
+        PartETag partEtag = uploadPart(part);
+        progressCallback.updateUploadProgress(part.getInputFileBytesRead());
+        try {
+          part = part.updateStateUploaded(partEtag.getETag());
+        } catch (Exception e) {
+          LOG.debug("Failed to update part status in DB. Moving on. " + part);
+        }
 
+        LOG.debug("Uploaded " + part);
+        return partEtag;
+      } catch (Exception e) {
+        // update part status in database
+        try {
+          part = part.updateStateFailed();
+        } catch (Throwable t) {
+          LOG.debug("Failed to update part status in DB for " + part, t);
+        }
+        throw e;
+      } finally {
+        if (acquired) {
+          partUploads.release();
+        }
+        deleteFile(part.getFileName()); // part may not have been uploaded
+        spooledParts.release();
+      }
+    }
+  }
+
+  public static abstract class CompressBlock implements Callable<byte[]> {
+  }
+
+  /**
+   * Compresses a block of the snapshot as a complete gzip member. Members compressed independently can be concatenated in order and read back as a
+   * single stream using {@link GZIPInputStream}
+   */
+  static class CompressBlockTask extends CompressBlock {
+
+    private byte[] block;
+    private int length;
+
+    public CompressBlockTask(byte[] block, int length) {
+      this.block = block;
+      this.length = length;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(length / 2, 512));
+      GZIPOutputStream gzipStream = new GZIPOutputStream(baos);
       try {
-        do {
-          SnapshotPart part = null;
+        gzipStream.write(block, 0, length);
+      } finally {
+        gzipStream.close();
+        block = null;
+      }
+      return baos.toByteArray();
+    }
+  }
 
-          try {
-            part = partQueue.take();
-          } catch (InterruptedException ex) { // Should rarely happen
-            error = Boolean.TRUE;
-            LOG.error("Failed to upload snapshot " + snapshotId + " due to an retrieving parts from queue", ex);
-            return null;
-          }
+  public static abstract class DownloadPart implements Callable<byte[]> {
+  }
 
-          if (part != null) {
-            if (part.getState().equals(SnapshotPartState.created) || part.getState().equals(SnapshotPartState.uploading)
-                || part.getState().equals(SnapshotPartState.failed)) {
-              isLast = part.getIsLast();
-              try {
-                PartETag partEtag = uploadPart(part);
-                partETags.add(partEtag);
-
-                progressCallback.updateUploadProgress(part.getInputFileBytesRead());
-                try {
-                  part = part.updateStateUploaded(partEtag.getETag());
-                } catch (Exception e) {
-                  LOG.debug("Failed to update part status in DB. Moving on. " + part);
-                }
+  class DownloadPartTask extends DownloadPart {
 
-                LOG.debug("Uploaded " + part);
-              } catch (Exception e) {
-                error = Boolean.TRUE;
-                // update part status in database
-                try {
-                  part = part.updateStateFailed();
-                } catch (Throwable t) {
-                  LOG.debug("Failed to update part status in DB for " + part, t);
-                }
-                return null;
-              }
-            } else {
-              LOG.warn("Not sure what to do with part in state " + part.getState() + ". Ignoring " + part);
-            }
-          } else {
-            error = Boolean.TRUE;
-            LOG.warn("Null reference snapshot part found in queue for " + snapshotId + ". Aborting snapshot upload");
-            return null;
-          }
-        } while (!isLast);
+    private long start;
+    private long end;
 
-        return partETags;
-      } catch (Throwable t) {
-        error = Boolean.TRUE;
-        LOG.warn("Failed to process snapshot uplodad for " + snapshotId, t);
-        return null;
+    public DownloadPartTask(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      S3Object snapObj = retryAfterRefresh(new Function<GetObjectRequest, S3Object>() {
+
+        @Override
+        @Nullable
+        public S3Object apply(@Nullable GetObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          return eucaS3Client.getObject(arg0);
+        }
+
+      }, new GetObjectRequest(bucketName, keyName).withRange(start, end), REFRESH_TOKEN_RETRIES);
+
+      InputStream inputStream = snapObj.getObjectContent();
+      try {
+        byte[] range = new byte[(int) (end - start + 1)];
+        if (readBlock(inputStream, range) != range.length) {
+          throw new SnapshotTransferException("Unexpected end of snapshot content for range " + start + "-" + end + ": snapshotId=" + snapshotId
+              + ", bucket=" + bucketName + ", key=" + keyName);
+        }
+        return range;
       } finally {
-        if (error && partQueue != null) { // drain the queue so the upload process does not hang
-          LOG.debug("Clearing part queue for " + snapshotId + " due to a previous error uploading");
-          partQueue.clear();
+        inputStream.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the snapshot object in order using ranged requests. Up to {@link #partTransfers} ranges are fetched ahead of the reader in parallel
+   */
+  class RangedDownloadInputStream extends InputStream {
+
+    private final long objectSize;
+    private final Deque<Future<byte[]>> ranges = new ArrayDeque<Future<byte[]>>();
+    private long nextRangeStart = 0;
+    private byte[] range;
+    private int position;
+
+    public RangedDownloadInputStream(long objectSize) {
+      this.objectSize = objectSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextRange()) {
+        return -1;
+      }
+      return range[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!nextRange()) {
+        return -1;
+      }
+      int count = Math.min(len, range.length - position);
+      System.arraycopy(range, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    /**
+     * Reports content while ranges remain so that {@link GZIPInputStream} continues past the end of each concatenated member
+     */
+    @Override
+    public int available() {
+      if (range != null && position < range.length) {
+        return range.length - position;
+      }
+      return !ranges.isEmpty() || nextRangeStart < objectSize ? 1 : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Future<byte[]> pending : ranges) {
+        pending.cancel(true);
+      }
+      ranges.clear();
+      range = null;
+    }
+
+    private boolean nextRange() throws IOException {
+      while (range == null || position >= range.length) {
+        try {
+          while (ranges.size() < partTransfers && nextRangeStart < objectSize) {
+            long end = Math.min(objectSize, nextRangeStart + DOWNLOAD_RANGE_SIZE) - 1;
+            ranges.add(SnapshotTransferThreadPool.add(new DownloadPartTask(nextRangeStart, end)));
+            nextRangeStart = end + 1;
+          }
+          if (ranges.isEmpty()) {
+            return false;
+          }
+          range = ranges.remove().get(transferTimeout, TimeUnit.HOURS);
+          position = 0;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted downloading snapshot " + snapshotId);
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to download snapshot " + snapshotId, e.getCause());
+        } catch (Exception e) {
+          throw new IOException("Failed to download snapshot " + snapshotId, e);
         }
       }
+      return true;
+    }
+  }
+
+  /**
+   * Reports content until the expected length is read. {@link GZIPInputStream} stops after a member when the underlying stream reports nothing
+   * available, which would truncate snapshots compressed as concatenated members
+   */
+  static class ContentLengthInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    ContentLengthInputStream(InputStream in, long contentLength) {
+      super(in);
+      this.remaining = contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = super.read(b, off, len);
+      if (count > 0) {
+        remaining -= count;
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return Math.max(super.available(), (int) Math.min(Math.max(remaining, 0), Integer.MAX_VALUE));
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
     }
   }
 
@@ -1064,12 +1310,12 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   class CompleteMpuTask extends CompleteUpload {
 
-    private Future<List<PartETag>> uploadTaskFuture;
+    private List<Future<PartETag>> uploadPartFutures;
     private SnapshotUploadInfo snapUploadInfo;
     private Integer totalParts;
 
-    public CompleteMpuTask(Future<List<PartETag>> uploadTaskFuture, SnapshotUploadInfo snapUploadInfo, Integer totalParts) {
-      this.uploadTaskFuture = uploadTaskFuture;
+    public CompleteMpuTask(List<Future<PartETag>> uploadPartFutures, SnapshotUploadInfo snapUploadInfo, Integer totalParts) {
+      this.uploadPartFutures = uploadPartFutures;
       this.snapUploadInfo = snapUploadInfo;
       this.totalParts = totalParts;
     }
@@ -1079,8 +1325,12 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       Boolean error = Boolean.FALSE;
       String etag = null;
       try {
-        List<PartETag> partETags = uploadTaskFuture.get(transferTimeout, TimeUnit.HOURS);
-        if (partETags != null && partETags.size() == totalParts) {
+        long deadline = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(transferTimeout);
+        List<PartETag> partETags = new ArrayList<PartETag>();
+        for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+          partETags.add(uploadPartFuture.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS));
+        }
+        if (partETags.size() == totalParts) {
           try {
             etag = finalizeMultipartUpload(partETags);
             // markSnapshotAvailable();
@@ -1100,13 +1350,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
         }
       } catch (TimeoutException tex) {
         error = Boolean.TRUE;
-        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part task after " + transferTimeout
+        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part tasks after " + transferTimeout
             + " hours");
+      } catch (ExecutionException eex) {
+        error = Boolean.TRUE;
+        LOG.error("Failed to upload " + snapshotId + " due to an error uploading parts", eex.getCause());
       } catch (Exception ex) {
         error = Boolean.TRUE;
         LOG.error("Failed to upload " + snapshotId, ex);
       } finally {
         if (error) {
+          for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+            uploadPartFuture.cancel(true);
+          }
           abortUpload(snapUploadInfo);
           etag = null;
         }
@@ -65,6 +65,7 @@ package com.eucalyptus.blockstorage.threadpool;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
@@ -73,6 +74,8 @@ import org.apache.log4j.Logger;
 
 import com.amazonaws.services.s3.model.PartETag;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompleteUpload;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompressBlock;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.DownloadPart;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.StorageWriter;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.UploadPart;
 import com.eucalyptus.blockstorage.Storage;
@@ -84,6 +87,8 @@ public class SnapshotTransferThreadPool {
   private static ThreadPoolExecutor uploadPartPool;
   private static ThreadPoolExecutor completeMpuPool;
   private static ThreadPoolExecutor backendWriterPool;
+  private static ThreadPoolExecutor compressBlockPool;
+  private static ThreadPoolExecutor downloadPartPool;
 
   private static final ReentrantLock RLOCK = new ReentrantLock();
 
@@ -95,9 +100,16 @@ public class SnapshotTransferThreadPool {
       shutdown();
       LOG.info("Initializing SC thread pool catering to snapshot transfers");
 
+      // part and block pools are unbounded, each transfer limits the number of concurrent tasks it submits
       uploadPartPool =
-          new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
+          new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), Threads.lookup(Storage.class,
               UploadPart.class), new ThreadPoolExecutor.AbortPolicy());
+      compressBlockPool =
+          new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), Threads.lookup(Storage.class,
+              CompressBlock.class), new ThreadPoolExecutor.AbortPolicy());
+      downloadPartPool =
+          new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), Threads.lookup(Storage.class,
+              DownloadPart.class), new ThreadPoolExecutor.AbortPolicy());
       completeMpuPool =
           new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
               CompleteUpload.class), new ThreadPoolExecutor.AbortPolicy());
@@ -109,7 +121,7 @@ public class SnapshotTransferThreadPool {
     }
   }
 
-  public static Future<List<PartETag>> add(UploadPart task) throws ThreadPoolNotInitializedException {
+  public static Future<PartETag> add(UploadPart task) throws ThreadPoolNotInitializedException {
     if (uploadPartPool != null && !uploadPartPool.isShutdown()) {
       return uploadPartPool.submit(task);
     } else {
@@ -119,6 +131,26 @@ public class SnapshotTransferThreadPool {
     }
   }
 
+  public static Future<byte[]> add(CompressBlock task) throws ThreadPoolNotInitializedException {
+    if (compressBlockPool != null && !compressBlockPool.isShutdown()) {
+      return compressBlockPool.submit(task);
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (compress block pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (compress block pool) is either not initalized or shut down");
+    }
+  }
+
+  public static Future<byte[]> add(DownloadPart task) throws ThreadPoolNotInitializedException {
+    if (downloadPartPool != null && !downloadPartPool.isShutdown()) {
+      return downloadPartPool.submit(task);
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (download part pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (download part pool) is either not initalized or shut down");
+    }
+  }
+
   public static Future<String> add(CompleteUpload task) throws ThreadPoolNotInitializedException {
     if (completeMpuPool != null && !completeMpuPool.isShutdown()) {
       return completeMpuPool.submit(task);
@@ -142,7 +174,7 @@ public class SnapshotTransferThreadPool {
   public static Integer getPoolSize() {
     if (uploadPartPool != null && !uploadPartPool.isShutdown() && completeMpuPool != null && !completeMpuPool.isShutdown()
         && backendWriterPool != null && !backendWriterPool.isShutdown()) {
-      return uploadPartPool.getCorePoolSize();
+      return completeMpuPool.getCorePoolSize();
     } else {
       return null;
     }
@@ -150,9 +182,7 @@ public class SnapshotTransferThreadPool {
 
   public static void updatePoolSize(Integer newSize) {
     if (uploadPartPool != null && !uploadPartPool.isShutdown() && completeMpuPool != null && !completeMpuPool.isShutdown()
-        && backendWriterPool != null && !backendWriterPool.isShutdown() && newSize != null && uploadPartPool.getCorePoolSize() != newSize) {
-      uploadPartPool.setCorePoolSize(newSize);
-      uploadPartPool.setMaximumPoolSize(newSize);
+        && backendWriterPool != null && !backendWriterPool.isShutdown() && newSize != null && completeMpuPool.getCorePoolSize() != newSize) {
       completeMpuPool.setCorePoolSize(newSize);
       completeMpuPool.setMaximumPoolSize(newSize);
       backendWriterPool.setCorePoolSize(newSize);
@@ -184,6 +214,16 @@ public class SnapshotTransferThreadPool {
         LOG.debug("Number of queued snapshots for download: " + awaitingExecution.size());
         backendWriterPool = null;
       }
+      if (compressBlockPool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (compress block pool)");
+        compressBlockPool.shutdownNow();
+        compressBlockPool = null;
+      }
+      if (downloadPartPool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (download part pool)");
+        downloadPartPool.shutdownNow();
+        downloadPartPool = null;
+      }
     } finally {
       RLOCK.unlock();
     }
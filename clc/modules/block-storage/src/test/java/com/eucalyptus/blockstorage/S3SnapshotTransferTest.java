@@ -0,0 +1,141 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.blockstorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class S3SnapshotTransferTest {
+
+  @Test
+  public void testCompressedBlocksConcatenate() throws Exception {
+    byte[] snapshot = new byte[3 * 1024 * 1024 + 17];
+    Random random = new Random(7);
+    for (int i = 0; i < snapshot.length; i += 1024) { // compressible but not uniform
+      snapshot[i] = (byte) random.nextInt();
+    }
+
+    int blockSize = 1024 * 1024;
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    for (int offset = 0; offset < snapshot.length; offset += blockSize) {
+      int length = Math.min(blockSize, snapshot.length - offset);
+      byte[] block = new byte[blockSize];
+      System.arraycopy(snapshot, offset, block, 0, length);
+      compressed.write(new S3SnapshotTransfer.CompressBlockTask(block, length).call());
+    }
+
+    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+    GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+    byte[] buffer = new byte[8192];
+    int len;
+    while ((len = gzipInputStream.read(buffer)) > 0) {
+      decompressed.write(buffer, 0, len);
+    }
+    gzipInputStream.close();
+
+    assertArrayEquals(snapshot, decompressed.toByteArray());
+  }
+
+  @Test
+  public void testConcatenatedMembersWithoutAvailableContent() throws Exception {
+    byte[] snapshot = new byte[3 * 64 * 1024 + 5];
+    Random random = new Random(11);
+    for (int i = 0; i < snapshot.length; i += 512) {
+      snapshot[i] = (byte) random.nextInt();
+    }
+
+    int blockSize = 64 * 1024;
+    final List<byte[]> members = new ArrayList<byte[]>();
+    int compressedLength = 0;
+    for (int offset = 0; offset < snapshot.length; offset += blockSize) {
+      int length = Math.min(blockSize, snapshot.length - offset);
+      byte[] block = new byte[blockSize];
+      System.arraycopy(snapshot, offset, block, 0, length);
+      byte[] member = new S3SnapshotTransfer.CompressBlockTask(block, length).call();
+      members.add(member);
+      compressedLength += member.length;
+    }
+
+    // Like a network stream: one member per read and nothing ever reported as available
+    InputStream source = new InputStream() {
+      private int member = 0;
+      private int position = 0;
+
+      @Override
+      public int read() {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (member >= members.size()) {
+          return -1;
+        }
+        byte[] current = members.get(member);
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        if (position == current.length) {
+          member++;
+          position = 0;
+        }
+        return count;
+      }
+
+      @Override
+      public int available() {
+        return 0;
+      }
+    };
+
+    byte[] buffer = new byte[8192];
+    GZIPInputStream gzipInputStream = new GZIPInputStream(new BufferedInputStream(
+        new S3SnapshotTransfer.ContentLengthInputStream(source, compressedLength), buffer.length * 3), buffer.length * 2);
+    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+    int len;
+    while ((len = gzipInputStream.read(buffer)) > 0) {
+      decompressed.write(buffer, 0, len);
+    }
+    gzipInputStream.close();
+
+    assertArrayEquals(snapshot, decompressed.toByteArray());
+  }
+
+  @Test
+  public void testEmptyBlock() throws Exception {
+    byte[] compressed = new S3SnapshotTransfer.CompressBlockTask(new byte[0], 0).call();
+    GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+    assertEquals(-1, gzipInputStream.read());
+    gzipInputStream.close();
+  }
+}
@@ -25,9 +25,12 @@ import org.apache.log4j.Logger;
 
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupTier;
 import com.eucalyptus.component.Topology;
 
 public class DBCleanupService implements Runnable {
@@ -51,6 +54,15 @@ public class DBCleanupService implements Runnable {
       LOG.error(ex);
       LOG.error(ex, ex);
     }
+    try {
+      MetricRollupManager.deleteMetrics(MetricRollupTier.FiveMinutes, new Date(System.currentTimeMillis() -
+          CloudWatchConfigProperties.METRIC_ROLLUP_FIVE_MINUTE_RETENTION_DAYS * 24 * 60 * 60 * 1000L));
+      MetricRollupManager.deleteMetrics(MetricRollupTier.OneHour, new Date(System.currentTimeMillis() -
+          CloudWatchConfigProperties.METRIC_ROLLUP_ONE_HOUR_RETENTION_DAYS * 24 * 60 * 60 * 1000L));
+    } catch (Exception ex) {
+      LOG.error(ex);
+      LOG.error(ex, ex);
+    }
     try {
       ListMetricManager.deleteMetrics(twoWeeksAgo);
     } catch (Exception ex) {
@@ -0,0 +1,67 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow;
+
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupTier;
+import com.eucalyptus.component.Topology;
+
+/**
+ * Rolls up per-minute metric data into the five minute and one hour tiers.
+ */
+public class MetricRollupService implements Runnable {
+  private static final Logger LOG = Logger.getLogger(MetricRollupService.class);
+
+  // limit work per run so that catching up does not hold the thread
+  private static final int MAX_PERIODS_PER_RUN = 288;
+
+  public MetricRollupService() {
+  }
+
+  @Override
+  public void run() {
+    if (!( Bootstrap.isOperational() &&
+        Topology.isEnabledLocally( CloudWatchBackend.class ) &&
+        CloudWatchConfigProperties.ENABLE_METRIC_ROLLUP )) {
+      return;
+    }
+    // per-minute data is retained for two weeks, see DBCleanupService
+    final Date now = new Date();
+    final Date twoWeeksAgo = new Date(now.getTime() - 2 * 7 * 24 * 60 * 60 * 1000L);
+    for (final MetricRollupTier tier : MetricRollupTier.values()) {
+      try {
+        final int periods = MetricRollupManager.rollup(tier, now, twoWeeksAgo, MAX_PERIODS_PER_RUN);
+        if (periods > 0) {
+          LOG.debug("Rolled up " + periods + " " + tier + " metric periods");
+        }
+      } catch (Exception ex) {
+        LOG.error("Error rolling up " + tier + " metric data", ex);
+        break;
+      }
+    }
+  }
+}
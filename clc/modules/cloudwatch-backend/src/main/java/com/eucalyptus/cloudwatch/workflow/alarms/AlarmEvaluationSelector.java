@@ -0,0 +1,118 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow.alarms;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.DimensionSet;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricSeriesKey;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.UpdatedMetricSeries;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Selects the alarms to evaluate when incremental alarm evaluation is enabled.
+ *
+ * An alarm is evaluated when its metric had data committed since the last
+ * cycle, when a period has passed since it was last evaluated, or when the
+ * alarm itself changed. All alarms are evaluated periodically and whenever
+ * metric updates may have been missed.
+ */
+public class AlarmEvaluationSelector {
+  private static final Logger LOG = Logger.getLogger(AlarmEvaluationSelector.class);
+
+  private final Map<String, EvaluationRecord> evaluationRecords = Maps.newHashMap();
+  private long lastFullEvaluation = 0;
+
+  public List<AlarmEntity> select(final List<AlarmEntity> alarmEntities, final Date evaluationDate) {
+    final Optional<Set<MetricSeriesKey>> updatedSeries = UpdatedMetricSeries.getInstance().drain();
+    return select(
+        alarmEntities,
+        evaluationDate,
+        updatedSeries,
+        CloudWatchConfigProperties.INCREMENTAL_ALARM_EVALUATION && MetricManager.isCloudWatchHostLocal(),
+        CloudWatchConfigProperties.ALARM_FULL_EVALUATION_INTERVAL_MINS);
+  }
+
+  List<AlarmEntity> select(final List<AlarmEntity> alarmEntities,
+                           final Date evaluationDate,
+                           final Optional<Set<MetricSeriesKey>> updatedSeries,
+                           final boolean incremental,
+                           final int fullEvaluationIntervalMins) {
+    final long now = MetricUtils.stripSeconds(evaluationDate).getTime();
+    final boolean fullEvaluation =
+        !incremental ||
+        !updatedSeries.isPresent() ||
+        now - lastFullEvaluation >= 60000L * fullEvaluationIntervalMins;
+    if (fullEvaluation) {
+      evaluationRecords.clear();
+      lastFullEvaluation = now;
+    }
+
+    final Map<String, EvaluationRecord> currentRecords = Maps.newHashMap();
+    final List<AlarmEntity> selected = Lists.newArrayList();
+    for (final AlarmEntity alarmEntity : alarmEntities) {
+      EvaluationRecord record = evaluationRecords.get(alarmEntity.getNaturalId());
+      if (fullEvaluation || record == null || record.isDue(alarmEntity, now) ||
+          updatedSeries.get().contains(seriesKey(alarmEntity))) {
+        record = new EvaluationRecord(alarmEntity, now);
+        selected.add(alarmEntity);
+      }
+      currentRecords.put(alarmEntity.getNaturalId(), record);
+    }
+    evaluationRecords.clear();
+    evaluationRecords.putAll(currentRecords);
+
+    if (!fullEvaluation) {
+      LOG.debug("Selected " + selected.size() + " of " + alarmEntities.size() + " alarms for evaluation");
+    }
+    return selected;
+  }
+
+  private static MetricSeriesKey seriesKey(final AlarmEntity alarmEntity) {
+    return new MetricSeriesKey(alarmEntity.getAccountId(), alarmEntity.getNamespace(), alarmEntity.getMetricName(),
+        alarmEntity.getMetricType(), DimensionSet.of(alarmEntity.getDimensionMap()).getHash());
+  }
+
+  private static final class EvaluationRecord {
+    private final Integer version;
+    private final long evaluated;
+
+    private EvaluationRecord(final AlarmEntity alarmEntity, final long evaluated) {
+      this.version = alarmEntity.getVersion();
+      this.evaluated = evaluated;
+    }
+
+    private boolean isDue(final AlarmEntity alarmEntity, final long now) {
+      return (version == null ? alarmEntity.getVersion() != null : !version.equals(alarmEntity.getVersion())) ||
+          now - evaluated >= 1000L * alarmEntity.getPeriod();
+    }
+  }
+}
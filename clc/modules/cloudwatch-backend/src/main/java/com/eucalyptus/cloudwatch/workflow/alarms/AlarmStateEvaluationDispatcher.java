@@ -37,6 +37,7 @@
 
 package com.eucalyptus.cloudwatch.workflow.alarms;
 
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -49,8 +50,7 @@ import java.util.concurrent.Future;
 
 import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
-import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntityFactory;
-import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.DimensionSet;
 import com.eucalyptus.entities.TransactionResource;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedListMultimap;
@@ -68,6 +68,7 @@ import com.eucalyptus.entities.Entities;
 public class AlarmStateEvaluationDispatcher implements Runnable {
   private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationDispatcher.class);
   ExecutorService executorService;
+  private final AlarmEvaluationSelector alarmEvaluationSelector = new AlarmEvaluationSelector();
 
   public AlarmStateEvaluationDispatcher(ExecutorService executorService) {
     super();
@@ -84,7 +85,7 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
       List<List<AlarmEntity>> resultsList = null;
       try (final TransactionResource db = Entities.transactionFor(AlarmEntity.class)) {
         Criteria criteria = Entities.createCriteria(AlarmEntity.class);
-        List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
+        List<AlarmEntity> results = alarmEvaluationSelector.select((List<AlarmEntity>) criteria.list(), new Date());
         resultsList = makeResultsList(results);
         before = System.currentTimeMillis();
         size = results.size();
@@ -119,7 +120,7 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
   private List<List<AlarmEntity>> makeResultsList(List<AlarmEntity> results) {
     Multimap<Class, AlarmEntity> classMultiMap = LinkedListMultimap.create();
     for (AlarmEntity alarmEntity: results) {
-      classMultiMap.put(MetricEntityFactory.getClassForEntitiesGet(alarmEntity.getMetricType(), MetricManager.hash(alarmEntity.getDimensionMap())), alarmEntity);
+      classMultiMap.put(DimensionSet.of(alarmEntity.getDimensionMap()).getEntityClass(alarmEntity.getMetricType()), alarmEntity);
     }
     List<Iterator<List<AlarmEntity>>> iterators = Lists.newArrayList();
     for (Class clazz: classMultiMap.keySet()) {
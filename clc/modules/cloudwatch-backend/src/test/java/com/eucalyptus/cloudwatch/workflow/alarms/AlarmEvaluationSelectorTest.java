@@ -0,0 +1,160 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow.alarms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.DimensionEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.DimensionSet;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricSeriesKey;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class AlarmEvaluationSelectorTest {
+
+  private static final long MINUTE = 60000L;
+  private static final long START = 1000L * MINUTE;
+  private static final int FULL_INTERVAL_MINS = 10;
+
+  private static final Optional<Set<MetricSeriesKey>> NONE_UPDATED =
+      Optional.<Set<MetricSeriesKey>>of(Collections.<MetricSeriesKey>emptySet());
+
+  @Test
+  public void testFirstSelectionIsFull() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final List<AlarmEntity> alarms = ImmutableList.of(alarm("CPUUtilization", 300), alarm("NetworkIn", 60));
+    assertEquals("Selected", alarms, select(selector, alarms, START, NONE_UPDATED));
+  }
+
+  @Test
+  public void testSelectedWhenPeriodElapsed() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final AlarmEntity alarm = alarm("CPUUtilization", 180);
+    final List<AlarmEntity> alarms = ImmutableList.of(alarm);
+    select(selector, alarms, START, NONE_UPDATED);
+
+    assertEquals("Selected before period", 0, select(selector, alarms, START + MINUTE, NONE_UPDATED).size());
+    assertEquals("Selected before period", 0, select(selector, alarms, START + 2 * MINUTE + 59000L, NONE_UPDATED).size());
+    assertEquals("Selected at period", alarms, select(selector, alarms, START + 3 * MINUTE, NONE_UPDATED));
+    assertEquals("Selected after evaluation", 0, select(selector, alarms, START + 4 * MINUTE, NONE_UPDATED).size());
+  }
+
+  @Test
+  public void testSelectedWhenSeriesUpdated() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final AlarmEntity cpu = alarm("CPUUtilization", 300);
+    final AlarmEntity network = alarm("NetworkIn", 300);
+    final List<AlarmEntity> alarms = ImmutableList.of(cpu, network);
+    select(selector, alarms, START, NONE_UPDATED);
+
+    final Optional<Set<MetricSeriesKey>> updated = Optional.<Set<MetricSeriesKey>>of(ImmutableSet.of(
+        new MetricSeriesKey("000000000000", "AWS/EC2", "NetworkIn", MetricType.System,
+            DimensionSet.of(network.getDimensionMap()).getHash())));
+    assertEquals("Selected", ImmutableList.of(network), select(selector, alarms, START + MINUTE, updated));
+  }
+
+  @Test
+  public void testSelectedWhenAlarmChanged() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final AlarmEntity cpu = alarm("CPUUtilization", 300);
+    final AlarmEntity network = alarm("NetworkIn", 300);
+    final List<AlarmEntity> alarms = ImmutableList.of(cpu, network);
+    select(selector, alarms, START, NONE_UPDATED);
+
+    cpu.setVersion(1);
+    assertEquals("Selected", ImmutableList.of(cpu), select(selector, alarms, START + MINUTE, NONE_UPDATED));
+    assertEquals("Selected unchanged", 0, select(selector, alarms, START + 2 * MINUTE, NONE_UPDATED).size());
+  }
+
+  @Test
+  public void testNewAlarmSelected() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final AlarmEntity cpu = alarm("CPUUtilization", 300);
+    select(selector, ImmutableList.of(cpu), START, NONE_UPDATED);
+
+    final AlarmEntity network = alarm("NetworkIn", 300);
+    assertEquals("Selected", ImmutableList.of(network),
+        select(selector, ImmutableList.of(cpu, network), START + MINUTE, NONE_UPDATED));
+  }
+
+  @Test
+  public void testFullEvaluationInterval() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final List<AlarmEntity> alarms = ImmutableList.of(alarm("CPUUtilization", 3600));
+    select(selector, alarms, START, NONE_UPDATED);
+
+    final long beforeInterval = START + FULL_INTERVAL_MINS * MINUTE - 1;
+    assertEquals("Selected before interval", 0, select(selector, alarms, beforeInterval, NONE_UPDATED).size());
+    final long atInterval = START + FULL_INTERVAL_MINS * MINUTE;
+    assertEquals("Selected at interval", alarms, select(selector, alarms, atInterval, NONE_UPDATED));
+    assertEquals("Selected after interval", 0, select(selector, alarms, atInterval + MINUTE, NONE_UPDATED).size());
+  }
+
+  @Test
+  public void testFullEvaluationWhenUpdatesUnknown() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final List<AlarmEntity> alarms = ImmutableList.of(alarm("CPUUtilization", 3600));
+    select(selector, alarms, START, NONE_UPDATED);
+
+    assertEquals("Selected", alarms,
+        select(selector, alarms, START + MINUTE, Optional.<Set<MetricSeriesKey>>absent()));
+  }
+
+  @Test
+  public void testFullEvaluationWhenNotIncremental() {
+    final AlarmEvaluationSelector selector = new AlarmEvaluationSelector();
+    final List<AlarmEntity> alarms = ImmutableList.of(alarm("CPUUtilization", 3600));
+    selector.select(alarms, new Date(START), NONE_UPDATED, false, FULL_INTERVAL_MINS);
+
+    assertTrue("Selected", selector.select(alarms, new Date(START + MINUTE), NONE_UPDATED, false, FULL_INTERVAL_MINS)
+        .containsAll(alarms));
+  }
+
+  private static List<AlarmEntity> select(final AlarmEvaluationSelector selector,
+                                          final List<AlarmEntity> alarms,
+                                          final long time,
+                                          final Optional<Set<MetricSeriesKey>> updatedSeries) {
+    return selector.select(alarms, new Date(time), updatedSeries, true, FULL_INTERVAL_MINS);
+  }
+
+  private static AlarmEntity alarm(final String metricName, final int period) {
+    final AlarmEntity alarm = new AlarmEntity();
+    alarm.updateTimeStamps(); // assigns natural identifier
+    alarm.setAccountId("000000000000");
+    alarm.setNamespace("AWS/EC2");
+    alarm.setMetricName(metricName);
+    alarm.setMetricType(MetricType.System);
+    alarm.setPeriod(period);
+    alarm.setVersion(0);
+    alarm.setDimensions(Collections.singleton(new DimensionEntity("InstanceId", "i-00000001")));
+    return alarm;
+  }
+}
@@ -31,6 +31,33 @@ public class CloudWatchConfigProperties {
   @ConfigurableField(initial = "1000", description = "Size of the reporting data set that stores cloud watch queues performance info (debug only prop)")
   public static volatile int CLOUDWATCH_MONITORING_HISTORY_SIZE = 1000;
 
+  @ConfigurableField(initial = "20", description = "Minutes of recent metric data held in memory to answer statistics queries, 0 to disable (only used when all cloud watch services are on one host)", changeListener = PropertyChangeListeners.IsNonNegativeInteger.class)
+  public static volatile int RECENT_METRIC_DATA_MINUTES = 20;
+
+  @ConfigurableField(initial = "0", description = "Number of partitions that aggregate metric data as it is received, 0 to queue data points and flush once a minute", changeListener = PropertyChangeListeners.IsNonNegativeInteger.class)
+  public static volatile int METRIC_DATA_QUEUE_PARTITIONS = 0;
+
+  @ConfigurableField(initial = "15", description = "Interval in seconds between flushes of each metric data partition", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_DATA_QUEUE_FLUSH_INTERVAL_SECS = 15;
+
+  @ConfigurableField(initial = "false", description = "Set this to true to evaluate only alarms with new metric data or a passed period, requires all cloud watch services on one host", changeListener = PropertyChangeListeners.IsBoolean.class)
+  public static volatile Boolean INCREMENTAL_ALARM_EVALUATION = false;
+
+  @ConfigurableField(initial = "10", description = "Interval in minutes between evaluations of all alarms when incremental alarm evaluation is enabled", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int ALARM_FULL_EVALUATION_INTERVAL_MINS = 10;
+
+  @ConfigurableField(initial = "true", description = "Set this to false to stop rolling up metric data into five minute and one hour tiers", changeListener = PropertyChangeListeners.IsBoolean.class)
+  public static volatile Boolean ENABLE_METRIC_ROLLUP = true;
+
+  @ConfigurableField(initial = "63", description = "Number of days to retain five minute metric data", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_ROLLUP_FIVE_MINUTE_RETENTION_DAYS = 63;
+
+  @ConfigurableField(initial = "455", description = "Number of days to retain one hour metric data", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_ROLLUP_ONE_HOUR_RETENTION_DAYS = 455;
+
+  @ConfigurableField(initial = "true", description = "Set this to false to list metrics from the database rather than an in-memory index (the index is only used when all cloud watch services are on one host)", changeListener = PropertyChangeListeners.IsBoolean.class)
+  public static volatile Boolean LIST_METRICS_INDEX = true;
+
   public static Boolean isDisabledCloudWatchService() {
     return !ENABLE_CLOUDWATCH_SERVICE;
   }
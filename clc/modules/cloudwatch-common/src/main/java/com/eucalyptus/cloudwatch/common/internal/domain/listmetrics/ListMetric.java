@@ -73,6 +73,11 @@ public class ListMetric extends AbstractPersistentWithDimensions {
     this.metricType = metricType;
   }
 
+  @Override
+  public void setNaturalId( final String naturalId ) {
+    super.setNaturalId( naturalId );
+  }
+
   @Column( name = "account_id" , nullable = false)
   private String accountId;
   @Column( name = "namespace" , nullable = false)
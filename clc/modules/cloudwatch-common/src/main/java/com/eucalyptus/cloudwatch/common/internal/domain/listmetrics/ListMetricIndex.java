@@ -0,0 +1,491 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.listmetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.InvalidTokenException;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.system.Threads;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * In-memory index of list metrics by account, namespace, metric name and
+ * dimension.
+ *
+ * The index is loaded from the database on first use and updated as metric
+ * data is received, before the metrics are written to the database. Metrics
+ * added to the index are assigned the identity used when persisting them so
+ * that next tokens are consistent between the index and the database.
+ */
+public class ListMetricIndex {
+  private static final Logger LOG = Logger.getLogger(ListMetricIndex.class);
+
+  private static final ListMetricIndex INSTANCE = new ListMetricIndex();
+
+  private static final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(
+      Threads.threadFactory("cloudwatch-list-metrics-index-load-%d"));
+
+  private final ConcurrentMap<String, AccountIndex> accountIndexes = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, IndexedMetric> metricsByNaturalId = Maps.newConcurrentMap();
+  private final AtomicInteger generation = new AtomicInteger();
+  private final AtomicBoolean loading = new AtomicBoolean();
+  private volatile boolean loaded = false;
+
+  public static ListMetricIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * The index can only be used when it sees all metric updates.
+   */
+  public static boolean isEnabled() {
+    return CloudWatchConfigProperties.LIST_METRICS_INDEX && MetricManager.isCloudWatchHostLocal();
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Load the index from the database if not loaded or loading.
+   */
+  public void loadAsync() {
+    if (!loaded && loading.compareAndSet(false, true)) {
+      final int loadGeneration = generation.get();
+      loadExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            load(loadGeneration);
+          } catch (final Exception e) {
+            LOG.error("Error loading list metrics index", e);
+          } finally {
+            loading.set(false);
+          }
+        }
+      });
+    }
+  }
+
+  private void load(final int loadGeneration) {
+    final long before = System.currentTimeMillis();
+    int count = 0;
+    try (final TransactionResource db = Entities.transactionFor(ListMetric.class)) {
+      final ScrollableResults results = Entities.createCriteria(ListMetric.class)
+          .setCacheMode(CacheMode.IGNORE)
+          .scroll(ScrollMode.FORWARD_ONLY);
+      while (results.next()) {
+        merge((ListMetric) results.get(0));
+        if (++count % ListMetricManager.LIST_METRIC_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH == 0) {
+          Entities.clearSession(ListMetric.class);
+        }
+      }
+    }
+    synchronized (this) {
+      if (generation.get() == loadGeneration) {
+        loaded = true;
+      }
+    }
+    LOG.info("Loaded " + count + " list metrics into index, time = " + (System.currentTimeMillis() - before) + " ms");
+  }
+
+  /**
+   * Discard the index, e.g. when updates may have been missed.
+   */
+  public synchronized void invalidate() {
+    generation.incrementAndGet();
+    loaded = false;
+    accountIndexes.clear();
+    metricsByNaturalId.clear();
+  }
+
+  /**
+   * Record that metric data was received for a metric.
+   */
+  public void update(final String accountId,
+                     final String metricName,
+                     final MetricType metricType,
+                     final String namespace,
+                     final Map<String, String> dimensionMap) {
+    final IndexedMetric indexedMetric = accountIndex(accountId).getOrCreate(
+        accountId, namespace, metricName, metricType, dimensionMap);
+    indexedMetric.lastUpdateTimestamp = System.currentTimeMillis();
+  }
+
+  /**
+   * Merge a persisted metric, the persisted identity is used if the metric
+   * is already indexed.
+   */
+  void merge(final ListMetric listMetric) {
+    final AccountIndex accountIndex = accountIndex(listMetric.getAccountId());
+    final IndexedMetric indexedMetric = accountIndex.getOrCreate(listMetric.getAccountId(), listMetric.getNamespace(),
+        listMetric.getMetricName(), listMetric.getMetricType(), listMetric.getDimensionMap());
+    accountIndex.setIdentity(indexedMetric, listMetric.getNaturalId(), listMetric.getCreationTimestamp().getTime());
+    if (listMetric.getLastUpdateTimestamp() != null) {
+      indexedMetric.lastUpdateTimestamp =
+          Math.max(indexedMetric.lastUpdateTimestamp, listMetric.getLastUpdateTimestamp().getTime());
+    }
+  }
+
+  /**
+   * Set the identity of the indexed metric on a new list metric.
+   */
+  public void assignIdentity(final ListMetric listMetric) {
+    final AccountIndex accountIndex = accountIndexes.get(listMetric.getAccountId());
+    final IndexedMetric indexedMetric = accountIndex == null ? null : accountIndex.get(
+        listMetric.getNamespace(), listMetric.getMetricName(), listMetric.getMetricType(), listMetric.getDimensionMap());
+    if (indexedMetric != null) {
+      synchronized (accountIndex) {
+        listMetric.setNaturalId(indexedMetric.naturalId);
+        listMetric.setCreationTimestamp(new Date(indexedMetric.creationTimestamp));
+      }
+    }
+  }
+
+  /**
+   * Remove metrics last updated before the given date.
+   */
+  public void purge(final Date before) {
+    for (final AccountIndex accountIndex : accountIndexes.values()) {
+      accountIndex.purge(before.getTime());
+    }
+  }
+
+  /**
+   * @see ListMetricManager#listMetrics
+   */
+  public List<ListMetric> listMetrics(final String accountId,
+                                      final String metricName,
+                                      final String namespace,
+                                      final Map<String, String> dimensionMap,
+                                      final Date after,
+                                      final Date before,
+                                      final Integer maxRecords,
+                                      final String nextToken) throws InvalidTokenException {
+    Match nextTokenMatch = null;
+    if (nextToken != null) {
+      final IndexedMetric nextTokenMetric = metricsByNaturalId.get(nextToken);
+      if (nextTokenMetric == null) {
+        throw new InvalidTokenException("The token '" + nextToken +"' was invalid");
+      }
+      nextTokenMatch = new Match(nextTokenMetric);
+    }
+    final Collection<AccountIndex> searchIndexes;
+    if (accountId != null) {
+      final AccountIndex accountIndex = accountIndexes.get(accountId);
+      searchIndexes = accountIndex == null ?
+          Collections.<AccountIndex>emptySet() :
+          Collections.singleton(accountIndex);
+    } else {
+      searchIndexes = accountIndexes.values();
+    }
+    final List<Match> matches = Lists.newArrayList();
+    for (final AccountIndex accountIndex : searchIndexes) {
+      accountIndex.find(namespace, metricName, dimensionMap, after, before, matches);
+    }
+    Collections.sort(matches, MatchComparator.INSTANCE);
+    final List<ListMetric> results = Lists.newArrayList();
+    for (final Match match : matches) {
+      if (maxRecords != null && results.size() >= maxRecords) {
+        break;
+      }
+      if (nextTokenMatch == null || match.compareTo(nextTokenMatch.creationTimestamp, nextTokenMatch.naturalId) > 0) {
+        results.add(match.toListMetric());
+      }
+    }
+    return results;
+  }
+
+  private AccountIndex accountIndex(final String accountId) {
+    AccountIndex accountIndex = accountIndexes.get(accountId);
+    if (accountIndex == null) {
+      final AccountIndex newAccountIndex = new AccountIndex();
+      accountIndex = accountIndexes.putIfAbsent(accountId, newAccountIndex);
+      if (accountIndex == null) {
+        accountIndex = newAccountIndex;
+      }
+    }
+    return accountIndex;
+  }
+
+  private static SeriesKey seriesKey(final MetricType metricType, final Map<String, String> dimensionMap) {
+    return new SeriesKey(metricType, dimensionMap == null ?
+        ImmutableSortedMap.<String, String>of() :
+        ImmutableSortedMap.copyOf(dimensionMap));
+  }
+
+  private static final class SeriesKey {
+    private final MetricType metricType;
+    private final ImmutableSortedMap<String, String> dimensionMap;
+
+    private SeriesKey(final MetricType metricType, final ImmutableSortedMap<String, String> dimensionMap) {
+      this.metricType = metricType;
+      this.dimensionMap = dimensionMap;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      final SeriesKey that = (SeriesKey) o;
+      return metricType == that.metricType && dimensionMap.equals(that.dimensionMap);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (metricType != null ? metricType.hashCode() : 0) + dimensionMap.hashCode();
+    }
+  }
+
+  private final class AccountIndex {
+    // namespace -> metric name -> metric type / dimensions -> metric
+    private final Map<String, Map<String, Map<SeriesKey, IndexedMetric>>> metrics =
+        Maps.newHashMap();
+    private final SetMultimap<Map.Entry<String, String>, IndexedMetric> dimensionPostings = HashMultimap.create();
+
+    synchronized IndexedMetric get(final String namespace,
+                                   final String metricName,
+                                   final MetricType metricType,
+                                   final Map<String, String> dimensionMap) {
+      final Map<String, Map<SeriesKey, IndexedMetric>> namespaceMetrics =
+          metrics.get(namespace);
+      final Map<SeriesKey, IndexedMetric> nameMetrics =
+          namespaceMetrics == null ? null : namespaceMetrics.get(metricName);
+      return nameMetrics == null ? null : nameMetrics.get(seriesKey(metricType, dimensionMap));
+    }
+
+    synchronized IndexedMetric getOrCreate(final String accountId,
+                                           final String namespace,
+                                           final String metricName,
+                                           final MetricType metricType,
+                                           final Map<String, String> dimensionMap) {
+      Map<String, Map<SeriesKey, IndexedMetric>> namespaceMetrics =
+          metrics.get(namespace);
+      if (namespaceMetrics == null) {
+        namespaceMetrics = Maps.newHashMap();
+        metrics.put(namespace, namespaceMetrics);
+      }
+      Map<SeriesKey, IndexedMetric> nameMetrics =
+          namespaceMetrics.get(metricName);
+      if (nameMetrics == null) {
+        nameMetrics = Maps.newHashMap();
+        namespaceMetrics.put(metricName, nameMetrics);
+      }
+      final SeriesKey key = seriesKey(metricType, dimensionMap);
+      IndexedMetric indexedMetric = nameMetrics.get(key);
+      if (indexedMetric == null) {
+        indexedMetric = new IndexedMetric(accountId, namespace, metricName, metricType, key.dimensionMap);
+        nameMetrics.put(key, indexedMetric);
+        for (final Map.Entry<String, String> dimension : key.dimensionMap.entrySet()) {
+          dimensionPostings.put(dimension, indexedMetric);
+        }
+        metricsByNaturalId.put(indexedMetric.naturalId, indexedMetric);
+      }
+      return indexedMetric;
+    }
+
+    synchronized void setIdentity(final IndexedMetric indexedMetric,
+                                  final String naturalId,
+                                  final long creationTimestamp) {
+      if (!indexedMetric.naturalId.equals(naturalId)) {
+        metricsByNaturalId.remove(indexedMetric.naturalId, indexedMetric);
+        indexedMetric.naturalId = naturalId;
+        metricsByNaturalId.put(naturalId, indexedMetric);
+      }
+      indexedMetric.creationTimestamp = creationTimestamp;
+    }
+
+    synchronized void purge(final long before) {
+      for (final Iterator<Map<String, Map<SeriesKey, IndexedMetric>>> namespaceIterator =
+               metrics.values().iterator(); namespaceIterator.hasNext(); ) {
+        final Map<String, Map<SeriesKey, IndexedMetric>> namespaceMetrics =
+            namespaceIterator.next();
+        for (final Iterator<Map<SeriesKey, IndexedMetric>> nameIterator =
+                 namespaceMetrics.values().iterator(); nameIterator.hasNext(); ) {
+          final Map<SeriesKey, IndexedMetric> nameMetrics = nameIterator.next();
+          for (final Iterator<IndexedMetric> metricIterator = nameMetrics.values().iterator(); metricIterator.hasNext(); ) {
+            final IndexedMetric indexedMetric = metricIterator.next();
+            if (indexedMetric.lastUpdateTimestamp < before) {
+              metricIterator.remove();
+              for (final Map.Entry<String, String> dimension : indexedMetric.dimensionMap.entrySet()) {
+                dimensionPostings.remove(dimension, indexedMetric);
+              }
+              metricsByNaturalId.remove(indexedMetric.naturalId, indexedMetric);
+            }
+          }
+          if (nameMetrics.isEmpty()) nameIterator.remove();
+        }
+        if (namespaceMetrics.isEmpty()) namespaceIterator.remove();
+      }
+    }
+
+    synchronized void find(final String namespace,
+                           final String metricName,
+                           final Map<String, String> dimensionMap,
+                           final Date after,
+                           final Date before,
+                           final Collection<Match> matches) {
+      // use the smallest dimension postings if filtering by dimension value
+      Collection<IndexedMetric> candidates = null;
+      if (dimensionMap != null) {
+        for (final Map.Entry<String, String> dimension : dimensionMap.entrySet()) {
+          if (dimension.getValue() != null) {
+            final Set<IndexedMetric> postings = dimensionPostings.get(Maps.immutableEntry(dimension.getKey(), dimension.getValue()));
+            if (candidates == null || postings.size() < candidates.size()) {
+              candidates = postings;
+            }
+          }
+        }
+      }
+      if (candidates == null) {
+        candidates = Lists.newArrayList();
+        for (final Map.Entry<String, Map<String, Map<SeriesKey, IndexedMetric>>> namespaceEntry :
+            metrics.entrySet()) {
+          if (namespace != null && !namespace.equals(namespaceEntry.getKey())) continue;
+          for (final Map.Entry<String, Map<SeriesKey, IndexedMetric>> nameEntry :
+              namespaceEntry.getValue().entrySet()) {
+            if (metricName != null && !metricName.equals(nameEntry.getKey())) continue;
+            candidates.addAll(nameEntry.getValue().values());
+          }
+        }
+      }
+      for (final IndexedMetric indexedMetric : candidates) {
+        if ((namespace == null || namespace.equals(indexedMetric.namespace)) &&
+            (metricName == null || metricName.equals(indexedMetric.metricName)) &&
+            (after == null || indexedMetric.lastUpdateTimestamp >= after.getTime()) &&
+            (before == null || indexedMetric.lastUpdateTimestamp <= before.getTime()) &&
+            indexedMetric.matchesDimensions(dimensionMap)) {
+          matches.add(new Match(indexedMetric));
+        }
+      }
+    }
+  }
+
+  /**
+   * Snapshot of the ordering fields for an indexed metric.
+   */
+  private static final class Match {
+    private final IndexedMetric indexedMetric;
+    private final long creationTimestamp;
+    private final String naturalId;
+    private final long lastUpdateTimestamp;
+
+    private Match(final IndexedMetric indexedMetric) {
+      this.indexedMetric = indexedMetric;
+      this.creationTimestamp = indexedMetric.creationTimestamp;
+      this.naturalId = indexedMetric.naturalId;
+      this.lastUpdateTimestamp = indexedMetric.lastUpdateTimestamp;
+    }
+
+    private int compareTo(final long creationTimestamp, final String naturalId) {
+      int result = Long.compare(this.creationTimestamp, creationTimestamp);
+      if (result == 0) {
+        result = this.naturalId.compareTo(naturalId);
+      }
+      return result;
+    }
+
+    private ListMetric toListMetric() {
+      final ListMetric listMetric = ListMetricManager.createListMetric(indexedMetric.accountId,
+          indexedMetric.metricName, indexedMetric.metricType, indexedMetric.namespace, indexedMetric.dimensionMap);
+      listMetric.setNaturalId(naturalId);
+      listMetric.setCreationTimestamp(new Date(creationTimestamp));
+      listMetric.setLastUpdateTimestamp(new Date(lastUpdateTimestamp));
+      return listMetric;
+    }
+  }
+
+  private static final class IndexedMetric {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final ImmutableSortedMap<String, String> dimensionMap;
+    private volatile String naturalId;
+    private volatile long creationTimestamp;
+    private volatile long lastUpdateTimestamp;
+
+    private IndexedMetric(final String accountId,
+                          final String namespace,
+                          final String metricName,
+                          final MetricType metricType,
+                          final ImmutableSortedMap<String, String> dimensionMap) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionMap = dimensionMap;
+      this.naturalId = UUID.randomUUID().toString();
+      this.creationTimestamp = System.currentTimeMillis();
+      this.lastUpdateTimestamp = creationTimestamp;
+    }
+
+    /**
+     * Dimension filters without a value match any value.
+     */
+    private boolean matchesDimensions(final Map<String, String> dimensionFilters) {
+      if (dimensionFilters != null) {
+        for (final Map.Entry<String, String> dimensionFilter : dimensionFilters.entrySet()) {
+          final String value = dimensionMap.get(dimensionFilter.getKey());
+          if (value == null || (dimensionFilter.getValue() != null && !dimensionFilter.getValue().equals(value))) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  }
+
+  private enum MatchComparator implements Comparator<Match> {
+    INSTANCE;
+
+    @Override
+    public int compare(final Match match1, final Match match2) {
+      return match1.compareTo(match2.creationTimestamp, match2.naturalId);
+    }
+  }
+}
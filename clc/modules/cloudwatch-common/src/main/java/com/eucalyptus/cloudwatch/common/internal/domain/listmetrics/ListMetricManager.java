@@ -123,6 +123,7 @@ public class ListMetricManager {
       Entities.deleteAll(ListMetric.class);
       db.commit();
     }
+    ListMetricIndex.getInstance().invalidate();
   }
 
   /**
@@ -154,6 +155,13 @@ public class ListMetricManager {
     if (dimensionMap != null && dimensionMap.size() > ListMetric.MAX_DIM_NUM) {
       throw new IllegalArgumentException("Too many dimensions " + dimensionMap.size());
     }
+    if (ListMetricIndex.isEnabled()) {
+      final ListMetricIndex index = ListMetricIndex.getInstance();
+      if (index.isLoaded()) {
+        return index.listMetrics(accountId, metricName, namespace, dimensionMap, after, before, maxRecords, nextToken);
+      }
+      index.loadAsync();
+    }
     try (final TransactionResource db = Entities.transactionFor(ListMetric.class)) {
       Date nextTokenCreatedTime = NextTokenUtils.getNextTokenCreatedTime(nextToken, ListMetric.class);
       Map<String, String> sortedDimensionMap = new TreeMap<String, String>();
@@ -329,7 +337,12 @@ public class ListMetricManager {
           for (ListMetric listMetric : dataBatchPrefetchMap.get(prefetchFields)) {
             NonPrefetchFields cacheKey = new NonPrefetchFields(listMetric.getMetricType(), listMetric.getDimensionMap());
             if (dataCache.containsKey(cacheKey)) {
-              dataCache.get(cacheKey).updateTimeStamps();
+              ListMetric inDbMetric = dataCache.get(cacheKey);
+              inDbMetric.updateTimeStamps();
+              if (listMetric.getNaturalId() != null && !listMetric.getNaturalId().equals(inDbMetric.getNaturalId())) {
+                // indexed with a different identity, use the one from the database
+                ListMetricIndex.getInstance().merge(inDbMetric);
+              }
             } else {
               Entities.persist(listMetric);
               dataCache.put(cacheKey, listMetric);
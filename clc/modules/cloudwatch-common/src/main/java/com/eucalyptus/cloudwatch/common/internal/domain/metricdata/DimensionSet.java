@@ -0,0 +1,108 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.hashing.HashUtils;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Hash and entity classes for a canonical (sorted) set of metric dimensions.
+ *
+ * Instances are interned via a bounded cache so repeated dimension sets
+ * are only hashed once.
+ */
+public final class DimensionSet {
+
+  private static final Cache<ImmutableSortedMap<String,String>,DimensionSet> dimensionSetCache = CacheBuilder
+      .<ImmutableSortedMap<String,String>,DimensionSet>newBuilder()
+      .maximumSize( 50_000 )
+      .expireAfterAccess( 1, TimeUnit.HOURS )
+      .build( );
+
+  private final String hash;
+  private final Class systemEntityClass;
+  private final Class customEntityClass;
+
+  private DimensionSet( final String hash ) {
+    this.hash = hash;
+    this.systemEntityClass = MetricEntityFactory.getClassForEntitiesGet( MetricType.System, hash );
+    this.customEntityClass = MetricEntityFactory.getClassForEntitiesGet( MetricType.Custom, hash );
+  }
+
+  /**
+   * Get the dimension set for the given dimensions.
+   *
+   * @param dimensionMap The dimensions, may be null
+   * @return The (possibly shared) dimension set
+   */
+  public static DimensionSet of( final Map<String,String> dimensionMap ) {
+    if ( dimensionMap == null || dimensionMap.isEmpty( ) ) {
+      return of( ImmutableSortedMap.<String,String>of( ) );
+    } else if ( dimensionMap.containsValue( null ) ) {
+      return new DimensionSet( hash( new TreeMap<>( dimensionMap ) ) );
+    } else {
+      return of( ImmutableSortedMap.copyOf( dimensionMap ) );
+    }
+  }
+
+  private static DimensionSet of( final ImmutableSortedMap<String,String> dimensionMap ) {
+    try {
+      return dimensionSetCache.get( dimensionMap, ( ) -> new DimensionSet( hash( dimensionMap ) ) );
+    } catch ( final ExecutionException e ) {
+      throw Exceptions.toUndeclared( e.getCause( ) );
+    }
+  }
+
+  private static String hash( final Map<String,String> sortedDimensionMap ) {
+    final StringBuilder sb = new StringBuilder( );
+    for ( final Map.Entry<String,String> entry : sortedDimensionMap.entrySet( ) ) {
+      sb.append( entry.getKey( ) ).append( '|' ).append( entry.getValue( ) ).append( '|' );
+    }
+    return HashUtils.hash( sb );
+  }
+
+  public String getHash( ) {
+    return hash;
+  }
+
+  /**
+   * The metric entity class for data with these dimensions.
+   *
+   * @see MetricEntityFactory#getClassForEntitiesGet(MetricType, String)
+   */
+  public Class getEntityClass( final MetricType metricType ) {
+    if ( metricType == null ) throw new IllegalArgumentException( "Invalid metricType" );
+    return metricType == MetricType.System ? systemEntityClass : customEntityClass;
+  }
+
+  @Override
+  public String toString( ) {
+    return "DimensionSet{" + hash + "}";
+  }
+}
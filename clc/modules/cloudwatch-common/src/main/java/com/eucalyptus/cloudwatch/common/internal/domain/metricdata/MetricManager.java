@@ -23,6 +23,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -30,14 +31,21 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityTransaction;
 
+import com.eucalyptus.cloudwatch.common.CloudWatch;
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
 import com.eucalyptus.cloudwatch.common.internal.domain.AbstractPersistentWithDimensions;
+import com.eucalyptus.component.ServiceConfiguration;
+import com.eucalyptus.component.ServiceConfigurations;
+import com.eucalyptus.component.Topology;
 import com.eucalyptus.configurable.ConfigurableClass;
 import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.configurable.PropertyChangeListeners;
 import com.eucalyptus.entities.TransactionResource;
+import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedListMultimap;
 import org.apache.log4j.Logger;
@@ -68,6 +76,10 @@ public class MetricManager {
   public static volatile Integer METRIC_DATA_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH = 50;
 
   public static final Logger LOG = Logger.getLogger(MetricManager.class);
+
+  private static volatile RecentMetricDataStore recentMetricDataStore;
+  private static final AtomicLong recentMetricDataLastPurgeMinute = new AtomicLong();
+
   public static void addMetric(String accountId, 
       String metricName, String namespace, Map<String, String> dimensionMap,
       MetricType metricType, Units units, Date timestamp, Double sampleSize,
@@ -102,15 +114,8 @@ public class MetricManager {
 
   private static List<MetricEntity> hash(SimpleMetricEntity simpleMetricEntity) {
     if (simpleMetricEntity == null) return new ArrayList<MetricEntity>();
-    TreeSet<DimensionEntity> dimensions = new TreeSet<DimensionEntity>();
-    for (Map.Entry<String, String> entry : simpleMetricEntity.getDimensionMap().entrySet()) {
-      DimensionEntity d = new DimensionEntity();
-      d.setName(entry.getKey());
-      d.setValue(entry.getValue());
-      dimensions.add(d);
-    }
     ArrayList<MetricEntity> returnValue = new ArrayList<MetricEntity>();
-    String dimensionHash = hash(dimensions);
+    String dimensionHash = hash(simpleMetricEntity.getDimensionMap());
     MetricEntity metric = MetricEntityFactory.getNewMetricEntity(simpleMetricEntity.getMetricType(),
           dimensionHash);
     metric.setAccountId(simpleMetricEntity.getAccountId());
@@ -143,20 +148,13 @@ public class MetricManager {
           }
           db.commit();
         }
+        recordCommittedMetricData(dataBatchPartial);
       }
     }
   }
 
   public static String hash(Map<String, String> dimensionMap) {
-    TreeMap<String, String> sortedDimensionMap = Maps.newTreeMap();
-    if (dimensionMap != null) {
-      sortedDimensionMap.putAll(dimensionMap);
-    }
-    StringBuilder sb = new StringBuilder();
-    for (Map.Entry<String, String> entry : sortedDimensionMap.entrySet()) {
-      sb.append(entry.getKey() + "|" + entry.getValue() + "|");
-    }
-    return HashUtils.hash(sb);
+    return DimensionSet.of(dimensionMap).getHash();
   }
 
   public static String hash(Collection<DimensionEntity> dimensions) {
@@ -167,13 +165,105 @@ public class MetricManager {
     return HashUtils.hash(sb);
   }
 
+  /**
+   * Get the recent metric data store if it can be used.
+   *
+   * The store is only used when all enabled cloud watch services are local,
+   * otherwise writes from other hosts would not be seen.
+   *
+   * @param activate true to create the store if it is not yet in use
+   * @return the store or null
+   */
+  private static RecentMetricDataStore getRecentMetricDataStore(final boolean activate) {
+    final int minutes = CloudWatchConfigProperties.RECENT_METRIC_DATA_MINUTES;
+    if (minutes <= 0 || !isCloudWatchHostLocal()) {
+      recentMetricDataStore = null;
+      return null;
+    }
+    RecentMetricDataStore store = recentMetricDataStore;
+    if (store != null && store.getCapacityMinutes() == minutes) {
+      return store;
+    }
+    if (!activate) {
+      return null;
+    }
+    synchronized (MetricManager.class) {
+      store = recentMetricDataStore;
+      if (store == null || store.getCapacityMinutes() != minutes) {
+        final long nowMinute = RecentMetricDataStore.toMinute(new Date());
+        // record from now on, then find any data already persisted with a
+        // future timestamp, coverage starts after it.
+        store = new RecentMetricDataStore(minutes);
+        recentMetricDataStore = store;
+        long coverageStartMinute = nowMinute + 1;
+        final Date coverageStart = new Date(coverageStartMinute * 60000L);
+        for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
+          try (final TransactionResource db = Entities.transactionFor(c)) {
+            final Date maxTimestamp = (Date) Entities.createCriteria(c)
+                .add(Restrictions.ge("timestamp", coverageStart))
+                .setProjection(Projections.max("timestamp"))
+                .uniqueResult();
+            if (maxTimestamp != null) {
+              coverageStartMinute = Math.max(coverageStartMinute, RecentMetricDataStore.toMinute(maxTimestamp) + 1);
+            }
+          }
+        }
+        store.setCoverageStartMinute(coverageStartMinute);
+        LOG.info("Using recent metric data store for " + minutes + " minutes of data, coverage from " +
+            new Date(coverageStartMinute * 60000L));
+      }
+      return store;
+    }
+  }
+
+  /**
+   * Check if all enabled cloud watch services are local, in which case all
+   * metric data writes are seen by this host.
+   */
+  public static boolean isCloudWatchHostLocal() {
+    final Collection<ServiceConfiguration> enabledServices = Topology.enabledServices(CloudWatch.class);
+    return !enabledServices.isEmpty() && Iterables.all(enabledServices, ServiceConfigurations.filterHostLocal());
+  }
+
+  private static void recordCommittedMetricData(final Collection<MetricEntity> committedEntities) {
+    if (CloudWatchConfigProperties.INCREMENTAL_ALARM_EVALUATION && isCloudWatchHostLocal()) {
+      UpdatedMetricSeries.getInstance().mark(committedEntities);
+    } else {
+      UpdatedMetricSeries.getInstance().invalidate();
+    }
+    try {
+      final RecentMetricDataStore store = getRecentMetricDataStore(true);
+      if (store != null) {
+        final long nowMinute = RecentMetricDataStore.toMinute(new Date());
+        for (final MetricEntity me : committedEntities) {
+          store.record(me, nowMinute);
+        }
+        final long lastPurgeMinute = recentMetricDataLastPurgeMinute.get();
+        if (lastPurgeMinute != nowMinute && recentMetricDataLastPurgeMinute.compareAndSet(lastPurgeMinute, nowMinute)) {
+          store.purge(nowMinute);
+        }
+      }
+    } catch (final Exception e) {
+      // data is persisted, stop using the store as it no longer sees all writes
+      recentMetricDataStore = null;
+      LOG.error("Error recording recent metric data", e);
+    }
+    try {
+      MetricRollupManager.addLateMetricData(committedEntities, new Date());
+    } catch (final Exception e) {
+      LOG.error("Error adding late metric data to rollup tiers", e);
+    }
+  }
+
   public static void deleteAllMetrics() {
+    recentMetricDataStore = null;
     for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
       try (final TransactionResource db = Entities.transactionFor(c)) {
         Entities.deleteAll(c);
         db.commit();
       }
     }
+    MetricRollupManager.deleteAllMetrics();
   }
 
   /**
@@ -183,6 +273,10 @@ public class MetricManager {
    *          the date to delete before (inclusive)
    */
   public static void deleteMetrics(Date before) {
+    final RecentMetricDataStore store = recentMetricDataStore;
+    if (store != null && RecentMetricDataStore.toMinute(before) > RecentMetricDataStore.toMinute(new Date()) - store.getCapacityMinutes()) {
+      recentMetricDataStore = null;
+    }
     for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
       try (final TransactionResource db = Entities.transactionFor(c)) {
         Map<String, Date> criteria = new HashMap<String, Date>();
@@ -339,11 +433,35 @@ public class MetricManager {
     Date now = new Date();
     Map<GetMetricStatisticsParams, Collection<MetricStatistics>> resultMap = Maps.newHashMap();
     Multimap<Class, GetMetricStatisticsParams> hashGroupMap = LinkedListMultimap.create();
+    final RecentMetricDataStore store = getRecentMetricDataStore(false);
+    final long nowMinute = RecentMetricDataStore.toMinute(now);
+    Map<GetMetricStatisticsParams, List<GetMetricStatisticsParams>> segmentParamsMap = Maps.newHashMap();
     for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
       if (getMetricStatisticsParams == null) throw new IllegalArgumentException("getMetricStatisticsParams can not be null");
       getMetricStatisticsParams.validate(now);
-      Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
-      hashGroupMap.put(metricEntityClass, getMetricStatisticsParams);
+      List<GetMetricStatisticsParams> segmentParamses = Lists.newArrayList();
+      segmentParamsMap.put(getMetricStatisticsParams, segmentParamses);
+      for (MetricRollupManager.Segment segment : MetricRollupManager.getSegments(getMetricStatisticsParams, now)) {
+        GetMetricStatisticsParams segmentParams = segment.getParams();
+        segmentParamses.add(segmentParams);
+        if (segment.getEntityClass() != null) {
+          hashGroupMap.put(segment.getEntityClass(), segmentParams);
+          continue;
+        }
+        if (store != null) {
+          final Optional<List<MetricEntity>> recentMetricData = store.getMetricData(segmentParams, nowMinute);
+          if (recentMetricData.isPresent()) {
+            Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
+            for (MetricEntity me : recentMetricData.get()) {
+              aggregate(aggregationMap, segmentParams, me);
+            }
+            resultMap.put(segmentParams, aggregationMap.values());
+            continue;
+          }
+        }
+        Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(segmentParams.getMetricType(), segmentParams.getDimensionHash());
+        hashGroupMap.put(metricEntityClass, segmentParams);
+      }
     }
     for (Class metricEntityClass: hashGroupMap.keySet()) {
       try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
@@ -360,7 +478,7 @@ public class MetricManager {
           conjunction = conjunction.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
           conjunction = conjunction.add(Restrictions.eq("metricName", getMetricStatisticsParams.getMetricName()));
           conjunction = conjunction.add(Restrictions.eq("namespace", getMetricStatisticsParams.getNamespace()));
-          conjunction = conjunction.add(Restrictions.eq("dimensionHash", hash(getMetricStatisticsParams.getDimensionMap())));
+          conjunction = conjunction.add(Restrictions.eq("dimensionHash", getMetricStatisticsParams.getDimensionHash()));
           if (getMetricStatisticsParams.getUnits() != null) {
             conjunction = conjunction.add(Restrictions.eq("units", getMetricStatisticsParams.getUnits()));
           }
@@ -397,18 +515,7 @@ public class MetricManager {
           MetricEntity me = getMetricEntity(results);
           for (GetMetricStatisticsParams getMetricStatisticsParams : hashGroupMap.get(metricEntityClass)) {
             if (metricDataMatches(getMetricStatisticsParams, me)) {
-              Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = multiAggregationMap.get(getMetricStatisticsParams);
-              GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensionHash());
-              MetricStatistics item = new MetricStatistics(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensions());
-              if (!aggregationMap.containsKey(key)) {
-                aggregationMap.put(key, item);
-              } else {
-                MetricStatistics totalSoFar = aggregationMap.get(key);
-                totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
-                totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
-                totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
-                totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
-              }
+              aggregate(multiAggregationMap.get(getMetricStatisticsParams), getMetricStatisticsParams, me);
             }
           }
         }
@@ -419,15 +526,32 @@ public class MetricManager {
     }
     List<Collection<MetricStatistics>> resultList = Lists.newArrayList();
     for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
-      if (resultMap.get(getMetricStatisticsParams) == null) {
-        resultList.add(new ArrayList<MetricStatistics>());
-      } else {
-        resultList.add(resultMap.get(getMetricStatisticsParams));
+      // segments cover consecutive periods so results remain in order
+      Collection<MetricStatistics> results = new ArrayList<MetricStatistics>();
+      for (GetMetricStatisticsParams segmentParams : segmentParamsMap.get(getMetricStatisticsParams)) {
+        if (resultMap.get(segmentParams) != null) {
+          results.addAll(resultMap.get(segmentParams));
+        }
       }
+      resultList.add(results);
     }
     return resultList;
   }
 
+  private static void aggregate(Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap, GetMetricStatisticsParams getMetricStatisticsParams, MetricEntity me) {
+    GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensionHash());
+    MetricStatistics item = new MetricStatistics(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensions());
+    if (!aggregationMap.containsKey(key)) {
+      aggregationMap.put(key, item);
+    } else {
+      MetricStatistics totalSoFar = aggregationMap.get(key);
+      totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
+      totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
+      totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
+      totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+    }
+  }
+
   private static boolean metricDataMatches(GetMetricStatisticsParams getMetricStatisticsParams, MetricEntity metricEntity) {
     if (getMetricStatisticsParams == null || metricEntity == null) return false;
     if (getMetricStatisticsParams.getStartTime() == null || getMetricStatisticsParams.getStartTime().after(metricEntity.getTimestamp())) return false;
@@ -444,8 +568,21 @@ public class MetricManager {
     if (getMetricStatisticsParams == null) throw new IllegalArgumentException("getMetricStatisticsParams can not be null");
     Date now = new Date();
     getMetricStatisticsParams.validate(now);
+    if (MetricRollupManager.getSegments(getMetricStatisticsParams, now).get(0).getEntityClass() != null) {
+      return getManyMetricStatistics(Collections.singletonList(getMetricStatisticsParams)).get(0);
+    }
     Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
     Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
+    final RecentMetricDataStore store = getRecentMetricDataStore(false);
+    if (store != null) {
+      final Optional<List<MetricEntity>> recentMetricData = store.getMetricData(getMetricStatisticsParams, RecentMetricDataStore.toMinute(now));
+      if (recentMetricData.isPresent()) {
+        for (MetricEntity me : recentMetricData.get()) {
+          aggregate(aggregationMap, getMetricStatisticsParams, me);
+        }
+        return Lists.newArrayList(aggregationMap.values());
+      }
+    }
     try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
       Criteria criteria = Entities.createCriteria(metricEntityClass);
       criteria = criteria.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
@@ -470,17 +607,7 @@ public class MetricManager {
       ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
       while (results.next()) {
         MetricEntity me = getMetricEntity(getMetricStatisticsParams.getAccountId(), getMetricStatisticsParams.getMetricName(), getMetricStatisticsParams.getNamespace(), getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash(), results);
-        GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensionHash());
-        MetricStatistics item = new MetricStatistics(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensions());
-        if (!aggregationMap.containsKey(key)) {
-          aggregationMap.put(key, item);
-        } else {
-          MetricStatistics totalSoFar = aggregationMap.get(key);
-          totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
-          totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
-          totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
-          totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
-        }
+        aggregate(aggregationMap, getMetricStatisticsParams, me);
       }
     }
     return Lists.newArrayList(aggregationMap.values());
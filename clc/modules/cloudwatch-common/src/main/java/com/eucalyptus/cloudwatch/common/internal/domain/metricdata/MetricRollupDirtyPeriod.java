@@ -0,0 +1,79 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Index;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+
+import com.eucalyptus.component.annotation.RemotablePersistence;
+import com.eucalyptus.entities.AbstractPersistent;
+
+/**
+ * Tier period with source data committed after it may have been rolled up.
+ *
+ * There may be more than one row for a period.
+ */
+@Entity
+@PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+@RemotablePersistence
+@Table(name = "metric_rollup_dirty_period", indexes = {
+    @Index( name = "metric_rollup_dirty_period_idx", columnList = "tier, period_start" )
+} )
+public class MetricRollupDirtyPeriod extends AbstractPersistent {
+  private static final long serialVersionUID = 1L;
+
+  @Column(name = "tier", nullable = false)
+  @Enumerated(EnumType.STRING)
+  private MetricRollupTier tier;
+
+  @Column(name = "period_start", nullable = false)
+  private Date periodStart;
+
+  public MetricRollupDirtyPeriod() {
+  }
+
+  public MetricRollupDirtyPeriod(final MetricRollupTier tier, final Date periodStart) {
+    this.tier = tier;
+    this.periodStart = periodStart;
+  }
+
+  public MetricRollupTier getTier() {
+    return tier;
+  }
+
+  public void setTier(final MetricRollupTier tier) {
+    this.tier = tier;
+  }
+
+  public Date getPeriodStart() {
+    return periodStart;
+  }
+
+  public void setPeriodStart(final Date periodStart) {
+    this.periodStart = periodStart;
+  }
+}
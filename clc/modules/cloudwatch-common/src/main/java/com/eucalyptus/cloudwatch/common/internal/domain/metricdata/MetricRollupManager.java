@@ -0,0 +1,465 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Maintains and queries the pre-aggregated metric data tiers.
+ *
+ * A tier period is rolled up once it is older than the rollup delay, by
+ * replacing any tier rows for the period with aggregates of its source
+ * tier. Data that arrives after that is written to the tier tables as well
+ * as the per-minute tables, so a tier stays complete for the range recorded
+ * in its MetricRollupState.
+ *
+ * Periods with late data are also marked dirty and rolled up again, this
+ * replaces the late rows and covers data committed while its period was
+ * being rolled up. Rolling up a dirty period marks the covering periods of
+ * dependent tiers dirty.
+ */
+public class MetricRollupManager {
+  private static final Logger LOG = Logger.getLogger(MetricRollupManager.class);
+
+  // periods are rolled up when older than this
+  private static final long ROLLUP_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  // data for periods older than this is written directly to tiers, the
+  // overlap with the rollup delay allows for clock differences between hosts
+  private static final long LATE_DATA_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final long STATE_CACHE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final int MAX_DIRTY_PERIOD_ROWS = 1000;
+
+  private static volatile Map<MetricRollupTier, MetricRollupState> cachedStates = Collections.emptyMap();
+  private static volatile long cachedStatesTimestamp = 0;
+
+  public static class Segment {
+    private final MetricManager.GetMetricStatisticsParams params;
+    private final Class<? extends MetricEntity> entityClass;
+
+    private Segment(final MetricManager.GetMetricStatisticsParams params,
+                    final Class<? extends MetricEntity> entityClass) {
+      this.params = params;
+      this.entityClass = entityClass;
+    }
+
+    public MetricManager.GetMetricStatisticsParams getParams() {
+      return params;
+    }
+
+    /**
+     * The tier entity class, null if per-minute data should be used.
+     */
+    public Class<? extends MetricEntity> getEntityClass() {
+      return entityClass;
+    }
+  }
+
+  /**
+   * Split a (validated) statistics query into segments that can be served
+   * by the coarsest available tier.
+   *
+   * Segments are split on boundaries of the requested periods, so each
+   * result period comes from a single segment.
+   */
+  public static List<Segment> getSegments(final MetricManager.GetMetricStatisticsParams params, final Date now) {
+    return getSegments(params, now, getStates(now));
+  }
+
+  static List<Segment> getSegments(final MetricManager.GetMetricStatisticsParams params,
+                                   final Date now,
+                                   final Map<MetricRollupTier, MetricRollupState> states) {
+    final List<Segment> segments = Lists.newArrayList();
+    final long periodMillis = 1000L * params.getPeriod();
+    final long end = params.getEndTime().getTime();
+    long start = params.getStartTime().getTime();
+    for (final MetricRollupTier tier : Lists.reverse(Lists.newArrayList(MetricRollupTier.values()))) {
+      final MetricRollupState state = states.get(tier);
+      if (state == null ||
+          periodMillis % tier.getPeriodMillis() != 0 ||
+          start % tier.getPeriodMillis() != 0 ||
+          start < state.getRolledUpFrom().getTime()) {
+        continue;
+      }
+      final long tierEnd = start +
+          ((Math.min(end, state.getRolledUpTo().getTime()) - start) / periodMillis) * periodMillis;
+      if (tierEnd <= start) {
+        continue;
+      }
+      segments.add(new Segment(segmentParams(params, start, tierEnd, now), tier.getEntityClass()));
+      start = tierEnd;
+      if (start >= end) {
+        break;
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.add(new Segment(params, null));
+    } else if (start < end) {
+      segments.add(new Segment(segmentParams(params, start, end, now), null));
+    }
+    return segments;
+  }
+
+  private static MetricManager.GetMetricStatisticsParams segmentParams(final MetricManager.GetMetricStatisticsParams params,
+                                                                      final long start,
+                                                                      final long end,
+                                                                      final Date now) {
+    final MetricManager.GetMetricStatisticsParams segmentParams = new MetricManager.GetMetricStatisticsParams(
+        params.getAccountId(), params.getMetricName(), params.getNamespace(), params.getDimensionMap(),
+        params.getMetricType(), params.getUnits(), new Date(start), new Date(end), params.getPeriod());
+    segmentParams.validate(now);
+    return segmentParams;
+  }
+
+  /**
+   * Roll up tier periods that are due.
+   *
+   * @param tier The tier to roll up
+   * @param now The current time
+   * @param initialFrom The time to start from if the tier was not yet rolled up
+   * @param maxPeriods The maximum number of periods to roll up
+   * @return The number of periods rolled up
+   */
+  public static int rollup(final MetricRollupTier tier, final Date now, final Date initialFrom, final int maxPeriods) {
+    final MetricRollupTier sourceTier = tier.getSourceTier();
+    long limit = now.getTime() - ROLLUP_DELAY_MILLIS;
+    Date from = new Date(ceilPeriodStart(tier, initialFrom.getTime()));
+    if (sourceTier != null) {
+      final MetricRollupState sourceState = loadState(sourceTier);
+      if (sourceState == null) {
+        return 0;
+      }
+      limit = Math.min(limit, sourceState.getRolledUpTo().getTime());
+      from = new Date(ceilPeriodStart(tier, sourceState.getRolledUpFrom().getTime()));
+    }
+    long periodStart = getOrCreateState(tier, from).getRolledUpTo().getTime();
+    int periods = 0;
+    while (periods < maxPeriods && periodStart + tier.getPeriodMillis() <= limit) {
+      rollupPeriod(tier, periodStart);
+      periodStart += tier.getPeriodMillis();
+      periods++;
+      updateRolledUpTo(tier, new Date(periodStart));
+    }
+    if (periods < maxPeriods) {
+      periods += rollupDirtyPeriods(tier, new Date(periodStart), maxPeriods - periods);
+    }
+    return periods;
+  }
+
+  private static int rollupDirtyPeriods(final MetricRollupTier tier, final Date rolledUpTo, final int maxPeriods) {
+    final List<MetricRollupDirtyPeriod> dirtyPeriods;
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupDirtyPeriod.class)) {
+      @SuppressWarnings("unchecked")
+      final List<MetricRollupDirtyPeriod> list = (List<MetricRollupDirtyPeriod>)
+          Entities.createCriteria(MetricRollupDirtyPeriod.class)
+              .add(Restrictions.eq("tier", tier))
+              .add(Restrictions.lt("periodStart", rolledUpTo))
+              .addOrder(Order.asc("periodStart"))
+              .setMaxResults(MAX_DIRTY_PERIOD_ROWS)
+              .setReadOnly(true)
+              .list();
+      dirtyPeriods = list;
+    }
+    int periods = 0;
+    for (final Map.Entry<Long, List<String>> entry : groupDirtyPeriods(dirtyPeriods, maxPeriods).entrySet()) {
+      rollupPeriod(tier, entry.getKey());
+      for (final MetricRollupTier dependentTier : MetricRollupTier.values()) {
+        if (dependentTier.getSourceTier() == tier) {
+          markDirty(dependentTier, Collections.singleton(dependentTier.getPeriodStart(entry.getKey())));
+        }
+      }
+      try (final TransactionResource db = Entities.transactionFor(MetricRollupDirtyPeriod.class)) {
+        Entities.deleteAllMatching(MetricRollupDirtyPeriod.class, "WHERE naturalId IN (:ids)",
+            Collections.singletonMap("ids", entry.getValue()));
+        db.commit();
+      }
+      periods++;
+    }
+    return periods;
+  }
+
+  /**
+   * Group dirty period rows by period start.
+   *
+   * @param dirtyPeriods The dirty period rows ordered by period start
+   * @param maxPeriods The maximum number of periods
+   * @return The natural identifiers of the rows for each period start
+   */
+  static SortedMap<Long, List<String>> groupDirtyPeriods(final List<MetricRollupDirtyPeriod> dirtyPeriods,
+                                                         final int maxPeriods) {
+    final SortedMap<Long, List<String>> periods = Maps.newTreeMap();
+    for (final MetricRollupDirtyPeriod dirtyPeriod : dirtyPeriods) {
+      final long periodStart = dirtyPeriod.getPeriodStart().getTime();
+      List<String> ids = periods.get(periodStart);
+      if (ids == null) {
+        if (periods.size() >= maxPeriods) break;
+        ids = Lists.newArrayList();
+        periods.put(periodStart, ids);
+      }
+      ids.add(dirtyPeriod.getNaturalId());
+    }
+    return periods;
+  }
+
+  private static void markDirty(final MetricRollupTier tier, final Collection<Long> periodStarts) {
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupDirtyPeriod.class)) {
+      for (final Long periodStart : periodStarts) {
+        Entities.persist(new MetricRollupDirtyPeriod(tier, new Date(periodStart)));
+      }
+      db.commit();
+    }
+  }
+
+  /**
+   * Delete tier data before the given date.
+   */
+  public static void deleteMetrics(final MetricRollupTier tier, final Date before) {
+    try (final TransactionResource db = Entities.transactionFor(tier.getEntityClass())) {
+      Entities.deleteAllMatching(tier.getEntityClass(), "WHERE timestamp < :before",
+          Collections.singletonMap("before", before));
+      db.commit();
+    }
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupDirtyPeriod.class)) {
+      Entities.deleteAllMatching(MetricRollupDirtyPeriod.class, "WHERE tier = :tier AND periodStart < :before",
+          ImmutableMap.of("tier", tier, "before", before));
+      db.commit();
+    }
+  }
+
+  public static void deleteAllMetrics() {
+    for (final MetricRollupTier tier : MetricRollupTier.values()) {
+      try (final TransactionResource db = Entities.transactionFor(tier.getEntityClass())) {
+        Entities.deleteAll(tier.getEntityClass());
+        db.commit();
+      }
+    }
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupDirtyPeriod.class)) {
+      Entities.deleteAll(MetricRollupDirtyPeriod.class);
+      db.commit();
+    }
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupState.class)) {
+      Entities.deleteAll(MetricRollupState.class);
+      db.commit();
+    }
+    cachedStatesTimestamp = 0;
+  }
+
+  /**
+   * Add committed per-minute data for periods that may already be rolled up
+   * to the tier tables and mark the periods dirty.
+   */
+  public static void addLateMetricData(final Collection<MetricEntity> committedEntities, final Date now) {
+    final Map<MetricRollupTier, MetricRollupState> states = getStates(now);
+    for (final MetricRollupTier tier : MetricRollupTier.values()) {
+      final MetricRollupState state = states.get(tier);
+      if (state == null) continue;
+      final Set<Long> latePeriodStarts = Sets.newTreeSet();
+      final List<MetricEntity> lateEntities = Lists.newArrayList();
+      for (final MetricEntity me : committedEntities) {
+        final long periodStart = tier.getPeriodStart(me.getTimestamp().getTime());
+        if (isLate(tier, state, periodStart, now)) {
+          latePeriodStarts.add(periodStart);
+          final MetricEntity tierEntity = tier.newMetricEntity();
+          tierEntity.setAccountId(me.getAccountId());
+          tierEntity.setNamespace(me.getNamespace());
+          tierEntity.setMetricName(me.getMetricName());
+          tierEntity.setMetricType(me.getMetricType());
+          tierEntity.setDimensionHash(me.getDimensionHash());
+          tierEntity.setUnits(me.getUnits());
+          tierEntity.setTimestamp(new Date(periodStart));
+          tierEntity.setSampleMax(me.getSampleMax());
+          tierEntity.setSampleMin(me.getSampleMin());
+          tierEntity.setSampleSum(me.getSampleSum());
+          tierEntity.setSampleSize(me.getSampleSize());
+          lateEntities.add(tierEntity);
+        }
+      }
+      if (tier.getSourceTier() == null && !latePeriodStarts.isEmpty()) {
+        // dependent tiers are marked when these periods are rolled up
+        markDirty(tier, latePeriodStarts);
+      }
+      if (!lateEntities.isEmpty()) {
+        persist(tier, lateEntities);
+      }
+    }
+  }
+
+  /**
+   * Is data for the given period late, i.e. the period may be rolled up.
+   */
+  static boolean isLate(final MetricRollupTier tier,
+                        final MetricRollupState state,
+                        final long periodStart,
+                        final Date now) {
+    return periodStart >= state.getRolledUpFrom().getTime() &&
+        periodStart + tier.getPeriodMillis() <= now.getTime() - LATE_DATA_MILLIS;
+  }
+
+  private static void rollupPeriod(final MetricRollupTier tier, final long periodStart) {
+    final Date start = new Date(periodStart);
+    final Date end = new Date(periodStart + tier.getPeriodMillis());
+    final MetricRollupTier sourceTier = tier.getSourceTier();
+    final Collection<Class> sourceClasses = sourceTier == null ?
+        MetricEntityFactory.getAllClassesForEntitiesGet() :
+        Collections.<Class>singleton(sourceTier.getEntityClass());
+    final List<MetricEntity> tierEntities = Lists.newArrayList();
+    for (final Class sourceClass : sourceClasses) {
+      try (final TransactionResource db = Entities.transactionFor(sourceClass)) {
+        Criteria criteria = Entities.createCriteria(sourceClass);
+        criteria = criteria.add(Restrictions.ge("timestamp", start));
+        criteria = criteria.add(Restrictions.lt("timestamp", end));
+        ProjectionList projectionList = Projections.projectionList();
+        projectionList.add(Projections.max("sampleMax"));
+        projectionList.add(Projections.min("sampleMin"));
+        projectionList.add(Projections.sum("sampleSize"));
+        projectionList.add(Projections.sum("sampleSum"));
+        projectionList.add(Projections.groupProperty("units"));
+        projectionList.add(Projections.groupProperty("accountId"));
+        projectionList.add(Projections.groupProperty("metricName"));
+        projectionList.add(Projections.groupProperty("metricType"));
+        projectionList.add(Projections.groupProperty("namespace"));
+        projectionList.add(Projections.groupProperty("dimensionHash"));
+        criteria.setProjection(projectionList);
+        ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
+        while (results.next()) {
+          final MetricEntity me = tier.newMetricEntity();
+          me.setSampleMax((Double) results.get(0));
+          me.setSampleMin((Double) results.get(1));
+          me.setSampleSize((Double) results.get(2));
+          me.setSampleSum((Double) results.get(3));
+          me.setUnits((Units) results.get(4));
+          me.setAccountId((String) results.get(5));
+          me.setMetricName((String) results.get(6));
+          me.setMetricType((MetricType) results.get(7));
+          me.setNamespace((String) results.get(8));
+          me.setDimensionHash((String) results.get(9));
+          me.setTimestamp(start);
+          tierEntities.add(me);
+        }
+      }
+    }
+    try (final TransactionResource db = Entities.transactionFor(tier.getEntityClass())) {
+      Entities.deleteAllMatching(tier.getEntityClass(), "WHERE timestamp >= :start AND timestamp < :end",
+          ImmutableMap.of("start", start, "end", end));
+      int numOperations = 0;
+      for (final MetricEntity me : tierEntities) {
+        numOperations++;
+        if (numOperations % MetricManager.METRIC_DATA_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH == 0) {
+          Entities.flushSession(tier.getEntityClass());
+          Entities.clearSession(tier.getEntityClass());
+        }
+        Entities.persist(me);
+      }
+      db.commit();
+    }
+    LOG.debug("Rolled up " + tierEntities.size() + " " + tier + " metrics for " + start);
+  }
+
+  private static void persist(final MetricRollupTier tier, final List<MetricEntity> entities) {
+    try (final TransactionResource db = Entities.transactionFor(tier.getEntityClass())) {
+      int numOperations = 0;
+      for (final MetricEntity me : entities) {
+        numOperations++;
+        if (numOperations % MetricManager.METRIC_DATA_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH == 0) {
+          Entities.flushSession(tier.getEntityClass());
+          Entities.clearSession(tier.getEntityClass());
+        }
+        Entities.persist(me);
+      }
+      db.commit();
+    }
+  }
+
+  private static long ceilPeriodStart(final MetricRollupTier tier, final long timestamp) {
+    final long periodStart = tier.getPeriodStart(timestamp);
+    return periodStart == timestamp ? periodStart : periodStart + tier.getPeriodMillis();
+  }
+
+  private static Map<MetricRollupTier, MetricRollupState> getStates(final Date now) {
+    if (now.getTime() - cachedStatesTimestamp > STATE_CACHE_MILLIS) {
+      final Map<MetricRollupTier, MetricRollupState> states = Maps.newEnumMap(MetricRollupTier.class);
+      try (final TransactionResource db = Entities.transactionFor(MetricRollupState.class)) {
+        for (final Object state : Entities.createCriteria(MetricRollupState.class).list()) {
+          states.put(((MetricRollupState) state).getTier(), (MetricRollupState) state);
+        }
+      }
+      cachedStates = new EnumMap<>(states);
+      cachedStatesTimestamp = now.getTime();
+    }
+    return cachedStates;
+  }
+
+  private static MetricRollupState loadState(final MetricRollupTier tier) {
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupState.class)) {
+      return (MetricRollupState) Entities.createCriteria(MetricRollupState.class)
+          .add(Restrictions.eq("tier", tier))
+          .uniqueResult();
+    }
+  }
+
+  private static MetricRollupState getOrCreateState(final MetricRollupTier tier, final Date from) {
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupState.class)) {
+      MetricRollupState state = (MetricRollupState) Entities.createCriteria(MetricRollupState.class)
+          .add(Restrictions.eq("tier", tier))
+          .uniqueResult();
+      if (state == null) {
+        LOG.info("Starting " + tier + " metric rollup from " + from);
+        state = Entities.persist(new MetricRollupState(tier, from, from));
+      }
+      db.commit();
+      return state;
+    }
+  }
+
+  private static void updateRolledUpTo(final MetricRollupTier tier, final Date rolledUpTo) {
+    try (final TransactionResource db = Entities.transactionFor(MetricRollupState.class)) {
+      final MetricRollupState state = (MetricRollupState) Entities.createCriteria(MetricRollupState.class)
+          .add(Restrictions.eq("tier", tier))
+          .uniqueResult();
+      state.setRolledUpTo(rolledUpTo);
+      db.commit();
+    }
+  }
+}
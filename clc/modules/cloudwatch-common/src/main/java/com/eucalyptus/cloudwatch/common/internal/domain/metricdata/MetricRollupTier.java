@@ -0,0 +1,109 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+
+import com.eucalyptus.component.annotation.RemotablePersistence;
+
+/**
+ * Pre-aggregated metric data tiers.
+ *
+ * Each tier holds max / min / sum / sample count per series, units and
+ * tier period, aggregated from its source tier (per-minute data for the
+ * finest tier). Tier tables may hold more than one row for a period.
+ */
+public enum MetricRollupTier {
+  FiveMinutes(300, FiveMinuteMetricEntity.class) {
+    @Override
+    public MetricEntity newMetricEntity() {
+      return new FiveMinuteMetricEntity();
+    }
+  },
+  OneHour(3600, OneHourMetricEntity.class) {
+    @Override
+    public MetricEntity newMetricEntity() {
+      return new OneHourMetricEntity();
+    }
+  },
+  ;
+
+  private final int periodSeconds;
+  private final Class<? extends MetricEntity> entityClass;
+
+  MetricRollupTier(final int periodSeconds, final Class<? extends MetricEntity> entityClass) {
+    this.periodSeconds = periodSeconds;
+    this.entityClass = entityClass;
+  }
+
+  public abstract MetricEntity newMetricEntity();
+
+  public int getPeriodSeconds() {
+    return periodSeconds;
+  }
+
+  public long getPeriodMillis() {
+    return 1000L * periodSeconds;
+  }
+
+  public Class<? extends MetricEntity> getEntityClass() {
+    return entityClass;
+  }
+
+  /**
+   * The tier this tier is aggregated from, null for per-minute data.
+   */
+  public MetricRollupTier getSourceTier() {
+    return ordinal() == 0 ? null : values()[ordinal() - 1];
+  }
+
+  public long getPeriodStart(final long timestamp) {
+    return timestamp - timestamp % getPeriodMillis();
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "metric_data_rollup_5m", indexes = {
+      @Index( name = "metric_data_rollup_5m_timestamp_idx", columnList = "timestamp" ),
+      @Index( name = "metric_data_rollup_5m_series_idx", columnList = "dimension_hash, timestamp" )
+  } )
+  public static class FiveMinuteMetricEntity extends MetricEntity {
+    public FiveMinuteMetricEntity() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "metric_data_rollup_1h", indexes = {
+      @Index( name = "metric_data_rollup_1h_timestamp_idx", columnList = "timestamp" ),
+      @Index( name = "metric_data_rollup_1h_series_idx", columnList = "dimension_hash, timestamp" )
+  } )
+  public static class OneHourMetricEntity extends MetricEntity {
+    public OneHourMetricEntity() {
+      super();
+    }
+  }
+}
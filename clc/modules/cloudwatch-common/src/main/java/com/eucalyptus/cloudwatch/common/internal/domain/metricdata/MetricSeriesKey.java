@@ -0,0 +1,104 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Arrays;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+
+/**
+ * Identifies a metric time series independent of units and timestamp.
+ */
+public class MetricSeriesKey {
+  private final String accountId;
+  private final String namespace;
+  private final String metricName;
+  private final MetricType metricType;
+  private final String dimensionHash;
+  private final int hashCode;
+
+  public MetricSeriesKey(final String accountId, final String namespace, final String metricName,
+                         final MetricType metricType, final String dimensionHash) {
+    this.accountId = accountId;
+    this.namespace = namespace;
+    this.metricName = metricName;
+    this.metricType = metricType;
+    this.dimensionHash = dimensionHash;
+    this.hashCode = Arrays.hashCode(new Object[]{accountId, namespace, metricName, metricType, dimensionHash});
+  }
+
+  public static MetricSeriesKey of(final MetricEntity metricEntity) {
+    return new MetricSeriesKey(metricEntity.getAccountId(), metricEntity.getNamespace(), metricEntity.getMetricName(),
+        metricEntity.getMetricType(), metricEntity.getDimensionHash());
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public String getNamespace() {
+    return namespace;
+  }
+
+  public String getMetricName() {
+    return metricName;
+  }
+
+  public MetricType getMetricType() {
+    return metricType;
+  }
+
+  public String getDimensionHash() {
+    return dimensionHash;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final MetricSeriesKey that = (MetricSeriesKey) o;
+    return hashCode == that.hashCode &&
+        metricType == that.metricType &&
+        equals(accountId, that.accountId) &&
+        equals(namespace, that.namespace) &&
+        equals(metricName, that.metricName) &&
+        equals(dimensionHash, that.dimensionHash);
+  }
+
+  private static boolean equals(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricSeriesKey{" +
+        "accountId='" + accountId + '\'' +
+        ", namespace='" + namespace + '\'' +
+        ", metricName='" + metricName + '\'' +
+        ", metricType=" + metricType +
+        ", dimensionHash='" + dimensionHash + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,227 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory hot tier for recent per-minute metric data.
+ *
+ * Each series (account, namespace, metric name, metric type, dimension hash)
+ * holds a ring of per-minute max / min / sum / sample count aggregates in
+ * primitive arrays, one ring per unit seen for the series.
+ *
+ * Data is recorded only after it has been committed to the database, so the
+ * store never holds values that are not persisted. A query can be answered
+ * from memory when its whole window is within the retained range and after
+ * the minute from which the store has seen every write.
+ */
+public class RecentMetricDataStore {
+
+  private static final long MINUTE_MILLIS = 60000L;
+
+  private final int capacityMinutes;
+  private final ConcurrentMap<MetricSeriesKey, Series> seriesMap = Maps.newConcurrentMap();
+  private volatile long coverageStartMinute = Long.MAX_VALUE;
+
+  public RecentMetricDataStore(final int capacityMinutes) {
+    if (capacityMinutes <= 0) throw new IllegalArgumentException("capacityMinutes must be greater than 0");
+    this.capacityMinutes = capacityMinutes;
+  }
+
+  public int getCapacityMinutes() {
+    return capacityMinutes;
+  }
+
+  public long getCoverageStartMinute() {
+    return coverageStartMinute;
+  }
+
+  /**
+   * Set the first minute for which all committed data has been recorded.
+   */
+  public void setCoverageStartMinute(final long coverageStartMinute) {
+    this.coverageStartMinute = coverageStartMinute;
+  }
+
+  public int size() {
+    return seriesMap.size();
+  }
+
+  public static long toMinute(final Date date) {
+    return date.getTime() / MINUTE_MILLIS;
+  }
+
+  /**
+   * Record committed (hashed) metric data.
+   */
+  public void record(final MetricEntity metricEntity, final long nowMinute) {
+    final long minute = toMinute(metricEntity.getTimestamp());
+    if (minute <= nowMinute - capacityMinutes) {
+      return; // too old to be retained
+    }
+    final MetricSeriesKey key = MetricSeriesKey.of(metricEntity);
+    Series series = seriesMap.get(key);
+    if (series == null) {
+      final Series newSeries = new Series();
+      series = seriesMap.putIfAbsent(key, newSeries);
+      if (series == null) series = newSeries;
+    }
+    series.add(minute, nowMinute, metricEntity.getUnits(), metricEntity.getSampleMax(), metricEntity.getSampleMin(),
+        metricEntity.getSampleSum(), metricEntity.getSampleSize(), capacityMinutes);
+  }
+
+  /**
+   * Get per-minute data for the given (validated) parameters if the store
+   * can answer the query.
+   *
+   * The returned entities match the rows of the database projection query,
+   * one per (units, minute) ordered by timestamp.
+   */
+  public Optional<List<MetricEntity>> getMetricData(final MetricManager.GetMetricStatisticsParams params,
+                                                   final long nowMinute) {
+    final long startMinute = toMinute(params.getStartTime());
+    final long endMinute = toMinute(params.getEndTime()); // exclusive
+    if (startMinute < coverageStartMinute || startMinute <= nowMinute - capacityMinutes || endMinute > nowMinute + 1) {
+      return Optional.absent();
+    }
+    final MetricSeriesKey key = new MetricSeriesKey(params.getAccountId(), params.getNamespace(), params.getMetricName(),
+        params.getMetricType(), params.getDimensionHash());
+    final Series series = seriesMap.get(key);
+    if (series == null) {
+      return Optional.<List<MetricEntity>>of(Lists.<MetricEntity>newArrayList());
+    }
+    return series.get(key, startMinute, endMinute, params.getUnits());
+  }
+
+  /**
+   * Remove series with no data in the retained range.
+   */
+  public void purge(final long nowMinute) {
+    for (final Iterator<Series> iterator = seriesMap.values().iterator(); iterator.hasNext(); ) {
+      final Series series = iterator.next();
+      if (series.isExpired(nowMinute - capacityMinutes)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static final class Series {
+    private final MinuteRing[] rings = new MinuteRing[Units.values().length];
+    // data for minutes after the current minute displaces retained data, so
+    // such minutes are only covered once they are recorded and current
+    private long coveredFromMinute = Long.MIN_VALUE;
+    private long lastMinute = Long.MIN_VALUE;
+
+    private synchronized void add(final long minute, final long nowMinute, final Units units,
+                                  final double sampleMax, final double sampleMin, final double sampleSum,
+                                  final double sampleSize, final int capacity) {
+      if (minute > nowMinute) {
+        coveredFromMinute = Math.max(coveredFromMinute, minute + 1);
+        return;
+      }
+      MinuteRing ring = rings[units.ordinal()];
+      if (ring == null) {
+        ring = rings[units.ordinal()] = new MinuteRing(capacity);
+      }
+      ring.add(minute, sampleMax, sampleMin, sampleSum, sampleSize);
+      lastMinute = Math.max(lastMinute, minute);
+    }
+
+    private synchronized boolean isExpired(final long oldestRetainedMinute) {
+      return lastMinute <= oldestRetainedMinute && coveredFromMinute <= oldestRetainedMinute;
+    }
+
+    private synchronized Optional<List<MetricEntity>> get(final MetricSeriesKey key, final long startMinute,
+                                                         final long endMinute, final Units units) {
+      if (startMinute < coveredFromMinute) {
+        return Optional.absent();
+      }
+      final List<MetricEntity> results = Lists.newArrayList();
+      for (long minute = startMinute; minute < endMinute; minute++) {
+        for (final Units ringUnits : Units.values()) {
+          final MinuteRing ring = rings[ringUnits.ordinal()];
+          if (ring == null || (units != null && units != ringUnits)) continue;
+          final int slot = ring.slot(minute);
+          if (ring.minutes[slot] != minute) continue;
+          final MetricEntity me = MetricEntityFactory.getNewMetricEntity(key.getMetricType(), key.getDimensionHash());
+          me.setAccountId(key.getAccountId());
+          me.setNamespace(key.getNamespace());
+          me.setMetricName(key.getMetricName());
+          me.setMetricType(key.getMetricType());
+          me.setDimensionHash(key.getDimensionHash());
+          me.setUnits(ringUnits);
+          me.setTimestamp(new Date(minute * MINUTE_MILLIS));
+          me.setSampleMax(ring.sampleMax[slot]);
+          me.setSampleMin(ring.sampleMin[slot]);
+          me.setSampleSum(ring.sampleSum[slot]);
+          me.setSampleSize(ring.sampleSize[slot]);
+          results.add(me);
+        }
+      }
+      return Optional.of(results);
+    }
+  }
+
+  private static final class MinuteRing {
+    private final long[] minutes;
+    private final double[] sampleMax;
+    private final double[] sampleMin;
+    private final double[] sampleSum;
+    private final double[] sampleSize;
+
+    private MinuteRing(final int capacity) {
+      minutes = new long[capacity];
+      Arrays.fill(minutes, Long.MIN_VALUE);
+      sampleMax = new double[capacity];
+      sampleMin = new double[capacity];
+      sampleSum = new double[capacity];
+      sampleSize = new double[capacity];
+    }
+
+    private int slot(final long minute) {
+      return (int) (minute % minutes.length);
+    }
+
+    private void add(final long minute, final double max, final double min, final double sum, final double size) {
+      final int slot = slot(minute);
+      if (minutes[slot] == minute) {
+        sampleMax[slot] = Math.max(sampleMax[slot], max);
+        sampleMin[slot] = Math.min(sampleMin[slot], min);
+        sampleSum[slot] += sum;
+        sampleSize[slot] += size;
+      } else if (minutes[slot] < minute) {
+        minutes[slot] = minute;
+        sampleMax[slot] = max;
+        sampleMin[slot] = min;
+        sampleSum[slot] = sum;
+        sampleSize[slot] = size;
+      }
+    }
+  }
+}
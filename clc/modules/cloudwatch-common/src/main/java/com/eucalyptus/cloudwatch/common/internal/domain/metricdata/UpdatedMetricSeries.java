@@ -0,0 +1,73 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+
+/**
+ * Tracks metric series that had data committed since they were last drained.
+ *
+ * Tracking is incomplete until the first drain and after any invalidation,
+ * in which case callers must assume that any series may have changed.
+ */
+public class UpdatedMetricSeries {
+
+  private static final UpdatedMetricSeries INSTANCE = new UpdatedMetricSeries();
+
+  private Set<MetricSeriesKey> updated = Sets.newHashSet();
+  private boolean complete = false;
+
+  public static UpdatedMetricSeries getInstance() {
+    return INSTANCE;
+  }
+
+  public synchronized void mark(final Collection<? extends MetricEntity> committedEntities) {
+    for (final MetricEntity metricEntity : committedEntities) {
+      updated.add(MetricSeriesKey.of(metricEntity));
+    }
+  }
+
+  /**
+   * Mark tracking as incomplete, e.g. when updates may have been missed.
+   */
+  public synchronized void invalidate() {
+    complete = false;
+    updated.clear();
+  }
+
+  /**
+   * Get and reset the updated series.
+   *
+   * @return The series updated since the last drain, absent if not known
+   */
+  public synchronized Optional<Set<MetricSeriesKey>> drain() {
+    final Set<MetricSeriesKey> drained = updated;
+    final boolean drainedComplete = complete;
+    updated = Sets.newHashSet();
+    complete = true;
+    return drainedComplete ?
+        Optional.of(drained) :
+        Optional.<Set<MetricSeriesKey>>absent();
+  }
+}
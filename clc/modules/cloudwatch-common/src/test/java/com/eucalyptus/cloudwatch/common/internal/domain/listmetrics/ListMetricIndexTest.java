@@ -0,0 +1,88 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.listmetrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.InvalidTokenException;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.google.common.collect.ImmutableMap;
+
+public class ListMetricIndexTest {
+
+  private static final String ACCOUNT = "000000000001";
+
+  private final ListMetricIndex index = ListMetricIndex.getInstance();
+
+  @Before
+  public void setUp() {
+    index.invalidate();
+    for (int i = 0; i < 5; i++) {
+      final Map<String, String> dimensions = ImmutableMap.of("InstanceId", "i-0000000" + i, "ImageId", "emi-00000001");
+      index.update(ACCOUNT, "CPUUtilization", MetricType.System, "AWS/EC2", dimensions);
+      index.update(ACCOUNT, "NetworkIn", MetricType.System, "AWS/EC2", dimensions);
+    }
+    index.update(ACCOUNT, "Custom", MetricType.Custom, "Custom/Namespace", Collections.<String, String>emptyMap());
+    index.update("000000000002", "CPUUtilization", MetricType.System, "AWS/EC2",
+        Collections.singletonMap("InstanceId", "i-00000001"));
+  }
+
+  @Test
+  public void testFilters() throws InvalidTokenException {
+    assertEquals("All for account", 11, list(null, null, null).size());
+    assertEquals("Namespace", 10, list(null, "AWS/EC2", null).size());
+    assertEquals("Metric name", 5, list("NetworkIn", "AWS/EC2", null).size());
+    assertEquals("Dimension", 2, list(null, null, Collections.singletonMap("InstanceId", "i-00000001")).size());
+    assertEquals("Dimensions", 1, list("CPUUtilization", null,
+        ImmutableMap.of("InstanceId", "i-00000001", "ImageId", "emi-00000001")).size());
+    assertEquals("Dimension name only", 10, list(null, null, Collections.<String, String>singletonMap("ImageId", null)).size());
+    assertEquals("No match", 0, list(null, null, Collections.singletonMap("InstanceId", "i-00000009")).size());
+  }
+
+  @Test
+  public void testPaging() throws InvalidTokenException {
+    final List<ListMetric> all = index.listMetrics(ACCOUNT, null, null, null, null, null, null, null);
+    final List<ListMetric> first = index.listMetrics(ACCOUNT, null, null, null, null, null, 4, null);
+    final List<ListMetric> second = index.listMetrics(ACCOUNT, null, null, null, null, null, 4,
+        first.get(first.size() - 1).getNaturalId());
+    assertEquals("First page size", 4, first.size());
+    assertEquals("Second page size", 4, second.size());
+    assertEquals("First page", all.subList(0, 4).toString(), first.toString());
+    assertEquals("Second page start", all.get(4).getNaturalId(), second.get(0).getNaturalId());
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testInvalidToken() throws InvalidTokenException {
+    index.listMetrics(ACCOUNT, null, null, null, null, null, 4, "invalid");
+  }
+
+  private List<ListMetric> list(final String metricName,
+                                final String namespace,
+                                final Map<String, String> dimensionMap) throws InvalidTokenException {
+    return index.listMetrics(ACCOUNT, metricName, namespace, dimensionMap, null, null, null, null);
+  }
+}
@@ -0,0 +1,96 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.hashing.HashUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+public class DimensionSetTest {
+
+  @Test
+  public void testHashCompatibility() {
+    final Map<String,String> dimensions = Maps.newHashMap();
+    dimensions.put("InstanceId", "i-00000001");
+    dimensions.put("AutoScalingGroupName", "group-1");
+    dimensions.put("ImageId", "emi-00000001");
+    assertEquals("Hash", textHash(dimensions), DimensionSet.of(dimensions).getHash());
+    assertEquals("Empty hash", textHash(Collections.<String,String>emptyMap()), DimensionSet.of(null).getHash());
+    assertEquals("Null value hash",
+        textHash(Collections.<String,String>singletonMap("InstanceId", null)),
+        DimensionSet.of(Collections.<String,String>singletonMap("InstanceId", null)).getHash());
+  }
+
+  @Test
+  public void testInterned() {
+    final DimensionSet dimensionSet = DimensionSet.of(ImmutableMap.of("InstanceId", "i-00000001", "ImageId", "emi-00000001"));
+    assertSame("Interned", dimensionSet,
+        DimensionSet.of(ImmutableMap.of("ImageId", "emi-00000001", "InstanceId", "i-00000001")));
+  }
+
+  @Test
+  public void testEntityClass() {
+    final DimensionSet dimensionSet = DimensionSet.of(ImmutableMap.of("InstanceId", "i-00000001"));
+    for (final MetricType metricType : MetricType.values()) {
+      assertEquals("Entity class " + metricType,
+          MetricEntityFactory.getClassForEntitiesGet(metricType, dimensionSet.getHash()),
+          dimensionSet.getEntityClass(metricType));
+    }
+  }
+
+  @Ignore("Manual development test")
+  @Test
+  public void testHashingPerformance() {
+    final int iterations = 1_000_000;
+    final Map<String,String> dimensions = ImmutableMap.of("InstanceId", "i-00000001", "ImageId", "emi-00000001");
+    for (int run = 0; run < 3; run++) {
+      long before = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        textHash(dimensions);
+      }
+      final long textNanos = System.nanoTime() - before;
+      before = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        DimensionSet.of(dimensions).getHash();
+      }
+      final long cachedNanos = System.nanoTime() - before;
+      System.out.println("Text hash " + (textNanos / iterations) + "ns/op, cached " + (cachedNanos / iterations) + "ns/op");
+    }
+  }
+
+  private static String textHash(final Map<String,String> dimensions) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<String,String> entry : new TreeMap<>(dimensions).entrySet()) {
+      sb.append(entry.getKey() + "|" + entry.getValue() + "|");
+    }
+    return HashUtils.hash(sb);
+  }
+}
@@ -0,0 +1,155 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class MetricRollupManagerTest {
+
+  private static final long MINUTE = 60000L;
+  private static final long HOUR = 60 * MINUTE;
+  private static final long START = 1000L * HOUR;
+
+  private static final Map<MetricRollupTier, MetricRollupState> STATES = ImmutableMap.of(
+      MetricRollupTier.FiveMinutes, state(MetricRollupTier.FiveMinutes, START, START + 10 * HOUR),
+      MetricRollupTier.OneHour, state(MetricRollupTier.OneHour, START, START + 6 * HOUR)
+  );
+
+  @Test
+  public void testSegmentsFromTiers() {
+    final List<MetricRollupManager.Segment> segments =
+        MetricRollupManager.getSegments(params(START, START + 12 * HOUR, 3600), now(), STATES);
+    assertEquals("Segments", 3, segments.size());
+    assertSegment(segments.get(0), MetricRollupTier.OneHour.getEntityClass(), START, START + 6 * HOUR);
+    assertSegment(segments.get(1), MetricRollupTier.FiveMinutes.getEntityClass(), START + 6 * HOUR, START + 10 * HOUR);
+    assertSegment(segments.get(2), null, START + 10 * HOUR, START + 12 * HOUR);
+  }
+
+  @Test
+  public void testSegmentsWithinTiers() {
+    final List<MetricRollupManager.Segment> segments =
+        MetricRollupManager.getSegments(params(START, START + 8 * HOUR, 3600), now(), STATES);
+    assertEquals("Segments", 2, segments.size());
+    assertSegment(segments.get(0), MetricRollupTier.OneHour.getEntityClass(), START, START + 6 * HOUR);
+    assertSegment(segments.get(1), MetricRollupTier.FiveMinutes.getEntityClass(), START + 6 * HOUR, START + 8 * HOUR);
+  }
+
+  @Test
+  public void testSegmentsSplitOnRequestedPeriods() {
+    final List<MetricRollupManager.Segment> segments =
+        MetricRollupManager.getSegments(params(START, START + 10 * HOUR + 7 * MINUTE, 300), now(), STATES);
+    assertEquals("Segments", 2, segments.size());
+    assertSegment(segments.get(0), MetricRollupTier.FiveMinutes.getEntityClass(), START, START + 10 * HOUR);
+    assertSegment(segments.get(1), null, START + 10 * HOUR, START + 10 * HOUR + 7 * MINUTE);
+  }
+
+  @Test
+  public void testSegmentsPerMinute() {
+    final MetricManager.GetMetricStatisticsParams minuteParams = params(START, START + 8 * HOUR, 60);
+    final List<MetricRollupManager.Segment> minuteSegments = MetricRollupManager.getSegments(minuteParams, now(), STATES);
+    assertEquals("Segments", 1, minuteSegments.size());
+    assertSame("Params", minuteParams, minuteSegments.get(0).getParams());
+    assertNull("Entity class", minuteSegments.get(0).getEntityClass());
+
+    final List<MetricRollupManager.Segment> earlySegments =
+        MetricRollupManager.getSegments(params(START - HOUR, START + 8 * HOUR, 3600), now(), STATES);
+    assertEquals("Segments", 1, earlySegments.size());
+    assertNull("Entity class", earlySegments.get(0).getEntityClass());
+
+    final List<MetricRollupManager.Segment> noStateSegments = MetricRollupManager.getSegments(
+        params(START, START + 8 * HOUR, 3600), now(), Collections.<MetricRollupTier, MetricRollupState>emptyMap());
+    assertEquals("Segments", 1, noStateSegments.size());
+    assertNull("Entity class", noStateSegments.get(0).getEntityClass());
+  }
+
+  @Test
+  public void testLateData() {
+    final MetricRollupState state = STATES.get(MetricRollupTier.FiveMinutes);
+    final Date now = new Date(START + 2 * HOUR);
+    final long fiveMinutes = MetricRollupTier.FiveMinutes.getPeriodMillis();
+    assertFalse("Before rolled up from",
+        MetricRollupManager.isLate(MetricRollupTier.FiveMinutes, state, START - fiveMinutes, now));
+    assertTrue("Rolled up period",
+        MetricRollupManager.isLate(MetricRollupTier.FiveMinutes, state, START + HOUR, now));
+    assertTrue("Period ended at late data limit",
+        MetricRollupManager.isLate(MetricRollupTier.FiveMinutes, state, START + 2 * HOUR - 10 * MINUTE, now));
+    assertFalse("Period ended after late data limit",
+        MetricRollupManager.isLate(MetricRollupTier.FiveMinutes, state, START + 2 * HOUR - 5 * MINUTE, now));
+  }
+
+  @Test
+  public void testGroupDirtyPeriods() {
+    final MetricRollupDirtyPeriod first1 = dirtyPeriod(START);
+    final MetricRollupDirtyPeriod first2 = dirtyPeriod(START);
+    final MetricRollupDirtyPeriod second = dirtyPeriod(START + 5 * MINUTE);
+    final MetricRollupDirtyPeriod third = dirtyPeriod(START + 10 * MINUTE);
+    final SortedMap<Long, List<String>> periods =
+        MetricRollupManager.groupDirtyPeriods(ImmutableList.of(first1, first2, second, third), 2);
+    assertEquals("Periods", ImmutableList.of(START, START + 5 * MINUTE), ImmutableList.copyOf(periods.keySet()));
+    assertEquals("First period rows", ImmutableList.of(first1.getNaturalId(), first2.getNaturalId()), periods.get(START));
+    assertEquals("Second period rows", ImmutableList.of(second.getNaturalId()), periods.get(START + 5 * MINUTE));
+  }
+
+  private static void assertSegment(final MetricRollupManager.Segment segment,
+                                    final Class<? extends MetricEntity> entityClass,
+                                    final long start,
+                                    final long end) {
+    assertEquals("Entity class", entityClass, segment.getEntityClass());
+    assertEquals("Start", new Date(start), segment.getParams().getStartTime());
+    assertEquals("End", new Date(end), segment.getParams().getEndTime());
+  }
+
+  private static Date now() {
+    return new Date(START + 24 * HOUR);
+  }
+
+  private static MetricRollupState state(final MetricRollupTier tier, final long from, final long to) {
+    return new MetricRollupState(tier, new Date(from), new Date(to));
+  }
+
+  private static MetricRollupDirtyPeriod dirtyPeriod(final long periodStart) {
+    final MetricRollupDirtyPeriod dirtyPeriod =
+        new MetricRollupDirtyPeriod(MetricRollupTier.FiveMinutes, new Date(periodStart));
+    dirtyPeriod.updateTimeStamps(); // assigns natural identifier
+    return dirtyPeriod;
+  }
+
+  private static MetricManager.GetMetricStatisticsParams params(final long start, final long end, final int period) {
+    return new MetricManager.GetMetricStatisticsParams("000000000000", "CPUUtilization", "AWS/EC2",
+        Collections.singletonMap("InstanceId", "i-00000001"), MetricType.System, null,
+        new Date(start), new Date(end), period);
+  }
+}
@@ -0,0 +1,134 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.google.common.base.Optional;
+
+public class RecentMetricDataStoreTest {
+
+  private static final long MINUTE = 60000L;
+  private static final Map<String,String> DIMENSIONS = Collections.singletonMap("InstanceId", "i-00000001");
+
+  @Test
+  public void testAggregatesPerMinute() {
+    final long nowMinute = 1000000L;
+    final RecentMetricDataStore store = new RecentMetricDataStore(10);
+    store.setCoverageStartMinute(nowMinute - 9);
+    store.record(entity(nowMinute - 2, Units.Percent, 1.0), nowMinute);
+    store.record(entity(nowMinute - 2, Units.Percent, 3.0), nowMinute);
+    store.record(entity(nowMinute - 1, Units.Percent, 5.0), nowMinute);
+
+    final Optional<List<MetricEntity>> data = store.getMetricData(params(nowMinute - 5, nowMinute, null), nowMinute);
+    assertTrue("Covered", data.isPresent());
+    assertEquals("Data points", 2, data.get().size());
+    final MetricEntity first = data.get().get(0);
+    assertEquals("Timestamp", new Date((nowMinute - 2) * MINUTE), first.getTimestamp());
+    assertEquals("Max", 3.0, first.getSampleMax(), 0.0);
+    assertEquals("Min", 1.0, first.getSampleMin(), 0.0);
+    assertEquals("Sum", 4.0, first.getSampleSum(), 0.0);
+    assertEquals("Size", 2.0, first.getSampleSize(), 0.0);
+  }
+
+  @Test
+  public void testUnitsFilter() {
+    final long nowMinute = 1000000L;
+    final RecentMetricDataStore store = new RecentMetricDataStore(10);
+    store.setCoverageStartMinute(nowMinute - 9);
+    store.record(entity(nowMinute - 1, Units.Percent, 1.0), nowMinute);
+    store.record(entity(nowMinute - 1, Units.Count, 1.0), nowMinute);
+
+    assertEquals("All units", 2, store.getMetricData(params(nowMinute - 5, nowMinute, null), nowMinute).get().size());
+    assertEquals("Percent", 1, store.getMetricData(params(nowMinute - 5, nowMinute, Units.Percent), nowMinute).get().size());
+    assertEquals("Bytes", 0, store.getMetricData(params(nowMinute - 5, nowMinute, Units.Bytes), nowMinute).get().size());
+  }
+
+  @Test
+  public void testCoverage() {
+    final long nowMinute = 1000000L;
+    final RecentMetricDataStore store = new RecentMetricDataStore(10);
+    assertFalse("Before coverage set", store.getMetricData(params(nowMinute - 5, nowMinute, null), nowMinute).isPresent());
+    store.setCoverageStartMinute(nowMinute - 3);
+    assertFalse("Before coverage start", store.getMetricData(params(nowMinute - 5, nowMinute, null), nowMinute).isPresent());
+    assertTrue("After coverage start", store.getMetricData(params(nowMinute - 3, nowMinute, null), nowMinute).isPresent());
+    store.setCoverageStartMinute(nowMinute - 100);
+    assertFalse("Outside retained range", store.getMetricData(params(nowMinute - 10, nowMinute, null), nowMinute).isPresent());
+    assertFalse("Future end", store.getMetricData(params(nowMinute - 5, nowMinute + 5, null), nowMinute).isPresent());
+  }
+
+  @Test
+  public void testFutureData() {
+    final long nowMinute = 1000000L;
+    final RecentMetricDataStore store = new RecentMetricDataStore(10);
+    store.setCoverageStartMinute(nowMinute - 9);
+    store.record(entity(nowMinute + 2, Units.Percent, 1.0), nowMinute);
+    assertFalse("Future data not covered", store.getMetricData(params(nowMinute - 5, nowMinute + 1, null), nowMinute + 3).isPresent());
+    assertTrue("Covered after future data", store.getMetricData(params(nowMinute + 3, nowMinute + 4, null), nowMinute + 4).isPresent());
+  }
+
+  @Test
+  public void testRingReuseAndPurge() {
+    final long nowMinute = 1000000L;
+    final RecentMetricDataStore store = new RecentMetricDataStore(10);
+    store.setCoverageStartMinute(nowMinute - 9);
+    store.record(entity(nowMinute - 5, Units.Percent, 1.0), nowMinute);
+    store.record(entity(nowMinute + 5, Units.Percent, 2.0), nowMinute + 5);
+    final List<MetricEntity> data = store.getMetricData(params(nowMinute - 4, nowMinute + 6, null), nowMinute + 5).get();
+    assertEquals("Data points", 1, data.size());
+    assertEquals("Sum", 2.0, data.get(0).getSampleSum(), 0.0);
+    store.purge(nowMinute + 5);
+    assertEquals("Series retained", 1, store.size());
+    store.purge(nowMinute + 15);
+    assertEquals("Series purged", 0, store.size());
+  }
+
+  private static MetricEntity entity(final long minute, final Units units, final double value) {
+    final String hash = MetricManager.hash(DIMENSIONS);
+    final MetricEntity me = MetricEntityFactory.getNewMetricEntity(MetricType.System, hash);
+    me.setAccountId("000000000000");
+    me.setNamespace("AWS/EC2");
+    me.setMetricName("CPUUtilization");
+    me.setMetricType(MetricType.System);
+    me.setDimensionHash(hash);
+    me.setUnits(units);
+    me.setTimestamp(new Date(minute * MINUTE));
+    me.setSampleMax(value);
+    me.setSampleMin(value);
+    me.setSampleSum(value);
+    me.setSampleSize(1.0);
+    return me;
+  }
+
+  private static MetricManager.GetMetricStatisticsParams params(final long startMinute, final long endMinute, final Units units) {
+    return new MetricManager.GetMetricStatisticsParams("000000000000", "CPUUtilization", "AWS/EC2", DIMENSIONS,
+        MetricType.System, units, new Date(startMinute * MINUTE), new Date(endMinute * MINUTE), 60);
+  }
+}
@@ -20,6 +20,7 @@
 package com.eucalyptus.cloudwatch.service.queue.listmetrics;
 
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetric;
+import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricIndex;
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
 import com.eucalyptus.system.Threads;
@@ -30,6 +31,7 @@ import com.google.common.collect.Sets;
 
 import org.apache.log4j.Logger;
 
+import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -100,6 +102,9 @@ public class ListMetricQueue {
         dataBatch = prune(dataBatch);
         long t3 = System.currentTimeMillis();
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_PRUNE, t3-t2);
+        if (ListMetricIndex.isEnabled()) {
+          ListMetricIndex.getInstance().purge(new Date(System.currentTimeMillis() - 2 * 7 * 24 * 60 * 60 * 1000L));
+        }
         List<ListMetric> listMetrics = convertToListMetrics(dataBatch);
         long t4 = System.currentTimeMillis();
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_CONVERT, t4-t3);
@@ -120,8 +125,10 @@ public class ListMetricQueue {
     if (dataBatch == null) return null;
     List<ListMetric> listMetrics = Lists.newArrayList();
     for (ListMetricQueueItem item: dataBatch) {
-      listMetrics.add(ListMetricManager.createListMetric(item.getAccountId(), item.getMetricName(), item.getMetricType(),
-        item.getNamespace(), item.getDimensionMap()));
+      ListMetric listMetric = ListMetricManager.createListMetric(item.getAccountId(), item.getMetricName(), item.getMetricType(),
+        item.getNamespace(), item.getDimensionMap());
+      ListMetricIndex.getInstance().assignIdentity(listMetric);
+      listMetrics.add(listMetric);
     }
     return listMetrics;
   }
@@ -137,7 +144,15 @@ public class ListMetricQueue {
   }
 
   public void addAll(List<SimpleMetricEntity> dataBatch) {
+    final boolean indexEnabled = ListMetricIndex.isEnabled();
+    if (!indexEnabled) {
+      ListMetricIndex.getInstance().invalidate();
+    }
     for (SimpleMetricEntity item: dataBatch) {
+      if (indexEnabled) {
+        ListMetricIndex.getInstance().update(item.getAccountId(), item.getMetricName(), item.getMetricType(),
+          item.getNamespace(), item.getDimensionMap());
+      }
       ListMetricQueueItem metricMetadata = new ListMetricQueueItem();
       metricMetadata.setAccountId(item.getAccountId());
       metricMetadata.setNamespace(item.getNamespace());
@@ -127,49 +127,65 @@ public class MetricDataQueue {
       List<MetricQueueItem> stupidDataBatch) {
     ArrayList<SimpleMetricEntity> returnValue = new ArrayList<SimpleMetricEntity>();
     for(MetricQueueItem item: stupidDataBatch) {
-      SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
-      metricMetadata.setAccountId(item.getAccountId());
-      MetricDatum datum = item.getMetricDatum();
-      
-      metricMetadata.setMetricName(datum.getMetricName());
-      metricMetadata.setNamespace(item.getNamespace());
-      final List<Dimension> dimensions = datum.getDimensions( ) == null ?
-          Collections.<Dimension>emptyList( ) :
-          datum.getDimensions( ).getMember( );
-      metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
-      metricMetadata.setMetricType(item.getMetricType());
-      metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
-      metricMetadata.setTimestamp(datum.getTimestamp());
-      if (datum.getValue() != null) { // Either or case taken care of in service
-        metricMetadata.setSampleMax(datum.getValue());
-        metricMetadata.setSampleMin(datum.getValue());
-        metricMetadata.setSampleSum(datum.getValue());
-        metricMetadata.setSampleSize(1.0);
-      } else if ((datum.getStatisticValues() != null) &&
-            (datum.getStatisticValues().getMaximum() != null) &&
-            (datum.getStatisticValues().getMinimum() != null) &&
-            (datum.getStatisticValues().getSum() != null) &&
-            (datum.getStatisticValues().getSampleCount() != null)) {
-          metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
-          metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
-          metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
-          metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
-      } else {
-        throw new RuntimeException("Statistics set (all values) or Value must be set"); 
-      }
-      returnValue.add(metricMetadata);
+      returnValue.add(convertToSimpleMetricEntity(item.getAccountId(), item.getNamespace(), item.getMetricType(),
+          item.getMetricDatum()));
     }
     return returnValue;
   }
 
+  private static SimpleMetricEntity convertToSimpleMetricEntity(String accountId, String namespace,
+                                                                MetricType metricType, MetricDatum datum) {
+    SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
+    metricMetadata.setAccountId(accountId);
+
+    metricMetadata.setMetricName(datum.getMetricName());
+    metricMetadata.setNamespace(namespace);
+    final List<Dimension> dimensions = datum.getDimensions( ) == null ?
+        Collections.<Dimension>emptyList( ) :
+        datum.getDimensions( ).getMember( );
+    metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
+    metricMetadata.setMetricType(metricType);
+    metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
+    metricMetadata.setTimestamp(datum.getTimestamp());
+    if (datum.getValue() != null) { // Either or case taken care of in service
+      metricMetadata.setSampleMax(datum.getValue());
+      metricMetadata.setSampleMin(datum.getValue());
+      metricMetadata.setSampleSum(datum.getValue());
+      metricMetadata.setSampleSize(1.0);
+    } else if ((datum.getStatisticValues() != null) &&
+          (datum.getStatisticValues().getMaximum() != null) &&
+          (datum.getStatisticValues().getMinimum() != null) &&
+          (datum.getStatisticValues().getSum() != null) &&
+          (datum.getStatisticValues().getSampleCount() != null)) {
+        metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
+        metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
+        metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
+        metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
+    } else {
+      throw new RuntimeException("Statistics set (all values) or Value must be set"); 
+    }
+    return metricMetadata;
+  }
+
   public void insertMetricData(final String ownerAccountId, final String nameSpace,
                                final List<MetricDatum> metricDatum, final MetricType metricType) {
     // Some points do not actually go in.  If a data point represents an absolute value, the first one does not go in.
     // Also, some data points are added while we go through the list (derived metrics)
     Date now = new Date();
 
+    final boolean partitioned = PartitionedMetricDataQueue.isEnabled();
     for (final MetricDatum datum : metricDatum) {
       scrub(datum, now);
+      if (partitioned) {
+        try {
+          final SimpleMetricEntity item = convertToSimpleMetricEntity(ownerAccountId, nameSpace, metricType, datum);
+          item.setTimestamp(MetricUtils.stripSeconds(item.getTimestamp()));
+          PartitionedMetricDataQueue.offer(item);
+        } catch (RuntimeException ex) {
+          LOG.error("Error queueing metric data " + datum.getMetricName() + " for " + nameSpace, ex);
+        }
+        continue;
+      }
       queue(new Supplier<MetricQueueItem>() {
         @Override
         public MetricQueueItem get() {
@@ -0,0 +1,232 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.metricdata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.service.queue.listmetrics.ListMetricQueue;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.metrics.MonitoredAction;
+import com.eucalyptus.util.metrics.ThruputMetrics;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Metric data queue split into hash partitions that aggregate on ingest.
+ *
+ * Each partition holds one accumulator per aggregation key, so memory use
+ * depends on the number of distinct metrics rather than on the number of
+ * data points received. Partitions are flushed independently on the
+ * configured interval.
+ */
+public class PartitionedMetricDataQueue {
+  private static final Logger LOG = Logger.getLogger(PartitionedMetricDataQueue.class);
+
+  private static final ScheduledExecutorService flushTimer = Executors
+      .newSingleThreadScheduledExecutor( Threads.threadFactory( "cloudwatch-metric-data-partition-timer-%d" ) );
+  private static final ExecutorService flushExecutor = Executors
+      .newCachedThreadPool( Threads.threadFactory( "cloudwatch-metric-data-partition-flush-%d" ) );
+
+  private static final Object partitionsLock = new Object();
+  private static volatile Partition[] partitions = new Partition[0];
+  private static final List<Partition> retiredPartitions = Lists.newCopyOnWriteArrayList();
+
+  static {
+    flushTimer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flushDuePartitions(System.currentTimeMillis());
+        } catch (Throwable ex) {
+          LOG.error(ex, ex);
+        }
+      }
+    }, 1, 1, TimeUnit.SECONDS);
+  }
+
+  public static boolean isEnabled() {
+    return CloudWatchConfigProperties.METRIC_DATA_QUEUE_PARTITIONS > 0;
+  }
+
+  /**
+   * Aggregate the given (scrubbed) data point into its partition.
+   */
+  public static void offer(final SimpleMetricEntity item) {
+    final long before = System.nanoTime();
+    final PutMetricDataAggregationKey key = new PutMetricDataAggregationKey(item);
+    Partition[] currentPartitions;
+    do {
+      currentPartitions = getPartitions();
+    } while (!currentPartitions[(key.hashCode() & Integer.MAX_VALUE) % currentPartitions.length].add(key, item, before));
+  }
+
+  private static Partition[] getPartitions() {
+    final int count = Math.max(1, CloudWatchConfigProperties.METRIC_DATA_QUEUE_PARTITIONS);
+    Partition[] currentPartitions = partitions;
+    if (currentPartitions.length != count) {
+      synchronized (partitionsLock) {
+        currentPartitions = partitions;
+        if (currentPartitions.length != count) {
+          final Partition[] newPartitions = new Partition[count];
+          for (int i = 0; i < count; i++) {
+            newPartitions[i] = new Partition();
+          }
+          partitions = newPartitions;
+          // retired partitions reject new data but must still be flushed
+          for (final Partition partition : currentPartitions) {
+            partition.retire();
+            retiredPartitions.add(partition);
+          }
+          currentPartitions = newPartitions;
+        }
+      }
+    }
+    return currentPartitions;
+  }
+
+  private static void flushDuePartitions(final long now) {
+    final long intervalMillis = TimeUnit.SECONDS.toMillis(CloudWatchConfigProperties.METRIC_DATA_QUEUE_FLUSH_INTERVAL_SECS);
+    for (final Partition partition : partitions) {
+      if (partition.isDue(now, intervalMillis)) {
+        partition.scheduleFlush(now);
+      }
+    }
+    for (final Partition partition : retiredPartitions) {
+      if (partition.isDue(now, intervalMillis)) {
+        partition.scheduleFlush(now);
+        // safe to remove once empty as retired partitions accept no data
+        if (partition.isEmpty()) {
+          retiredPartitions.remove(partition);
+        }
+      }
+    }
+  }
+
+  static final class Partition {
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    private volatile long lastFlush = System.currentTimeMillis();
+    private HashMap<PutMetricDataAggregationKey, SimpleMetricEntity> accumulators = Maps.newHashMap();
+    private long datumCount;
+    private long aggregateNanos;
+    private boolean retired;
+
+    /**
+     * @return false if the partition is retired and the data was not added
+     */
+    synchronized boolean add(final PutMetricDataAggregationKey key, final SimpleMetricEntity item, final long before) {
+      if (retired) return false;
+      final SimpleMetricEntity totalSoFar = accumulators.get(key);
+      if (totalSoFar == null) {
+        accumulators.put(key, item);
+      } else {
+        totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
+        totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
+        totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
+        totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+      }
+      datumCount++;
+      aggregateNanos += System.nanoTime() - before;
+      return true;
+    }
+
+    synchronized void retire() {
+      retired = true;
+    }
+
+    synchronized boolean isEmpty() {
+      return accumulators.isEmpty();
+    }
+
+    private boolean isDue(final long now, final long intervalMillis) {
+      return !flushing.get() && now - lastFlush >= intervalMillis;
+    }
+
+    private void scheduleFlush(final long now) {
+      if (flushing.compareAndSet(false, true)) {
+        lastFlush = now;
+        flushExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              flush();
+            } finally {
+              flushing.set(false);
+            }
+          }
+        });
+      }
+    }
+
+    /**
+     * Take the aggregated data, the partition is left empty.
+     */
+    synchronized Map<PutMetricDataAggregationKey, SimpleMetricEntity> drain() {
+      final Map<PutMetricDataAggregationKey, SimpleMetricEntity> dataBatch = accumulators;
+      accumulators = Maps.newHashMap();
+      datumCount = 0;
+      aggregateNanos = 0;
+      return dataBatch;
+    }
+
+    private void flush() {
+      final Map<PutMetricDataAggregationKey, SimpleMetricEntity> dataBatch;
+      final long dataCount;
+      final long dataAggregateNanos;
+      synchronized (this) {
+        if (accumulators.isEmpty()) return;
+        dataCount = datumCount;
+        dataAggregateNanos = aggregateNanos;
+        dataBatch = drain();
+      }
+      long before = System.currentTimeMillis();
+      try {
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, dataCount);
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_AGGREGATE, TimeUnit.NANOSECONDS.toMillis(dataAggregateNanos));
+        long t1 = System.currentTimeMillis();
+        List<SimpleMetricEntity> simpleDataBatch = Lists.newArrayList(dataBatch.values());
+        long t2 = System.currentTimeMillis();
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_CONVERT, t2-t1);
+        MetricManager.addMetricBatch(simpleDataBatch);
+        long t3 = System.currentTimeMillis();
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_ADD_BATCH, t3-t2);
+        ListMetricQueue.getInstance().addAll(simpleDataBatch);
+        long t4 = System.currentTimeMillis();
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL, t4-t3);
+      } catch (Throwable ex) {
+        LOG.debug("PartitionedMetricDataQueue:error");
+        LOG.error(ex,ex);
+      } finally {
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_TIMING, System.currentTimeMillis()-before);
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.metricdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+
+public class TestPartitionedMetricDataQueue {
+
+  private static final Date NOW = MetricUtils.stripSeconds(new Date());
+
+  @Test
+  public void testRetiredPartitionRejectsData() {
+    final PartitionedMetricDataQueue.Partition partition = new PartitionedMetricDataQueue.Partition();
+    final SimpleMetricEntity item = item("metric1");
+    assertTrue(partition.add(new PutMetricDataAggregationKey(item), item, System.nanoTime()));
+    partition.retire();
+    final SimpleMetricEntity late = item("metric1");
+    assertFalse(partition.add(new PutMetricDataAggregationKey(late), late, System.nanoTime()));
+    assertEquals(1, partition.drain().size());
+    assertTrue(partition.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentAddAndDrain() throws Exception {
+    final PartitionedMetricDataQueue.Partition partition = new PartitionedMetricDataQueue.Partition();
+    final int producers = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicBoolean producing = new AtomicBoolean(true);
+    try {
+      final List<Future<Long>> added = new ArrayList<>();
+      for (int i = 0; i < producers; i++) {
+        final String metricName = "metric" + (i % 3);
+        added.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            start.await();
+            long count = 0;
+            for (int j = 0; j < 20000; j++) {
+              final SimpleMetricEntity item = item(metricName);
+              if (partition.add(new PutMetricDataAggregationKey(item), item, System.nanoTime())) {
+                count++;
+              }
+              if (j == 15000) {
+                partition.retire();
+              }
+            }
+            return count;
+          }
+        }));
+      }
+      final Future<Double> drained = executor.submit(new Callable<Double>() {
+        @Override
+        public Double call() throws Exception {
+          start.await();
+          double total = 0;
+          while (producing.get()) {
+            total += sampleSize(partition.drain());
+          }
+          return total + sampleSize(partition.drain());
+        }
+      });
+      start.countDown();
+      long totalAdded = 0;
+      for (final Future<Long> future : added) {
+        totalAdded += future.get(1, TimeUnit.MINUTES);
+      }
+      producing.set(false);
+      assertEquals("Drained samples", (double) totalAdded, drained.get(1, TimeUnit.MINUTES), 0.0);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static double sampleSize(final Map<PutMetricDataAggregationKey, SimpleMetricEntity> batch) {
+    double total = 0;
+    for (final SimpleMetricEntity entity : batch.values()) {
+      total += entity.getSampleSize();
+    }
+    return total;
+  }
+
+  private static SimpleMetricEntity item(final String metricName) {
+    final SimpleMetricEntity item = new SimpleMetricEntity();
+    item.setAccountId("account1");
+    item.setDimensionMap(Collections.singletonMap("dim1", "val1"));
+    item.setMetricName(metricName);
+    item.setMetricType(MetricType.Custom);
+    item.setNamespace("namespace1");
+    item.setSampleMax(1d);
+    item.setSampleMin(1d);
+    item.setSampleSize(1d);
+    item.setSampleSum(1d);
+    item.setTimestamp(NOW);
+    item.setUnits(Units.None);
+    return item;
+  }
+}
@@ -917,6 +917,7 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
     }
   }
 
+  @EventListener.Scheduling( priority = 10, deadline = 10000L )
   private static final class StateTaskExpiryEventListener implements EventListener<ClockTick> {
     public static void register( ){
       Listeners.register( ClockTick.class, new StateTaskExpiryEventListener( ) );
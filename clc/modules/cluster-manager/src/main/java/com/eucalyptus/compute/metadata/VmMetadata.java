@@ -84,6 +84,7 @@ import com.eucalyptus.vm.MetadataRequest;
 import com.eucalyptus.vm.SensorsConfigMetadata;
 import com.eucalyptus.compute.common.internal.vm.VmInstance;
 import com.eucalyptus.vm.VmInstanceMetadata;
+import com.eucalyptus.vm.VmInstanceMetadata.MetadataDocument;
 import com.eucalyptus.vm.VmInstances;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -251,18 +252,34 @@ public class VmMetadata {
     try {
       final String requestIpOrInstanceId = ResourceIdentifiers.tryNormalize( ).apply( parts[0] );
       final boolean isInstanceId = requestIpOrInstanceId.startsWith( "i-" );
+      final MetadataDocument document = Databases.isVolatile( ) ?
+          null :
+          isInstanceId ?
+              VmMetadataDocuments.lookupByInstanceId( requestIpOrInstanceId ) :
+              VmMetadataDocuments.lookupByAddress( requestIpOrInstanceId );
       final MetadataRequest request = new MetadataRequest(
           isInstanceId ? "127.0.0.1" : requestIpOrInstanceId,
           parts.length == 2 ?
               parts[1] :
               "/",
-          isInstanceId ? Optional.of( requestIpOrInstanceId ) : ipToVmIdCache.get( requestIpOrInstanceId ) );
+          isInstanceId ?
+              Optional.of( requestIpOrInstanceId ) :
+              document != null ?
+                  Optional.of( document.getInstanceId( ) ) :
+                  ipToVmIdCache.get( requestIpOrInstanceId ) );
 
       if ( instanceMetadataEndpoints.containsKey( request.getMetadataName( ) ) && request.isInstance( ) ) {
         if ( ( isInstanceId && !networkingFeatureSupplier.get( ).contains( NetworkingFeature.Vpc ) ) ||
             ( !isInstanceId && !networkingFeatureSupplier.get( ).contains( NetworkingFeature.Classic ) ) ) {
           throw new NoSuchElementException( "Metadata request failed (invalid for platform): " + path );
         }
+        if ( document != null && document.provides( request.getMetadataName( ), request.getLocalPath( ) ) ) {
+          final String value = document.get( request.getMetadataName( ), request.getLocalPath( ) );
+          if ( value == null ) {
+            throw new NoSuchElementException( "Failed to lookup path: " + request.getLocalPath( ) );
+          }
+          return ByteArray.newInstance( value ).getBytes( );
+        }
         return instanceMetadataEndpoints.get( request.getMetadataName( ) ).apply( request ).getBytes( );
       } else if ( systemMetadataEndpoints.containsKey( request.getMetadataName( ) ) && request.isSystem( ) ) {
         return systemMetadataEndpoints.get( request.getMetadataName( ) ).apply( request ).getBytes( );
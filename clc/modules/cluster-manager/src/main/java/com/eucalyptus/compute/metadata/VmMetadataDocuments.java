@@ -0,0 +1,215 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.compute.metadata;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Restrictions;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.compute.common.internal.vm.VmInstance;
+import com.eucalyptus.compute.common.internal.vm.VmNetworkConfig;
+import com.eucalyptus.entities.EntityCache;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.vm.VmInstanceMetadata;
+import com.eucalyptus.vm.VmInstanceMetadata.MetadataDocument;
+import com.eucalyptus.vm.VmInstances;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * Store for precomputed instance metadata documents.
+ *
+ * <p>Documents are built when instances change and are indexed by instance
+ * identifier and by address so metadata requests can be served without
+ * database access. Instance changes committed in this process are seen on
+ * the next lookup, other changes when the store is reconciled. The indexes
+ * are updated for each changed document.</p>
+ *
+ * <p>The store is built and reconciled in the background and never on the
+ * request path. Lookups return null until the store is built, so callers
+ * use the database in the meantime.</p>
+ */
+class VmMetadataDocuments {
+
+  private static final Logger logger = Logger.getLogger( VmMetadataDocuments.class );
+
+  private static final long DOCUMENTS_IDLE_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+
+  private static final Supplier<Long> reconcileInterval = new Supplier<Long>( ) {
+    @Override
+    public Long get( ) {
+      return TimeUnit.SECONDS.toMillis( VmInstances.VM_METADATA_DOCUMENT_RECONCILE_INTERVAL );
+    }
+  };
+  private static final DocumentIndex index = new DocumentIndex( );
+  private static final EntityCache<VmInstance,MetadataDocument> documentCache = new EntityCache<>(
+      VmInstance.named( null ),
+      Restrictions.not( VmInstance.criterion( VmInstance.VmStateSet.DONE.array( ) ) ),
+      Collections.<String>emptySet( ),
+      Collections.<String>emptySet( ),
+      VmInstanceMetadata.document( ) ).changeNotified( reconcileInterval ).changeListener( index );
+
+  private static volatile boolean built;
+  private static volatile long lastUsed;
+
+  /**
+   * Lookup the metadata document for an instance.
+   *
+   * @param instanceId The instance identifier
+   * @return The document or null if not available
+   */
+  @Nullable
+  static MetadataDocument lookupByInstanceId( final String instanceId ) {
+    return refresh( ) ? index.lookupByInstanceId( instanceId ) : null;
+  }
+
+  /**
+   * Lookup the metadata document for a pending or running instance.
+   *
+   * @param address The public or private address of the instance
+   * @return The document or null if not available
+   */
+  @Nullable
+  static MetadataDocument lookupByAddress( final String address ) {
+    return refresh( ) ? index.lookupByAddress( address ) : null;
+  }
+
+  /**
+   * Apply any notified instance changes if the store is built.
+   */
+  private static boolean refresh( ) {
+    lastUsed = System.currentTimeMillis( );
+    if ( !built ) {
+      return false;
+    }
+    try {
+      documentCache.refreshChangedGeneration( );
+      return true;
+    } catch ( final Exception e ) {
+      logger.error( "Error refreshing instance metadata documents: " + e.getMessage( ) );
+      logger.debug( e, e );
+      return false;
+    }
+  }
+
+  /**
+   * Build the store or reconcile it with the database when due.
+   */
+  private static void reconcile( ) {
+    try {
+      documentCache.refreshGeneration( );
+      built = true;
+    } catch ( final Exception e ) {
+      logger.error( "Error reconciling instance metadata documents: " + e.getMessage( ) );
+      logger.debug( e, e );
+    }
+  }
+
+  public static class VmMetadataDocumentsEventListener implements EventListener<ClockTick> {
+    private final AtomicBoolean refreshing = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new VmMetadataDocumentsEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( Bootstrap.isOperational( ) && refreshing.compareAndSet( false, true ) ) {
+        try {
+          if ( ( lastUsed + DOCUMENTS_IDLE_MILLIS ) > System.currentTimeMillis( ) ) {
+            reconcile( );
+          } else {
+            // not reconciled while unused, so rebuild before next use
+            built = false;
+          }
+        } finally {
+          refreshing.set( false );
+        }
+      }
+    }
+  }
+
+  /**
+   * Indexes for documents, updated as documents change.
+   *
+   * <p>Public addresses take precedence over private addresses, as for
+   * database lookups.</p>
+   */
+  static final class DocumentIndex implements EntityCache.ChangeListener<MetadataDocument> {
+    private final ConcurrentMap<String,MetadataDocument> documentsByInstanceId = Maps.newConcurrentMap( );
+    private final ConcurrentMap<String,MetadataDocument> documentsByPublicAddress = Maps.newConcurrentMap( );
+    private final ConcurrentMap<String,MetadataDocument> documentsByPrivateAddress = Maps.newConcurrentMap( );
+
+    @Override
+    public void changed( final String id,
+                         @Nullable final MetadataDocument previous,
+                         @Nullable final MetadataDocument current ) {
+      // add before removing so lookups for unchanged keys always find a document
+      if ( current != null ) {
+        documentsByInstanceId.put( current.getInstanceId( ), current );
+        put( documentsByPublicAddress, current.getPublicAddress( ), current );
+        put( documentsByPrivateAddress, current.getPrivateAddress( ), current );
+      }
+      if ( previous != null ) {
+        documentsByInstanceId.remove( previous.getInstanceId( ), previous );
+        remove( documentsByPublicAddress, previous.getPublicAddress( ), previous );
+        remove( documentsByPrivateAddress, previous.getPrivateAddress( ), previous );
+      }
+    }
+
+    @Nullable
+    MetadataDocument lookupByInstanceId( final String instanceId ) {
+      return documentsByInstanceId.get( instanceId );
+    }
+
+    @Nullable
+    MetadataDocument lookupByAddress( final String address ) {
+      final MetadataDocument document = documentsByPublicAddress.get( address );
+      return document != null ? document : documentsByPrivateAddress.get( address );
+    }
+
+    private static void put( final ConcurrentMap<String,MetadataDocument> documents,
+                             @Nullable final String address,
+                             final MetadataDocument document ) {
+      if ( isAddress( address ) ) {
+        documents.put( address, document );
+      }
+    }
+
+    private static void remove( final ConcurrentMap<String,MetadataDocument> documents,
+                                @Nullable final String address,
+                                final MetadataDocument document ) {
+      if ( isAddress( address ) ) {
+        documents.remove( address, document );
+      }
+    }
+
+    private static boolean isAddress( @Nullable final String address ) {
+      return !Strings.isNullOrEmpty( address ) && !VmNetworkConfig.DEFAULT_IP.equals( address );
+    }
+  }
+}
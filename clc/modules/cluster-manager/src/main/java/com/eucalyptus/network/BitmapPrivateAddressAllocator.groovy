@@ -0,0 +1,216 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network
+
+import com.eucalyptus.util.Pair
+import com.google.common.base.Function
+import com.google.common.base.Strings
+import com.google.common.base.Supplier
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.primitives.Ints
+import com.google.common.primitives.Longs
+import groovy.transform.CompileStatic
+import org.apache.log4j.Logger
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Private address allocator using an in-memory bitmap of allocated addresses.
+ *
+ * <p>A bitmap is kept per scope and tag (i.e. per VPC subnet or for EC2-Classic)
+ * which is loaded from persistence and periodically reconciled by reloading.
+ * Free addresses are claimed in the bitmap under a per-block lock and the claim
+ * is then confirmed by creating the address in persistence, so concurrent
+ * allocations do not contend on the same addresses and a nearly full range does
+ * not require an attempt per allocated address.</p>
+ *
+ * <p>Address ranges that are too large for a bitmap use random allocation.</p>
+ */
+@CompileStatic
+class BitmapPrivateAddressAllocator extends RandomPrivateAddressAllocator {
+
+  private static final Logger logger = Logger.getLogger( BitmapPrivateAddressAllocator )
+  private static final long defaultReconcileMillis = TimeUnit.SECONDS.toMillis(
+      Longs.tryParse( System.getProperty( "com.eucalyptus.network.bitmapAllocatorReconcileSecs", "" ) ) ?: 60L )
+  private static final int defaultAddressLimit =
+      Ints.tryParse( System.getProperty( "com.eucalyptus.network.bitmapAllocatorAddressLimit", "" ) ) ?: 1_048_576
+  private static final int defaultBitmapLimit =
+      Ints.tryParse( System.getProperty( "com.eucalyptus.network.bitmapAllocatorBitmapLimit", "" ) ) ?: 1000
+
+  private final int addressLimit
+  private final Cache<Pair<String,String>,AddressBitmap> bitmaps
+
+  BitmapPrivateAddressAllocator( ) {
+    super( )
+    this.addressLimit = defaultAddressLimit
+    this.bitmaps = buildCache( defaultReconcileMillis, defaultBitmapLimit )
+  }
+
+  protected BitmapPrivateAddressAllocator(
+      final PrivateAddressPersistence persistence,
+      final int partitionSize,
+      final int partitionCount,
+      final int listingFailureThreshold,
+      final int partitionAttempts,
+      final long reconcileMillis,
+      final int addressLimit
+  ) {
+    super( persistence, partitionSize, partitionCount, listingFailureThreshold, partitionAttempts )
+    this.addressLimit = addressLimit
+    this.bitmaps = buildCache( reconcileMillis, defaultBitmapLimit )
+  }
+
+  @Override
+  protected String allocate(
+      final String scope,
+      final String tag,
+      final Iterable<Integer> addresses,
+      final int addressCount,
+      final int allocatedCount,
+      final Closure<String> allocator,
+      final Supplier<Set<Integer>> lister
+  ) {
+    if ( addressCount > addressLimit ) {
+      return super.allocate( scope, tag, addresses, addressCount, allocatedCount, allocator, lister )
+    }
+    final Pair<String,String> key = key( scope, tag )
+    AddressBitmap bitmap = bitmap( key )
+    String allocated = claimAndConfirm( bitmap, addresses, allocator )
+    if ( !allocated && !bitmap.isFresh( ) ) {
+      // bitmap may be stale, reconcile and try again
+      bitmaps.asMap( ).remove( key, bitmap )
+      bitmap = bitmap( key )
+      allocated = claimAndConfirm( bitmap, addresses, allocator )
+    }
+    allocated
+  }
+
+  @Override
+  protected void onReleased( final String scope, final String tag, final String address ) {
+    final AddressBitmap bitmap = bitmaps.getIfPresent( key( scope, tag ) )
+    if ( bitmap != null ) {
+      bitmap.release( PrivateAddresses.asInteger( address ) )
+    }
+  }
+
+  private String claimAndConfirm(
+      final AddressBitmap bitmap,
+      final Iterable<Integer> addresses,
+      final Closure<String> allocator
+  ) {
+    for ( final Integer address : addresses ) {
+      if ( bitmap.claim( address ) ) {
+        String allocated
+        try {
+          allocated = allocator.call( address )
+        } catch ( RuntimeException e ) {
+          bitmap.release( address )
+          throw e
+        }
+        if ( allocated ) return allocated
+        // otherwise allocated elsewhere, so remains claimed until reconciled
+      }
+    }
+    null
+  }
+
+  private AddressBitmap bitmap( final Pair<String,String> key ) {
+    bitmaps.get( key, { load( key ) } as Callable<AddressBitmap> )
+  }
+
+  private AddressBitmap load( final Pair<String,String> key ) {
+    final AddressBitmap bitmap = new AddressBitmap( )
+    getPersistence( ).list(
+        Strings.emptyToNull( key.left ),
+        Strings.emptyToNull( key.right ),
+        { PrivateAddress pa -> PrivateAddresses.asInteger( pa.getDisplayName( ) ) } as Function<PrivateAddress,Integer>
+    ).each{ Integer address ->
+      bitmap.claim( address )
+    }
+    logger.debug( "Loaded private address bitmap for ${key.left ?: '-'}/${key.right ?: '-'}" )
+    bitmap
+  }
+
+  private static Pair<String,String> key( final String scope, final String tag ) {
+    Pair.pair( Strings.nullToEmpty( scope ), Strings.nullToEmpty( tag ) )
+  }
+
+  private static Cache<Pair<String,String>,AddressBitmap> buildCache( final long reconcileMillis, final int bitmapLimit ) {
+    CacheBuilder.newBuilder( )
+        .expireAfterWrite( reconcileMillis, TimeUnit.MILLISECONDS )
+        .maximumSize( bitmapLimit )
+        .build( )
+  }
+
+  /**
+   * Sparse bitmap of claimed addresses, stored as a bit set per /24 block
+   * with the block acting as the lock stripe.
+   */
+  private static final class AddressBitmap {
+    private static final int BLOCK_BITS = 8
+    private static final int BLOCK_MASK = ( 1 << BLOCK_BITS ) - 1
+    private static final long FRESH_MILLIS = 1000L
+
+    private final long created = System.currentTimeMillis( )
+    private final ConcurrentMap<Integer,BitSet> blocks = new ConcurrentHashMap<Integer,BitSet>( )
+
+    boolean isFresh( ) {
+      ( System.currentTimeMillis( ) - created ) < FRESH_MILLIS
+    }
+
+    /**
+     * @return true if the address was free and is now claimed
+     */
+    boolean claim( final int address ) {
+      final BitSet block = block( address )
+      final int bit = address & BLOCK_MASK
+      synchronized ( block ) {
+        if ( block.get( bit ) ) {
+          return false
+        }
+        block.set( bit )
+        return true
+      }
+    }
+
+    void release( final int address ) {
+      final BitSet block = blocks.get( address >>> BLOCK_BITS )
+      if ( block != null ) {
+        synchronized ( block ) {
+          block.clear( address & BLOCK_MASK )
+        }
+      }
+    }
+
+    private BitSet block( final int address ) {
+      final Integer blockKey = address >>> BLOCK_BITS
+      BitSet block = blocks.get( blockKey )
+      if ( block == null ) {
+        final BitSet newBlock = new BitSet( 1 << BLOCK_BITS )
+        block = blocks.putIfAbsent( blockKey, newBlock ) ?: newBlock
+      }
+      block
+    }
+  }
+}
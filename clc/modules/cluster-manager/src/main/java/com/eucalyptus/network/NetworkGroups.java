@@ -129,6 +129,10 @@ public class NetworkGroups extends com.eucalyptus.compute.common.internal.networ
   public static volatile Integer      MIN_BROADCAST_INTERVAL        = 5;
   @ConfigurableField( description = "Maximum time to apply network information (seconds).", initial = "120" )
   public static volatile Integer      MAX_BROADCAST_APPLY           = 120;
+  @ConfigurableField( description = "Maximum interval between broadcasts of unchanged network information to a cluster (seconds).", initial = "60" )
+  public static volatile Integer      MAX_BROADCAST_UNCHANGED_INTERVAL = 60;
+  @ConfigurableField( description = "Interval for full reconciliation of cached network information (seconds).", initial = "60" )
+  public static volatile Integer      BROADCAST_CACHE_RECONCILE_INTERVAL = 60;
 
   public static NetworkGroup delete( final String groupId ) throws MetadataException {
     try ( final TransactionResource db = Entities.transactionFor( NetworkGroup.class ) ) {
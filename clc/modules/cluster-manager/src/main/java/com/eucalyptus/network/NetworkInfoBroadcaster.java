@@ -106,30 +106,36 @@ public class NetworkInfoBroadcaster {
   private static final AtomicLong lastBroadcastTime = new AtomicLong( 0L );
   private static final Lock lastBroadcastTimeLock = new ReentrantLock( );
   private static final Semaphore activeBroadcastSemaphore = new Semaphore( 1 );
+  private static final Supplier<Long> cacheReconcileInterval = new Supplier<Long>( ) {
+    @Override
+    public Long get( ) {
+      return TimeUnit.SECONDS.toMillis( NetworkGroups.BROADCAST_CACHE_RECONCILE_INTERVAL );
+    }
+  };
   private static final EntityCache<VmInstance,NetworkInfoBroadcasts.VmInstanceNetworkView> instanceCache = new EntityCache<>(
       VmInstance.named(null),
       Restrictions.not( VmInstance.criterion( TORNDOWN.array( ) ) ),
       Sets.newHashSet( "networkGroups" ),
       Sets.newHashSet( "bootRecord.machineImage", "bootRecord.vmType" ),
-      TypeMappers.lookup( VmInstance.class, VmInstanceNetworkView.class )  );
+      TypeMappers.lookup( VmInstance.class, VmInstanceNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache =
-      new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup.class, NetworkGroupNetworkView.class )  );
+      new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup.class, NetworkGroupNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<Vpc,VpcNetworkView> vpcCache =
-      new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc.class, VpcNetworkView.class )  );
+      new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc.class, VpcNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<Subnet,SubnetNetworkView> subnetCache =
-      new EntityCache<>( Subnet.exampleWithOwner( null ), TypeMappers.lookup( Subnet.class, SubnetNetworkView.class )  );
+      new EntityCache<>( Subnet.exampleWithOwner( null ), TypeMappers.lookup( Subnet.class, SubnetNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<DhcpOptionSet,DhcpOptionSetNetworkView> dhcpOptionsCache =
-      new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet.class, DhcpOptionSetNetworkView.class )  );
+      new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet.class, DhcpOptionSetNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<NetworkAcl,NetworkAclNetworkView> networkAclCache =
-      new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl.class, NetworkAclNetworkView.class )  );
+      new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl.class, NetworkAclNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<RouteTable,RouteTableNetworkView> routeTableCache =
-      new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable.class, RouteTableNetworkView.class )  );
+      new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable.class, RouteTableNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<InternetGateway,InternetGatewayNetworkView> internetGatewayCache =
-      new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway.class, InternetGatewayNetworkView.class )  );
+      new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway.class, InternetGatewayNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<NetworkInterface,NetworkInterfaceNetworkView> networkInterfaceCache =
-      new EntityCache<>( NetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( NetworkInterface.class, NetworkInterfaceNetworkView.class )  );
+      new EntityCache<>( NetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( NetworkInterface.class, NetworkInterfaceNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final EntityCache<NatGateway,NatGatewayNetworkView> natGatewayCache =
-      new EntityCache<>( NatGateway.exampleWithOwner( null ), TypeMappers.lookup( NatGateway.class, NatGatewayNetworkView.class )  );
+      new EntityCache<>( NatGateway.exampleWithOwner( null ), TypeMappers.lookup( NatGateway.class, NatGatewayNetworkView.class )  ).changeNotified( cacheReconcileInterval );
   private static final VpcRouteStateInvalidator vpcRouteStateInvalidator = new EventFiringVpcRouteStateInvalidator( );
 
   private static NetworkInfoSource cacheSource( ) {
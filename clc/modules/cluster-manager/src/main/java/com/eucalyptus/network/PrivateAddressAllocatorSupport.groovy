@@ -64,7 +64,7 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
 
   @Override
   String allocate( String scope, String tag, Iterable<Integer> addresses, int addressCount, int allocatedCount ) throws NotEnoughResourcesException {
-    allocated( scope, tag, allocate( addresses, addressCount, allocatedCount, { Integer address ->
+    allocated( scope, tag, allocate( scope, tag, addresses, addressCount, allocatedCount, { Integer address ->
       getDistinctPersistence( ).tryCreate( scope, tag, PrivateAddresses.fromInteger( address.intValue( ) ) )
           .transform( RestrictedTypes.toDisplayName( ) ).orNull( )
     } as Closure<String>, { listAllocatedByScope( scope, tag ) } as Supplier<Set<Integer>> ) ) ?:
@@ -98,7 +98,7 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
       }
       privateAddress.tag
     }.orNull( )
-    if ( tag && torndown ) released( scope, tag, address )
+    if ( torndown ) released( scope, tag, address )
     tag
   }
 
@@ -118,6 +118,7 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
       if ( !Iterables.contains( activeAddresses, privateAddress.name ) && privateAddress.getScope( ) == null ) {
         logger.debug( "Releasing private IP address ${privateAddress.name}" )
         getPersistence( ).teardown( privateAddress )
+        released( privateAddress.scope, privateAddress.tag, privateAddress.name )
         released = true
       }
       void
@@ -128,6 +129,7 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
            isTimedOut( privateAddress.lastUpdateMillis( ), NetworkGroups.NETWORK_INDEX_PENDING_TIMEOUT ) ) {
         logger.warn( "Timed out pending private IP address ${privateAddress.name}" )
         getPersistence( ).teardown( privateAddress )
+        released( privateAddress.scope, privateAddress.tag, privateAddress.name )
         released = true
       }
       void
@@ -136,6 +138,25 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
     released
   }
 
+  /**
+   * Allocate an address for the given scope and tag if possible.
+   *
+   * <p>The default implementation ignores the scope and tag.</p>
+   *
+   * @see #allocate(Iterable, int, int, Closure, Supplier)
+   */
+  protected String allocate(
+      String scope,
+      String tag,
+      Iterable<Integer> addresses,
+      int addressCount,
+      int allocatedCount,
+      Closure<String> allocator,
+      Supplier<Set<Integer>> lister
+  ) {
+    allocate( addresses, addressCount, allocatedCount, allocator, lister )
+  }
+
   /**
    * Allocate an address if possible.
    *
@@ -154,6 +175,12 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
       Supplier<Set<Integer>> lister
       )
 
+  /**
+   * Invoked after an address has been torn down.
+   */
+  protected void onReleased( String scope, String tag, String address ) {
+  }
+
   protected PrivateAddressPersistence getPersistence( ){
     persistence
   }
@@ -182,6 +209,7 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
       final String address
   ) {
     if ( address ) {
+      onReleased( scope, tag, address )
       final Set<Integer> allocated = cache.getIfPresent( key( scope, tag ) )
       if ( allocated != null ) {
         allocated.remove( PrivateAddresses.asInteger( address ) )
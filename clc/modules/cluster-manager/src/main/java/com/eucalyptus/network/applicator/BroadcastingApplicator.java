@@ -29,10 +29,15 @@ import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
+import com.eucalyptus.network.NetworkGroups;
+import com.eucalyptus.util.Callback;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.eucalyptus.util.async.UnconditionalCallback;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
 import edu.ucsb.eucalyptus.msgs.BroadcastNetworkInfoResponseType;
 
 /**
@@ -44,23 +49,40 @@ public class BroadcastingApplicator implements Applicator {
 
   private static final ConcurrentMap<String,Long> activeBroadcastMap = Maps.newConcurrentMap( );
 
+  /**
+   * Last network information acknowledged by each partition, as a digest of
+   * the document and the time it was sent.
+   */
+  private static final ConcurrentMap<String,Pair<String,Long>> acknowledgedBroadcastMap = Maps.newConcurrentMap( );
+
   @Override
   public void apply( final ApplicatorContext context, final ApplicatorChain chain ) throws ApplicatorException {
     final NetworkInfo netInfo = context.getNetworkInfo( );
     final String networkInfo = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context );
-    final String encodedNetworkInfo =
-        new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 );
+    final byte[] networkInfoBytes = networkInfo.getBytes( Charsets.UTF_8 );
+    final String digest = BaseEncoding.base16( ).lowerCase( ).encode( Hashing.sha1( ).hashBytes( networkInfoBytes ).asBytes( ) );
 
-    final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback(
-        encodedNetworkInfo,
-        netInfo.getVersion( ),
-        netInfo.getAppliedVersion( )
-    );
+    BroadcastNetworkInfoCallback callback = null;
     for ( final com.eucalyptus.cluster.Cluster cluster : context.getClusters( ) ) {
       final Long broadcastTime = System.currentTimeMillis( );
-      if ( null == activeBroadcastMap.putIfAbsent( cluster.getPartition( ), broadcastTime ) ) {
+      if ( isAcknowledged( cluster.getPartition( ), digest, broadcastTime ) ) {
+        logger.debug( "Skipping broadcast of unchanged network information version " +
+            netInfo.getVersion( ) + " for partition " + cluster.getPartition( ) );
+      } else if ( null == activeBroadcastMap.putIfAbsent( cluster.getPartition( ), broadcastTime ) ) {
+        if ( callback == null ) {
+          callback = new BroadcastNetworkInfoCallback(
+              new String( B64.standard.enc( networkInfoBytes ), Charsets.UTF_8 ),
+              netInfo.getVersion( ),
+              netInfo.getAppliedVersion( )
+          );
+        }
         try {
-          AsyncRequests.newRequest( callback.newInstance( ) ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
+          AsyncRequests.newRequest( callback.newInstance( ) ).then( new Callback.Success<BroadcastNetworkInfoResponseType>() {
+            @Override
+            public void fire( final BroadcastNetworkInfoResponseType response ) {
+              acknowledgedBroadcastMap.put( cluster.getPartition( ), Pair.pair( digest, broadcastTime ) );
+            }
+          } ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
             @Override
             public void fire( ) {
               activeBroadcastMap.remove( cluster.getPartition( ), broadcastTime );
@@ -78,6 +100,18 @@ public class BroadcastingApplicator implements Applicator {
     chain.applyNext( context );
   }
 
+  /**
+   * Network information is resent if it has changed, was not acknowledged, or
+   * was last sent too long ago (e.g. in case the cluster controller restarted)
+   */
+  private static boolean isAcknowledged( final String partition, final String digest, final long now ) {
+    final Pair<String,Long> acknowledged = acknowledgedBroadcastMap.get( partition );
+    return acknowledged != null &&
+        acknowledged.getLeft( ).equals( digest ) &&
+        ( acknowledged.getRight( ) + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_BROADCAST_UNCHANGED_INTERVAL ) ) > now;
+  }
+
+  @EventListener.Scheduling( priority = 10, deadline = 10000L )
   public static class BroadcastingApplicatorEventListener implements EventListener<ClockTick> {
     private final int activeBroadcastTimeoutMins = 3;
 
@@ -94,6 +128,11 @@ public class BroadcastingApplicator implements Applicator {
           logger.warn( "Timed out active network information broadcast for partition " + entry.getKey( ) );
         }
       }
+      for ( final Map.Entry<String,Pair<String,Long>> entry : BroadcastingApplicator.acknowledgedBroadcastMap.entrySet( ) ) {
+        if ( entry.getValue( ).getRight( ) + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_BROADCAST_UNCHANGED_INTERVAL ) < System.currentTimeMillis( ) ) {
+          BroadcastingApplicator.acknowledgedBroadcastMap.remove( entry.getKey( ), entry.getValue( ) );
+        }
+      }
     }
   }
 }
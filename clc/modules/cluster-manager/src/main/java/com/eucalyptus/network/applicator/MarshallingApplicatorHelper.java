@@ -24,7 +24,10 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cluster.NetworkInfo;
+import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.TypedKey;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 
 /**
  *
@@ -35,6 +38,18 @@ class MarshallingApplicatorHelper {
 
   private static final TypedKey<String> MARSHALLED_INFO_KEY = TypedKey.create( "MarshalledNetworkInfo" );
 
+  // contexts are thread safe and expensive to create, marshallers are not
+  private static final Supplier<JAXBContext> jaxbContextSupplier = Suppliers.memoize( new Supplier<JAXBContext>( ) {
+    @Override
+    public JAXBContext get( ) {
+      try {
+        return JAXBContext.newInstance( "com.eucalyptus.cluster" );
+      } catch ( final JAXBException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
+    }
+  } );
+
   static void clearMarshalledNetworkInfoCache( final ApplicatorContext context ) {
     context.removeAttribute( MARSHALLED_INFO_KEY );
   }
@@ -43,7 +58,7 @@ class MarshallingApplicatorHelper {
     String networkInfo = context.getAttribute( MARSHALLED_INFO_KEY );
     if ( networkInfo == null ) try {
       final NetworkInfo info = context.getNetworkInfo( );
-      final JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" );
+      final JAXBContext jc = getJaxbContext( );
       final StringWriter writer = new StringWriter( 8192 );
       jc.createMarshaller().marshal( info, writer );
 
@@ -58,4 +73,13 @@ class MarshallingApplicatorHelper {
     return networkInfo;
   }
 
+  private static JAXBContext getJaxbContext( ) throws JAXBException {
+    try {
+      return jaxbContextSupplier.get( );
+    } catch ( final RuntimeException e ) {
+      Exceptions.findAndRethrow( e, JAXBException.class );
+      throw e;
+    }
+  }
+
 }
@@ -121,6 +121,7 @@ import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
@@ -159,16 +160,44 @@ public class VmInstanceMetadata {
     return getByKeyInternal( vm, pathArg, Type.Dynamic );
   }
 
+  /**
+   * Function to build a metadata document for an instance.
+   *
+   * <p>The function must be applied with an active transaction for the
+   * instance.</p>
+   */
+  public static Function<VmInstance,MetadataDocument> document( ) {
+    return MetadataDocumentFunction.INSTANCE;
+  }
+
   private static String getByKeyInternal( final VmInstance vm, final String pathArg, final Type type ) {
+    return getByKeyInternal( pathArg, type, new Function<MetadataGroup,Map<String,String>>( ) {
+      @Override
+      public Map<String, String> apply( final MetadataGroup group ) {
+        return group.apply( vm );
+      }
+    } );
+  }
+
+  private static String getByKeyInternal( final String pathArg,
+                                          final Type type,
+                                          final Function<MetadataGroup,Map<String,String>> groupMetadata ) {
     final String path = MoreObjects.firstNonNull( pathArg, "" );
-    final String pathNoSlash;
+    final String pathNoSlash = noSlash( path );
     LOG.debug( "Servicing metadata request:" + path );
-    if ( path.endsWith( "/" ) ) {
-      pathNoSlash = path.substring( 0, path.length() -1 );
-    } else {
-      pathNoSlash = path;
-    }
+    final MetadataGroup group = group( path, type );
+    final Map<String,String> metadataMap =
+        Optional.fromNullable( groupMetadata.apply( group ) ).or( Collections.<String, String>emptyMap() );
+    final String value = metadataMap.get( path );
+    return value == null ? metadataMap.get( pathNoSlash ) : value;
+  }
 
+  private static String noSlash( final String path ) {
+    return path.endsWith( "/" ) ? path.substring( 0, path.length() -1 ) : path;
+  }
+
+  private static MetadataGroup group( final String path, final Type type ) {
+    final String pathNoSlash = noSlash( path );
     Optional<MetadataGroup> groupOption = Optional.absent();
     for ( final MetadataGroup metadataGroup : MetadataGroup.values() ) {
       if ( metadataGroup.isType( type ) && (
@@ -177,11 +206,7 @@ public class VmInstanceMetadata {
         groupOption = Optional.of( metadataGroup );
       }
     }
-    final MetadataGroup group = groupOption.or( MetadataGroup.core( type ) );
-    final Map<String,String> metadataMap =
-        Optional.fromNullable( group.apply( vm ) ).or( Collections.<String, String>emptyMap() );
-    final String value = metadataMap.get( path );
-    return value == null ? metadataMap.get( pathNoSlash ) : value;
+    return groupOption.or( MetadataGroup.core( type ) );
   }
 
   private static Map<String, String> getCoreMetadataMap( final VmInstance vm ) {
@@ -466,6 +491,128 @@ public class VmInstanceMetadata {
     return m;
   }
 
+  /**
+   * Precomputed metadata for an instance.
+   *
+   * <p>IAM metadata includes temporary credentials so is not precomputed.
+   * Network metadata for instances with network interfaces is not
+   * precomputed as interface changes do not change the instance version.</p>
+   */
+  public static final class MetadataDocument implements Comparable<MetadataDocument> {
+    private final String instanceId;
+    private final String privateAddress;
+    private final String publicAddress;
+    private final ImmutableMap<MetadataGroup,ImmutableMap<String,String>> groups;
+
+    private MetadataDocument( final VmInstance vm ) {
+      this(
+          vm.getInstanceId( ),
+          isAddressable( vm ) ? vm.getPrivateAddress( ) : null,
+          isAddressable( vm ) ? vm.getPublicAddress( ) : null,
+          precomputedGroups( vm ) );
+    }
+
+    private MetadataDocument( final String instanceId,
+                              @Nullable final String privateAddress,
+                              @Nullable final String publicAddress,
+                              final ImmutableMap<MetadataGroup,ImmutableMap<String,String>> groups ) {
+      this.instanceId = instanceId;
+      this.privateAddress = privateAddress;
+      this.publicAddress = publicAddress;
+      this.groups = groups;
+    }
+
+    private static boolean isAddressable( final VmInstance vm ) {
+      return VmInstance.VmState.PENDING.apply( vm ) || VmInstance.VmState.RUNNING.apply( vm );
+    }
+
+    private static ImmutableMap<MetadataGroup,ImmutableMap<String,String>> precomputedGroups( final VmInstance vm ) {
+      final ImmutableMap.Builder<MetadataGroup,ImmutableMap<String,String>> groupsBuilder = ImmutableMap.builder( );
+      for ( final MetadataGroup group : MetadataGroup.values( ) ) {
+        if ( group.isPrecomputed( vm ) ) try {
+          groupsBuilder.put( group, ImmutableMap.copyOf( Maps.filterValues( group.apply( vm ), Predicates.notNull( ) ) ) );
+        } catch ( final Exception e ) {
+          LOG.debug( "Error building " + group + " metadata for instance " + vm.getInstanceId( ), e );
+        }
+      }
+      return groupsBuilder.build( );
+    }
+
+    public String getInstanceId( ) {
+      return instanceId;
+    }
+
+    /**
+     * @return The private address if the instance is pending or running
+     */
+    @Nullable
+    public String getPrivateAddress( ) {
+      return privateAddress;
+    }
+
+    /**
+     * @return The public address if the instance is pending or running
+     */
+    @Nullable
+    public String getPublicAddress( ) {
+      return publicAddress;
+    }
+
+    /**
+     * Does this document provide values for the given path.
+     *
+     * @param metadataName The metadata name, e.g. meta-data or dynamic
+     * @param path The path within the metadata
+     * @return True if the document provides the path
+     */
+    public boolean provides( final String metadataName, final String path ) {
+      final Type type = type( metadataName );
+      return type != null && groups.containsKey( group( MoreObjects.firstNonNull( path, "" ), type ) );
+    }
+
+    /**
+     * Get a value from this document.
+     *
+     * @param metadataName The metadata name, e.g. meta-data or dynamic
+     * @param path The path within the metadata
+     * @return The value or null if not found
+     * @see #provides(String, String)
+     */
+    @Nullable
+    public String get( final String metadataName, final String path ) {
+      final Type type = type( metadataName );
+      return type == null ?
+          null :
+          getByKeyInternal( path, type, Functions.<MetadataGroup,Map<String,String>>forMap( groups, null ) );
+    }
+
+    @Override
+    public int compareTo( @Nonnull final MetadataDocument other ) {
+      return instanceId.compareTo( other.instanceId );
+    }
+
+    @Nullable
+    private static Type type( final String metadataName ) {
+      switch ( MoreObjects.firstNonNull( metadataName, "" ) ) {
+        case "meta-data":
+          return Type.Instance;
+        case "dynamic":
+          return Type.Dynamic;
+        default:
+          return null;
+      }
+    }
+  }
+
+  private enum MetadataDocumentFunction implements Function<VmInstance,MetadataDocument> {
+    INSTANCE;
+
+    @Override
+    public MetadataDocument apply( final VmInstance vm ) {
+      return new MetadataDocument( vm );
+    }
+  }
+
   private enum VolumeAttachmentComparator implements Comparator<VmVolumeAttachment> {
     INSTANCE;
 
@@ -488,6 +635,11 @@ public class VmInstanceMetadata {
       public Map<String, String> apply( final VmInstance instance ) {
         return addListingEntries( getNetworkMetadataMap( instance ) );
       }
+
+      @Override
+      protected boolean isPrecomputed( final VmInstance instance ) {
+        return instance.getNetworkInterfaces( ).isEmpty( );
+      }
     },
     BlockDeviceMapping( "block-device-mapping" ) {
       @Override
@@ -514,6 +666,11 @@ public class VmInstanceMetadata {
       protected boolean isPresent( final VmInstance instance ) {
         return !Strings.isNullOrEmpty( instance.getIamInstanceProfileArn() );
       }
+
+      @Override
+      protected boolean isPrecomputed( final VmInstance instance ) {
+        return false;
+      }
     },
     PublicKeys( "public-keys" ) {
       @Override
@@ -570,6 +727,10 @@ public class VmInstanceMetadata {
       return true;
     }
 
+    protected boolean isPrecomputed( final VmInstance instance ) {
+      return true;
+    }
+
     @Nonnull
     public static MetadataGroup core( final Type type ) {
       for ( final MetadataGroup group : values( ) ) {
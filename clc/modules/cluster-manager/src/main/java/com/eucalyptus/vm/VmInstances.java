@@ -632,6 +632,10 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
       changeListener = PropertyChangeListeners.CacheSpecListener.class )
   public static volatile String VM_METADATA_REQUEST_CACHE     = "maximumSize=250, expireAfterWrite=1s";
 
+  @ConfigurableField( description = "Interval in seconds between full reconciliation of precomputed instance metadata.",
+      initial = "60" )
+  public static volatile Integer VM_METADATA_DOCUMENT_RECONCILE_INTERVAL = 60;
+
   public static class SubdomainListener implements PropertyChangeListener {
     @Override
     public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
@@ -2486,6 +2490,7 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
 
   }
 
+  @EventListener.Scheduling( priority = 5, deadline = 10000L )
   public static class VmInstanceExpiredStateEventListener implements EventListener<ClockTick> {
 
     public static void register( ) {
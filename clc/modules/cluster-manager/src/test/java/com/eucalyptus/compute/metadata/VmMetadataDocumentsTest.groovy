@@ -0,0 +1,99 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.compute.metadata
+
+import com.eucalyptus.vm.VmInstanceMetadata.MetadataDocument
+import com.google.common.collect.ImmutableMap
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+/**
+ * Unit tests for instance metadata document indexing
+ */
+class VmMetadataDocumentsTest {
+
+  @Test
+  void testLookup() {
+    VmMetadataDocuments.DocumentIndex index = new VmMetadataDocuments.DocumentIndex( )
+    MetadataDocument document1 = document( 'i-00000001', '10.0.0.1', '1.1.1.1' )
+    MetadataDocument document2 = document( 'i-00000002', '10.0.0.2', '0.0.0.0' )
+    MetadataDocument document3 = document( 'i-00000003', null, null )
+    index.changed( 'id-1', null, document1 )
+    index.changed( 'id-2', null, document2 )
+    index.changed( 'id-3', null, document3 )
+
+    assertSame( 'instance 1', document1, index.lookupByInstanceId( 'i-00000001' ) )
+    assertSame( 'instance 3', document3, index.lookupByInstanceId( 'i-00000003' ) )
+    assertSame( 'private address', document1, index.lookupByAddress( '10.0.0.1' ) )
+    assertSame( 'public address', document1, index.lookupByAddress( '1.1.1.1' ) )
+    assertSame( 'private address 2', document2, index.lookupByAddress( '10.0.0.2' ) )
+    assertNull( 'default address', index.lookupByAddress( '0.0.0.0' ) )
+    assertNull( 'unknown address', index.lookupByAddress( '10.0.0.3' ) )
+    assertNull( 'unknown instance', index.lookupByInstanceId( 'i-00000004' ) )
+  }
+
+  @Test
+  void testPublicAddressPrecedence() {
+    VmMetadataDocuments.DocumentIndex index = new VmMetadataDocuments.DocumentIndex( )
+    MetadataDocument document1 = document( 'i-00000001', '10.0.0.1', '10.0.0.2' )
+    MetadataDocument document2 = document( 'i-00000002', '10.0.0.2', null )
+    index.changed( 'id-1', null, document1 )
+    index.changed( 'id-2', null, document2 )
+    assertSame( 'public address', document1, index.lookupByAddress( '10.0.0.2' ) )
+
+    index.changed( 'id-1', document1, null )
+    assertSame( 'private address', document2, index.lookupByAddress( '10.0.0.2' ) )
+  }
+
+  @Test
+  void testUpdate() {
+    VmMetadataDocuments.DocumentIndex index = new VmMetadataDocuments.DocumentIndex( )
+    MetadataDocument document1 = document( 'i-00000001', '10.0.0.1', '1.1.1.1' )
+    index.changed( 'id-1', null, document1 )
+
+    MetadataDocument updated = document( 'i-00000001', '10.0.0.1', '1.1.1.2' )
+    index.changed( 'id-1', document1, updated )
+    assertSame( 'instance', updated, index.lookupByInstanceId( 'i-00000001' ) )
+    assertSame( 'private address', updated, index.lookupByAddress( '10.0.0.1' ) )
+    assertSame( 'new public address', updated, index.lookupByAddress( '1.1.1.2' ) )
+    assertNull( 'old public address', index.lookupByAddress( '1.1.1.1' ) )
+
+    // address reused by another instance before removal of the original
+    MetadataDocument document2 = document( 'i-00000002', '10.0.0.1', null )
+    index.changed( 'id-2', null, document2 )
+    index.changed( 'id-1', updated, null )
+    assertNull( 'removed instance', index.lookupByInstanceId( 'i-00000001' ) )
+    assertNull( 'removed public address', index.lookupByAddress( '1.1.1.2' ) )
+    assertSame( 'reused private address', document2, index.lookupByAddress( '10.0.0.1' ) )
+  }
+
+  @Test
+  void testDocumentWithoutGroups() {
+    MetadataDocument document = document( 'i-00000001', '10.0.0.1', null )
+    assertFalse( 'provides core', document.provides( 'meta-data', 'instance-id' ) )
+    assertFalse( 'provides network', document.provides( 'meta-data', 'network/interfaces/macs/' ) )
+    assertFalse( 'provides user-data', document.provides( 'user-data', '' ) )
+  }
+
+  private static MetadataDocument document( String instanceId, String privateAddress, String publicAddress ) {
+    new MetadataDocument( instanceId, privateAddress, publicAddress, ImmutableMap.of( ) )
+  }
+}
@@ -60,6 +60,19 @@ class PrivateAddressAllocatorTest {
     verifyOneAvailableAddress( persistence.reset( ), allocator )
   }
 
+  @Test
+  void testBitmapAllocator( ) {
+    TestPrivateAddressPersistence persistence = new TestPrivateAddressPersistence( )
+    PrivateAddressAllocator allocator = new BitmapPrivateAddressAllocator( persistence, 10, 1, 3, 10, 60_000L, 1000 )
+    verifyBasicAllocation( persistence.reset( ), allocator )
+    verifyAddressesExhaustedFailure( persistence.reset( ), allocator )
+    verifyHugeAddressesExhaustedFailure( persistence.reset( ), allocator )
+    verifyEarlyRelease( persistence.reset( ), allocator )
+    verifyLazyAllocation( persistence.reset( ), allocator )
+    verifyFullRange( persistence.reset( ), allocator )
+    verifyOneAvailableAddress( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, 10, 1, 3, 10, 60_000L, 1000 ) )
+  }
+
   private void verifyBasicAllocation( TestPrivateAddressPersistence persistence,
                                       PrivateAddressAllocator allocator ) {
     String address = allocator.allocate( null, null, ranges( '10.0.0.0-10.0.0.10' ), 10, 0 )
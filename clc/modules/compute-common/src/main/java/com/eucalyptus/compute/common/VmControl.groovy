@@ -92,6 +92,7 @@ public class DescribeInstancesType extends VmControlMessage {
 public class DescribeInstancesResponseType extends VmControlMessage {
   
   ArrayList<ReservationInfoType> reservationSet = new ArrayList<ReservationInfoType>();
+  String nextToken
 }
 
 /** *******************************************************************************/
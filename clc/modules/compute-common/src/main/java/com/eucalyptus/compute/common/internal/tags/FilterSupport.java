@@ -42,6 +42,7 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.auth.login.AuthenticationException;
+import com.eucalyptus.compute.common.CloudMetadata;
 import com.eucalyptus.context.Context;
 import com.eucalyptus.context.Contexts;
 import com.eucalyptus.crypto.util.Timestamps;
@@ -65,6 +66,7 @@ import com.google.common.collect.Sets;
 public abstract class FilterSupport<RT> {
 
   private static final ConcurrentMap<SupportKey,FilterSupport> supportMap = Maps.newConcurrentMap();
+  private static final int MAX_INDEXED_TAG_RESOURCE_IDS = 1000;
 
   private final Class<RT> resourceClass;
   private final String qualifier;
@@ -652,8 +654,10 @@ public abstract class FilterSupport<RT> {
     // Construct database filter and aliases for tags
     boolean tagPresent = false;
     final List<Junction> tagJunctions = Lists.newArrayList();
+    final List<Map.Entry<String,Set<String>>> tagFilters = Lists.newArrayList();
     for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), isTagFilter() ) ) {
       tagPresent = true;
+      tagFilters.add( filter );
       final Junction disjunction = Restrictions.disjunction();
       final String filterName = filter.getKey();
       for ( final String value : filter.getValue() ) {
@@ -667,7 +671,10 @@ public abstract class FilterSupport<RT> {
       }
       tagJunctions.add( disjunction );
     }
-    if ( tagPresent ) conjunction.add( tagCriterion( accountId, tagJunctions ) );
+    if ( tagPresent ) {
+      final Criterion indexedCriterion = indexedTagCriterion( accountId, tagFilters );
+      conjunction.add( indexedCriterion != null ? indexedCriterion : tagCriterion( accountId, tagJunctions ) );
+    }
 
     return new Filter( aliases, conjunction, Predicates.and( and ), tagPresent );
   }
@@ -940,6 +947,21 @@ public abstract class FilterSupport<RT> {
     };
   }
 
+  /**
+   * Construct a predicate for single values from a filter pattern.
+   *
+   * @see #resourceValueMatcher(String)
+   */
+  static Predicate<String> valueMatcher( final String filterPattern ) {
+    final Predicate<Set<String>> matcher = resourceValueMatcher( filterPattern );
+    return new Predicate<String>() {
+      @Override
+      public boolean apply( final String value ) {
+        return matcher.apply( Collections.singleton( value ) );
+      }
+    };
+  }
+
   /**
    * Construct a criterion from a filter pattern.
    *
@@ -1017,6 +1039,61 @@ public abstract class FilterSupport<RT> {
     return conjunction;
   }
 
+  /**
+   * Build a criterion that matches resource identifiers resolved from the tag index
+   *
+   * @return The criterion or null if tag filters cannot be resolved using the index
+   */
+  @Nullable
+  private Criterion indexedTagCriterion( final String accountId,
+                                         final List<Map.Entry<String,Set<String>>> tagFilters ) {
+    if ( !CloudMetadata.class.isAssignableFrom( resourceClass ) ) {
+      return null;
+    }
+    @SuppressWarnings( "unchecked" )
+    final TagSupport tagSupport = TagSupport.forResourceClass( (Class<? extends CloudMetadata>) resourceClass );
+    final TagIndex.Snapshot tagIndex = tagSupport == null ? null : TagIndex.snapshot( );
+    if ( tagIndex == null ) {
+      return null;
+    }
+
+    Set<String> resourceIds = null;
+    for ( final Map.Entry<String,Set<String>> filter : tagFilters ) {
+      final String filterName = filter.getKey();
+      final Set<String> filterResourceIds = Sets.newHashSet();
+      for ( final String value : filter.getValue() ) {
+        if ( "tag-key".equals( filterName ) ) {
+          filterResourceIds.addAll( tagIndex.getResourceIds( accountId, value, true, null ) );
+        } else if ( "tag-value".equals( filterName ) ) {
+          filterResourceIds.addAll( tagIndex.getResourceIds( accountId, null, false, value ) );
+        } else {
+          filterResourceIds.addAll( tagIndex.getResourceIds( accountId, filterName.substring(4), false, value ) );
+        }
+      }
+      if ( resourceIds == null ) {
+        resourceIds = filterResourceIds;
+      } else {
+        resourceIds.retainAll( filterResourceIds );
+      }
+    }
+
+    final Set<String> identifierPrefixes = tagSupport.getIdentifierPrefixes();
+    final List<String> typeResourceIds = Lists.newArrayList();
+    for ( final String resourceId : resourceIds ) {
+      final int prefixEnd = resourceId.indexOf( '-' );
+      if ( prefixEnd < 0 || identifierPrefixes.contains( resourceId.substring( 0, prefixEnd ) ) ) {
+        typeResourceIds.add( resourceId );
+      }
+    }
+    if ( typeResourceIds.size() > MAX_INDEXED_TAG_RESOURCE_IDS ) {
+      return null; // sub-select performs better than a large list
+    }
+
+    return typeResourceIds.isEmpty() ?
+        Restrictions.not( Restrictions.conjunction() ) : // always false
+        Restrictions.in( tagSupport.getResourceClassIdField(), typeResourceIds );
+  }
+
   /**
    * Build a restriction for a tag key and/or value.
    */
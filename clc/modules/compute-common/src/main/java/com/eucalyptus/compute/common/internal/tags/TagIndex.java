@@ -0,0 +1,395 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.compute.common.internal.tags;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import com.eucalyptus.auth.principal.AccountFullName;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.entities.EntityCache;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory index of tags by resource and by key and value for each account.
+ *
+ * <p>The index is maintained from change notifications for a cache of all
+ * tags. Tag changes committed in this process (including deletion of tags
+ * along with their resource) are seen on the next use, and only the indexes
+ * for accounts with changed tags are rebuilt. The periodic full reconcile of
+ * the cache, which picks up any other changes, is performed in the
+ * background and never on the request path.</p>
+ */
+@ConfigurableClass(
+    root = "cloud",
+    description = "Properties for compute tag indexing."
+)
+public class TagIndex {
+
+  private static final Logger logger = Logger.getLogger( TagIndex.class );
+
+  private static final long INDEX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+
+  @ConfigurableField(
+      initial = "true",
+      description = "Use the in-memory tag index for tag lookup and tag filtering"
+  )
+  public static volatile Boolean TAG_INDEX_ENABLED = true;
+
+  @ConfigurableField(
+      initial = "60",
+      description = "Interval in seconds between full reconciliation of the tag index with the database"
+  )
+  public static volatile Integer TAG_INDEX_RECONCILE_INTERVAL = 60;
+
+  private static final Index index = new Index( );
+
+  @SuppressWarnings( "unchecked" )
+  private static final EntityCache<Tag,IndexedTag> tagCache =
+      new EntityCache<Tag,IndexedTag>( new Tag( ), TagToIndexedTag.INSTANCE ).changeNotified( new Supplier<Long>( ) {
+        @Override
+        public Long get( ) {
+          return TimeUnit.SECONDS.toMillis( TAG_INDEX_RECONCILE_INTERVAL );
+        }
+      } ).changeListener( index );
+
+  private static volatile long lastUsed;
+
+  /**
+   * Get a snapshot of the tag index, applying any notified tag changes.
+   *
+   * <p>While a reconcile is running in the background the current snapshot
+   * is returned without applying changes, so lookups do not wait for it.</p>
+   *
+   * @return The snapshot or null if the index is disabled or not yet built
+   */
+  @Nullable
+  public static Snapshot snapshot( ) {
+    if ( !Boolean.TRUE.equals( TAG_INDEX_ENABLED ) ) {
+      return null;
+    }
+    lastUsed = System.currentTimeMillis( );
+    try {
+      if ( index.isBuilt( ) ) {
+        tagCache.refreshChangedGeneration( );
+        return index.snapshot( );
+      }
+    } catch ( final Exception e ) {
+      logger.error( "Error refreshing tag index: " + e.getMessage( ) );
+      logger.debug( e, e );
+    }
+    return null;
+  }
+
+  /**
+   * Refresh the tag cache, reconciling with the database when due.
+   */
+  private static void refresh( ) {
+    try {
+      tagCache.refreshGeneration( );
+      index.setBuilt( true );
+    } catch ( final Exception e ) {
+      logger.error( "Error reconciling tag index: " + e.getMessage( ) );
+      logger.debug( e, e );
+    }
+  }
+
+  /**
+   * Per account tag indexes updated from tag cache changes.
+   *
+   * <p>Changes are applied to the tags for the account and the index for each
+   * changed account is rebuilt when the next snapshot is taken.</p>
+   */
+  static final class Index implements EntityCache.ChangeListener<IndexedTag> {
+    private final Map<String,Map<String,IndexedTag>> tagsByAccount = Maps.newHashMap( );
+    private final Set<String> changedAccounts = Sets.newHashSet( );
+    private volatile boolean built;
+    private Snapshot snapshot = new Snapshot( ImmutableMap.<String,AccountTags>of( ) );
+
+    @Override
+    public synchronized void changed( final String id,
+                                      @Nullable final IndexedTag previous,
+                                      @Nullable final IndexedTag current ) {
+      if ( previous != null && previous.accountNumber != null ) {
+        final Map<String,IndexedTag> tags = tagsByAccount.get( previous.accountNumber );
+        if ( tags != null && tags.remove( id ) != null ) {
+          changedAccounts.add( previous.accountNumber );
+          if ( tags.isEmpty( ) ) {
+            tagsByAccount.remove( previous.accountNumber );
+          }
+        }
+      }
+      if ( current != null && current.isIndexable( ) ) {
+        Map<String,IndexedTag> tags = tagsByAccount.get( current.accountNumber );
+        if ( tags == null ) {
+          tagsByAccount.put( current.accountNumber, tags = Maps.newHashMap( ) );
+        }
+        tags.put( id, current );
+        changedAccounts.add( current.accountNumber );
+      }
+    }
+
+    boolean isBuilt( ) {
+      return built;
+    }
+
+    void setBuilt( final boolean built ) {
+      this.built = built;
+    }
+
+    /**
+     * Get a snapshot, rebuilding the indexes for any changed accounts.
+     */
+    synchronized Snapshot snapshot( ) {
+      if ( !changedAccounts.isEmpty( ) ) {
+        final Map<String,AccountTags> accountTags = Maps.newHashMap( snapshot.accountTags );
+        for ( final String accountNumber : changedAccounts ) {
+          final Map<String,IndexedTag> tags = tagsByAccount.get( accountNumber );
+          if ( tags == null ) {
+            accountTags.remove( accountNumber );
+          } else {
+            final AccountTags.Builder builder = new AccountTags.Builder( );
+            for ( final IndexedTag tag : Ordering.natural( ).sortedCopy( tags.values( ) ) ) {
+              builder.add( tag );
+            }
+            accountTags.put( accountNumber, builder.build( ) );
+          }
+        }
+        changedAccounts.clear( );
+        snapshot = new Snapshot( ImmutableMap.copyOf( accountTags ) );
+      }
+      return snapshot;
+    }
+  }
+
+  public static class TagIndexEventListener implements EventListener<ClockTick> {
+    private final AtomicBoolean refreshing = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new TagIndexEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( Bootstrap.isOperational( ) && refreshing.compareAndSet( false, true ) ) {
+        try {
+          if ( Boolean.TRUE.equals( TAG_INDEX_ENABLED ) &&
+              ( lastUsed + INDEX_IDLE_MILLIS ) > System.currentTimeMillis( ) ) {
+            refresh( );
+          } else {
+            // not reconciled while unused, so rebuild before next use
+            index.setBuilt( false );
+          }
+        } finally {
+          refreshing.set( false );
+        }
+      }
+    }
+  }
+
+  /**
+   * Immutable view of the tag index.
+   */
+  public static final class Snapshot {
+    private final Map<String,AccountTags> accountTags;
+
+    private Snapshot( final Map<String,AccountTags> accountTags ) {
+      this.accountTags = accountTags;
+    }
+
+    /**
+     * Add the tags for each resource in the given map.
+     *
+     * <p>Tags are added ordered by key.</p>
+     *
+     * @param accountNumber The account for the tags
+     * @param tagMap The map of resource identifiers to tag lists to populate
+     */
+    public void populateResourceTagMap( @Nonnull final String accountNumber,
+                                        @Nonnull final Map<String,List<Tag>> tagMap ) {
+      final AccountTags tags = accountTags.get( accountNumber );
+      if ( tags != null ) {
+        final AccountFullName owner = AccountFullName.getInstance( accountNumber );
+        for ( final Map.Entry<String,List<Tag>> entry : tagMap.entrySet( ) ) {
+          for ( final IndexedTag tag : tags.tagsByResource.get( entry.getKey( ) ) ) {
+            entry.getValue( ).add( tag.toTag( owner ) );
+          }
+        }
+      }
+    }
+
+    /**
+     * Get the identifiers of resources with tags matching the given key and value.
+     *
+     * @param accountNumber The account for the tags
+     * @param key The tag key, null for any key
+     * @param keyWildcards True if the key is a filter pattern
+     * @param value The tag value filter pattern, null for any value
+     * @return The matching resource identifiers
+     */
+    @Nonnull
+    public Set<String> getResourceIds( @Nonnull final String accountNumber,
+                                       @Nullable final String key,
+                                       final boolean keyWildcards,
+                                       @Nullable final String value ) {
+      final AccountTags tags = accountTags.get( accountNumber );
+      if ( tags == null ) {
+        return Collections.emptySet( );
+      }
+      final Set<String> resourceIds = Sets.newHashSet( );
+      final Predicate<String> valueMatcher = value == null ? null : FilterSupport.valueMatcher( value );
+      if ( key != null && !keyWildcards ) {
+        addResourceIds( resourceIds, tags.resourcesByKeyAndValue.get( key ), valueMatcher );
+      } else {
+        final Predicate<String> keyMatcher = key == null ? null : FilterSupport.valueMatcher( key );
+        for ( final Map.Entry<String,SetMultimap<String,String>> entry : tags.resourcesByKeyAndValue.entrySet( ) ) {
+          if ( keyMatcher == null || keyMatcher.apply( entry.getKey( ) ) ) {
+            addResourceIds( resourceIds, entry.getValue( ), valueMatcher );
+          }
+        }
+      }
+      return resourceIds;
+    }
+
+    private static void addResourceIds( final Set<String> resourceIds,
+                                        @Nullable final SetMultimap<String,String> resourcesByValue,
+                                        @Nullable final Predicate<String> valueMatcher ) {
+      if ( resourcesByValue != null ) {
+        if ( valueMatcher == null ) {
+          resourceIds.addAll( resourcesByValue.values( ) );
+        } else {
+          for ( final String tagValue : resourcesByValue.keySet( ) ) {
+            if ( valueMatcher.apply( tagValue ) ) {
+              resourceIds.addAll( resourcesByValue.get( tagValue ) );
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static final class AccountTags {
+    private final ListMultimap<String,IndexedTag> tagsByResource;
+    private final Map<String,SetMultimap<String,String>> resourcesByKeyAndValue;
+
+    private AccountTags( final ListMultimap<String,IndexedTag> tagsByResource,
+                         final Map<String,SetMultimap<String,String>> resourcesByKeyAndValue ) {
+      this.tagsByResource = tagsByResource;
+      this.resourcesByKeyAndValue = resourcesByKeyAndValue;
+    }
+
+    private static final class Builder {
+      private final ImmutableListMultimap.Builder<String,IndexedTag> tagsByResource = ImmutableListMultimap.builder( );
+      private final Map<String,ImmutableSetMultimap.Builder<String,String>> resourcesByKeyAndValue = Maps.newHashMap( );
+
+      private void add( final IndexedTag tag ) {
+        tagsByResource.put( tag.resourceId, tag );
+        ImmutableSetMultimap.Builder<String,String> resourcesByValue = resourcesByKeyAndValue.get( tag.key );
+        if ( resourcesByValue == null ) {
+          resourcesByKeyAndValue.put( tag.key, resourcesByValue = ImmutableSetMultimap.builder( ) );
+        }
+        resourcesByValue.put( tag.value, tag.resourceId );
+      }
+
+      private AccountTags build( ) {
+        final ImmutableMap.Builder<String,SetMultimap<String,String>> keyAndValueBuilder = ImmutableMap.builder( );
+        for ( final Map.Entry<String,ImmutableSetMultimap.Builder<String,String>> entry : resourcesByKeyAndValue.entrySet( ) ) {
+          keyAndValueBuilder.put( entry.getKey( ), entry.getValue( ).build( ) );
+        }
+        return new AccountTags( tagsByResource.build( ), keyAndValueBuilder.build( ) );
+      }
+    }
+  }
+
+  /**
+   * Immutable tag information, ordered by account, resource and key.
+   */
+  static final class IndexedTag implements Comparable<IndexedTag> {
+    private final String accountNumber;
+    private final String resourceId;
+    private final String key;
+    private final String value;
+
+    IndexedTag( final String accountNumber,
+                final String resourceId,
+                final String key,
+                final String value ) {
+      this.accountNumber = accountNumber;
+      this.resourceId = resourceId;
+      this.key = key;
+      this.value = value;
+    }
+
+    private boolean isIndexable( ) {
+      return accountNumber != null && resourceId != null && key != null;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Tag toTag( final AccountFullName owner ) {
+      return new Tag( null, Functions.constant( resourceId ), owner, key, value );
+    }
+
+    @Override
+    public int compareTo( @Nonnull final IndexedTag other ) {
+      return ComparisonChain.start( )
+          .compare( accountNumber, other.accountNumber, Ordering.natural( ).nullsFirst( ) )
+          .compare( resourceId, other.resourceId, Ordering.natural( ).nullsFirst( ) )
+          .compare( key, other.key, Ordering.natural( ).nullsFirst( ) )
+          .result( );
+    }
+  }
+
+  private enum TagToIndexedTag implements Function<Tag,IndexedTag> {
+    INSTANCE;
+
+    @Override
+    public IndexedTag apply( final Tag tag ) {
+      return new IndexedTag(
+          tag.getOwnerAccountNumber( ),
+          tag.getResourceId( ),
+          tag.getKey( ),
+          Objects.toString( tag.getValue( ), "" ) );
+    }
+  }
+}
@@ -144,7 +144,10 @@ public abstract class TagSupport {
     for ( final String id : identifiers ) {
       tagMap.put( id, Lists.<Tag>newArrayList() );
     }
-    if ( !tagMap.isEmpty() ) {
+    final TagIndex.Snapshot tagIndex = tagMap.isEmpty() ? null : TagIndex.snapshot( );
+    if ( tagIndex != null ) {
+      tagIndex.populateResourceTagMap( owner.getAccountNumber( ), tagMap );
+    } else if ( !tagMap.isEmpty() ) {
       final Tag example = example( owner );
       final Criterion idRestriction = identifiersSize < 1000 ?
           Property.forName( tagClassResourceField ).in( DetachedCriteria.forClass( resourceClass )
@@ -73,6 +73,7 @@ import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Example;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projection;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.compute.common.CloudMetadata;
@@ -80,6 +81,7 @@ import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.util.CollectionUtils;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.auth.principal.OwnerFullName;
 import com.eucalyptus.util.RestrictedTypes;
 import com.google.common.base.Function;
@@ -230,6 +232,68 @@ public class VmInstances {
     );
   }
 
+  /**
+   * List a page of instances in any state that match the given parameters.
+   *
+   * <P>Instances are ordered by reservation then instance identifier and the
+   * page starts after the given position (exclusive). The result is not
+   * filtered by owner or privileges so that the last entry can be used as
+   * the position for the following page. When aliases join collections the
+   * result may contain adjacent duplicate entries.</P>
+   *
+   * <P>A page with fewer entries than the page size is the last page.</P>
+   *
+   * <P>The caller must have an active transaction for the entity.</P>
+   *
+   * @param ownerFullName The owning user or account
+   * @param criterion Additional restrictions for the query
+   * @param aliases Any aliases necessary for the given criterion
+   * @param afterPosition The reservation and instance identifiers to list after, null for the first page
+   * @param pageSize The maximum number of rows to query
+   * @return The page of instances
+   */
+  @SuppressWarnings( "unchecked" )
+  public static List<VmInstance> listPage( @Nullable final OwnerFullName ownerFullName,
+                                           final Criterion criterion,
+                                           final Map<String,String> aliases,
+                                           @Nullable final Pair<String,String> afterPosition,
+                                           final int pageSize ) {
+    final Criteria query = Entities.createCriteria( VmInstance.class )
+        .setReadOnly( true )
+        .setFetchSize( pageSize )
+        .setMaxResults( pageSize )
+        .add( Example.create( VmInstance.named( ownerFullName, null ) ) )
+        .add( criterion );
+    for ( final Order order : pageOrder( ) ) {
+      query.addOrder( order );
+    }
+    if ( afterPosition != null ) {
+      query.add( pageAfter( afterPosition ) );
+    }
+    for ( final Map.Entry<String,String> aliasEntry : aliases.entrySet( ) ) {
+      query.createAlias( aliasEntry.getKey( ), aliasEntry.getValue( ) );
+    }
+    return ( List<VmInstance> ) query.list( );
+  }
+
+  /**
+   * The order for pages of instances, by reservation then instance identifier.
+   */
+  static List<Order> pageOrder( ) {
+    return Lists.newArrayList( Order.asc( "vmId.reservationId" ), Order.asc( "displayName" ) );
+  }
+
+  /**
+   * Restriction to instances after the given position in page order.
+   */
+  static Criterion pageAfter( final Pair<String,String> position ) {
+    return Restrictions.or(
+        Restrictions.gt( "vmId.reservationId", position.getLeft( ) ),
+        Restrictions.and(
+            Restrictions.eq( "vmId.reservationId", position.getLeft( ) ),
+            Restrictions.gt( "displayName", position.getRight( ) ) ) );
+  }
+
   /**
    * List instances in any state that match the given parameters.
    */
@@ -0,0 +1,94 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.compute.common.internal.tags
+
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+/**
+ * Unit tests for the tag index
+ */
+class TagIndexTest {
+
+  @Test
+  void testIndexTags() {
+    TagIndex.Index index = new TagIndex.Index( )
+    index.changed( 'tag-1', null, tag( '000000000001', 'i-00000001', 'Name', 'web' ) )
+    index.changed( 'tag-2', null, tag( '000000000001', 'i-00000002', 'Name', 'db' ) )
+    index.changed( 'tag-3', null, tag( '000000000001', 'i-00000002', 'Role', 'primary' ) )
+    index.changed( 'tag-4', null, tag( '000000000002', 'i-00000003', 'Name', 'web' ) )
+
+    TagIndex.Snapshot snapshot = index.snapshot( )
+    assertEquals( 'key', [ 'i-00000001', 'i-00000002' ] as Set, snapshot.getResourceIds( '000000000001', 'Name', false, null ) )
+    assertEquals( 'key and value', [ 'i-00000001' ] as Set, snapshot.getResourceIds( '000000000001', 'Name', false, 'web' ) )
+    assertEquals( 'value', [ 'i-00000002' ] as Set, snapshot.getResourceIds( '000000000001', null, false, 'primary' ) )
+    assertEquals( 'wildcards', [ 'i-00000002' ] as Set, snapshot.getResourceIds( '000000000001', 'R*', true, 'pr?mary' ) )
+    assertEquals( 'other account', [ 'i-00000003' ] as Set, snapshot.getResourceIds( '000000000002', 'Name', false, 'web' ) )
+    assertEquals( 'unknown account', [ ] as Set, snapshot.getResourceIds( '000000000003', 'Name', false, null ) )
+    assertSame( 'unchanged snapshot', snapshot, index.snapshot( ) )
+  }
+
+  @Test
+  void testIncrementalUpdate() {
+    TagIndex.Index index = new TagIndex.Index( )
+    index.changed( 'tag-1', null, tag( '000000000001', 'i-00000001', 'Name', 'web' ) )
+    index.changed( 'tag-2', null, tag( '000000000002', 'i-00000002', 'Name', 'db' ) )
+    TagIndex.Snapshot snapshot1 = index.snapshot( )
+
+    index.changed( 'tag-1', tag( '000000000001', 'i-00000001', 'Name', 'web' ), tag( '000000000001', 'i-00000001', 'Name', 'app' ) )
+    TagIndex.Snapshot snapshot2 = index.snapshot( )
+    assertNotSame( 'changed snapshot', snapshot1, snapshot2 )
+    assertEquals( 'updated value', [ 'i-00000001' ] as Set, snapshot2.getResourceIds( '000000000001', 'Name', false, 'app' ) )
+    assertEquals( 'previous value', [ ] as Set, snapshot2.getResourceIds( '000000000001', 'Name', false, 'web' ) )
+    assertEquals( 'previous snapshot value', [ 'i-00000001' ] as Set, snapshot1.getResourceIds( '000000000001', 'Name', false, 'web' ) )
+    assertSame( 'unchanged account', snapshot1.accountTags[ '000000000002' ], snapshot2.accountTags[ '000000000002' ] )
+    assertNotSame( 'changed account', snapshot1.accountTags[ '000000000001' ], snapshot2.accountTags[ '000000000001' ] )
+  }
+
+  @Test
+  void testRemoveTags() {
+    TagIndex.Index index = new TagIndex.Index( )
+    index.changed( 'tag-1', null, tag( '000000000001', 'i-00000001', 'Name', 'web' ) )
+    index.changed( 'tag-2', null, tag( '000000000001', 'i-00000002', 'Name', 'db' ) )
+    index.snapshot( )
+
+    index.changed( 'tag-1', tag( '000000000001', 'i-00000001', 'Name', 'web' ), null )
+    assertEquals( 'removed tag', [ 'i-00000002' ] as Set, index.snapshot( ).getResourceIds( '000000000001', 'Name', false, null ) )
+
+    index.changed( 'tag-2', tag( '000000000001', 'i-00000002', 'Name', 'db' ), null )
+    TagIndex.Snapshot snapshot = index.snapshot( )
+    assertEquals( 'removed all tags', [ ] as Set, snapshot.getResourceIds( '000000000001', 'Name', false, null ) )
+    assertFalse( 'account indexed', snapshot.accountTags.containsKey( '000000000001' ) )
+  }
+
+  @Test
+  void testUnindexableTags() {
+    TagIndex.Index index = new TagIndex.Index( )
+    index.changed( 'tag-1', null, tag( '000000000001', null, 'Name', 'web' ) )
+    index.changed( 'tag-2', null, tag( null, 'i-00000002', 'Name', 'web' ) )
+    index.changed( 'tag-3', null, tag( '000000000001', 'i-00000003', null, 'web' ) )
+    assertEquals( 'resources', [ ] as Set, index.snapshot( ).getResourceIds( '000000000001', null, false, null ) )
+  }
+
+  private static TagIndex.IndexedTag tag( String accountNumber, String resourceId, String key, String value ) {
+    new TagIndex.IndexedTag( accountNumber, resourceId, key, value )
+  }
+}
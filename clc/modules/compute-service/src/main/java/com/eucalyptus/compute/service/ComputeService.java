@@ -22,6 +22,7 @@ package com.eucalyptus.compute.service;
 import static com.eucalyptus.util.RestrictedTypes.getIamActionByMessageType;
 import static com.eucalyptus.util.Strings.append;
 import static com.eucalyptus.util.Strings.prepend;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -148,10 +149,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.io.BaseEncoding;
 
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.BaseMessages;
@@ -166,6 +166,10 @@ import javaslang.control.Option;
 public class ComputeService {
   private static Logger LOG = Logger.getLogger( ComputeService.class );
 
+  private static final int DESCRIBE_INSTANCES_PAGE_SIZE = 500;
+  private static final int DESCRIBE_INSTANCES_MIN_RESULTS = 5;
+  private static final int DESCRIBE_INSTANCES_MAX_RESULTS = 1000;
+
   private final DhcpOptionSets dhcpOptionSets;
   private final InternetGateways internetGateways;
   private final NatGateways natGateways;
@@ -444,9 +448,22 @@ public class ComputeService {
     final DescribeInstancesResponseType reply = msg.getReply( );
     Context ctx = Contexts.lookup( );
     boolean showAll = msg.getInstancesSet( ).remove( "verbose" ) || !msg.getInstancesSet( ).isEmpty( );
-    final Multimap<String, RunningInstancesItemType> instanceMap = TreeMultimap.create();
-    final Map<String, ReservationInfoType> reservations = Maps.newHashMap();
     final Collection<String> identifiers = normalizeInstanceIdentifiers( msg.getInstancesSet() );
+    final Integer maxResults = msg.getMaxResults( );
+    if ( maxResults != null ) {
+      if ( !identifiers.isEmpty( ) ) {
+        throw new ComputeServiceClientException(
+            "InvalidParameterCombination",
+            "The parameter instancesSet cannot be used with the parameter maxResults" );
+      }
+      if ( maxResults < DESCRIBE_INSTANCES_MIN_RESULTS || maxResults > DESCRIBE_INSTANCES_MAX_RESULTS ) {
+        throw new ComputeServiceClientException(
+            "InvalidParameterValue",
+            "Value ( " + maxResults + " ) for parameter maxResults is invalid. Expecting a value between " +
+                DESCRIBE_INSTANCES_MIN_RESULTS + " and " + DESCRIBE_INSTANCES_MAX_RESULTS + "." );
+      }
+    }
+    final Pair<String,String> startPosition = parseInstancesNextToken( msg.getNextToken( ) );
     final Filter filter = Filters.generateFor( msg.getFilterSet(), VmInstance.class )
         .withOptionalInternalFilter( "instance-id", identifiers )
         .generate();
@@ -459,32 +476,68 @@ public class ComputeService {
     final OwnerFullName ownerFullName = ( ctx.isAdministrator( ) && showAll )
         ? null
         : ctx.getUserFullName( ).asAccountFullName( );
+    final Predicate<VmInstance> instancePredicate = Predicates.<VmInstance>and(
+        RestrictedTypes.filterByOwner( ownerFullName ),
+        new TrackingPredicate<VmInstance>( identifiers ),
+        requestedAndAccessible );
+    final Criterion criterion =
+        persistenceFilter.asCriterionWithConjunction( Restrictions.not( VmInstance.criterion( VmInstance.VmState.BURIED ) ) );
+    final AccountFullName tagOwner = AccountFullName.getInstance( ctx.getAccountNumber( ) );
+    final int pageSize = maxResults == null ?
+        DESCRIBE_INSTANCES_PAGE_SIZE :
+        Math.min( DESCRIBE_INSTANCES_PAGE_SIZE, maxResults + 1 );
     try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( VmInstance.class ) ) {
-      final List<VmInstance> instances = VmInstances.list(
-          ownerFullName,
-          persistenceFilter.asCriterionWithConjunction( Restrictions.not( VmInstance.criterion( VmInstance.VmState.BURIED ) ) ),
-          persistenceFilter.getAliases( ),
-          Predicates.and( new TrackingPredicate<VmInstance>( identifiers ), requestedAndAccessible ) );
-      errorIfNotFound( "InvalidInstanceID.NotFound", "instance ID", identifiers );
-      final Map<String,List<Tag>> tagsMap = TagSupport.forResourceClass( VmInstance.class )
-          .getResourceTagMap( AccountFullName.getInstance( ctx.getAccountNumber() ),
-              Iterables.transform( instances, CloudMetadatas.toDisplayName() ) );
-
-      for ( final VmInstance vm : instances ) {
-        if ( instanceMap.put( vm.getReservationId( ), VmInstance.transform( vm ) ) && !reservations.containsKey( vm.getReservationId( ) ) ) {
-          reservations.put( vm.getReservationId( ), TypeMappers.transform( vm, ReservationInfoType.class ) );
+      // Instances are read in pages ordered by reservation so each reservation
+      // can be completed as it is read and the session cleared between pages.
+      // The reply holds every instance returned, so without MaxResults it is
+      // still proportional to the number of matching instances.
+      Pair<String,String> pagePosition = startPosition;
+      Pair<String,String> replyPosition = null;
+      ReservationInfoType reservation = null;
+      String lastInstanceId = null;
+      int count = 0;
+      boolean truncated = false;
+      pages:
+      while ( true ) {
+        final List<VmInstance> page = VmInstances.listPage(
+            ownerFullName, criterion, persistenceFilter.getAliases( ), pagePosition, pageSize );
+        final List<VmInstance> instances = Lists.newArrayList( );
+        for ( final VmInstance vm : Iterables.filter( page, instancePredicate ) ) {
+          if ( !vm.getDisplayName( ).equals( lastInstanceId ) ) {
+            instances.add( vm );
+            lastInstanceId = vm.getDisplayName( );
+          }
         }
-      }
-      List<ReservationInfoType> replyReservations = reply.getReservationSet( );
-      for ( ReservationInfoType r : reservations.values( ) ) {
-        Collection<RunningInstancesItemType> instanceSet = instanceMap.get( r.getReservationId( ) );
-        if ( !instanceSet.isEmpty( ) ) {
-          for ( final RunningInstancesItemType instancesItemType : instanceSet ) {
-            Tags.addFromTags( instancesItemType.getTagSet(), ResourceTag.class, tagsMap.get( instancesItemType.getInstanceId() ) );
+        final Map<String,List<Tag>> tagsMap = instances.isEmpty( ) ?
+            Collections.<String,List<Tag>>emptyMap( ) :
+            TagSupport.forResourceClass( VmInstance.class ).getResourceTagMap(
+                tagOwner,
+                Iterables.transform( instances, CloudMetadatas.toDisplayName() ) );
+        for ( final VmInstance vm : instances ) {
+          if ( maxResults != null && count == maxResults ) {
+            truncated = true;
+            break pages;
           }
-          r.getInstancesSet( ).addAll( instanceSet );
-          replyReservations.add( r );
+          final RunningInstancesItemType instancesItemType = VmInstance.transform( vm );
+          Tags.addFromTags( instancesItemType.getTagSet(), ResourceTag.class, tagsMap.get( instancesItemType.getInstanceId() ) );
+          if ( reservation == null || !reservation.getReservationId( ).equals( vm.getReservationId( ) ) ) {
+            reservation = TypeMappers.transform( vm, ReservationInfoType.class );
+            reply.getReservationSet( ).add( reservation );
+          }
+          reservation.getInstancesSet( ).add( instancesItemType );
+          replyPosition = Pair.pair( vm.getReservationId( ), vm.getDisplayName( ) );
+          count++;
+        }
+        if ( page.size( ) < pageSize ) {
+          break;
         }
+        final VmInstance last = page.get( page.size( ) - 1 );
+        pagePosition = Pair.pair( last.getReservationId( ), last.getDisplayName( ) );
+        Entities.clearSession( VmInstance.class );
+      }
+      errorIfNotFound( "InvalidInstanceID.NotFound", "instance ID", identifiers );
+      if ( truncated ) {
+        reply.setNextToken( toInstancesNextToken( replyPosition ) );
       }
     } catch ( final Exception e ) {
       Exceptions.findAndRethrow( e, ComputeServiceException.class );
@@ -1843,6 +1896,28 @@ public class ComputeService {
     }
   }
 
+  static String toInstancesNextToken( final Pair<String,String> position ) {
+    return BaseEncoding.base64Url( ).encode(
+        ( position.getLeft( ) + '/' + position.getRight( ) ).getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  @Nullable
+  static Pair<String,String> parseInstancesNextToken( @Nullable final String nextToken ) throws EucalyptusCloudException {
+    if ( Strings.isNullOrEmpty( nextToken ) ) {
+      return null;
+    }
+    try {
+      final String position = new String( BaseEncoding.base64Url( ).decode( nextToken ), StandardCharsets.UTF_8 );
+      final int separator = position.indexOf( '/' );
+      if ( separator > 0 && separator < position.length( ) - 1 ) {
+        return Pair.pair( position.substring( 0, separator ), position.substring( separator + 1 ) );
+      }
+    } catch ( final IllegalArgumentException e ) {
+      // invalid token
+    }
+    throw new ComputeServiceClientException( "InvalidParameterValue", "Invalid value for parameter nextToken" );
+  }
+
   private static List<String> normalizeInstanceIdentifiers( final List<String> identifiers ) throws EucalyptusCloudException {
     try {
       return ResourceIdentifiers.normalize( VmInstance.ID_PREFIX, identifiers );
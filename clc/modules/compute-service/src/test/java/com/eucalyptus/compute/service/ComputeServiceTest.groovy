@@ -0,0 +1,61 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.compute.service
+
+import com.eucalyptus.util.Pair
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+
+class ComputeServiceTest {
+
+  @Test
+  void testInstancesNextTokenRoundTrip( ) {
+    Pair<String,String> position = Pair.pair( 'r-0123abcd', 'i-4567ef01' )
+    String token = ComputeService.toInstancesNextToken( position )
+    assertEquals( 'token', 'ci0wMTIzYWJjZC9pLTQ1NjdlZjAx', token )
+    Pair<String,String> parsed = ComputeService.parseInstancesNextToken( token )
+    assertEquals( 'reservation', 'r-0123abcd', parsed.left )
+    assertEquals( 'instance', 'i-4567ef01', parsed.right )
+  }
+
+  @Test
+  void testNoInstancesNextToken( ) {
+    assertNull( 'null token', ComputeService.parseInstancesNextToken( null ) )
+    assertNull( 'empty token', ComputeService.parseInstancesNextToken( '' ) )
+  }
+
+  @Test(expected = ComputeServiceClientException)
+  void testInstancesNextTokenInvalidEncoding( ) {
+    ComputeService.parseInstancesNextToken( 'not*base64' )
+  }
+
+  @Test(expected = ComputeServiceClientException)
+  void testInstancesNextTokenMissingInstance( ) {
+    ComputeService.parseInstancesNextToken( ComputeService.toInstancesNextToken( Pair.pair( 'r-0123abcd', '' ) ) )
+  }
+
+  @Test(expected = ComputeServiceClientException)
+  void testInstancesNextTokenMissingSeparator( ) {
+    ComputeService.parseInstancesNextToken( 'ci0wMTIzYWJjZA==' )
+  }
+}
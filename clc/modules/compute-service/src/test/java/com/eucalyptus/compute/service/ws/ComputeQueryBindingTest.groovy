@@ -43,6 +43,7 @@ import com.eucalyptus.ws.protocol.QueryBindingTestSupport
 import com.google.common.base.Splitter
 import edu.ucsb.eucalyptus.msgs.BaseMessage
 import groovy.transform.CompileStatic
+import org.junit.Ignore
 import org.junit.Test
 import static org.junit.Assert.*
 
@@ -1421,4 +1422,68 @@ class ComputeQueryBindingTest extends QueryBindingTestSupport {
         'Platform'                                      : 'Linux',
     ])
   }
+
+  @Ignore("Manual development test")
+  @Test
+  void testLargeRequestBindingPerformance() {
+    URL resource = ComputeQueryBindingTest.class.getResource('/ec2-2016-11-15-binding.xml')
+
+    String version = "2016-11-15"
+    com.eucalyptus.binding.Binding testBinding = createTestBindingFromXml( resource, 'RunInstancesType' )
+    ComputeQueryBinding eb = new ComputeQueryBinding() {
+      @Override
+      protected com.eucalyptus.binding.Binding getBindingWithElementClass(final String operationName) {
+        operationName.endsWith( 'Type' ) ? testBinding : null
+      }
+
+      @Override
+      String getNamespace() {
+        return getNamespaceForVersion(version);
+      }
+
+      @Override
+      protected void validateBinding(final com.eucalyptus.binding.Binding currentBinding,
+                                     final String operationName,
+                                     final Map<String, String> params,
+                                     final BaseMessage eucaMsg) {
+        // Validation requires compiled bindings
+      }
+    }
+
+    Map<String,String> runParameters = [
+        ImageId                       : 'emi-00000001',
+        MinCount                      : '1',
+        MaxCount                      : '10',
+        InstanceType                  : 'm1.small',
+        KeyName                       : 'key',
+        'Placement.AvailabilityZone'  : 'one',
+        'Monitoring.Enabled'          : 'true',
+    ] as Map<String,String>
+    ( 1..20 ).each { Integer index ->
+      runParameters.put( "SecurityGroupId.${index}".toString( ), "sg-0000000${index}".toString( ) )
+      runParameters.put( "BlockDeviceMapping.${index}.DeviceName".toString( ), "/dev/sd${index}".toString( ) )
+      runParameters.put( "BlockDeviceMapping.${index}.Ebs.VolumeSize".toString( ), "${index}".toString( ) )
+      runParameters.put( "BlockDeviceMapping.${index}.Ebs.DeleteOnTermination".toString( ), 'true' )
+    }
+    Map<String,String> describeParameters = [:] as Map<String,String>
+    ( 1..100 ).each { Integer index ->
+      describeParameters.put( "InstanceId.${index}".toString( ), "i-0000000${index}".toString( ) )
+    }
+    ( 1..10 ).each { Integer index ->
+      describeParameters.put( "Filter.${index}.Name".toString( ), "tag:key${index}".toString( ) )
+      ( 1..10 ).each { Integer valueIndex ->
+        describeParameters.put( "Filter.${index}.Value.${valueIndex}".toString( ), "value${valueIndex}".toString( ) )
+      }
+    }
+
+    int iterations = 10000
+    for ( int run = 0; run < 3; run++ ) {
+      long start = System.currentTimeMillis( )
+      for ( int i = 0; i < iterations; i++ ) {
+        bind( eb, 'RunInstances', runParameters )
+        bind( eb, 'DescribeInstances', describeParameters )
+      }
+      println "Bound ${iterations} RunInstances/DescribeInstances requests in ${System.currentTimeMillis( ) - start}ms"
+    }
+  }
 }
@@ -27,11 +27,14 @@ import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.security.MessageDigest;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.log4j.Logger;
@@ -47,6 +50,8 @@ import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.ws.util.HmacUtils;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.common.io.BaseEncoding;
@@ -54,6 +59,10 @@ import com.google.common.io.BaseEncoding;
 public class Hmacv4LoginModule extends HmacLoginModuleSupport {
   private static final Logger LOG = Logger.getLogger( Hmacv4LoginModule.class );
   private static final String V4_TERMINATOR = "aws4_request";
+  private static final Cache<SigningKeyId,SecretKeySpec> signingKeyCache = CacheBuilder.newBuilder( )
+      .maximumSize( 10_000 )
+      .expireAfterAccess( 1, TimeUnit.HOURS )
+      .build( );
 
   public Hmacv4LoginModule() {
     super(4);
@@ -75,7 +84,7 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     signatureCredential.verify( date, null, null, V4_TERMINATOR ); //TODO Do we want to validate region and service name?
     final UserPrincipal user = accessKey.getPrincipal( );
     final String secretKey = accessKey.getSecretKey( );
-    final byte[] signatureKey = getSignatureKey( secretKey, signatureCredential );
+    final SecretKeySpec signatureKey = getSigningKey( secretKey, signatureCredential );
     final CharSequence canonicalString = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, false );
     final byte[] computedSig = this.getHmacSHA256( signatureKey, canonicalString );
     final byte[] providedSig = BaseEncoding.base16( ).lowerCase( ).decode( sig );
@@ -164,7 +173,11 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
 
   public static byte[] getHmacSHA256( final byte[] signatureKey,
                                 final CharSequence data ) throws AuthenticationException {
-    final SecretKeySpec signingKey = new SecretKeySpec( signatureKey, Hmac.HmacSHA256.toString( ) );
+    return getHmacSHA256( new SecretKeySpec( signatureKey, Hmac.HmacSHA256.toString( ) ), data );
+  }
+
+  public static byte[] getHmacSHA256( final Key signingKey,
+                                      final CharSequence data ) throws AuthenticationException {
     try {
       final ByteBuffer byteBuffer = StandardCharsets.UTF_8.encode( CharBuffer.wrap( data ) );
       return Hmac.HmacSHA256.digestBinary( signingKey, byteBuffer );
@@ -184,4 +197,52 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
             credential.getServiceName() ),
         credential.getTerminator() );
   }
+
+  /**
+   * Get the signing key for the credential, derived keys are cached by
+   * secret key and credential scope.
+   */
+  public static SecretKeySpec getSigningKey( final String key,
+                                             final SignatureCredential credential ) throws Exception {
+    final SigningKeyId signingKeyId = new SigningKeyId( key, credential );
+    SecretKeySpec signingKey = signingKeyCache.getIfPresent( signingKeyId );
+    if ( signingKey == null ) {
+      signingKey = new SecretKeySpec( getSignatureKey( key, credential ), Hmac.HmacSHA256.toString( ) );
+      signingKeyCache.put( signingKeyId, signingKey );
+    }
+    return signingKey;
+  }
+
+  private static final class SigningKeyId {
+    private final String key;
+    private final String date;
+    private final String region;
+    private final String serviceName;
+    private final String terminator;
+
+    private SigningKeyId( final String key, final SignatureCredential credential ) {
+      this.key = key;
+      this.date = credential.getDate( );
+      this.region = credential.getRegion( );
+      this.serviceName = credential.getServiceName( );
+      this.terminator = credential.getTerminator( );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SigningKeyId that = (SigningKeyId) o;
+      return key.equals( that.key ) &&
+          date.equals( that.date ) &&
+          region.equals( that.region ) &&
+          serviceName.equals( that.serviceName ) &&
+          terminator.equals( that.terminator );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( key, date, region, serviceName, terminator );
+    }
+  }
 }
@@ -113,6 +113,8 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -132,6 +134,12 @@ public class PolicyEngineImpl implements PolicyEngine {
       .expireAfterWrite( 1, TimeUnit.HOURS )
       .build( );
 
+  // Action matchers for (interned) authorizations, actions do not use policy variables
+  private static final LoadingCache<Authorization,PolicyPatternMatcher> actionMatcherCache = CacheBuilder
+      .newBuilder( )
+      .weakKeys( )
+      .build( CacheLoader.from( ( Authorization auth ) -> PolicyPatternMatcher.anyOf( auth.getActions( ) ) ) );
+
   @Nonnull
   private final Function<String,String> accountResolver;
 
@@ -154,11 +162,10 @@ public class PolicyEngineImpl implements PolicyEngine {
   private static final Matcher PATTERN_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
-      pattern = PolicyUtils.toJavaPattern( pattern );
       if ( pattern == null ) {
         return false;
       }
-      return Pattern.matches( pattern, instance );
+      return PolicyPatternMatcher.of( pattern ).matches( instance );
     }
   };
 
@@ -458,7 +465,7 @@ public class PolicyEngineImpl implements PolicyEngine {
   }
 
   private boolean matchActions( Authorization auth, String action ) throws AuthException {
-    return evaluateElement( matchOne( auth.getActions( ), action, PATTERN_MATCHER ), auth.isNotAction( ) );
+    return evaluateElement( actionMatcherCache.getUnchecked( auth ).matches( action ), auth.isNotAction( ) );
   }
 
   private boolean matchPrincipal( @Nullable Principal principal, @Nullable Set<TypedPrincipal> principals ) throws AuthException {
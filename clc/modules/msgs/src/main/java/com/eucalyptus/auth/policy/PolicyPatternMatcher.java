@@ -0,0 +1,201 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Compiled form of an IAM action or resource pattern.
+ *
+ * Matching is equivalent to matching the regular expression from
+ * PolicyUtils#toJavaPattern, but patterns without wildcards and patterns
+ * with a single leading or trailing '*' are matched without a regular
+ * expression.
+ */
+abstract class PolicyPatternMatcher {
+
+  private static final LoadingCache<String,PolicyPatternMatcher> matcherCache = CacheBuilder
+      .newBuilder( )
+      .maximumSize( 20_000 )
+      .build( CacheLoader.from( PolicyPatternMatcher::compile ) );
+
+  /**
+   * Get the (cached) matcher for a pattern.
+   */
+  @Nonnull
+  static PolicyPatternMatcher of( @Nonnull final String pattern ) {
+    try {
+      return matcherCache.get( pattern );
+    } catch ( final ExecutionException e ) {
+      throw new IllegalArgumentException( e.getCause( ) );
+    }
+  }
+
+  /**
+   * Get a matcher for any of the given patterns.
+   */
+  @Nonnull
+  static PolicyPatternMatcher anyOf( @Nonnull final Collection<String> patterns ) {
+    final ImmutableSet.Builder<String> literals = ImmutableSet.builder( );
+    final ImmutableList.Builder<PolicyPatternMatcher> matchers = ImmutableList.builder( );
+    for ( final String pattern : patterns ) {
+      if ( isLiteral( pattern ) ) {
+        literals.add( pattern );
+      } else {
+        matchers.add( of( pattern ) );
+      }
+    }
+    return new AnyOfMatcher( literals.build( ), matchers.build( ) );
+  }
+
+  abstract boolean matches( @Nullable String instance );
+
+  @Nonnull
+  static PolicyPatternMatcher compile( @Nonnull final String pattern ) {
+    final int multiIndex = pattern.indexOf( '*' );
+    final int lastMultiIndex = pattern.lastIndexOf( '*' );
+    if ( pattern.indexOf( '?' ) < 0 ) {
+      if ( multiIndex < 0 ) {
+        return new LiteralMatcher( pattern );
+      } else if ( pattern.length( ) == 1 ) {
+        return new PrefixMatcher( "" );
+      } else if ( multiIndex == pattern.length( ) - 1 ) {
+        return new PrefixMatcher( pattern.substring( 0, multiIndex ) );
+      } else if ( lastMultiIndex == 0 ) {
+        return new SuffixMatcher( pattern.substring( 1 ) );
+      }
+    }
+    return new RegexMatcher( Pattern.compile( PolicyUtils.toJavaPattern( pattern ) ) );
+  }
+
+  private static boolean isLiteral( final String pattern ) {
+    return pattern.indexOf( '*' ) < 0 && pattern.indexOf( '?' ) < 0;
+  }
+
+  /**
+   * Wildcards are translated to '.' which does not match line terminators.
+   */
+  private static boolean isWildcardMatch( final String instance, final int from, final int to ) {
+    for ( int i = from; i < to; i++ ) {
+      switch ( instance.charAt( i ) ) {
+        case '\n':
+        case '\r':
+        case '\u0085':
+        case '\u2028':
+        case '\u2029':
+          return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class LiteralMatcher extends PolicyPatternMatcher {
+    private final String literal;
+
+    private LiteralMatcher( final String literal ) {
+      this.literal = literal;
+    }
+
+    @Override
+    boolean matches( @Nullable final String instance ) {
+      return literal.equals( instance );
+    }
+  }
+
+  private static final class PrefixMatcher extends PolicyPatternMatcher {
+    private final String prefix;
+
+    private PrefixMatcher( final String prefix ) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    boolean matches( @Nullable final String instance ) {
+      return instance != null &&
+          instance.startsWith( prefix ) &&
+          isWildcardMatch( instance, prefix.length( ), instance.length( ) );
+    }
+  }
+
+  private static final class SuffixMatcher extends PolicyPatternMatcher {
+    private final String suffix;
+
+    private SuffixMatcher( final String suffix ) {
+      this.suffix = suffix;
+    }
+
+    @Override
+    boolean matches( @Nullable final String instance ) {
+      return instance != null &&
+          instance.endsWith( suffix ) &&
+          isWildcardMatch( instance, 0, instance.length( ) - suffix.length( ) );
+    }
+  }
+
+  private static final class RegexMatcher extends PolicyPatternMatcher {
+    private final Pattern pattern;
+
+    private RegexMatcher( final Pattern pattern ) {
+      this.pattern = pattern;
+    }
+
+    @Override
+    boolean matches( @Nullable final String instance ) {
+      return instance != null && pattern.matcher( instance ).matches( );
+    }
+  }
+
+  private static final class AnyOfMatcher extends PolicyPatternMatcher {
+    private final Set<String> literals;
+    private final List<PolicyPatternMatcher> matchers;
+
+    private AnyOfMatcher( final Set<String> literals, final List<PolicyPatternMatcher> matchers ) {
+      this.literals = literals;
+      this.matchers = matchers;
+    }
+
+    @Override
+    boolean matches( @Nullable final String instance ) {
+      if ( instance == null ) {
+        return false;
+      }
+      if ( literals.contains( instance ) ) {
+        return true;
+      }
+      for ( final PolicyPatternMatcher matcher : matchers ) {
+        if ( matcher.matches( instance ) ) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -75,26 +75,25 @@ public enum Hmac {
 
   private static Logger LOG = Logger.getLogger( Hmac.class );
 
-  private final ThreadLocal<Mac> threadLocalMac = new ThreadLocal<Mac>() {
+  private final ThreadLocal<KeyedMac> threadLocalMac = new ThreadLocal<KeyedMac>() {
     @Override
-    protected Mac initialValue( ) {
+    protected KeyedMac initialValue( ) {
       final Mac mac = getInstance( );
       mac.reset( );
-      return mac;
+      return new KeyedMac( mac );
     }
   };
 
   public byte[] digestBinary( final Key key, final byte[] data ) throws InvalidKeyException {
-    final Mac mac = threadLocalMac.get( );
-    mac.init( key );
-    return mac.doFinal( data );
+    return digestBinary( key, ByteBuffer.wrap( data ) );
   }
 
+  /**
+   * Digest the given data, the thread's Mac is only initialized if the key
+   * is not the same instance as used for the previous digest.
+   */
   public byte[] digestBinary( final Key key, final ByteBuffer data ) throws InvalidKeyException {
-    final Mac mac = threadLocalMac.get( );
-    mac.init( key );
-    mac.update( data );
-    return mac.doFinal( );
+    return threadLocalMac.get( ).digest( key, data );
   }
 
   public Mac getInstance() {
@@ -105,4 +104,24 @@ public enum Hmac {
       throw new RuntimeException( e );
     }
   }
+
+  private static final class KeyedMac {
+    private final Mac mac;
+    private Key key;
+
+    private KeyedMac( final Mac mac ) {
+      this.mac = mac;
+    }
+
+    private byte[] digest( final Key key, final ByteBuffer data ) throws InvalidKeyException {
+      if ( this.key != key ) {
+        mac.init( key );
+      }
+      this.key = null; // cleared until the digest completes and resets the mac
+      mac.update( data );
+      final byte[] digest = mac.doFinal( );
+      this.key = key;
+      return digest;
+    }
+  }
 }
@@ -68,10 +68,14 @@ import org.hibernate.CallbackException;
 import org.hibernate.EntityMode;
 import org.hibernate.Interceptor;
 import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
 import org.hibernate.type.Type;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
 
 public class DelegatingInterceptor implements Interceptor {
   private final Interceptor interceptor;
+  private SetMultimap<Class<?>,String> changes;
   
   public DelegatingInterceptor( ) {
     this.interceptor = Interceptors.get( );
@@ -87,26 +91,32 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public boolean onFlushDirty( Object entity, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types ) throws CallbackException {
+    recordChange( entity, id );
     return this.interceptor.onFlushDirty( entity, id, currentState, previousState, propertyNames, types );
   }
   
   public boolean onSave( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    recordChange( entity, id );
     return this.interceptor.onSave( entity, id, state, propertyNames, types );
   }
   
   public void onDelete( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    recordChange( entity, id );
     this.interceptor.onDelete( entity, id, state, propertyNames, types );
   }
   
   public void onCollectionRecreate( Object collection, Serializable key ) throws CallbackException {
+    recordCollectionChange( collection, key );
     this.interceptor.onCollectionRecreate( collection, key );
   }
   
   public void onCollectionRemove( Object collection, Serializable key ) throws CallbackException {
+    recordCollectionChange( collection, key );
     this.interceptor.onCollectionRemove( collection, key );
   }
   
   public void onCollectionUpdate( Object collection, Serializable key ) throws CallbackException {
+    recordCollectionChange( collection, key );
     this.interceptor.onCollectionUpdate( collection, key );
   }
   
@@ -139,6 +149,7 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public void afterTransactionBegin( Transaction tx ) {
+    this.changes = null;
     this.interceptor.afterTransactionBegin( tx );
   }
   
@@ -147,11 +158,35 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public void afterTransactionCompletion( Transaction tx ) {
+    final SetMultimap<Class<?>,String> committedChanges = this.changes;
+    this.changes = null;
+    if ( committedChanges != null && tx.wasCommitted( ) ) {
+      EntityChangeNotifier.changed( committedChanges );
+    }
     this.interceptor.afterTransactionCompletion( tx );
   }
   
   public String onPrepareStatement( String sql ) {
     return this.interceptor.onPrepareStatement( sql );
   }
+
+  /**
+   * Track changes to entities with change notified caches, notification
+   * occurs if the transaction commits.
+   */
+  private void recordChange( final Object entity, final Serializable id ) {
+    if ( entity != null && id != null && EntityChangeNotifier.isTracked( entity.getClass( ) ) ) {
+      if ( this.changes == null ) {
+        this.changes = HashMultimap.create( );
+      }
+      this.changes.put( entity.getClass( ), id.toString( ) );
+    }
+  }
+
+  private void recordCollectionChange( final Object collection, final Serializable key ) {
+    if ( collection instanceof PersistentCollection ) {
+      recordChange( ( (PersistentCollection) collection ).getOwner( ), key );
+    }
+  }
   
 }
@@ -147,6 +147,7 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -1108,6 +1109,23 @@ public class Entities {
     }
   }
 
+  /**
+   * Create a native SQL query in the persistence context of the given class.
+   *
+   * @param contextClass The entity class for the persistence context
+   * @param sql The SQL for the query
+   * @param resultClass The entity class for results, null for scalar results
+   * @return The query
+   */
+  public static Query createNativeQuery( final Class<?> contextClass,
+                                         final String sql,
+                                         @Nullable final Class<?> resultClass ) {
+    final EntityManager entityManager = getTransaction( contextClass ).getTxState( ).getEntityManager( );
+    return resultClass == null ?
+        entityManager.createNativeQuery( sql ) :
+        entityManager.createNativeQuery( sql, resultClass );
+  }
+
   /**
    * Count the matching entities for the given example.
    * 
@@ -1755,6 +1773,19 @@ public class Entities {
       return this;
     }
 
+    /**
+     * Restriction that the attribute is one of the given values, which must not be empty.
+     *
+     * @see Expression#in(Collection)
+     */
+    public <V> EntityRestrictionBuilder<E> in(
+        @Nonnull final SingularAttribute<? super E, V> attribute,
+        @Nonnull final Collection<V> values
+    ) {
+      restrictions.add( new EntityRestriction.InPropertyEntityValuesRestriction<>( entityClass, attribute, ImmutableList.copyOf( values ) ) );
+      return this;
+    }
+
     /**
      * @see CriteriaBuilder#equal(Expression, Object)
      * @see CriteriaBuilder#lower(Expression)
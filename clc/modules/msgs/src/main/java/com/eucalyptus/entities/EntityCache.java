@@ -22,9 +22,14 @@ package com.eucalyptus.entities;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
 import org.hibernate.criterion.Criterion;
@@ -46,12 +51,20 @@ import com.google.common.collect.Sets;
 public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>> implements Supplier<Iterable<TE>> {
 
   private static final int batchSize = 500;
+  private static final long refreshLockPollMillis = 10;
   private final E example;
   private final Criterion criterion;
   private final Set<String> eagerAssociationPaths;
   private final Set<String> lazyAssociationPaths;
   private final Function<? super E,TE> transformFunction;
-  private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final ConcurrentMap<String,Pair<Integer,TE>> cache = Maps.newConcurrentMap( );
+  private final Set<String> changedIds = Sets.newConcurrentHashSet( );
+  private final AtomicLong generation = new AtomicLong( );
+  private final ReentrantLock refreshLock = new ReentrantLock( );
+  private volatile boolean reconciling;
+  private volatile Supplier<Long> reconcileIntervalMillis;
+  private volatile ChangeListener<? super TE> changeListener;
+  private long lastReconcile;
 
   /**
    * Create an entity cache for the given example.
@@ -90,8 +103,47 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
     this.transformFunction = transformFunction;
   }
 
+  /**
+   * Enable change notification for this cache.
+   *
+   * <p>A change notified cache reloads only entities with changes committed
+   * via the entity manager in this process. A full reconcile is performed at
+   * the given interval to pick up any other changes (e.g. bulk updates or
+   * changes from other hosts).</p>
+   *
+   * @param reconcileIntervalMillis Supplier for the full reconcile interval
+   * @return This cache
+   */
+  public EntityCache<E,TE> changeNotified( final Supplier<Long> reconcileIntervalMillis ) {
+    this.reconcileIntervalMillis = reconcileIntervalMillis;
+    EntityChangeNotifier.register( this );
+    return this;
+  }
+
+  /**
+   * Set a listener for changes to cached entities.
+   *
+   * <p>The listener is called during refresh, while the cache is locked, for
+   * each entity that is loaded into or removed from the cache.</p>
+   *
+   * @param changeListener The listener
+   * @return This cache
+   */
+  public EntityCache<E,TE> changeListener( final ChangeListener<? super TE> changeListener ) {
+    this.changeListener = changeListener;
+    return this;
+  }
+
+  boolean isTracked( final Class<?> entityClass ) {
+    return example.getClass( ).isAssignableFrom( entityClass );
+  }
+
+  void changed( final Collection<String> ids ) {
+    changedIds.addAll( ids );
+  }
+
   @SuppressWarnings( "unchecked" )
-  private Collection<Pair<String,Integer>> loadVersionMap( ) {
+  Map<String,Integer> loadVersionMap( ) {
     try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ){
       final Criteria criteria = Entities.createCriteria( example.getClass( ) )
           .add( Example.create( example ) )
@@ -100,44 +152,191 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
               .add( Projections.property( "id" ) )
               .add( Projections.property( "version" ) ) );
       final List<Object[]> idVersionList = (List<Object[]>) criteria.list( );
-      final Set<Pair<String,Integer>> results = Sets.newLinkedHashSetWithExpectedSize( idVersionList.size( ) );
-      Iterables.addAll( results, Iterables.transform( idVersionList, ObjectArrayToStringIntPair.INSTANCE ) );
+      final Map<String,Integer> results = Maps.newLinkedHashMap( );
+      for ( final Pair<String,Integer> idAndVersion : Iterables.transform( idVersionList, ObjectArrayToStringIntPair.INSTANCE ) ) {
+        results.put( idAndVersion.getLeft( ), idAndVersion.getRight( ) );
+      }
       return results;
     }
   }
 
+  private void refresh( final boolean reconcileIfDue ) {
+    refreshLock.lock( );
+    try {
+      refreshLocked( reconcileIfDue );
+    } finally {
+      refreshLock.unlock( );
+    }
+  }
+
+  private void refreshLocked( final boolean reconcileIfDue ) {
+    final Supplier<Long> reconcileInterval = this.reconcileIntervalMillis;
+    final long now = System.currentTimeMillis( );
+    if ( reconcileInterval == null || ( reconcileIfDue && ( lastReconcile + reconcileInterval.get( ) ) < now ) ) {
+      // changes committed from here on will be seen by the reconcile or the next refresh
+      changedIds.clear( );
+      reconciling = true;
+      try {
+        reconcile( );
+      } finally {
+        reconciling = false;
+      }
+      lastReconcile = now;
+    } else if ( !changedIds.isEmpty( ) ) {
+      final Set<String> ids = Sets.newHashSet( changedIds );
+      changedIds.removeAll( ids );
+      final Set<String> removedIds = Sets.newHashSet( ids );
+      removedIds.removeAll( load( ids ) );
+      remove( removedIds );
+    }
+  }
+
+  private void reconcile( ) {
+    final Map<String,Integer> currentVersions = loadVersionMap( );
+    remove( Sets.newHashSet( Sets.difference( cache.keySet( ), currentVersions.keySet( ) ) ) );
+    final List<String> staleIds = Lists.newArrayList( );
+    for ( final Map.Entry<String,Integer> entry : currentVersions.entrySet( ) ) {
+      final Pair<Integer,TE> cached = cache.get( entry.getKey( ) );
+      if ( cached == null || !cached.getLeft( ).equals( entry.getValue( ) ) ) {
+        staleIds.add( entry.getKey( ) );
+      }
+    }
+    load( staleIds );
+  }
+
+  /**
+   * Load the given entities into the cache.
+   *
+   * @return The identifiers of the loaded entities.
+   */
+  private Set<String> load( final Collection<String> ids ) {
+    final Set<String> loadedIds = Sets.newHashSetWithExpectedSize( ids.size( ) );
+    for ( final List<String> idBatch : Iterables.partition( ids, batchSize ) ) {
+      final Map<String,Pair<Integer,TE>> loaded = loadBatch( idBatch );
+      final ChangeListener<? super TE> listener = changeListener;
+      for ( final Map.Entry<String,Pair<Integer,TE>> entry : loaded.entrySet( ) ) {
+        final Pair<Integer,TE> previous = cache.put( entry.getKey( ), entry.getValue( ) );
+        if ( listener != null ) {
+          listener.changed( entry.getKey( ), previous == null ? null : previous.getRight( ), entry.getValue( ).getRight( ) );
+        }
+      }
+      loadedIds.addAll( loaded.keySet( ) );
+    }
+    if ( !loadedIds.isEmpty( ) ) {
+      generation.incrementAndGet( );
+    }
+    return loadedIds;
+  }
+
+  private void remove( final Collection<String> ids ) {
+    final ChangeListener<? super TE> listener = changeListener;
+    boolean removed = false;
+    for ( final String id : ids ) {
+      final Pair<Integer,TE> previous = cache.remove( id );
+      if ( previous != null ) {
+        removed = true;
+        if ( listener != null ) {
+          listener.changed( id, previous.getRight( ), null );
+        }
+      }
+    }
+    if ( removed ) {
+      generation.incrementAndGet( );
+    }
+  }
+
+  /**
+   * Load and transform a batch of entities.
+   *
+   * @return The versions and transformed entities by identifier
+   */
   @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
-    final Collection<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
-    currentKeys.removeAll( cache.keySet( ) );
-    for ( final List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
-      try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ) {
-        final Criteria criteria =  Entities.createCriteria( example.getClass( ) )
-            .add( Example.create( example ) )
-            .add( criterion )
-            .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String, Integer>left( ) ) ) ) );
-        for ( final String path : eagerAssociationPaths ) criteria.setFetchMode( path, FetchMode.JOIN );
-        for ( final String path : lazyAssociationPaths ) criteria.setFetchMode( path, FetchMode.SELECT );
-        final List<E> entities = (List<E> ) criteria.list( );
-        for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+  Map<String,Pair<Integer,TE>> loadBatch( final List<String> idBatch ) {
+    try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ) {
+      final Criteria criteria =  Entities.createCriteria( example.getClass( ) )
+          .add( Example.create( example ) )
+          .add( criterion )
+          .setFetchSize( batchSize )
+          .add( Restrictions.in( "id", idBatch ) );
+      for ( final String path : eagerAssociationPaths ) criteria.setFetchMode( path, FetchMode.JOIN );
+      for ( final String path : lazyAssociationPaths ) criteria.setFetchMode( path, FetchMode.SELECT );
+      final List<E> entities = (List<E> ) criteria.list( );
+      final Map<String,Pair<Integer,TE>> loaded = Maps.newHashMapWithExpectedSize( entities.size( ) );
+      for ( final E entity : entities ) {
+        loaded.put( getId( entity ), Pair.pair( entity.getVersion( ), transformFunction.apply( entity ) ) );
+      }
+      return loaded;
+    }
+  }
+
+  /**
+   * Refresh the cache and get the generation of the cached content.
+   *
+   * <p>The generation changes whenever entities are loaded into or removed
+   * from the cache, so state derived from the cache only needs rebuilding
+   * when the generation differs.</p>
+   *
+   * @return The current generation
+   */
+  public long refreshGeneration( ) {
+    refresh( true );
+    return generation.get( );
+  }
+
+  /**
+   * Refresh only entities with notified changes and get the generation.
+   *
+   * <p>For a change notified cache this does not perform any periodic full
+   * reconcile, so the cost is proportional to the number of changes.</p>
+   *
+   * <p>If a full reconcile is in progress on another thread the refresh is
+   * skipped and the generation of the current content is returned, changes
+   * are then applied by the reconcile or a later refresh.</p>
+   *
+   * @return The current generation
+   * @see #changeNotified(Supplier)
+   */
+  public long refreshChangedGeneration( ) {
+    try {
+      while ( !refreshLock.tryLock( refreshLockPollMillis, TimeUnit.MILLISECONDS ) ) {
+        if ( reconciling ) {
+          return generation.get( );
         }
       }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      return generation.get( );
+    }
+    try {
+      refreshLocked( false );
+    } finally {
+      refreshLock.unlock( );
     }
+    return generation.get( );
   }
 
   @Override
   public Iterable<TE> get( ) {
-    refresh( );
-    return Ordering.natural( ).sortedCopy( cache.values( ) );
+    refresh( true );
+    return Ordering.natural( ).sortedCopy( Iterables.transform( cache.values( ), Pair.<Integer,TE>right( ) ) );
   }
 
   private String getId( final E entity ) {
     return Objects.toString( Entities.resolvePrimaryKey( entity ) );
   }
 
+  /**
+   * Listener for entities loaded into or removed from a cache.
+   */
+  public interface ChangeListener<TE> {
+    /**
+     * @param id The entity identifier
+     * @param previous The previously cached value, null if not cached
+     * @param current The newly cached value, null if removed
+     */
+    void changed( String id, @Nullable TE previous, @Nullable TE current );
+  }
+
   private enum ObjectArrayToStringIntPair implements Function<Object[],Pair<String,Integer>> {
     INSTANCE;
 
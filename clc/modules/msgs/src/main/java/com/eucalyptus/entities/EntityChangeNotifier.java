@@ -0,0 +1,78 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Notification of committed entity changes for change notified entity caches.
+ */
+final class EntityChangeNotifier {
+
+  private static final Set<EntityCache<?,?>> caches = new CopyOnWriteArraySet<>( );
+  private static final ConcurrentMap<Class<?>,Boolean> trackedClasses = Maps.newConcurrentMap( );
+
+  private EntityChangeNotifier( ) {
+  }
+
+  static void register( final EntityCache<?,?> cache ) {
+    caches.add( cache );
+    trackedClasses.clear( );
+  }
+
+  /**
+   * Is there a registered cache for the given entity class.
+   */
+  static boolean isTracked( final Class<?> entityClass ) {
+    Boolean tracked = trackedClasses.get( entityClass );
+    if ( tracked == null ) {
+      tracked = false;
+      for ( final EntityCache<?,?> cache : caches ) {
+        if ( cache.isTracked( entityClass ) ) {
+          tracked = true;
+          break;
+        }
+      }
+      trackedClasses.put( entityClass, tracked );
+    }
+    return tracked;
+  }
+
+  /**
+   * Notify caches of committed changes.
+   *
+   * @param changes The changed identifiers by entity class
+   */
+  static void changed( final Multimap<Class<?>,String> changes ) {
+    for ( final EntityCache<?,?> cache : caches ) {
+      for ( final Class<?> entityClass : changes.keySet( ) ) {
+        if ( cache.isTracked( entityClass ) ) {
+          final Collection<String> ids = changes.get( entityClass );
+          cache.changed( ids );
+        }
+      }
+    }
+  }
+}
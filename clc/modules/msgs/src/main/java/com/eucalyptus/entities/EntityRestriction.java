@@ -181,6 +181,27 @@ public abstract class EntityRestriction<E> {
     }
   }
 
+  static final class InPropertyEntityValuesRestriction<E,V> extends PropertyEntityRestrictionSupport<E,V> {
+    private final Collection<V> values;
+
+    InPropertyEntityValuesRestriction(
+        final Class<E> entityClass,
+        final SingularAttribute<? super E, V> attribute,
+        final Collection<V> values
+    ) {
+      super( entityClass, attribute );
+      this.values = values;
+    }
+
+    public Collection<V> getValues( ) {
+      return values;
+    }
+
+    public Expression<Boolean> build( CriteriaBuilder builder, Path<E> root ) {
+      return root.get( getAttribute( ) ).in( getValues( ) );
+    }
+  }
+
   static final class LikePropertyEntityValueRestriction<E> extends PropertyEntityValueRestrictionSupport<E,String> {
     LikePropertyEntityValueRestriction(
         final Class<E> entityClass,
@@ -62,6 +62,36 @@
 
 package com.eucalyptus.event;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 public interface EventListener<T extends Event> {
   public void fireEvent( T event );
+
+  /**
+   * Scheduling for listeners of periodic events.
+   *
+   * @see PeriodicListenerScheduler
+   */
+  @Target( ElementType.TYPE )
+  @Retention( RetentionPolicy.RUNTIME )
+  public @interface Scheduling {
+    /**
+     * Listeners with higher priority are started first when the pool is busy.
+     */
+    int priority( ) default 0;
+
+    /**
+     * Time in milliseconds after an event fires by which the listener must
+     * start, else the event is skipped. Zero for no deadline.
+     */
+    long deadline( ) default 0;
+
+    /**
+     * Run sequentially, in registration order, with other ordered listeners.
+     */
+    boolean ordered( ) default false;
+  }
 }
@@ -67,7 +67,6 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -320,6 +319,8 @@ public class ListenerRegistry {
      * the order of 10ms at the worst case. To ensure that compliant tasks are not disrupted by less
      * discriminating commoner tasks, everyone must execute asynchronously while enforcing a single
      * thread of execution for any particular event listener.
+     *
+     * Periodic events are dispatched by the {@link PeriodicListenerScheduler}.
      */
     public void fireEvent( T type, Event e ) {
       List<EventListener> listeners;
@@ -329,6 +330,10 @@ public class ListenerRegistry {
       } finally {
         this.modificationLock.unlock( );
       }
+      if ( Ats.inClassHierarchy( e ).has( Periodic.class ) ) {
+        PeriodicListenerScheduler.getInstance( ).fire( listeners, e );
+        return;
+      }
       for ( EventListener ce : listeners ) {
         Threads.lookup( Empyrean.class, ListenerRegistry.class, "listenerTasks" )
                .submit( listenerTasks.getUnchecked( ce ).apply( e ) );
@@ -337,8 +342,7 @@ public class ListenerRegistry {
 
 
     /**
-     * A wrapper for event listeners which produces callables that can only be executed one at a
-     * time, otherwise returning immediately (by way of the atomic boolean).
+     * A wrapper for event listeners which produces callables that log any failure.
      */
     private static final LoadingCache<EventListener, Function<Event, Callable<Object>>> listenerTasks = CacheBuilder.newBuilder().build( getListenerWrapper() );
     private static final CacheLoader<EventListener, Function<Event, Callable<Object>>> getListenerWrapper() {
@@ -346,26 +350,19 @@ public class ListenerRegistry {
         @Override
         public Function<Event, Callable<Object>> load( final EventListener key ) throws Exception {
           return new Function<Event, Callable<Object>>() {
-            final AtomicBoolean busy = new AtomicBoolean( false );
-
             @Override
             public Callable<Object> apply( final Event input ) {
               return new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
-                  if ( !Ats.inClassHierarchy(input).has( Periodic.class ) || busy.compareAndSet( false, true ) ) {
-                    try {
-                      key.fireEvent( input );
-                    } catch ( Exception ex ) {
-                      EventFailedException eventEx = new EventFailedException( "Failed to fire event: listener=" + key.getClass( ).getCanonicalName( ) + " event="
-                                                                               + ex.toString( ) + " because of: "
-                                                                               + ex.getMessage( ), Exceptions.filterStackTrace( ex ) );
-                      Logs.extreme( ).error( eventEx, eventEx );
-                      LOG.error( eventEx );
-
-                    } finally {
-                      busy.set( false );
-                    }
+                  try {
+                    key.fireEvent( input );
+                  } catch ( Exception ex ) {
+                    EventFailedException eventEx = new EventFailedException( "Failed to fire event: listener=" + key.getClass( ).getCanonicalName( ) + " event="
+                                                                             + ex.toString( ) + " because of: "
+                                                                             + ex.getMessage( ), Exceptions.filterStackTrace( ex ) );
+                    Logs.extreme( ).error( eventEx, eventEx );
+                    LOG.error( eventEx );
                   }
                   return input;
                 }
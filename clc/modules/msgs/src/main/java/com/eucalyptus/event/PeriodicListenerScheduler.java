@@ -0,0 +1,283 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Ats;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Scheduler for listeners of periodic events such as {@link ClockTick} and
+ * {@link Hertz}.
+ *
+ * <p>Each listener runs on a bounded pool, isolated from other listeners and
+ * from the clock thread. A listener that is still queued or running when the
+ * next event fires skips that event. When the pool is busy higher priority
+ * listeners are started first and a run that cannot start within the
+ * listener deadline is skipped.</p>
+ *
+ * <p>Ordering is opt-in, listeners that require it run sequentially in
+ * registration order on a single thread.</p>
+ *
+ * <p>The pool is shared, so latency sensitive listeners should declare a
+ * priority to run ahead of slow listeners when all threads are busy.</p>
+ *
+ * @see EventListener.Scheduling
+ */
+public class PeriodicListenerScheduler {
+  private static final Logger LOG = Logger.getLogger( PeriodicListenerScheduler.class );
+  private static final int THREADS = Integer.getInteger( "com.eucalyptus.event.periodicListenerThreads", 16 );
+  private static final PeriodicListenerScheduler instance = new PeriodicListenerScheduler( THREADS );
+
+  private final AtomicLong sequence = new AtomicLong( );
+  private final ThreadPoolExecutor executor;
+  private final ExecutorService orderedExecutor;
+  private final ConcurrentMap<Class<?>, AtomicBoolean> orderedBusy = Maps.newConcurrentMap( );
+  private final ConcurrentMap<Class<?>, AtomicInteger> instances = Maps.newConcurrentMap( );
+  private final LoadingCache<EventListener, ListenerState> listenerStates = CacheBuilder.newBuilder( )
+      .weakKeys( )
+      .build( new CacheLoader<EventListener, ListenerState>( ) {
+        @Override
+        public ListenerState load( final EventListener listener ) {
+          final int instance = instances.computeIfAbsent( listener.getClass( ), listenerClass -> new AtomicInteger( ) ).incrementAndGet( );
+          return new ListenerState( listener, instance );
+        }
+      } );
+
+  public static PeriodicListenerScheduler getInstance( ) {
+    return instance;
+  }
+
+  PeriodicListenerScheduler( final int threads ) {
+    this.executor = new ThreadPoolExecutor(
+        threads,
+        threads,
+        60L,
+        TimeUnit.SECONDS,
+        new PriorityBlockingQueue<>( ),
+        Threads.threadFactoryBuilder( ).setNameFormat( "periodic-listener-pool-%d" ).setDaemon( true ).build( ) );
+    this.executor.allowCoreThreadTimeOut( true );
+    this.orderedExecutor = Executors.newSingleThreadExecutor(
+        Threads.threadFactoryBuilder( ).setNameFormat( "periodic-listener-ordered-%d" ).setDaemon( true ).build( ) );
+  }
+
+  /**
+   * Schedule the given listeners for a periodic event.
+   */
+  public void fire( final List<EventListener> listeners, final Event event ) {
+    final long fired = System.currentTimeMillis( );
+    final List<EventListener> ordered = Lists.newArrayList( );
+    for ( final EventListener listener : listeners ) {
+      final ListenerState state = listenerStates.getUnchecked( listener );
+      if ( state.ordered ) {
+        ordered.add( listener );
+      } else if ( state.busy.compareAndSet( false, true ) ) {
+        executor.execute( new ListenerRun( listener, state, event, fired, sequence.incrementAndGet( ) ) );
+      } else {
+        state.skippedBusy.incrementAndGet( );
+      }
+    }
+    if ( !ordered.isEmpty( ) ) {
+      final AtomicBoolean busy = orderedBusy.computeIfAbsent( event.getClass( ), eventClass -> new AtomicBoolean( ) );
+      if ( busy.compareAndSet( false, true ) ) {
+        orderedExecutor.execute( ( ) -> {
+          try {
+            for ( final EventListener listener : ordered ) {
+              listenerStates.getUnchecked( listener ).run( listener, event, fired );
+            }
+          } finally {
+            busy.set( false );
+          }
+        } );
+      } else {
+        for ( final EventListener listener : ordered ) {
+          listenerStates.getUnchecked( listener ).skippedBusy.incrementAndGet( );
+        }
+      }
+    }
+  }
+
+  /**
+   * Statistics for each listener, keyed by listener name and statistic.
+   *
+   * <p>The listener name is the class name, with an instance number suffix
+   * for each additional instance of the class, e.g. <code>Listener#2</code>.</p>
+   */
+  public Map<String, Object> getStatistics( ) {
+    final Map<String, Object> statistics = Maps.newTreeMap( );
+    for ( final ListenerState state : listenerStates.asMap( ).values( ) ) {
+      final String prefix = state.name + ".";
+      statistics.put( prefix + "Runs", state.duration.count( ) );
+      statistics.put( prefix + "Failures", state.failures.get( ) );
+      statistics.put( prefix + "SkippedBusy", state.skippedBusy.get( ) );
+      statistics.put( prefix + "SkippedDeadline", state.skippedDeadline.get( ) );
+      state.duration.addTo( statistics, prefix + "Duration" );
+      state.lateness.addTo( statistics, prefix + "Lateness" );
+    }
+    return statistics;
+  }
+
+  @Nullable
+  Histogram getDuration( final EventListener listener ) {
+    final ListenerState state = listenerStates.getIfPresent( listener );
+    return state == null ? null : state.duration;
+  }
+
+  long getSkipped( final EventListener listener ) {
+    final ListenerState state = listenerStates.getIfPresent( listener );
+    return state == null ? 0 : state.skippedBusy.get( ) + state.skippedDeadline.get( );
+  }
+
+  private static final class ListenerState {
+    private final String name;
+    private final int priority;
+    private final long deadline;
+    private final boolean ordered;
+    private final AtomicBoolean busy = new AtomicBoolean( );
+    private final AtomicLong failures = new AtomicLong( );
+    private final AtomicLong skippedBusy = new AtomicLong( );
+    private final AtomicLong skippedDeadline = new AtomicLong( );
+    private final Histogram duration = new Histogram( );
+    private final Histogram lateness = new Histogram( );
+
+    private ListenerState( final EventListener listener, final int instance ) {
+      final EventListener.Scheduling scheduling = Ats.inClassHierarchy( listener ).get( EventListener.Scheduling.class );
+      this.name = listener.getClass( ).getName( ) + ( instance > 1 ? "#" + instance : "" );
+      this.priority = scheduling == null ? 0 : scheduling.priority( );
+      this.deadline = scheduling == null ? 0 : scheduling.deadline( );
+      this.ordered = scheduling != null && scheduling.ordered( );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void run( final EventListener listener, final Event event, final long fired ) {
+      final long started = System.currentTimeMillis( );
+      lateness.record( started - fired );
+      if ( deadline > 0 && started - fired > deadline ) {
+        skippedDeadline.incrementAndGet( );
+        return;
+      }
+      try {
+        listener.fireEvent( event );
+      } catch ( Exception ex ) {
+        failures.incrementAndGet( );
+        final EventFailedException eventEx = new EventFailedException( "Failed to fire event: listener=" + name + " event="
+            + event + " because of: " + ex.getMessage( ), Exceptions.filterStackTrace( ex ) );
+        Logs.extreme( ).error( eventEx, eventEx );
+        LOG.error( eventEx );
+      } finally {
+        duration.record( System.currentTimeMillis( ) - started );
+      }
+    }
+  }
+
+  private static final class ListenerRun implements Runnable, Comparable<ListenerRun> {
+    private final EventListener listener;
+    private final ListenerState state;
+    private final Event event;
+    private final long fired;
+    private final long sequence;
+
+    private ListenerRun( final EventListener listener,
+                         final ListenerState state,
+                         final Event event,
+                         final long fired,
+                         final long sequence ) {
+      this.listener = listener;
+      this.state = state;
+      this.event = event;
+      this.fired = fired;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void run( ) {
+      try {
+        state.run( listener, event, fired );
+      } finally {
+        state.busy.set( false );
+      }
+    }
+
+    /**
+     * Higher priority first, then in submission order
+     */
+    @Override
+    public int compareTo( final ListenerRun other ) {
+      final int result = Integer.compare( other.state.priority, state.priority );
+      return result != 0 ? result : Long.compare( sequence, other.sequence );
+    }
+  }
+
+  /**
+   * Histogram of millisecond timings with fixed exponential buckets.
+   */
+  static final class Histogram {
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+    private final AtomicLongArray buckets = new AtomicLongArray( BOUNDS.length + 1 );
+    private final AtomicLong count = new AtomicLong( );
+    private final AtomicLong total = new AtomicLong( );
+    private final AtomicLong max = new AtomicLong( );
+
+    void record( final long millis ) {
+      int bucket = 0;
+      while ( bucket < BOUNDS.length && millis > BOUNDS[ bucket ] ) bucket++;
+      buckets.incrementAndGet( bucket );
+      count.incrementAndGet( );
+      total.addAndGet( millis );
+      max.accumulateAndGet( millis, Math::max );
+    }
+
+    long count( ) {
+      return count.get( );
+    }
+
+    private void addTo( final Map<String, Object> statistics, final String prefix ) {
+      final long count = this.count.get( );
+      statistics.put( prefix + ".Count", count );
+      statistics.put( prefix + ".Mean", count == 0 ? 0 : total.get( ) / count );
+      statistics.put( prefix + ".Max", max.get( ) );
+      for ( int i = 0; i < BOUNDS.length; i++ ) {
+        statistics.put( prefix + ".Le" + BOUNDS[ i ], buckets.get( i ) );
+      }
+      statistics.put( prefix + ".LeInf", buckets.get( BOUNDS.length ) );
+    }
+  }
+}
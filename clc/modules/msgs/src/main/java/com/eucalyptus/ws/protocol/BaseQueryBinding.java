@@ -63,17 +63,25 @@
 package com.eucalyptus.ws.protocol;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -89,17 +97,22 @@ import com.eucalyptus.binding.HttpParameterMappings;
 import com.eucalyptus.binding.HttpValue;
 import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.http.MappingHttpRequest;
+import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.ws.StackConfiguration;
 import com.eucalyptus.ws.handlers.RestfulMarshallingHandler;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import edu.ucsb.eucalyptus.msgs.BaseData;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.EucalyptusData;
@@ -108,6 +121,7 @@ import groovy.lang.GroovyObject;
 
 public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandler {
   private static Logger LOG = Logger.getLogger( BaseQueryBinding.class );
+  private static final Cache<BindingPlanKey, BindingPlan> bindingPlanCache = CacheBuilder.newBuilder( ).maximumSize( 5000 ).build( );
   private final UnknownParameterStrategy unknownParameterStrategy;
   private final T       operationParam;
   private final List<T> altOperationParams;
@@ -193,7 +207,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     final Map<String, String> params = httpRequest.getParameters( );
     
     BaseMessage eucaMsg;
-    Map<String, String> fieldMap;
+    BindingPlan plan;
     Binding currentBinding;
     try {
       currentBinding = getBindingWithElementClass( operationName );
@@ -206,8 +220,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
         //this will necessarily fault.
         targetType = this.getBinding( ).getElementClass( operationName );
       }
-      fieldMap = this.buildFieldMap( targetType );
-      eucaMsg = ( BaseMessage ) targetType.newInstance( );
+      plan = this.plan( targetType );
+      eucaMsg = ( BaseMessage ) plan.newInstance( );
     } catch ( final BindingException e ) {
       LOG.debug(
           "Failed to construct message of type: " + operationName,
@@ -217,7 +231,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
       throw new BindingException( "Failed to construct message of type " + operationName, e );
     }
     
-    final List<String> failedMappings = this.populateObject( ( GroovyObject ) eucaMsg, fieldMap, params );
+    final List<String> failedMappings = this.populateObject( ( GroovyObject ) eucaMsg, plan.parameters, params );
     
     if ( isStrictBinding( ) && ( !failedMappings.isEmpty( ) || !params.isEmpty( ) ) ) {
       final StringBuilder errMsg = new StringBuilder( "Failed to bind the following fields:\n" );
@@ -270,74 +284,42 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
             unknownParameterStrategy == UnknownParameterStrategy.ERROR );
   }
 
-  private static Field getRecursiveField( Class<?> clazz, final String fieldName ) throws Exception {
-    Exception e = null;
-    while ( !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ) ) {
-      try {
-        return clazz.getDeclaredField( fieldName );
-      } catch ( final Exception e1 ) {
-        e = e1;        
-      }
-      clazz = clazz.getSuperclass( );
-    }
-    if ( e == null ) throw new Exception("Class not supported: " + clazz);
-    throw e;
-  }
-  
-  private List<String> populateObject( final GroovyObject obj, final Map<String, String> paramFieldMap, final Map<String, String> params ) {
+  private List<String> populateObject( final GroovyObject obj, final Map<String, ParameterBinding> parameters, final Map<String, String> params ) {
     final List<String> failedMappings = new ArrayList<String>( );
-    for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      try {
-        if ( getRecursiveField( obj.getClass( ), e.getValue( ) ).getType( ).equals( ArrayList.class ) ) {
-          failedMappings.addAll( this.populateObjectList( obj, e, params, params.size( ) ) );
-        }
-      } catch ( final Exception e1 ) {
-        LOG.debug( "Failed mapping : ", e1 );
-        failedMappings.add( e.getKey( ) );
+    for ( final ParameterBinding parameter : parameters.values( ) ) {
+      if ( parameter.field.list ) {
+        failedMappings.addAll( this.populateObjectList( obj, parameter, params ) );
       }
     }
     
-    for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      Field field = null;
-      Class<?> declaredType = null;
-      try {
-        field = getRecursiveField( obj.getClass( ), e.getValue( ) );
-        declaredType = field.getType( );
-      } catch ( final Exception e2 ) {
-        LOG.debug( "Field not found: " + e.getValue(), e2 );
-      }
-      
-      if ( params.containsKey( e.getKey( ) )
-           && ( declaredType == null || !EucalyptusData.class.isAssignableFrom( declaredType ) )
-           && !this.populateObjectField( obj, e, params ) ) {
-        failedMappings.add( e.getKey( ) );
-      } else if ( ( declaredType != null )
-                  && EucalyptusData.class.isAssignableFrom( declaredType ) ) {
+    for ( final ParameterBinding parameter : parameters.values( ) ) {
+      final FieldBinding field = parameter.field;
+      if ( params.containsKey( parameter.name )
+           && !field.data
+           && !this.populateObjectField( obj, parameter, params ) ) {
+        failedMappings.add( parameter.name );
+      } else if ( field.data ) {
         try {
-          final Map<String, String> fieldMap = this.buildFieldMap( declaredType );
-          final Object newInstance = declaredType.newInstance( );
+          final BindingPlan plan = this.plan( field.type );
+          final Object newInstance = plan.newInstance( );
           Map<String, String> subParams = Maps.newHashMap( );
 
-          HttpEmbedded httpEmbedded = null;
-          if ( field != null && (
-              field.isAnnotationPresent( HttpEmbedded.class ) ||
-              field.isAnnotationPresent( HttpEmbeddeds.class ) ) ) {
-            httpEmbedded = getHttpEmbeddedAnnotation( field );
-          }
+          final HttpEmbedded httpEmbedded = field.httpEmbedded;
           if ( httpEmbedded != null && !httpEmbedded.multiple( ) ) {
             subParams = params;
           } else {
+            final boolean valueObject = plan.isValueObject( );
             for ( final String item : Sets.newHashSet( params.keySet( ) ) ) {
-              if ( item.startsWith( e.getKey( ) + "." ) || (item.equals( e.getKey( ) ) && isValueObject( declaredType ) )) {
-                subParams.put( replaceStringPrefixIfExists(item, e.getKey( ) + ".", "" ), params.remove( item ) );
+              if ( item.startsWith( parameter.prefix ) || ( valueObject && item.equals( parameter.name ) ) ) {
+                subParams.put( replaceStringPrefixIfExists( item, parameter.prefix, "" ), params.remove( item ) );
               }
             }
           }
           if ( !subParams.isEmpty( ) ) {
-            if ( httpEmbedded == null && subParams.size( ) == 1 && subParams.keySet( ).contains( e.getKey( ) ) ) {
+            if ( httpEmbedded == null && subParams.size( ) == 1 && subParams.keySet( ).contains( parameter.name ) ) {
               try {
-                if ( populateValue( declaredType, (GroovyObject) newInstance, Iterables.getOnlyElement( subParams.values( ) ) ).isEmpty( ) ) {
-                  obj.setProperty( e.getValue( ), newInstance );
+                if ( populateValue( plan, (GroovyObject) newInstance, Iterables.getOnlyElement( subParams.values( ) ) ).isEmpty( ) ) {
+                  field.set( obj, newInstance );
                   subParams.clear( );
                 }
               } catch ( final IllegalArgumentException e2 ) { /*param not bound error occurs for this failure*/ }
@@ -345,41 +327,39 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
                 params.put( entry.getKey( ), entry.getValue( ) );
               }
             } else {
-              this.populateObject( (GroovyObject) newInstance, fieldMap, subParams );
-              obj.setProperty( e.getValue( ), newInstance );
+              this.populateObject( (GroovyObject) newInstance, plan.parameters, subParams );
+              field.set( obj, newInstance );
               if ( subParams != params ) for ( Map.Entry<String, String> entry : subParams.entrySet( ) ) {
-                params.put( e.getKey( ) + "." + entry.getKey( ), entry.getValue( ) );
+                params.put( parameter.prefix + entry.getKey( ), entry.getValue( ) );
               }
             }
-          } else if ( params.containsKey( e.getKey( ) ) ) {
-            obj.setProperty( e.getValue(), newInstance );
+          } else if ( params.containsKey( parameter.name ) ) {
+            field.set( obj, newInstance );
           }
         } catch ( final Exception e1 ) {
           LOG.debug( "Error binding object", e1 );
         }
       } else {
-        failedMappings.remove( e.getKey( ) );
+        failedMappings.remove( parameter.name );
       }
       
     }
     return failedMappings;
   }
   
-  @SuppressWarnings( "unchecked" )
-  private boolean populateObjectField( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params ) {
+  private boolean populateObjectField( final GroovyObject obj, final ParameterBinding parameter, final Map<String, String> params ) {
     try {
-      final Class<?> declaredType = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) ).getType( );
       final Object value = convertToType( new Supplier<String>(){
         @Override
         public String get() {
-          return params.remove( paramFieldPair.getKey() );
+          return params.remove( parameter.name );
         }
-      }, declaredType );
+      }, parameter.field.type );
 
       if ( value != null )
-        obj.setProperty( paramFieldPair.getValue( ), value );
+        parameter.field.set( obj, value );
       
-      return !params.containsKey( paramFieldPair.getKey() );
+      return !params.containsKey( parameter.name );
     } catch ( final Exception e1 ) {
       return false;
     }
@@ -388,19 +368,19 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   private Object convertToType( final Supplier<String> value, final Class<?> targetType ) throws Exception {
     if ( targetType.equals( String.class ) )
       return value.get();
-    else if ( targetType.getName( ).equals( "int" ) )
+    else if ( targetType.equals( int.class ) )
       return Integer.parseInt( value.get() );
     else if ( targetType.equals( Integer.class ) )
       return Integer.valueOf( value.get() );
-    else if ( targetType.getName( ).equals( "boolean" ) )
+    else if ( targetType.equals( boolean.class ) )
       return Boolean.parseBoolean( value.get() );
     else if ( targetType.equals( Boolean.class ) )
       return Boolean.valueOf( value.get() );
-    else if ( targetType.getName( ).equals( "long" ) )
+    else if ( targetType.equals( long.class ) )
       return Long.parseLong( value.get() );
     else if ( targetType.equals( Long.class ) )
       return Long.valueOf( value.get() );
-    else if ( targetType.getName( ).equals( "double" ) )
+    else if ( targetType.equals( double.class ) )
       return Double.parseDouble( value.get() );
     else if ( targetType.equals( Double.class ) )
       return Double.valueOf( value.get() );
@@ -410,13 +390,16 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
       return null;
   }
   
-  @SuppressWarnings( "rawtypes" )
-  private List<String> populateObjectList( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params, final int paramSize ) {
+  @SuppressWarnings( { "rawtypes", "unchecked" } )
+  private List<String> populateObjectList( final GroovyObject obj, final ParameterBinding parameter, final Map<String, String> params ) {
     final List<String> failedMappings = new ArrayList<String>( );
     try {
-      final Field declaredField = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
-      final ArrayList theList = ( ArrayList ) obj.getProperty( paramFieldPair.getValue( ) );
-      final Class genericType = ( Class ) ( ( ParameterizedType ) declaredField.getGenericType( ) ).getActualTypeArguments( )[0];
+      final FieldBinding field = parameter.field;
+      final ArrayList theList = ( ArrayList ) field.get( obj );
+      final Class genericType = field.listElementType;
+      if ( genericType == null ) {
+        throw new BindingException( "Unsupported list type for field: " + field.name );
+      }
       // :: simple case: FieldName.# :://
       if ( String.class.equals( genericType ) ||
            Boolean.class.equals( genericType ) ||
@@ -424,45 +407,44 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
            Long.class.equals( genericType ) ||
            Double.class.equals( genericType ) ||
            Date.class.equals( genericType ) ) {
-        if ( params.containsKey( paramFieldPair.getKey( ) ) ) {
-          theList.add( convertToType( Suppliers.ofInstance(params.remove( paramFieldPair.getKey() )), genericType ) );
+        if ( params.containsKey( parameter.name ) ) {
+          theList.add( convertToType( Suppliers.ofInstance(params.remove( parameter.name )), genericType ) );
         } else {
           final List<String> keys = Lists.newArrayList( params.keySet( ) );
-          final Pattern paramPattern = Pattern.compile( Pattern.quote(paramFieldPair.getKey( )) + "\\.([0-9]{1,7})" );
           final Map<String,Object> indexToValueMap = new TreeMap<String,Object>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
-          for ( final String k : keys ) {    
-            final Matcher matcher = paramPattern.matcher( k );
+          for ( final String k : keys ) {
+            if ( !k.startsWith( parameter.prefix ) ) continue;
+            final Matcher matcher = parameter.indexPattern.matcher( k );
             if ( matcher.matches() ) {
               indexToValueMap.put( matcher.group(1), convertToType( Suppliers.ofInstance(params.remove( k )), genericType )  );
             }
           }
           theList.addAll( indexToValueMap.values() );
         }
-      } else if ( declaredField.isAnnotationPresent( HttpEmbedded.class ) ||
-                  declaredField.isAnnotationPresent( HttpEmbeddeds.class )) {
-        final HttpEmbedded annoteEmbedded = getHttpEmbeddedAnnotation( declaredField );
+      } else if ( field.httpEmbedded != null ) {
         // :: build the parameter map and call populate object recursively :://
-        if ( annoteEmbedded.multiple( ) ) {
+        if ( field.httpEmbedded.multiple( ) ) {
           final List<String> keys = Lists.newArrayList( params.keySet( ) );
           final Map<String,Map<String,String>> subParamMaps = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           final Map<String,String> valueMap = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {
-            if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}\\..*" ) ) {
+            if ( !k.startsWith( parameter.prefix ) ) continue;
+            final Matcher memberMatcher = parameter.indexedMemberPattern.matcher( k );
+            if ( memberMatcher.matches( ) ) {
               final String currentValue = params.remove( k );
-              final String setKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})\\..*", "$1" );
-              if ( setKey.length() > 7 ) continue;
-              final String subKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.[0-9]{1,7}\\." , "" );
+              final String setKey = memberMatcher.group( 1 );
+              final String subKey = memberMatcher.group( 2 );
               Map<String,String> subMap = subParamMaps.get( setKey );
               if ( subMap == null ) {
                 subParamMaps.put( setKey, subMap = Maps.newHashMap() );
               }
 
               subMap.put( subKey, currentValue );
-            } else if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}" ) ) {
-              final String currentValue = params.remove( k );
-              final String orderKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})", "$1" );
-              if ( orderKey.length() > 7 ) continue;
-              valueMap.put( orderKey, currentValue );
+            } else {
+              final Matcher indexMatcher = parameter.indexPattern.matcher( k );
+              if ( indexMatcher.matches( ) ) {
+                valueMap.put( indexMatcher.group( 1 ), params.remove( k ) );
+              }
             }
           }
 
@@ -481,39 +463,41 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
       }
     } catch ( final Exception e1 ) {
       LOG.debug( "FAILED HERE : ", e1 );
-      failedMappings.add( paramFieldPair.getKey( ) );
+      failedMappings.add( parameter.name );
     }
     return failedMappings;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
-    final Map<String, String> embeddedFields = this.buildFieldMap( genericType );
+  @SuppressWarnings( "unchecked" )
+  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws Exception {
+    final BindingPlan plan = this.plan( genericType );
+    final GroovyObject embedded = ( GroovyObject ) plan.newInstance( );
     final int startSize = params.size( );
-    final List<String> embeddedFailures = this.populateObject( embedded, embeddedFields, params );
+    final List<String> embeddedFailures = this.populateObject( embedded, plan.parameters, params );
     if ( embeddedFailures.isEmpty( ) && !( params.size( ) - startSize == 0 ) )
       theList.add( embedded );
     
     return embeddedFailures;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
-    final List<String> embeddedFailures = populateValue( genericType, embedded, value );
+  @SuppressWarnings( "unchecked" )
+  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws Exception {
+    final BindingPlan plan = this.plan( genericType );
+    final GroovyObject embedded = ( GroovyObject ) plan.newInstance( );
+    final List<String> embeddedFailures = populateValue( plan, embedded, value );
     if ( embeddedFailures.isEmpty( ) ) {
       theList.add( embedded );
     }
     return embeddedFailures;
   }
 
-  private List<String> populateValue( final Class<?> genericType, final GroovyObject targetObject, final String value ) throws InstantiationException, IllegalAccessException {
-    final Field valueField = this.findValueField( genericType );
-    if ( valueField == null ) {
-      throw new IllegalArgumentException( "Simple type cannot be mapped for " + genericType.getSimpleName( ) );
+  private List<String> populateValue( final BindingPlan plan, final GroovyObject targetObject, final String value ) {
+    if ( plan.valueParameters == null ) {
+      throw new IllegalArgumentException( "Simple type cannot be mapped for " + plan.type.getSimpleName( ) );
     }
     final List<String> embeddedFailures = this.populateObject(
         targetObject,
-        Maps.newHashMap( Collections.singletonMap( "value", valueField.getName() ) ),
+        plan.valueParameters,
         Maps.newHashMap( Collections.singletonMap( "value", value ) ) );
 
     return embeddedFailures;
@@ -536,29 +520,66 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return null;
   }
 
-  private boolean isValueObject( final Class<?> targetType ) {
-    return findValueField( targetType ) != null;
+  /**
+   * Get the binding plan for the given type, compiling it on first use.
+   *
+   * <p>Plans depend on the request namespace due to versioned annotations so
+   * are cached per binding class and namespace.</p>
+   */
+  private BindingPlan plan( final Class<?> targetType ) {
+    try {
+      return bindingPlanCache.get(
+          new BindingPlanKey( getClass( ), getNamespace( ), targetType ),
+          new Callable<BindingPlan>( ) {
+            @Override
+            public BindingPlan call( ) {
+              return compile( targetType );
+            }
+          } );
+    } catch ( final ExecutionException | UncheckedExecutionException e ) {
+      throw Exceptions.toUndeclared( e.getCause( ) );
+    }
   }
 
-  private Map<String, String> buildFieldMap( Class<?> targetType ) {
-    final Map<String, String> fieldMap = new HashMap<String, String>( );
-    while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
-            && !BaseData.class.equals( targetType ) ) {
-      final Field[] fields = targetType.getDeclaredFields( );
-      for ( final Field f : fields ) {
-        if ( Modifier.isStatic( f.getModifiers( ) ) )
-          continue;
-        else if ( f.isAnnotationPresent( HttpParameterMapping.class ) || f.isAnnotationPresent( HttpParameterMappings.class ) ) {
+  private BindingPlan compile( final Class<?> targetType ) {
+    final Map<String, FieldBinding> fields = Maps.newHashMap( );
+    final Map<String, ParameterBinding> parameters = Maps.newHashMap( );
+    Class<?> type = targetType;
+    while ( !BaseMessage.class.equals( type ) && !EucalyptusMessage.class.equals( type ) && !EucalyptusData.class.equals( type )
+            && !BaseData.class.equals( type ) ) {
+      for ( final Field f : type.getDeclaredFields( ) ) {
+        if ( Modifier.isStatic( f.getModifiers( ) ) ) continue;
+        // fields in sub-classes hide those of the same name in super-classes
+        FieldBinding fieldBinding = fields.get( f.getName( ) );
+        if ( fieldBinding == null ) {
+          fields.put( f.getName( ), fieldBinding = compileField( targetType, f ) );
+        }
+        if ( f.isAnnotationPresent( HttpParameterMapping.class ) || f.isAnnotationPresent( HttpParameterMappings.class ) ) {
           for ( String parameter : getHttpParameterMappingAnnotation( f ).parameter() ) {
-            fieldMap.put( parameter, f.getName( ) );
+            parameters.put( parameter, new ParameterBinding( parameter, fieldBinding ) );
           }
         } else {
-          fieldMap.put( f.getName( ).substring( 0, 1 ).toUpperCase( ).concat( f.getName( ).substring( 1 ) ), f.getName( ) );
+          final String parameter = f.getName( ).substring( 0, 1 ).toUpperCase( ).concat( f.getName( ).substring( 1 ) );
+          parameters.put( parameter, new ParameterBinding( parameter, fieldBinding ) );
         }
       }
-      targetType = targetType.getSuperclass( );
+      type = type.getSuperclass( );
     }
-    return fieldMap;
+    final Field valueField = findValueField( targetType );
+    return new BindingPlan(
+        targetType,
+        parameters,
+        valueField == null ?
+            null :
+            Collections.singletonMap( "value", new ParameterBinding( "value", compileField( targetType, valueField ) ) ) );
+  }
+
+  private FieldBinding compileField( final Class<?> targetType, final Field field ) {
+    final HttpEmbedded httpEmbedded =
+        field.isAnnotationPresent( HttpEmbedded.class ) || field.isAnnotationPresent( HttpEmbeddeds.class ) ?
+            getHttpEmbeddedAnnotation( field ) :
+            null;
+    return new FieldBinding( targetType, field, httpEmbedded );
   }
 
   private HttpEmbedded getHttpEmbeddedAnnotation( final Field field ) {
@@ -626,6 +647,176 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     }
   }
 
+  private static final class BindingPlanKey {
+    private final Class<?> bindingType;
+    private final String namespace;
+    private final Class<?> targetType;
+
+    private BindingPlanKey( final Class<?> bindingType, final String namespace, final Class<?> targetType ) {
+      this.bindingType = bindingType;
+      this.namespace = namespace;
+      this.targetType = targetType;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final BindingPlanKey that = (BindingPlanKey) o;
+      return bindingType.equals( that.bindingType ) &&
+          Objects.equals( namespace, that.namespace ) &&
+          targetType.equals( that.targetType );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( bindingType, namespace, targetType );
+    }
+  }
+
+  /**
+   * Precompiled parameter to field mappings for a message or data type.
+   */
+  private static final class BindingPlan {
+    private final Class<?> type;
+    @Nullable private final MethodHandle constructor;
+    private final Map<String, ParameterBinding> parameters;
+    @Nullable private final Map<String, ParameterBinding> valueParameters;
+
+    private BindingPlan( final Class<?> type,
+                         final Map<String, ParameterBinding> parameters,
+                         @Nullable final Map<String, ParameterBinding> valueParameters ) {
+      this.type = type;
+      this.constructor = constructor( type );
+      this.parameters = Collections.unmodifiableMap( parameters );
+      this.valueParameters = valueParameters;
+    }
+
+    boolean isValueObject( ) {
+      return valueParameters != null;
+    }
+
+    Object newInstance( ) throws Exception {
+      if ( constructor == null ) {
+        return type.newInstance( );
+      }
+      try {
+        return (Object) constructor.invokeExact( );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+
+    @Nullable
+    private static MethodHandle constructor( final Class<?> type ) {
+      try {
+        return MethodHandles.publicLookup( )
+            .findConstructor( type, MethodType.methodType( void.class ) )
+            .asType( MethodType.methodType( Object.class ) );
+      } catch ( final NoSuchMethodException | IllegalAccessException e ) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Binding for a single request parameter, with precompiled patterns for
+   * indexed (list) parameters.
+   */
+  private static final class ParameterBinding {
+    private final String name;
+    private final String prefix;
+    private final FieldBinding field;
+    private final Pattern indexPattern;
+    private final Pattern indexedMemberPattern;
+
+    private ParameterBinding( final String name, final FieldBinding field ) {
+      this.name = name;
+      this.prefix = name + ".";
+      this.field = field;
+      this.indexPattern = Pattern.compile( Pattern.quote( name ) + "\\.([0-9]{1,7})" );
+      this.indexedMemberPattern = Pattern.compile( Pattern.quote( name ) + "\\.([0-9]{1,7})\\.(.*)" );
+    }
+  }
+
+  /**
+   * Field accessors, bound to the generated property methods when available.
+   */
+  private static final class FieldBinding {
+    private final String name;
+    private final Class<?> type;
+    private final boolean data;
+    private final boolean list;
+    @Nullable private final Class<?> listElementType;
+    @Nullable private final HttpEmbedded httpEmbedded;
+    @Nullable private final MethodHandle getter;
+    @Nullable private final MethodHandle setter;
+
+    private FieldBinding( final Class<?> targetType, final Field field, @Nullable final HttpEmbedded httpEmbedded ) {
+      this.name = field.getName( );
+      this.type = field.getType( );
+      this.data = EucalyptusData.class.isAssignableFrom( type );
+      this.list = ArrayList.class.equals( type );
+      this.listElementType = list ? listElementType( field ) : null;
+      this.httpEmbedded = httpEmbedded;
+      final String property = name.substring( 0, 1 ).toUpperCase( ) + name.substring( 1 );
+      this.getter = accessor( targetType, "get" + property, MethodType.methodType( Object.class, Object.class ) );
+      this.setter = accessor( targetType, "set" + property, MethodType.methodType( void.class, Object.class, Object.class ), type );
+    }
+
+    Object get( final GroovyObject target ) throws Exception {
+      if ( getter == null ) {
+        return target.getProperty( name );
+      }
+      try {
+        return (Object) getter.invokeExact( (Object) target );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+
+    void set( final GroovyObject target, final Object value ) throws Exception {
+      if ( setter == null ) {
+        target.setProperty( name, value );
+        return;
+      }
+      try {
+        setter.invokeExact( (Object) target, value );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+
+    @Nullable
+    private static Class<?> listElementType( final Field field ) {
+      if ( field.getGenericType( ) instanceof ParameterizedType ) {
+        final Type elementType = ( (ParameterizedType) field.getGenericType( ) ).getActualTypeArguments( )[0];
+        if ( elementType instanceof Class ) {
+          return (Class<?>) elementType;
+        }
+      }
+      return null;
+    }
+
+    @Nullable
+    private static MethodHandle accessor( final Class<?> targetType,
+                                          final String methodName,
+                                          final MethodType methodType,
+                                          final Class<?>... parameterTypes ) {
+      try {
+        final Method method = targetType.getMethod( methodName, parameterTypes );
+        return MethodHandles.publicLookup( ).unreflect( method ).asType( methodType );
+      } catch ( final NoSuchMethodException | IllegalAccessException | WrongMethodTypeException e ) {
+        return null;
+      }
+    }
+  }
+
+  private static Exception rethrow( final Throwable t ) {
+    Throwables.propagateIfPossible( t, Exception.class );
+    return new RuntimeException( t );
+  }
+
   public static String replaceStringPrefixIfExists(String target, String oldPrefix, String newPrefix) {
     if (target == null) throw new NullPointerException("target can not be null");
     if (oldPrefix == null) throw new NullPointerException("oldPrefix can not be null");
@@ -77,7 +77,9 @@ import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.Subject;
+import org.junit.Ignore;
 import org.junit.Test;
 import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.auth.InvalidSignatureAuthException;
@@ -666,6 +668,49 @@ public class HmacLoginModuleTest {
     assertTrue("Authentication successful", hmacV4LoginModule("vNhDy9ERZQP5WXCdmPR7ZbbzZwdlQXETeZ6wM64i").authenticate(creds));
   }
 
+  @Test
+  public void testSigningKeyCached() throws Exception {
+    final HmacUtils.SignatureCredential credential =
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20110909/us-east-1/host/aws4_request" );
+    final String secret = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+    final SecretKeySpec signingKey = Hmacv4LoginModule.getSigningKey( secret, credential );
+    assertArrayEquals( "Signing key", Hmacv4LoginModule.getSignatureKey( secret, credential ), signingKey.getEncoded( ) );
+    assertSame( "Cached signing key", signingKey, Hmacv4LoginModule.getSigningKey( secret, credential ) );
+    assertNotSame( "Signing key for other secret", signingKey, Hmacv4LoginModule.getSigningKey( secret + "2", credential ) );
+  }
+
+  @Ignore("Manual development test")
+  @Test
+  public void testSigV4AuthenticationPerformance() throws Exception {
+    final HmacCredentials creds = new HmacCredentials(
+        "1234567890",
+        HmacUtils.SignatureVariant.SignatureV4Standard,
+        ImmutableMap.<String,List<String>>builder()
+            .put( "Action", Lists.newArrayList( "ListMetrics" ) )
+            .put( "Version", Lists.newArrayList( "2010-08-01" ) )
+            .build(),
+        ImmutableMap.<String,List<String>>builder()
+            .put( "host", Lists.newArrayList( "cloudwatch.g-12-03.autoqa.qa1.eucalyptus-systems.com:8773" ) )
+            .put( "x-amz-date", Lists.newArrayList( "20140507T202657Z" ) )
+            .put( "authorization", Lists.newArrayList( "AWS4-HMAC-SHA256 Credential=AKI67CCVBS1XAL7UG9KE/20140507/g-12-03/cloudwatch/aws4_request, SignedHeaders=host;x-amz-date, Signature=1a74acf1bf2b22bddad7314cc44eef6fe562a50373ca239113d2c1942a677739" ) )
+            .build(),
+        "GET",
+        "/",
+        ""
+    );
+    final Hmacv4LoginModule loginModule = hmacV4LoginModule( "vNhDy9ERZQP5WXCdmPR7ZbbzZwdlQXETeZ6wM64i" );
+    final int iterations = 100_000;
+    for ( int i=0; i<iterations; i++ ) { // warm up
+      loginModule.authenticate( creds );
+    }
+    final long start = System.nanoTime( );
+    for ( int i=0; i<iterations; i++ ) {
+      loginModule.authenticate( creds );
+    }
+    final long elapsed = System.nanoTime( ) - start;
+    System.out.println( "Authenticated " + iterations + " requests in " + ( elapsed / 1_000_000 ) + "ms (" + ( elapsed / iterations ) + "ns per request)" );
+  }
+
   /**
    * EUCA-4748 sig v2
    */
@@ -38,6 +38,7 @@ import com.google.common.base.Supplier
 import com.google.common.collect.ImmutableSet
 import net.sf.json.JSONException
 import org.junit.BeforeClass
+import org.junit.Ignore
 
 import java.nio.charset.StandardCharsets
 
@@ -676,6 +677,38 @@ class PolicyEngineTest {
   void testResourcePolicyDistinctOwnerAuthDeny( ) {
   }
 
+  @Ignore("Manual development test")
+  @Test
+  void testEvaluateAuthorizationPerformance( ) {
+    String policy = """\
+      {
+        "Statement":[ {
+          "Effect": "Deny",
+          "Action": [ "ec2:TerminateInstances", "ec2:Delete*", "ec2:*Vpc*" ],
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": [ "ec2:RunInstances", "ec2:StartInstances", "ec2:StopInstances" ],
+          "Resource": "arn:aws:ec2:*:*:instance/*"
+        }, {
+          "Effect": "Allow",
+          "Action": [ "ec2:Describe*", "s3:Get*", "s3:List*", "iam:Get*", "iam:List*" ],
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent()
+    int iterations = 100000
+    for ( int i=0; i<iterations; i++ ) { // warm up
+      evaluateAuthorization( policy, "ec2:image", "ec2:describeimages", "010101010101", "emi-00000000" )
+    }
+    long start = System.nanoTime( )
+    for ( int i=0; i<iterations; i++ ) {
+      evaluateAuthorization( policy, "ec2:image", "ec2:describeimages", "010101010101", "emi-00000000" )
+    }
+    long elapsed = System.nanoTime( ) - start
+    println "Evaluated ${iterations} authorizations in ${elapsed / 1000000}ms (${elapsed / iterations}ns per evaluation)"
+  }
+
   private void evaluateAuthorization( String policy,
                                       String resourceType,
                                       String requestAction,
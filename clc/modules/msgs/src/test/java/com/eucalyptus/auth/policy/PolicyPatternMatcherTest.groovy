@@ -0,0 +1,67 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy
+
+import static org.junit.Assert.*
+import org.junit.Test
+import java.util.regex.Pattern
+
+/**
+ * Verify compiled pattern matchers are consistent with PolicyUtils#toJavaPattern
+ */
+class PolicyPatternMatcherTest {
+
+  private static final List<String> patterns = [
+      '', '*', '**', '?', 'a', 'abc', 'a*', '*a', '*a*', 'a*b', 'a?c', 'a.b', 'a.*', '*.b',
+      'ec2:describe*', 'ec2:*instances', 'ec2:*', 'arn:aws:s3:::bucket/*', 'arn:aws:iam::*:user/*'
+  ]
+
+  private static final List<String> instances = [
+      '', 'a', 'b', 'ab', 'ba', 'abc', 'a.b', 'axb', 'a\nb', '\na', 'a\n', 'a ', 'ec2:describeinstances',
+      'ec2:runinstances', 'ec2:describe', 'arn:aws:s3:::bucket/key', 'arn:aws:iam::123456789012:user/test'
+  ]
+
+  @Test
+  void testConsistentWithRegex( ) {
+    for ( String pattern : patterns ) {
+      PolicyPatternMatcher matcher = PolicyPatternMatcher.compile( pattern )
+      for ( String instance : instances ) {
+        assertEquals( "${pattern} ~= ${instance}",
+            Pattern.matches( PolicyUtils.toJavaPattern( pattern ), instance ),
+            matcher.matches( instance ) )
+      }
+    }
+  }
+
+  @Test
+  void testAnyOf( ) {
+    PolicyPatternMatcher matcher = PolicyPatternMatcher.anyOf( [ 'ec2:runinstances', 'ec2:describe*', 'iam:?etuser' ] )
+    assertTrue( matcher.matches( 'ec2:runinstances' ) )
+    assertTrue( matcher.matches( 'ec2:describeimages' ) )
+    assertTrue( matcher.matches( 'iam:getuser' ) )
+    assertFalse( matcher.matches( 'ec2:terminateinstances' ) )
+    assertFalse( matcher.matches( null ) )
+  }
+
+  @Test
+  void testCached( ) {
+    assertSame( PolicyPatternMatcher.of( 'ec2:describe*' ), PolicyPatternMatcher.of( 'ec2:describe*' ) )
+  }
+}
@@ -0,0 +1,255 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.junit.Test;
+import com.eucalyptus.util.Pair;
+import com.google.common.base.Functions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * Unit tests for change notified entity caches.
+ */
+public class EntityCacheTest {
+
+  private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis( 1 );
+
+  @Test
+  public void testNotifyAfterCommit( ) {
+    final TestEntityCache cache = new TestEntityCache( CommittedEntity.class, HOUR_MILLIS );
+    cache.store( "1", 1 );
+    assertEquals( "Initial", ImmutableList.of( "1:1" ), list( cache ) );
+
+    cache.store( "1", 2 );
+    final DelegatingInterceptor interceptor = new DelegatingInterceptor( EmptyInterceptor.INSTANCE );
+    interceptor.afterTransactionBegin( transaction( false ) );
+    interceptor.onFlushDirty( new CommittedEntity( ), "1", null, null, null, null );
+    assertEquals( "Before commit", ImmutableList.of( "1:1" ), list( cache ) );
+
+    interceptor.afterTransactionCompletion( transaction( true ) );
+    assertEquals( "After commit", ImmutableList.of( "1:2" ), list( cache ) );
+    assertEquals( "Reconcile count", 1, cache.reconciles );
+    assertEquals( "Loaded", ImmutableList.of( ImmutableList.of( "1" ), ImmutableList.of( "1" ) ), cache.loads );
+  }
+
+  @Test
+  public void testNoNotifyOnRollback( ) {
+    final TestEntityCache cache = new TestEntityCache( RolledBackEntity.class, HOUR_MILLIS );
+    cache.store( "1", 1 );
+    assertEquals( "Initial", ImmutableList.of( "1:1" ), list( cache ) );
+
+    cache.store( "1", 2 );
+    final DelegatingInterceptor interceptor = new DelegatingInterceptor( EmptyInterceptor.INSTANCE );
+    interceptor.afterTransactionBegin( transaction( false ) );
+    interceptor.onSave( new RolledBackEntity( ), "1", null, null, null );
+    interceptor.afterTransactionCompletion( transaction( false ) );
+    assertEquals( "After rollback", ImmutableList.of( "1:1" ), list( cache ) );
+    assertEquals( "Load count", 1, cache.loads.size( ) );
+
+    // changes from the rolled back transaction must not leak into the next one
+    interceptor.afterTransactionBegin( transaction( false ) );
+    interceptor.afterTransactionCompletion( transaction( true ) );
+    assertEquals( "After empty commit", ImmutableList.of( "1:1" ), list( cache ) );
+    assertEquals( "Load count", 1, cache.loads.size( ) );
+  }
+
+  @Test
+  public void testPerSessionTracking( ) {
+    final TestEntityCache cache = new TestEntityCache( PerSessionEntity.class, HOUR_MILLIS );
+    cache.store( "1", 1 );
+    cache.store( "2", 1 );
+    cache.store( "3", 1 );
+    assertEquals( "Initial", ImmutableList.of( "1:1", "2:1", "3:1" ), list( cache ) );
+
+    cache.store( "1", 2 );
+    cache.store( "2", 2 );
+    cache.remove( "3" );
+    final DelegatingInterceptor session1 = new DelegatingInterceptor( EmptyInterceptor.INSTANCE );
+    final DelegatingInterceptor session2 = new DelegatingInterceptor( EmptyInterceptor.INSTANCE );
+    session1.afterTransactionBegin( transaction( false ) );
+    session2.afterTransactionBegin( transaction( false ) );
+    session1.onFlushDirty( new PerSessionEntity( ), "1", null, null, null, null );
+    session1.onDelete( new PerSessionEntity( ), "3", null, null, null );
+    session1.onSave( new UntrackedEntity( ), "4", null, null, null );
+    session2.onFlushDirty( new PerSessionEntity( ), "2", null, null, null, null );
+    session2.afterTransactionCompletion( transaction( false ) );
+    session1.afterTransactionCompletion( transaction( true ) );
+
+    assertEquals( "After commit", ImmutableList.of( "1:2", "2:1" ), list( cache ) );
+    assertEquals( "Loaded ids", ImmutableList.of( "1", "3" ), sorted( cache.loads.get( 1 ) ) );
+    assertEquals( "Reconcile count", 1, cache.reconciles );
+  }
+
+  @Test
+  public void testReconcileFallback( ) {
+    final TestEntityCache cache = new TestEntityCache( ReconciledEntity.class, HOUR_MILLIS );
+    cache.store( "1", 1 );
+    cache.store( "2", 1 );
+    assertEquals( "Initial", ImmutableList.of( "1:1", "2:1" ), list( cache ) );
+
+    // changes not seen by the interceptor, e.g. bulk updates or other hosts
+    cache.store( "1", 2 );
+    cache.remove( "2" );
+    cache.store( "3", 1 );
+    assertEquals( "Before reconcile", ImmutableList.of( "1:1", "2:1" ), list( cache ) );
+    assertEquals( "Reconcile count", 1, cache.reconciles );
+
+    cache.reconcileInterval.set( -1 );
+    assertEquals( "After reconcile", ImmutableList.of( "1:2", "3:1" ), list( cache ) );
+    assertEquals( "Reconcile count", 2, cache.reconciles );
+    assertEquals( "Loaded ids", ImmutableList.of( "1", "3" ), sorted( cache.loads.get( 1 ) ) );
+
+    final long generation = cache.refreshGeneration( );
+    assertEquals( "Generation without changes", generation, cache.refreshGeneration( ) );
+    assertEquals( "Load count", 2, cache.loads.size( ) );
+  }
+
+  @Test
+  public void testChangedRefreshSkippedDuringReconcile( ) throws Exception {
+    final TestEntityCache cache = new TestEntityCache( SkippedEntity.class, HOUR_MILLIS );
+    cache.store( "1", 1 );
+    assertEquals( "Initial", ImmutableList.of( "1:1" ), list( cache ) );
+    final long generation = cache.refreshChangedGeneration( );
+
+    cache.store( "1", 2 );
+    cache.reconcileInterval.set( -1 );
+    cache.reconcileStarted = new CountDownLatch( 1 );
+    cache.reconcileRelease = new CountDownLatch( 1 );
+    final ExecutorService executor = Executors.newSingleThreadExecutor( );
+    try {
+      final Future<Long> reconcile = executor.submit( cache::refreshGeneration );
+      assertTrue( "Reconcile started", cache.reconcileStarted.await( 5, TimeUnit.SECONDS ) );
+      assertEquals( "Generation during reconcile", generation, cache.refreshChangedGeneration( ) );
+      cache.reconcileRelease.countDown( );
+      assertNotEquals( "Generation after reconcile", generation, (long) reconcile.get( 5, TimeUnit.SECONDS ) );
+    } finally {
+      cache.reconcileRelease.countDown( );
+      executor.shutdownNow( );
+    }
+    assertEquals( "Reconcile count", 2, cache.reconciles );
+  }
+
+  private static List<String> list( final EntityCache<?,String> cache ) {
+    return Lists.newArrayList( cache.get( ) );
+  }
+
+  private static List<String> sorted( final List<String> ids ) {
+    return Ordering.natural( ).sortedCopy( ids );
+  }
+
+  private static Transaction transaction( final boolean committed ) {
+    return (Transaction) Proxy.newProxyInstance(
+        EntityCacheTest.class.getClassLoader( ),
+        new Class<?>[]{ Transaction.class },
+        ( proxy, method, args ) -> "wasCommitted".equals( method.getName( ) ) ? committed : null );
+  }
+
+  public static class CommittedEntity extends AbstractPersistent { }
+  public static class RolledBackEntity extends AbstractPersistent { }
+  public static class PerSessionEntity extends AbstractPersistent { }
+  public static class ReconciledEntity extends AbstractPersistent { }
+  public static class UntrackedEntity extends AbstractPersistent { }
+  public static class SkippedEntity extends AbstractPersistent { }
+
+  /**
+   * Cache backed by an in memory map of identifiers to versions.
+   */
+  private static final class TestEntityCache extends EntityCache<AbstractPersistent,String> {
+    private final Map<String,Integer> versions = Maps.newConcurrentMap( );
+    private final AtomicLong reconcileInterval;
+    private final List<List<String>> loads = Lists.newArrayList( );
+    private volatile int reconciles;
+    private volatile CountDownLatch reconcileStarted;
+    private volatile CountDownLatch reconcileRelease;
+
+    private TestEntityCache( final Class<? extends AbstractPersistent> entityClass,
+                             final long reconcileInterval ) {
+      super( newInstance( entityClass ), Functions.toStringFunction( ) );
+      this.reconcileInterval = new AtomicLong( reconcileInterval );
+      changeNotified( new Supplier<Long>( ) {
+        @Override
+        public Long get( ) {
+          return TestEntityCache.this.reconcileInterval.get( );
+        }
+      } );
+    }
+
+    private static AbstractPersistent newInstance( final Class<? extends AbstractPersistent> entityClass ) {
+      try {
+        return entityClass.newInstance( );
+      } catch ( final ReflectiveOperationException e ) {
+        throw new RuntimeException( e );
+      }
+    }
+
+    void store( final String id, final int version ) {
+      versions.put( id, version );
+    }
+
+    void remove( final String id ) {
+      versions.remove( id );
+    }
+
+    @Override
+    Map<String, Integer> loadVersionMap( ) {
+      reconciles++;
+      if ( reconcileStarted != null ) {
+        reconcileStarted.countDown( );
+        try {
+          reconcileRelease.await( 5, TimeUnit.SECONDS );
+        } catch ( final InterruptedException e ) {
+          Thread.currentThread( ).interrupt( );
+        }
+      }
+      return Maps.newHashMap( versions );
+    }
+
+    @Override
+    Map<String, Pair<Integer, String>> loadBatch( final List<String> idBatch ) {
+      loads.add( ImmutableList.copyOf( idBatch ) );
+      final Map<String, Pair<Integer, String>> loaded = Maps.newHashMap( );
+      for ( final String id : idBatch ) {
+        final Integer version = versions.get( id );
+        if ( version != null ) {
+          loaded.put( id, Pair.pair( version, id + ":" + version ) );
+        }
+      }
+      return loaded;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.event
+
+import org.junit.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class PeriodicListenerSchedulerTest {
+
+  @Test
+  void testSkipPriorityAndDeadline( ) {
+    PeriodicListenerScheduler scheduler = new PeriodicListenerScheduler( 1 )
+    List<String> fired = Collections.synchronizedList( [ ] )
+    CountDownLatch release = new CountDownLatch( 1 )
+    CountDownLatch blocking = new CountDownLatch( 1 )
+    BlockingListener blocked = new BlockingListener( blocking: blocking, release: release )
+    LowListener low = new LowListener( fired: fired )
+    HighListener high = new HighListener( fired: fired )
+    DeadlineListener deadline = new DeadlineListener( fired: fired )
+
+    scheduler.fire( [ blocked ], new TestEvent( ) )
+    assertTrue( 'blocking', blocking.await( 5, TimeUnit.SECONDS ) )
+    scheduler.fire( [ blocked, low, high, deadline ], new TestEvent( ) )
+    Thread.sleep( 100 )
+    release.countDown( )
+    awaitRuns( scheduler, low, 1 )
+    awaitRuns( scheduler, high, 1 )
+    await{ scheduler.getSkipped( deadline ) > 0 }
+
+    assertEquals( 'fired in priority order', [ 'high', 'low' ], fired )
+    assertEquals( 'busy listener skipped', 1, scheduler.getSkipped( blocked ) )
+    assertEquals( 'late listener skipped', 1, scheduler.getSkipped( deadline ) )
+  }
+
+  @Test
+  void testOrdered( ) {
+    PeriodicListenerScheduler scheduler = new PeriodicListenerScheduler( 4 )
+    List<String> fired = Collections.synchronizedList( [ ] )
+    List<OrderedListener> listeners = ( 1..10 ).collect{ new OrderedListener( fired: fired, name: String.valueOf( it ) ) }
+    scheduler.fire( listeners, new TestEvent( ) )
+    awaitRuns( scheduler, listeners.last( ), 1 )
+    assertEquals( 'fired in registration order', ( 1..10 )*.toString( ), fired )
+  }
+
+  @Test
+  void testStatisticsPerInstance( ) {
+    PeriodicListenerScheduler scheduler = new PeriodicListenerScheduler( 2 )
+    List<String> fired = Collections.synchronizedList( [ ] )
+    LowListener low1 = new LowListener( fired: fired )
+    LowListener low2 = new LowListener( fired: fired )
+    scheduler.fire( [ low1, low2 ], new TestEvent( ) )
+    awaitRuns( scheduler, low1, 1 )
+    awaitRuns( scheduler, low2, 1 )
+    scheduler.fire( [ low1 ], new TestEvent( ) )
+    awaitRuns( scheduler, low1, 2 )
+
+    Map<String,Object> statistics = scheduler.getStatistics( )
+    assertEquals( 'first instance runs', 2L, statistics[ LowListener.name + '.Runs' ] )
+    assertEquals( 'second instance runs', 1L, statistics[ LowListener.name + '#2.Runs' ] )
+  }
+
+  private static void awaitRuns( PeriodicListenerScheduler scheduler, EventListener listener, long runs ) {
+    await{ ( scheduler.getDuration( listener )?.count( ) ?: 0 ) >= runs }
+    assertEquals( 'runs', runs, scheduler.getDuration( listener )?.count( ) ?: 0 )
+  }
+
+  private static void await( Closure<Boolean> condition ) {
+    long until = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( 5 )
+    while ( !condition( ) && System.currentTimeMillis( ) < until ) {
+      Thread.sleep( 10 )
+    }
+  }
+
+  static class TestEvent implements Event { }
+
+  static class BlockingListener implements EventListener<TestEvent> {
+    CountDownLatch blocking
+    CountDownLatch release
+
+    @Override
+    void fireEvent( final TestEvent event ) {
+      blocking.countDown( )
+      release.await( 5, TimeUnit.SECONDS )
+    }
+  }
+
+  static class LowListener implements EventListener<TestEvent> {
+    List<String> fired
+
+    @Override
+    void fireEvent( final TestEvent event ) {
+      fired << 'low'
+    }
+  }
+
+  @EventListener.Scheduling( priority = 10 )
+  static class HighListener implements EventListener<TestEvent> {
+    List<String> fired
+
+    @Override
+    void fireEvent( final TestEvent event ) {
+      fired << 'high'
+    }
+  }
+
+  @EventListener.Scheduling( deadline = 50L )
+  static class DeadlineListener implements EventListener<TestEvent> {
+    List<String> fired
+
+    @Override
+    void fireEvent( final TestEvent event ) {
+      fired << 'deadline'
+    }
+  }
+
+  @EventListener.Scheduling( ordered = true )
+  static class OrderedListener implements EventListener<TestEvent> {
+    List<String> fired
+    String name
+
+    @Override
+    void fireEvent( final TestEvent event ) {
+      fired << name
+    }
+  }
+}
@@ -117,7 +117,7 @@ public class ObjectStorageLoginModule extends BaseLoginModule<ObjectStorageWrapp
 
   private boolean authV4(ObjectStorageWrappedCredentials credentials) throws Exception {
     AccessKey accessKey = lookupAccessKey(credentials.credential.getAccessKeyId(), credentials.securityToken);
-    byte[] signatureKey = Hmacv4LoginModule.getSignatureKey(accessKey.getSecretKey(), credentials.credential);
+    SecretKeySpec signatureKey = Hmacv4LoginModule.getSigningKey(accessKey.getSecretKey(), credentials.credential);
     byte[] computedSig = Hmacv4LoginModule.getHmacSHA256(signatureKey, credentials.getLoginData());
     byte[] providedSig = BaseEncoding.base16().lowerCase().decode(credentials.signature);
 
@@ -43,6 +43,8 @@ import com.eucalyptus.auth.policy.PolicyParser;
 import com.eucalyptus.auth.policy.ern.Ern;
 import com.eucalyptus.auth.type.LimitedType;
 import com.eucalyptus.cloudwatch.common.msgs.PutMetricDataType;
+import com.eucalyptus.component.ServiceConfiguration;
+import com.eucalyptus.component.ServiceConfigurations;
 import com.eucalyptus.component.ServiceUris;
 import com.eucalyptus.component.Topology;
 import com.eucalyptus.component.annotation.ComponentNamed;
@@ -84,6 +86,7 @@ import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
@@ -1640,6 +1643,14 @@ public class SimpleQueueService {
     return System.currentTimeMillis() / 1000L;
   }
 
+  /**
+   * @return true if all enabled simple queue services are on this host
+   */
+  public static boolean isSimpleQueueHostLocal() {
+    final Collection<ServiceConfiguration> enabledServices = Topology.enabledServices(SimpleQueue.class);
+    return !enabledServices.isEmpty() && Iterables.all(enabledServices, ServiceConfigurations.filterHostLocal());
+  }
+
   private static class QueueResolver implements Function<String,Queue> {
     private final Queue queue;
 
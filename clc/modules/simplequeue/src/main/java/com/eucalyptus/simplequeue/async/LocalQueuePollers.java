@@ -0,0 +1,221 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.async;
+
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Consumer;
+import com.eucalyptus.util.Consumers;
+import com.google.common.collect.Maps;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process registry of long polling receives keyed by queue ARN.
+ *
+ * Used in place of the polled notifications service when all simple queue services are on this host, so
+ * a send wakes a waiting receive directly. Waiting receives do not hold a thread, timeouts and wakeups
+ * run on a small shared pool.
+ */
+public class LocalQueuePollers {
+  private static final Logger logger = Logger.getLogger( LocalQueuePollers.class );
+
+  private static final long PENDING_NOTIFICATION_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+  private static final ConcurrentMap<String, Pollers> pollersByChannel = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String, Long> pendingNotificationsByChannel = Maps.newConcurrentMap( );
+  private static final ScheduledThreadPoolExecutor executor = executor( );
+
+  private static ScheduledThreadPoolExecutor executor( ) {
+    final ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor( 4, Threads.threadFactory( "simplequeue-long-poll-%d" ) );
+    executor.setRemoveOnCancelPolicy( true );
+    return executor;
+  }
+
+  /**
+   * Wait for a notification on the given channel.
+   *
+   * @param channel The channel (queue ARN)
+   * @param timeout The time at which to stop waiting (milliseconds since the epoch)
+   * @param resultConsumer Consumer called with true if notified or false on timeout
+   * @param checker Check for an available result when no notification is pending, may be null
+   */
+  public static void poll( final String channel,
+                           final long timeout,
+                           final Consumer<Boolean> resultConsumer,
+                           final QueuePolledNotificationChecker checker ) {
+    final Poller poller = new Poller( channel, Consumers.once( resultConsumer ) );
+    pollers( channel ).add( poller );
+    poller.timeoutFuture = executor.schedule(
+        ( ) -> expire( poller ),
+        Math.max( 0L, timeout - System.currentTimeMillis( ) ),
+        TimeUnit.MILLISECONDS );
+
+    // check after adding the poller so a notification cannot be missed
+    final Long pendingNotification = pendingNotificationsByChannel.remove( channel );
+    if ( pendingNotification != null && !isExpired( pendingNotification, System.currentTimeMillis( ) ) ) {
+      notify( channel );
+    } else if ( checker != null && checker.apply( channel ) ) {
+      notify( channel );
+    }
+  }
+
+  /**
+   * Wake one poller for the channel, or record the notification for the next poller.
+   *
+   * @param channel The channel (queue ARN)
+   * @return True if a poller was notified
+   */
+  public static boolean notify( final String channel ) {
+    final Pollers pollers = pollersByChannel.get( channel );
+    Poller poller;
+    while ( pollers != null && ( poller = pollers.pollersQueue.poll( ) ) != null ) {
+      if ( poller.cancelTimeout( ) ) {
+        final Poller notified = poller;
+        executor.execute( ( ) -> notified.accept( true ) );
+        return true;
+      }
+    }
+    pendingNotificationsByChannel.put( channel, System.currentTimeMillis( ) );
+    return false;
+  }
+
+  /**
+   * Check if there are pollers waiting on the channel.
+   */
+  public static boolean hasPollers( final String channel ) {
+    final Pollers pollers = pollersByChannel.get( channel );
+    return pollers != null && !pollers.isEmpty( );
+  }
+
+  /**
+   * Check if the channel is tracked, i.e. has pollers or has been used recently.
+   */
+  static boolean isTracked( final String channel ) {
+    return pollersByChannel.containsKey( channel );
+  }
+
+  static void periodicWork( final long time ) {
+    for ( final Map.Entry<String, Pollers> entry : pollersByChannel.entrySet( ) ) {
+      if ( entry.getValue( ).isEmpty( ) && entry.getValue( ).isExpired( time ) ) {
+        pollersByChannel.remove( entry.getKey( ), entry.getValue( ) );
+      }
+    }
+    for ( final Map.Entry<String, Long> entry : pendingNotificationsByChannel.entrySet( ) ) {
+      if ( isExpired( entry.getValue( ), time ) ) {
+        pendingNotificationsByChannel.remove( entry.getKey( ), entry.getValue( ) );
+      }
+    }
+  }
+
+  private static boolean isExpired( final long notificationTimestamp, final long time ) {
+    return ( notificationTimestamp + PENDING_NOTIFICATION_EXPIRY_MILLIS ) < time;
+  }
+
+  private static Queue<Poller> pollers( final String channel ) {
+    Pollers pollers = pollersByChannel.get( channel );
+    if ( pollers != null ) {
+      pollers.touch( );
+      // get again to ensure not evicted due to expiry before touched
+      pollers = pollersByChannel.get( channel );
+    }
+    if ( pollers == null ) {
+      pollersByChannel.putIfAbsent( channel, new Pollers( ) );
+      pollers = pollersByChannel.get( channel );
+    }
+    return pollers.pollersQueue;
+  }
+
+  private static void expire( final Poller poller ) {
+    final Pollers pollers = pollersByChannel.get( poller.channel );
+    if ( pollers != null ) {
+      pollers.touch( );
+      pollers.pollersQueue.remove( poller );
+    }
+    poller.accept( false );
+  }
+
+  private static final class Pollers {
+    private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 2 );
+
+    private final AtomicLong timestamp = new AtomicLong( System.currentTimeMillis( ) );
+    private final Queue<Poller> pollersQueue = new ConcurrentLinkedQueue<>( );
+
+    private boolean isEmpty( ) {
+      return pollersQueue.isEmpty( );
+    }
+
+    private boolean isExpired( final long time ) {
+      return ( timestamp.get( ) + EXPIRY_MILLIS ) < time;
+    }
+
+    private void touch( ) {
+      timestamp.set( System.currentTimeMillis( ) );
+    }
+  }
+
+  private static final class Poller {
+    private final String channel;
+    private final Consumer<Boolean> consumer;
+    private volatile ScheduledFuture<?> timeoutFuture;
+
+    private Poller( final String channel, final Consumer<Boolean> consumer ) {
+      this.channel = channel;
+      this.consumer = consumer;
+    }
+
+    /**
+     * @return True if the timeout was cancelled, false if the poller has already timed out
+     */
+    private boolean cancelTimeout( ) {
+      final ScheduledFuture<?> future = timeoutFuture;
+      return future == null || future.cancel( false );
+    }
+
+    private void accept( final boolean notified ) {
+      try {
+        consumer.accept( notified );
+      } catch ( final Exception e ) {
+        logger.error( "Error notifying poller for " + channel, e );
+      }
+    }
+  }
+
+  public static class LocalQueuePollersEventListener implements EventListener<ClockTick> {
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new LocalQueuePollersEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( Bootstrap.isOperational( ) ) {
+        LocalQueuePollers.periodicWork( System.currentTimeMillis( ) );
+      }
+    }
+  }
+}
@@ -15,36 +15,90 @@
  ************************************************************************/
 package com.eucalyptus.simplequeue.async;
 
+import com.eucalyptus.simplequeue.SimpleQueueService;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
 import com.eucalyptus.simplequeue.persistence.Queue;
 import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
+import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.Consumer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.log4j.Logger;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
+ * Long polling notifications for queues.
  *
+ * When all simple queue services are on this host pollers wait in the LocalQueuePollers registry and
+ * are woken directly. Otherwise notifications go to the polled notifications service. Queues notified
+ * within a short interval are sent together in a single request, with each queue included once.
  */
 public class NotifyClient {
   private static class QueueChannelWrapper implements NotifyClientUtils.ChannelWrapper {
-    Queue queue;
+    String channelName;
 
-    private QueueChannelWrapper(Queue queue) {
-      this.queue = queue;
+    private QueueChannelWrapper(String channelName) {
+      this.channelName = channelName;
     }
 
     @Override
     public String getChannelName() {
-      return queue.getArn();
+      return channelName;
     }
   }
   private static final Logger logger = Logger.getLogger(NotifyClient.class);
 
+  private static final long REMOTE_NOTIFY_BATCH_MILLIS = 50L;
+  private static final QueuePolledNotificationChecker checker = new QueuePolledNotificationChecker();
+  private static final Set<String> pendingRemoteNotifications = Sets.newConcurrentHashSet();
+  private static final AtomicBoolean remoteNotifyScheduled = new AtomicBoolean(false);
+  private static final ScheduledExecutorService remoteNotifyExecutor =
+    Executors.newSingleThreadScheduledExecutor(Threads.threadFactory("simplequeue-notify-%d"));
+
   public static void notifyQueue(final Queue queue) {
-    NotifyClientUtils.notifyChannel(new QueueChannelWrapper(queue));
+    final String channel = queue.getArn();
+    if (isLocal()) {
+      LocalQueuePollers.notify(channel);
+    } else {
+      // pollers registered before a change of topology
+      if (LocalQueuePollers.hasPollers(channel)) {
+        LocalQueuePollers.notify(channel);
+      }
+      pendingRemoteNotifications.add(channel);
+      if (remoteNotifyScheduled.compareAndSet(false, true)) {
+        remoteNotifyExecutor.schedule(NotifyClient::sendRemoteNotifications, REMOTE_NOTIFY_BATCH_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
   }
 
   public static void pollQueue(final Queue queue,
                                   final long timeout,
                                   final Consumer<Boolean> resultConsumer) throws Exception {
-    NotifyClientUtils.pollChannel(new QueueChannelWrapper(queue), timeout, resultConsumer);
+    if (isLocal()) {
+      LocalQueuePollers.poll(queue.getArn(), timeout, resultConsumer, checker);
+    } else {
+      NotifyClientUtils.pollChannel(new QueueChannelWrapper(queue.getArn()), timeout, resultConsumer);
+    }
+  }
+
+  private static boolean isLocal() {
+    return SimpleQueueProperties.ENABLE_LOCAL_LONG_POLLING && SimpleQueueService.isSimpleQueueHostLocal();
+  }
+
+  private static void sendRemoteNotifications() {
+    remoteNotifyScheduled.set(false);
+    final List<String> channels = Lists.newArrayList(pendingRemoteNotifications);
+    pendingRemoteNotifications.removeAll(channels);
+    try {
+      NotifyClientUtils.notifyChannels(channels);
+    } catch (Exception e) {
+      logger.error("Error sending notifications for " + channels.size() + " queues", e);
+    }
   }
 }
@@ -130,6 +130,23 @@ public class SimpleQueueProperties {
     initial = "80", changeListener = MinValuePropertyChangeListener.class )
   @MinValue(min = 1)
   public volatile static int MAX_BATCH_ID_LENGTH = 80;
+  @ConfigurableField(
+    initial = "false",
+    description = "Set 'true' to buffer postgres messages in memory when all simple queue services are on this host",
+    changeListener = PropertyChangeListeners.IsBoolean.class )
+  public static volatile Boolean ENABLE_MESSAGE_BUFFER = false;
+  @ConfigurableField( description = "Interval between writes of buffered message changes to the database. (milliseconds)",
+    initial = "100", changeListener = MinValuePropertyChangeListener.class )
+  @MinValue(min = 1)
+  public volatile static int MESSAGE_BUFFER_FLUSH_INTERVAL_MILLIS = 100;
+  @ConfigurableField( description = "Interval between sweeps for expired and dead letter messages. (seconds)",
+    initial = "30", changeListener = MinValuePropertyChangeListener.class )
+  @MinValue(min = 1)
+  public volatile static int MESSAGE_SWEEP_INTERVAL_SECS = 30;
+  @ConfigurableField( description = "Maximum number of messages moved to a dead letter queue per queue per sweep.",
+    initial = "1000", changeListener = MinValuePropertyChangeListener.class )
+  @MinValue(min = 1)
+  public volatile static int MESSAGE_SWEEP_MAX_DEAD_LETTER_MESSAGES = 1000;
   @ConfigurableField(
     initial = "true",
     description = "Set 'true' to allow CloudWatch Metrics for SQS",
@@ -140,6 +157,11 @@ public class SimpleQueueProperties {
     description = "Set 'true' to allow Long Polling for SQS",
     changeListener = PropertyChangeListeners.IsBoolean.class )
   public static volatile Boolean ENABLE_LONG_POLLING = true;
+  @ConfigurableField(
+    initial = "true",
+    description = "Set 'true' to wait for Long Polling notifications in process when all SQS services are on this host",
+    changeListener = PropertyChangeListeners.IsBoolean.class )
+  public static volatile Boolean ENABLE_LOCAL_LONG_POLLING = true;
 
   @Target(ElementType.FIELD)
   @Retention(RetentionPolicy.RUNTIME)
@@ -20,6 +20,7 @@ import com.eucalyptus.simplequeue.common.policy.SimpleQueueResourceName;
 import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
 import com.eucalyptus.simplequeue.persistence.cassandra.CassandraMessagePersistence;
 import com.eucalyptus.simplequeue.persistence.cassandra.CassandraQueuePersistence;
+import com.eucalyptus.simplequeue.persistence.postgresql.BufferedMessagePersistence;
 import com.eucalyptus.simplequeue.persistence.postgresql.PostgresqlMessagePersistence;
 import com.eucalyptus.simplequeue.persistence.postgresql.PostgresqlQueuePersistence;
 
@@ -29,13 +30,17 @@ import com.eucalyptus.simplequeue.persistence.postgresql.PostgresqlQueuePersiste
 public class PersistenceFactory {
   private static QueuePersistence postgresqlQueuePersistence = new PostgresqlQueuePersistence();
   private static QueuePersistence cassandraQueuePersistence = new CassandraQueuePersistence();
-  private static MessagePersistence postgresqlMessagePersistence = new PostgresqlMessagePersistence();
+  private static PostgresqlMessagePersistence postgresqlMessagePersistence = new PostgresqlMessagePersistence();
+  private static BufferedMessagePersistence bufferedMessagePersistence = new BufferedMessagePersistence(postgresqlMessagePersistence);
   private static MessagePersistence cassandraMessagePersistence = new CassandraMessagePersistence();
   public static QueuePersistence getQueuePersistence() {
     return "cassandra".equalsIgnoreCase(SimpleQueueProperties.DB_TO_USE) ? cassandraQueuePersistence: postgresqlQueuePersistence;
   }
   public static MessagePersistence getMessagePersistence() {
-    return "cassandra".equalsIgnoreCase(SimpleQueueProperties.DB_TO_USE) ? cassandraMessagePersistence: postgresqlMessagePersistence;
+    if ("cassandra".equalsIgnoreCase(SimpleQueueProperties.DB_TO_USE)) {
+      return cassandraMessagePersistence;
+    }
+    return bufferedMessagePersistence.isActive() ? bufferedMessagePersistence : postgresqlMessagePersistence;
   }
 
   public static boolean queueHasMessages(SimpleQueueResourceName ern) {
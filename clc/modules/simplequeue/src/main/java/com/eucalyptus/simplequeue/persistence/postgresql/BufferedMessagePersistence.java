@@ -0,0 +1,786 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import com.eucalyptus.auth.policy.ern.Ern;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.EntityRestriction;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.simplequeue.Attribute;
+import com.eucalyptus.simplequeue.Constants;
+import com.eucalyptus.simplequeue.Message;
+import com.eucalyptus.simplequeue.SimpleQueueService;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
+import com.eucalyptus.simplequeue.exceptions.InternalFailureException;
+import com.eucalyptus.simplequeue.exceptions.InvalidParameterValueException;
+import com.eucalyptus.simplequeue.exceptions.ReceiptHandleIsInvalidException;
+import com.eucalyptus.simplequeue.exceptions.SimpleQueueException;
+import com.eucalyptus.simplequeue.persistence.MessageJsonHelper;
+import com.eucalyptus.simplequeue.persistence.MessagePersistence;
+import com.eucalyptus.simplequeue.persistence.Queue;
+import com.eucalyptus.system.Threads;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Message persistence holding queue contents in memory with write-behind to the PostgreSQL message entities.
+ *
+ * Each queue is loaded from the database on first use and is then served from a visibility ordered set
+ * and a receipt handle index. Changes are written to the database in batches by a single flush thread.
+ * Sent messages are group committed, so a send returns only once the message is in the database, other
+ * changes are written behind so a failover can at most cause messages to be received again.
+ *
+ * Queue buffers are loaded, purged and discarded while holding the flush lock. A discarded buffer is
+ * retired so that a concurrent change retries with the current buffer for the queue.
+ *
+ * The buffer is only used when all enabled simple queue services are local to this host.
+ */
+public class BufferedMessagePersistence implements MessagePersistence, PostgresqlMessageSweeper.SweepableMessagePersistence {
+
+  private static final Logger LOG = Logger.getLogger( BufferedMessagePersistence.class );
+
+  private static final int FLUSH_BATCH_SIZE = 500;
+  private static final long SEND_COMMIT_TIMEOUT_SECS = 30;
+
+  private final MessageStore store;
+  private final LongSupplier clock;
+  private final ConcurrentMap<Queue.Key, QueueBuffer> buffers = Maps.newConcurrentMap( );
+  private final ConcurrentMap<String, MessageWrite> pendingWrites = Maps.newConcurrentMap( );
+  private final AtomicReference<SettableFuture<Void>> nextCommit = new AtomicReference<>( SettableFuture.<Void>create( ) );
+  private final AtomicBoolean active = new AtomicBoolean( false );
+  private final AtomicLong sequence = new AtomicLong( 0L );
+  private final Object flushLock = new Object( );
+  private volatile ScheduledExecutorService flushExecutor;
+
+  public BufferedMessagePersistence( final PostgresqlMessagePersistence delegate ) {
+    this( new DatabaseMessageStore( delegate ), SimpleQueueService::currentTimeSeconds );
+  }
+
+  /**
+   * @param store The store for message state
+   * @param clock Supplier of the current time in seconds
+   */
+  BufferedMessagePersistence( final MessageStore store, final LongSupplier clock ) {
+    this.store = store;
+    this.clock = clock;
+  }
+
+  /**
+   * Check if the buffer should be used, flushing and discarding buffered queues on deactivation.
+   */
+  public boolean isActive( ) {
+    final boolean enable = SimpleQueueProperties.ENABLE_MESSAGE_BUFFER && SimpleQueueService.isSimpleQueueHostLocal( );
+    if ( enable ) {
+      if ( active.compareAndSet( false, true ) ) {
+        // discard any queues loaded while inactive, the database may have changed since
+        flushAndClear( );
+        startFlushing( );
+      }
+    } else if ( active.compareAndSet( true, false ) ) {
+      flushAndClear( );
+    }
+    return enable;
+  }
+
+  @Override
+  public UUID getNewMessageUUID( ) {
+    return UUID.randomUUID( );
+  }
+
+  @Override
+  public Collection<Message> receiveMessages( final Queue queue, final Map<String, String> receiveAttributes ) throws SimpleQueueException {
+    final long now = clock.getAsLong( );
+    Queue.Key deadLetterQueueKey = null;
+    int maxReceiveCount = 0;
+    long deadLetterQueueMessageRetentionPeriod = 0;
+    try {
+      final Ern deadLetterQueueErn = Ern.parse( receiveAttributes.get( Constants.DEAD_LETTER_TARGET_ARN ) );
+      maxReceiveCount = Integer.parseInt( receiveAttributes.get( Constants.MAX_RECEIVE_COUNT ) );
+      deadLetterQueueMessageRetentionPeriod = Long.parseLong( receiveAttributes.get( Constants.MESSAGE_RETENTION_PERIOD ) );
+      deadLetterQueueKey = new Queue.Key( deadLetterQueueErn.getAccount( ), deadLetterQueueErn.getResourceName( ) );
+    } catch ( Exception ignore ) {
+    }
+    int maxNumMessages = 1;
+    try {
+      maxNumMessages = Integer.parseInt( receiveAttributes.get( Constants.MAX_NUMBER_OF_MESSAGES ) );
+    } catch ( Exception ignore ) {
+    }
+    int visibilityTimeout = queue.getVisibilityTimeout( );
+    if ( receiveAttributes.containsKey( Constants.VISIBILITY_TIMEOUT ) ) {
+      visibilityTimeout = Integer.parseInt( receiveAttributes.get( Constants.VISIBILITY_TIMEOUT ) );
+    }
+
+    final List<Message> messages = Lists.newArrayList( );
+    final List<BufferedMessage> deadLetterMessages = Lists.newArrayList( );
+    while ( true ) {
+      final QueueBuffer buffer = buffer( queue.getKey( ) );
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        final List<BufferedMessage> claimed = Lists.newArrayList( );
+        final Iterator<BufferedMessage> iterator = buffer.byVisibility.iterator( );
+        while ( iterator.hasNext( ) && claimed.size( ) < maxNumMessages ) {
+          final BufferedMessage bufferedMessage = iterator.next( );
+          // messages with a visibility time of exactly now should be visible
+          if ( bufferedMessage.visibleTimestampSecs > now ) {
+            break;
+          }
+          iterator.remove( );
+          if ( bufferedMessage.expiredTimestampSecs <= now ) {
+            buffer.removeIndexes( bufferedMessage );
+            writeDelete( bufferedMessage );
+          } else if ( deadLetterQueueKey != null && bufferedMessage.localReceiveCount >= maxReceiveCount ) {
+            buffer.removeIndexes( bufferedMessage );
+            writeDelete( bufferedMessage );
+            deadLetterMessages.add( bufferedMessage );
+          } else {
+            claimed.add( bufferedMessage );
+          }
+        }
+        for ( final BufferedMessage bufferedMessage : claimed ) {
+          final Message message = MessageJsonHelper.jsonToMessage( bufferedMessage.messageJson );
+          message.setMessageId( bufferedMessage.messageId );
+          // set receive timestamp if first time being received
+          if ( bufferedMessage.receiveCount == 0 ) {
+            message.getAttribute( ).add( new Attribute( Constants.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP, "" + now ) );
+            bufferedMessage.messageJson = MessageJsonHelper.messageToJson( message );
+          }
+          buffer.byReceiptHandle.remove( bufferedMessage.receiptHandle( ) );
+          bufferedMessage.visibleTimestampSecs = now + visibilityTimeout;
+          bufferedMessage.localReceiveCount++;
+          bufferedMessage.receiveCount++;
+          buffer.byVisibility.add( bufferedMessage );
+          buffer.byReceiptHandle.put( bufferedMessage.receiptHandle( ), bufferedMessage );
+          writeUpdate( bufferedMessage );
+
+          message.getAttribute( ).add( new Attribute( Constants.APPROXIMATE_RECEIVE_COUNT, "" + bufferedMessage.receiveCount ) );
+          message.getAttribute( ).add( new Attribute( Constants.SENT_TIMESTAMP, "" + bufferedMessage.sentTimestampSecs ) );
+          message.setReceiptHandle( bufferedMessage.receiptHandle( ) );
+          messages.add( message );
+        }
+        break;
+      }
+    }
+
+    if ( !deadLetterMessages.isEmpty( ) ) {
+      // added outside the source queue lock, queues can be each others dead letter queue
+      addDeadLetterMessages( deadLetterQueueKey, deadLetterQueueMessageRetentionPeriod, deadLetterMessages );
+    }
+    return messages;
+  }
+
+  @Override
+  public void sendMessage( final Queue queue, final Message message, final Map<String, String> sendAttributes ) throws SimpleQueueException {
+    final BufferedMessage bufferedMessage =
+        new BufferedMessage( queue.getKey( ), message.getMessageId( ), sequence.incrementAndGet( ), false );
+    bufferedMessage.sentTimestampSecs = clock.getAsLong( );
+    bufferedMessage.expiredTimestampSecs = bufferedMessage.sentTimestampSecs + queue.getMessageRetentionPeriod( );
+    int delaySeconds = queue.getDelaySeconds( );
+    if ( sendAttributes.containsKey( Constants.DELAY_SECONDS ) ) {
+      delaySeconds = Integer.parseInt( sendAttributes.get( Constants.DELAY_SECONDS ) );
+    }
+    bufferedMessage.visibleTimestampSecs = bufferedMessage.sentTimestampSecs + delaySeconds;
+    bufferedMessage.messageJson = MessageJsonHelper.messageToJson( message );
+
+    while ( true ) {
+      final QueueBuffer buffer = buffer( queue.getKey( ) );
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        buffer.add( bufferedMessage );
+        writeUpdate( bufferedMessage );
+        break;
+      }
+    }
+
+    // group commit, the write was recorded before the commit that will include it is started
+    final SettableFuture<Void> commit = nextCommit.get( );
+    final ScheduledExecutorService executor = flushExecutor;
+    if ( executor != null ) {
+      executor.execute( this::flush );
+    } else {
+      flush( );
+    }
+    try {
+      commit.get( SEND_COMMIT_TIMEOUT_SECS, TimeUnit.SECONDS );
+    } catch ( Exception e ) {
+      LOG.error( "Error committing message " + message.getMessageId( ) + " for queue " + queue.getArn( ), e );
+      throw new InternalFailureException( "Unable to store message" );
+    }
+  }
+
+  @Override
+  public boolean deleteMessage( final Queue.Key queueKey, final String receiptHandle ) throws SimpleQueueException {
+    validateReceiptHandle( queueKey, receiptHandle );
+    while ( true ) {
+      final QueueBuffer buffer = buffer( queueKey );
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        final BufferedMessage bufferedMessage = buffer.byReceiptHandle.get( receiptHandle );
+        if ( bufferedMessage == null ) {
+          return false;
+        }
+        buffer.remove( bufferedMessage );
+        writeDelete( bufferedMessage );
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public void deleteAllMessages( final Queue.Key queueKey ) {
+    synchronized ( flushLock ) {
+      final QueueBuffer buffer = buffers.remove( queueKey );
+      if ( buffer != null ) {
+        // no further writes for the queue once retired
+        synchronized ( buffer ) {
+          buffer.retired = true;
+        }
+      }
+      for ( final MessageWrite write : pendingWrites.values( ) ) {
+        if ( write.message.queueKey.equals( queueKey ) ) {
+          pendingWrites.remove( write.message.key( ), write );
+        }
+      }
+      store.deleteAll( queueKey );
+    }
+  }
+
+  @Override
+  public Map<String, String> getApproximateMessageCounts( final Queue.Key queueKey ) {
+    final long now = clock.getAsLong( );
+    long delayed = 0;
+    long notVisible = 0;
+    long visible = 0;
+    final QueueBuffer buffer = buffer( queueKey );
+    synchronized ( buffer ) {
+      for ( final BufferedMessage bufferedMessage : buffer.byVisibility ) {
+        if ( bufferedMessage.expiredTimestampSecs <= now ) {
+          continue;
+        }
+        if ( bufferedMessage.visibleTimestampSecs <= now ) {
+          visible++;
+        } else if ( bufferedMessage.receiveCount == 0 ) {
+          delayed++;
+        } else {
+          notVisible++;
+        }
+      }
+    }
+    final Map<String, String> result = Maps.newHashMap( );
+    result.put( Constants.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED, String.valueOf( delayed ) );
+    result.put( Constants.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE, String.valueOf( notVisible ) );
+    result.put( Constants.APPROXIMATE_NUMBER_OF_MESSAGES, String.valueOf( visible ) );
+    return result;
+  }
+
+  @Override
+  public void changeMessageVisibility( final Queue.Key queueKey, final String receiptHandle, final Integer visibilityTimeout ) throws SimpleQueueException {
+    validateReceiptHandle( queueKey, receiptHandle );
+    final long now = clock.getAsLong( );
+    while ( true ) {
+      final QueueBuffer buffer = buffer( queueKey );
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        final BufferedMessage bufferedMessage = buffer.byReceiptHandle.get( receiptHandle );
+        if ( bufferedMessage == null ) {
+          throw new InvalidParameterValueException( "Value " + receiptHandle + " for parameter ReceiptHandle is invalid. Reason: Message does not exist or is not available for visibility timeout change." );
+        }
+        buffer.byVisibility.remove( bufferedMessage );
+        bufferedMessage.visibleTimestampSecs = now + visibilityTimeout;
+        buffer.byVisibility.add( bufferedMessage );
+        writeUpdate( bufferedMessage );
+        return;
+      }
+    }
+  }
+
+  @Override
+  public Long getApproximateAgeOfOldestMessage( final Queue.Key queueKey ) {
+    final long now = clock.getAsLong( );
+    Long oldestSentTimestampSecs = null;
+    final QueueBuffer buffer = buffer( queueKey );
+    synchronized ( buffer ) {
+      for ( final BufferedMessage bufferedMessage : buffer.byVisibility ) {
+        if ( bufferedMessage.expiredTimestampSecs > now &&
+            ( oldestSentTimestampSecs == null || bufferedMessage.sentTimestampSecs < oldestSentTimestampSecs ) ) {
+          oldestSentTimestampSecs = bufferedMessage.sentTimestampSecs;
+        }
+      }
+    }
+    return oldestSentTimestampSecs == null ? 0L : now - oldestSentTimestampSecs;
+  }
+
+  /**
+   * Delete expired messages from buffered queues and then from the database.
+   *
+   * Queues that are not buffered are only in the database, so the database
+   * sweep is needed even though buffered queues are swept in memory.
+   */
+  @Override
+  public int deleteExpiredMessages( ) {
+    final long now = clock.getAsLong( );
+    int expired = 0;
+    for ( final QueueBuffer buffer : buffers.values( ) ) {
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        final Iterator<BufferedMessage> iterator = buffer.byVisibility.iterator( );
+        while ( iterator.hasNext( ) ) {
+          final BufferedMessage bufferedMessage = iterator.next( );
+          if ( bufferedMessage.expiredTimestampSecs <= now ) {
+            iterator.remove( );
+            buffer.removeIndexes( bufferedMessage );
+            writeDelete( bufferedMessage );
+            expired++;
+          }
+        }
+      }
+    }
+    flush( );
+    return expired + store.deleteExpired( );
+  }
+
+  /**
+   * Move visible messages that have reached the maximum receive count to the dead letter queue.
+   *
+   * The source queue is buffered if it is not already, so that messages are only moved in memory.
+   */
+  @Override
+  public int moveMessagesToDeadLetterQueue( final Queue.Key queueKey,
+                                            final Queue deadLetterQueue,
+                                            final int maxReceiveCount,
+                                            final int maxMessages ) {
+    final long now = clock.getAsLong( );
+    final List<BufferedMessage> deadLetterMessages = Lists.newArrayList( );
+    while ( true ) {
+      final QueueBuffer buffer = buffer( queueKey );
+      synchronized ( buffer ) {
+        if ( buffer.retired ) {
+          continue;
+        }
+        final Iterator<BufferedMessage> iterator = buffer.byVisibility.iterator( );
+        while ( iterator.hasNext( ) && deadLetterMessages.size( ) < maxMessages ) {
+          final BufferedMessage bufferedMessage = iterator.next( );
+          if ( bufferedMessage.visibleTimestampSecs > now ) {
+            break;
+          }
+          if ( bufferedMessage.expiredTimestampSecs > now && bufferedMessage.localReceiveCount >= maxReceiveCount ) {
+            iterator.remove( );
+            buffer.removeIndexes( bufferedMessage );
+            writeDelete( bufferedMessage );
+            deadLetterMessages.add( bufferedMessage );
+          }
+        }
+        break;
+      }
+    }
+    if ( !deadLetterMessages.isEmpty( ) ) {
+      addDeadLetterMessages( deadLetterQueue.getKey( ), deadLetterQueue.getMessageRetentionPeriod( ), deadLetterMessages );
+    }
+    return deadLetterMessages.size( );
+  }
+
+  private void addDeadLetterMessages( final Queue.Key deadLetterQueueKey,
+                                      final long deadLetterQueueMessageRetentionPeriod,
+                                      final List<BufferedMessage> deadLetterMessages ) {
+    while ( true ) {
+      final QueueBuffer deadLetterBuffer = buffer( deadLetterQueueKey );
+      synchronized ( deadLetterBuffer ) {
+        if ( deadLetterBuffer.retired ) {
+          continue;
+        }
+        for ( final BufferedMessage bufferedMessage : deadLetterMessages ) {
+          final BufferedMessage deadLetterMessage = new BufferedMessage(
+              deadLetterQueueKey, bufferedMessage.messageId, sequence.incrementAndGet( ), false );
+          deadLetterMessage.sentTimestampSecs = bufferedMessage.sentTimestampSecs;
+          deadLetterMessage.visibleTimestampSecs = bufferedMessage.visibleTimestampSecs;
+          deadLetterMessage.expiredTimestampSecs = bufferedMessage.sentTimestampSecs + deadLetterQueueMessageRetentionPeriod;
+          deadLetterMessage.receiveCount = bufferedMessage.receiveCount;
+          deadLetterMessage.localReceiveCount = 0;
+          deadLetterMessage.messageJson = bufferedMessage.messageJson;
+          deadLetterBuffer.add( deadLetterMessage );
+          writeUpdate( deadLetterMessage );
+        }
+        return;
+      }
+    }
+  }
+
+  private static void validateReceiptHandle( final Queue.Key queueKey, final String receiptHandle ) throws SimpleQueueException {
+    // receipt handle (currently) looks like accountId:queueName:message-id:receive-count
+    final StringTokenizer stok = new StringTokenizer( receiptHandle, ":" );
+    if ( stok.countTokens( ) != 4 ) {
+      throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
+    }
+    final String receiptHandleAccountId = stok.nextToken( );
+    final String receiptHandleQueueName = stok.nextToken( );
+    stok.nextToken( );
+    try {
+      Integer.parseInt( stok.nextToken( ) );
+    } catch ( NumberFormatException e ) {
+      throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
+    }
+    if ( !receiptHandleAccountId.equals( queueKey.getAccountId( ) ) || !receiptHandleQueueName.equals( queueKey.getQueueName( ) ) ) {
+      throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue." );
+    }
+  }
+
+  /**
+   * Get the buffer for a queue, loading it if necessary.
+   *
+   * Must not be called while holding a queue buffer lock.
+   */
+  private QueueBuffer buffer( final Queue.Key queueKey ) {
+    QueueBuffer buffer = buffers.get( queueKey );
+    if ( buffer == null ) {
+      // load with the flush lock held so the queue cannot be purged or discarded concurrently
+      synchronized ( flushLock ) {
+        buffer = buffers.get( queueKey );
+        if ( buffer == null ) {
+          buffer = load( queueKey );
+          buffers.put( queueKey, buffer );
+        }
+      }
+    }
+    return buffer;
+  }
+
+  private QueueBuffer load( final Queue.Key queueKey ) {
+    final QueueBuffer buffer = new QueueBuffer( );
+    for ( final MessageEntity messageEntity : store.load( queueKey, clock.getAsLong( ) ) ) {
+      final BufferedMessage bufferedMessage =
+          new BufferedMessage( queueKey, messageEntity.getMessageId( ), sequence.incrementAndGet( ), true );
+      bufferedMessage.sentTimestampSecs = messageEntity.getSentTimestampSecs( );
+      bufferedMessage.visibleTimestampSecs = messageEntity.getVisibleTimestampSecs( );
+      bufferedMessage.expiredTimestampSecs = messageEntity.getExpiredTimestampSecs( );
+      bufferedMessage.receiveCount = messageEntity.getReceiveCount( );
+      bufferedMessage.localReceiveCount = messageEntity.getLocalReceiveCount( );
+      bufferedMessage.messageJson = messageEntity.getMessageJson( );
+      buffer.add( bufferedMessage );
+    }
+    return buffer;
+  }
+
+  private void writeUpdate( final BufferedMessage bufferedMessage ) {
+    pendingWrites.put( bufferedMessage.key( ), new MessageWrite( bufferedMessage, false ) );
+  }
+
+  private void writeDelete( final BufferedMessage bufferedMessage ) {
+    pendingWrites.put( bufferedMessage.key( ), new MessageWrite( bufferedMessage, true ) );
+  }
+
+  private void startFlushing( ) {
+    synchronized ( flushLock ) {
+      if ( flushExecutor == null ) {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            Threads.threadFactory( "simplequeue-message-flush-%d" ) );
+        schedulePeriodicFlush( );
+      }
+    }
+  }
+
+  private void schedulePeriodicFlush( ) {
+    flushExecutor.schedule( ( ) -> {
+      try {
+        isActive( );
+        flush( );
+      } finally {
+        schedulePeriodicFlush( );
+      }
+    }, SimpleQueueProperties.MESSAGE_BUFFER_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+  }
+
+  private void flushAndClear( ) {
+    synchronized ( flushLock ) {
+      // retire first so that no writes are made to discarded buffers after the flush
+      for ( final QueueBuffer buffer : buffers.values( ) ) {
+        synchronized ( buffer ) {
+          buffer.retired = true;
+        }
+      }
+      flush( );
+      buffers.clear( );
+    }
+  }
+
+  void flush( ) {
+    synchronized ( flushLock ) {
+      final SettableFuture<Void> commit = nextCommit.getAndSet( SettableFuture.<Void>create( ) );
+      try {
+        for ( final List<MessageWrite> batch : Iterables.partition( Lists.newArrayList( pendingWrites.values( ) ), FLUSH_BATCH_SIZE ) ) {
+          final List<MessageWrite> persisted = store.write( batch );
+          for ( final MessageWrite write : batch ) {
+            pendingWrites.remove( write.message.key( ), write );
+          }
+          for ( final MessageWrite write : persisted ) {
+            write.message.persisted = true;
+          }
+        }
+        commit.set( null );
+      } catch ( final Exception e ) {
+        LOG.error( "Error flushing buffered messages", e );
+        commit.setException( e );
+      }
+    }
+  }
+
+  /**
+   * Database access for the buffer.
+   */
+  interface MessageStore {
+    /**
+     * Load the unexpired messages for a queue.
+     */
+    List<MessageEntity> load( Queue.Key queueKey, long now );
+
+    /**
+     * Apply the given writes in a single transaction.
+     *
+     * A write updating a persisted message that is no longer in the database
+     * is not applied, the message was deleted by a purge or expiry sweep.
+     *
+     * @return The writes for messages that are in the database after the writes
+     */
+    List<MessageWrite> write( List<MessageWrite> writes );
+
+    void deleteAll( Queue.Key queueKey );
+
+    int deleteExpired( );
+  }
+
+  private static final class DatabaseMessageStore implements MessageStore {
+    private final PostgresqlMessagePersistence delegate;
+
+    private DatabaseMessageStore( final PostgresqlMessagePersistence delegate ) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public List<MessageEntity> load( final Queue.Key queueKey, final long now ) {
+      try ( TransactionResource db =
+              Entities.transactionFor( MessageEntity.class ) ) {
+        return Entities.criteriaQuery( MessageEntity.class )
+            .whereEqual( MessageEntity_.accountId, queueKey.getAccountId( ) )
+            .whereEqual( MessageEntity_.queueName, queueKey.getQueueName( ) )
+            .where( Entities.restriction( MessageEntity.class ).gt( MessageEntity_.expiredTimestampSecs, now ) )
+            .readonly( )
+            .list( );
+      }
+    }
+
+    @Override
+    public List<MessageWrite> write( final List<MessageWrite> writes ) {
+      final List<MessageWrite> persisted = Lists.newArrayList( );
+      try ( TransactionResource db =
+              Entities.transactionFor( MessageEntity.class ) ) {
+        for ( final MessageWrite write : writes ) {
+          if ( apply( write ) ) {
+            persisted.add( write );
+          }
+        }
+        db.commit( );
+      }
+      return persisted;
+    }
+
+    @Override
+    public void deleteAll( final Queue.Key queueKey ) {
+      delegate.deleteAllMessages( queueKey );
+    }
+
+    @Override
+    public int deleteExpired( ) {
+      return delegate.deleteExpiredMessages( );
+    }
+
+    /**
+     * Apply the write in the current transaction.
+     *
+     * @return True if the message is in the database after the write
+     */
+    private static boolean apply( final MessageWrite write ) {
+      if ( write.isDelete( ) ) {
+        if ( write.isPersisted( ) ) {
+          Entities.delete( messageRestriction( write ) ).delete( );
+        }
+        return false;
+      }
+      if ( write.isPersisted( ) ) {
+        final MessageEntity messageEntity =
+            Iterables.getFirst( Entities.criteriaQuery( messageRestriction( write ) ).list( ), null );
+        if ( messageEntity == null ) {
+          return false;
+        }
+        write.update( messageEntity );
+      } else {
+        final MessageEntity messageEntity = new MessageEntity( );
+        messageEntity.setAccountId( write.getQueueKey( ).getAccountId( ) );
+        messageEntity.setQueueName( write.getQueueKey( ).getQueueName( ) );
+        messageEntity.setMessageId( write.getMessageId( ) );
+        write.update( messageEntity );
+        Entities.persist( messageEntity );
+      }
+      return true;
+    }
+
+    private static EntityRestriction<MessageEntity> messageRestriction( final MessageWrite write ) {
+      return Entities.restriction( MessageEntity.class ).all(
+          Entities.restriction( MessageEntity.class ).equal( MessageEntity_.accountId, write.getQueueKey( ).getAccountId( ) ).build( ),
+          Entities.restriction( MessageEntity.class ).equal( MessageEntity_.queueName, write.getQueueKey( ).getQueueName( ) ).build( ),
+          Entities.restriction( MessageEntity.class ).equal( MessageEntity_.messageId, write.getMessageId( ) ).build( )
+      ).build( );
+    }
+  }
+
+  private static final class QueueBuffer {
+    private final NavigableSet<BufferedMessage> byVisibility = new TreeSet<>( BufferedMessage.VISIBILITY_ORDER );
+    private final Map<String, BufferedMessage> byReceiptHandle = Maps.newHashMap( );
+    private boolean retired;
+
+    private void add( final BufferedMessage bufferedMessage ) {
+      byVisibility.add( bufferedMessage );
+      if ( bufferedMessage.localReceiveCount > 0 ) {
+        byReceiptHandle.put( bufferedMessage.receiptHandle( ), bufferedMessage );
+      }
+    }
+
+    private void remove( final BufferedMessage bufferedMessage ) {
+      byVisibility.remove( bufferedMessage );
+      removeIndexes( bufferedMessage );
+    }
+
+    private void removeIndexes( final BufferedMessage bufferedMessage ) {
+      byReceiptHandle.remove( bufferedMessage.receiptHandle( ) );
+    }
+  }
+
+  /**
+   * Message state, guarded by the lock for the queue buffer holding the message.
+   */
+  private static final class BufferedMessage {
+    private static final Comparator<BufferedMessage> VISIBILITY_ORDER =
+        Comparator.<BufferedMessage>comparingLong( message -> message.visibleTimestampSecs )
+            .thenComparingLong( message -> message.sequence );
+
+    private final Queue.Key queueKey;
+    private final String messageId;
+    private final long sequence;
+    private volatile boolean persisted; // only modified by the flush thread
+    private long sentTimestampSecs;
+    private long visibleTimestampSecs;
+    private long expiredTimestampSecs;
+    private int receiveCount;
+    private int localReceiveCount;
+    private String messageJson;
+
+    private BufferedMessage( final Queue.Key queueKey, final String messageId, final long sequence, final boolean persisted ) {
+      this.queueKey = queueKey;
+      this.messageId = messageId;
+      this.sequence = sequence;
+      this.persisted = persisted;
+    }
+
+    private String key( ) {
+      return queueKey.getAccountId( ) + ":" + queueKey.getQueueName( ) + ":" + messageId;
+    }
+
+    private String receiptHandle( ) {
+      return key( ) + ":" + localReceiveCount;
+    }
+  }
+
+  /**
+   * Immutable snapshot of a message change to be written to the database.
+   */
+  static final class MessageWrite {
+    private final BufferedMessage message;
+    private final boolean delete;
+    private final long sentTimestampSecs;
+    private final long visibleTimestampSecs;
+    private final long expiredTimestampSecs;
+    private final int receiveCount;
+    private final int localReceiveCount;
+    private final String messageJson;
+
+    private MessageWrite( final BufferedMessage message, final boolean delete ) {
+      this.message = message;
+      this.delete = delete;
+      this.sentTimestampSecs = message.sentTimestampSecs;
+      this.visibleTimestampSecs = message.visibleTimestampSecs;
+      this.expiredTimestampSecs = message.expiredTimestampSecs;
+      this.receiveCount = message.receiveCount;
+      this.localReceiveCount = message.localReceiveCount;
+      this.messageJson = message.messageJson;
+    }
+
+    Queue.Key getQueueKey( ) {
+      return message.queueKey;
+    }
+
+    String getMessageId( ) {
+      return message.messageId;
+    }
+
+    boolean isDelete( ) {
+      return delete;
+    }
+
+    /**
+     * True if the message was in the database as of the last flush.
+     */
+    boolean isPersisted( ) {
+      return message.persisted;
+    }
+
+    void update( final MessageEntity messageEntity ) {
+      messageEntity.setSentTimestampSecs( sentTimestampSecs );
+      messageEntity.setVisibleTimestampSecs( visibleTimestampSecs );
+      messageEntity.setExpiredTimestampSecs( expiredTimestampSecs );
+      messageEntity.setReceiveCount( receiveCount );
+      messageEntity.setLocalReceiveCount( localReceiveCount );
+      messageEntity.setMessageJson( messageJson );
+    }
+  }
+}
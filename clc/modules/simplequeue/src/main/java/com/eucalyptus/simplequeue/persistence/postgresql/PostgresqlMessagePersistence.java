@@ -32,6 +32,7 @@ package com.eucalyptus.simplequeue.persistence.postgresql;
 
 import com.eucalyptus.auth.policy.ern.Ern;
 import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.PersistenceContexts;
 import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simplequeue.Attribute;
 import com.eucalyptus.simplequeue.Constants;
@@ -50,6 +51,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import javax.annotation.Nullable;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -59,7 +62,9 @@ import java.util.UUID;
 /**
  * Created by ethomas on 9/16/16.
  */
-public class PostgresqlMessagePersistence implements MessagePersistence {
+public class PostgresqlMessagePersistence implements MessagePersistence, PostgresqlMessageSweeper.SweepableMessagePersistence {
+
+  private static volatile Boolean skipLockedSupported;
 
   @Override
   public UUID getNewMessageUUID() {
@@ -79,55 +84,28 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
         List<Message> messages = Lists.newArrayList();
         Optional<SimpleQueueException> simpleQueueExceptionOptional;
         try {
-          List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
-            .whereEqual(MessageEntity_.accountId, queue.getAccountId())
-            .whereEqual(MessageEntity_.queueName, queue.getQueueName())
-//      -- Just delete the expired messages here
-//        // messages with an expiration time of exactly now should expire, so we want the expiration
-//        // timestamp to be strictly greater than now
-//        .where(Entities.restriction(MessageEntity.class).gt(MessageEntity_.expiredTimestampSecs, now))
-              // messages with a visibility time of exactly now should be visible, so we want the the visibility
-              // timestamp to be less than or equal to now.
-            .where(Entities.restriction(MessageEntity.class).le(MessageEntity_.visibleTimestampSecs, now))
-            .orderBy(MessageEntity_.visibleTimestampSecs)
-              // TODO: consider what happens if this returns too many results.
-            .list();
           boolean deadLetterQueue = false;
-          String deadLetterQueueAccountId = null;
-          String deadLetterQueueName = null;
           int maxReceiveCount = 0;
-          long deadLetterQueueMessageRetentionPeriod = 0;
           try {
-            Ern deadLetterQueueErn = Ern.parse(receiveAttributes.get(Constants.DEAD_LETTER_TARGET_ARN));
-            deadLetterQueueAccountId = deadLetterQueueErn.getAccount();
-            deadLetterQueueName = deadLetterQueueErn.getResourceName();
+            Ern.parse(receiveAttributes.get(Constants.DEAD_LETTER_TARGET_ARN));
             maxReceiveCount = Integer.parseInt(receiveAttributes.get(Constants.MAX_RECEIVE_COUNT));
-            deadLetterQueueMessageRetentionPeriod = Long.parseLong(receiveAttributes.get(Constants.MESSAGE_RETENTION_PERIOD));
             deadLetterQueue = true;
           } catch (Exception ignore) {
           }
-          int numMessages = 0;
           int maxNumMessages = 1;
           try {
             maxNumMessages = Integer.parseInt(receiveAttributes.get(Constants.MAX_NUMBER_OF_MESSAGES));
           } catch (Exception ignore) {
           }
 
+          // Claim at most the requested number of messages. Expired messages and messages due for the
+          // dead letter queue are excluded here and handled by the PostgresqlMessageSweeper, rows being
+          // claimed by a concurrent receive are skipped where the database supports it.
+          List<MessageEntity> messageEntityList = listVisibleMessagesForUpdate(queue.getAccountId(),
+            queue.getQueueName(), now, deadLetterQueue ? "<" : null, maxReceiveCount, maxNumMessages);
+
           if (messageEntityList != null) {
             for (MessageEntity messageEntity : messageEntityList) {
-              if (messageEntity.getExpiredTimestampSecs() <= now) {
-                Entities.delete(messageEntity);
-                continue;
-              }
-              if (deadLetterQueue && messageEntity.getLocalReceiveCount() >= maxReceiveCount) {
-                // move to dead letter
-                messageEntity.setLocalReceiveCount(0);
-                messageEntity.setAccountId(deadLetterQueueAccountId);
-                messageEntity.setQueueName(deadLetterQueueName);
-                messageEntity.setExpiredTimestampSecs(messageEntity.getSentTimestampSecs() + deadLetterQueueMessageRetentionPeriod);
-                continue;
-              }
-
               Message message = MessageJsonHelper.jsonToMessage(messageEntity.getMessageJson());
               message.setMessageId(messageEntity.getMessageId());
               // set receive timestamp if first time being received
@@ -152,8 +130,6 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
               message.getAttribute().add(new Attribute(Constants.SENT_TIMESTAMP, "" + (messageEntity.getSentTimestampSecs())));
               message.setReceiptHandle(messageEntity.getAccountId() + ":" + messageEntity.getQueueName() + ":" + messageEntity.getMessageId() + ":" + messageEntity.getLocalReceiveCount());
               messages.add(message);
-              numMessages++;
-              if (numMessages >= maxNumMessages) break;
             }
           }
           either = Either.right(messages);
@@ -170,6 +146,120 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
     }
   }
 
+  /**
+   * Delete all messages that have expired.
+   *
+   * @return The number of messages deleted
+   */
+  @Override
+  public int deleteExpiredMessages() {
+    long now = SimpleQueueService.currentTimeSeconds();
+    try ( TransactionResource db =
+            Entities.transactionFor(MessageEntity.class) ) {
+      // messages with an expiration time of exactly now should expire
+      int deleted = Entities.delete(
+        Entities.restriction( MessageEntity.class ).le( MessageEntity_.expiredTimestampSecs, now ).build( )
+      ).delete();
+      db.commit();
+      return deleted;
+    }
+  }
+
+  /**
+   * Move visible messages that have reached the maximum receive count to the dead letter queue.
+   *
+   * @param queueKey The source queue
+   * @param deadLetterQueue The dead letter queue
+   * @param maxReceiveCount The receive count at which messages are moved
+   * @param maxMessages The maximum number of messages to move
+   * @return The number of messages moved
+   */
+  @Override
+  public int moveMessagesToDeadLetterQueue(Queue.Key queueKey, Queue deadLetterQueue, int maxReceiveCount, int maxMessages) {
+    long now = SimpleQueueService.currentTimeSeconds();
+    try ( TransactionResource db =
+            Entities.transactionFor(MessageEntity.class) ) {
+      List<MessageEntity> messageEntityList = listVisibleMessagesForUpdate(queueKey.getAccountId(),
+        queueKey.getQueueName(), now, ">=", maxReceiveCount, maxMessages);
+      for (MessageEntity messageEntity : messageEntityList) {
+        messageEntity.setLocalReceiveCount(0);
+        messageEntity.setAccountId(deadLetterQueue.getAccountId());
+        messageEntity.setQueueName(deadLetterQueue.getQueueName());
+        messageEntity.setExpiredTimestampSecs(messageEntity.getSentTimestampSecs() + deadLetterQueue.getMessageRetentionPeriod());
+      }
+      db.commit();
+      return messageEntityList.size();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<MessageEntity> listVisibleMessagesForUpdate(String accountId, String queueName, long now,
+                                                                  @Nullable String receiveCountOperator,
+                                                                  int maxReceiveCount, int maxMessages) {
+    Query query = Entities.createNativeQuery(MessageEntity.class,
+      visibleMessagesForUpdateSql(messagesSchemaName(), receiveCountOperator, isSkipLockedSupported()), MessageEntity.class)
+      .setParameter("accountId", accountId)
+      .setParameter("queueName", queueName)
+      .setParameter("now", now)
+      .setParameter("maxMessages", maxMessages);
+    if (receiveCountOperator != null) {
+      query.setParameter("maxReceiveCount", maxReceiveCount);
+    }
+    return (List<MessageEntity>) query.getResultList();
+  }
+
+  /**
+   * SQL to select visible messages for a queue, oldest first, locked for update.
+   *
+   * The Hibernate PostgreSQL dialect does not render a skip locked lock timeout
+   * so this is a native query. Native queries do not use the default schema
+   * so the table name is qualified with the schema when there is one.
+   *
+   * @param schemaName The schema for the messages table, null for none
+   * @param receiveCountOperator Operator comparing the local receive count with :maxReceiveCount, null for none
+   * @param skipLocked True to skip rows locked by other transactions (PostgreSQL 9.5+)
+   * @return The SQL
+   */
+  static String visibleMessagesForUpdateSql(@Nullable String schemaName,
+                                            @Nullable String receiveCountOperator,
+                                            boolean skipLocked) {
+    return "SELECT * FROM " + (schemaName == null ? "" : schemaName + ".") + "messages" +
+      " WHERE account_id = :accountId AND queue_name = :queueName" +
+      // messages with an expiration time of exactly now should expire, so we want the expiration
+      // timestamp to be strictly greater than now
+      " AND expired_timestamp_secs > :now" +
+      // messages with a visibility time of exactly now should be visible, so we want the the visibility
+      // timestamp to be less than or equal to now.
+      " AND visible_timestamp_secs <= :now" +
+      (receiveCountOperator == null ? "" : " AND local_receive_count " + receiveCountOperator + " :maxReceiveCount") +
+      " ORDER BY visible_timestamp_secs" +
+      " LIMIT :maxMessages" +
+      " FOR UPDATE" + (skipLocked ? " SKIP LOCKED" : "");
+  }
+
+  @Nullable
+  private static String messagesSchemaName() {
+    return PersistenceContexts.toSchemaName().apply(MessageEntity.class.getAnnotation(PersistenceContext.class).name());
+  }
+
+  private static boolean isSkipLockedSupported() {
+    Boolean supported = skipLockedSupported;
+    if (supported == null) {
+      Object serverVersion = Entities.createNativeQuery(MessageEntity.class,
+        "SELECT current_setting('server_version_num')", null).getSingleResult();
+      skipLockedSupported = supported = isSkipLockedSupported(String.valueOf(serverVersion));
+    }
+    return supported;
+  }
+
+  static boolean isSkipLockedSupported(String serverVersionNum) {
+    try {
+      return Integer.parseInt(serverVersionNum.trim()) >= 90500;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
   @Override
   public void sendMessage(Queue queue, Message message, Map<String, String> sendAttributes) {
     Entities.asDistinctTransaction(MessageEntity.class, new Function<Void, Void>() {
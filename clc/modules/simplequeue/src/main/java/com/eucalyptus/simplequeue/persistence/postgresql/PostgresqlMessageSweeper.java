@@ -0,0 +1,148 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import com.eucalyptus.auth.policy.ern.Ern;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.simplequeue.Constants;
+import com.eucalyptus.simplequeue.SimpleQueue;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
+import com.eucalyptus.simplequeue.persistence.MessagePersistence;
+import com.eucalyptus.simplequeue.persistence.PersistenceFactory;
+import com.eucalyptus.simplequeue.persistence.Queue;
+import com.eucalyptus.simplequeue.persistence.QueuePersistence;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background removal of expired messages and redrive of dead letter messages
+ * for the PostgreSQL message persistence.
+ *
+ * This work was previously performed inline by ReceiveMessage, making the
+ * cost of a receive proportional to the number of messages in the queue.
+ *
+ * The buffered message persistence is swept through the buffer so that
+ * buffered queues are updated in memory.
+ */
+public class PostgresqlMessageSweeper implements EventListener<ClockTick> {
+
+  private static final Logger LOG = Logger.getLogger( PostgresqlMessageSweeper.class );
+
+  private static final int DEAD_LETTER_BATCH_SIZE = 100;
+
+  private final AtomicLong lastSweep = new AtomicLong( 0L );
+  private final AtomicBoolean sweeping = new AtomicBoolean( false );
+
+  /**
+   * Message persistence supporting expiry and dead letter sweeps.
+   */
+  public interface SweepableMessagePersistence {
+    /**
+     * Delete all messages that have expired.
+     *
+     * @return The number of messages deleted
+     */
+    int deleteExpiredMessages( );
+
+    /**
+     * Move visible messages that have reached the maximum receive count to the dead letter queue.
+     *
+     * @return The number of messages moved
+     */
+    int moveMessagesToDeadLetterQueue( Queue.Key queueKey, Queue deadLetterQueue, int maxReceiveCount, int maxMessages );
+  }
+
+  public static void register( ) {
+    Listeners.register( ClockTick.class, new PostgresqlMessageSweeper( ) );
+  }
+
+  @Override
+  public void fireEvent( final ClockTick event ) {
+    final long now = System.currentTimeMillis( );
+    if ( Bootstrap.isOperational( ) &&
+        Topology.isEnabledLocally( SimpleQueue.class ) &&
+        now - lastSweep.get( ) >= TimeUnit.SECONDS.toMillis( SimpleQueueProperties.MESSAGE_SWEEP_INTERVAL_SECS ) &&
+        sweeping.compareAndSet( false, true ) ) {
+      try {
+        final MessagePersistence messagePersistence = PersistenceFactory.getMessagePersistence( );
+        if ( messagePersistence instanceof SweepableMessagePersistence ) {
+          sweep( (SweepableMessagePersistence) messagePersistence, PersistenceFactory.getQueuePersistence( ) );
+        }
+      } catch ( final Exception e ) {
+        LOG.error( "Error sweeping simple queue messages", e );
+      } finally {
+        lastSweep.set( System.currentTimeMillis( ) );
+        sweeping.set( false );
+      }
+    }
+  }
+
+  private void sweep( final SweepableMessagePersistence messagePersistence,
+                      final QueuePersistence queuePersistence ) {
+    final int expired = messagePersistence.deleteExpiredMessages( );
+    if ( expired > 0 ) {
+      LOG.debug( "Deleted " + expired + " expired messages" );
+    }
+    for ( final String partitionToken : queuePersistence.getPartitionTokens( ) ) {
+      for ( final Queue.Key queueKey : queuePersistence.listActiveQueues( partitionToken ) ) {
+        try {
+          redrive( messagePersistence, queuePersistence, queueKey );
+        } catch ( final Exception e ) {
+          LOG.warn( "Error moving messages to dead letter queue for " + queueKey.getArn( ), e );
+        }
+      }
+    }
+  }
+
+  private void redrive( final SweepableMessagePersistence messagePersistence,
+                        final QueuePersistence queuePersistence,
+                        final Queue.Key queueKey ) throws Exception {
+    final Queue queue = queuePersistence.lookupQueue( queueKey.getAccountId( ), queueKey.getQueueName( ) );
+    if ( queue == null ) {
+      return;
+    }
+    final JsonNode redrivePolicy = queue.getRedrivePolicy( );
+    if ( redrivePolicy == null || !redrivePolicy.isObject( ) ||
+        !redrivePolicy.has( Constants.DEAD_LETTER_TARGET_ARN ) || !redrivePolicy.has( Constants.MAX_RECEIVE_COUNT ) ) {
+      return;
+    }
+    final Ern deadLetterQueueErn = Ern.parse( redrivePolicy.get( Constants.DEAD_LETTER_TARGET_ARN ).textValue( ) );
+    final int maxReceiveCount = redrivePolicy.get( Constants.MAX_RECEIVE_COUNT ).asInt( );
+    final Queue deadLetterQueue =
+        queuePersistence.lookupQueue( deadLetterQueueErn.getAccount( ), deadLetterQueueErn.getResourceName( ) );
+    if ( deadLetterQueue == null || maxReceiveCount <= 0 ) {
+      return;
+    }
+    int remaining = SimpleQueueProperties.MESSAGE_SWEEP_MAX_DEAD_LETTER_MESSAGES;
+    while ( remaining > 0 ) {
+      final int batchSize = Math.min( remaining, DEAD_LETTER_BATCH_SIZE );
+      final int moved =
+          messagePersistence.moveMessagesToDeadLetterQueue( queueKey, deadLetterQueue, maxReceiveCount, batchSize );
+      remaining -= moved;
+      if ( moved < batchSize ) {
+        break;
+      }
+    }
+  }
+}
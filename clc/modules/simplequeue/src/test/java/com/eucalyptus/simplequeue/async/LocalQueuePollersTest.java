@@ -0,0 +1,69 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LocalQueuePollersTest {
+
+  @Test
+  public void testIdleChannelRetainedUntilExpiry( ) throws Exception {
+    final String channel = "arn:aws:sqs:eucalyptus:000000000000:idle";
+    final BlockingQueue<Boolean> results = new ArrayBlockingQueue<>( 1 );
+    LocalQueuePollers.poll( channel, System.currentTimeMillis( ), results::offer, null );
+    assertEquals( "Poll result", Boolean.FALSE, results.poll( 5, TimeUnit.SECONDS ) );
+    assertFalse( "Has pollers", LocalQueuePollers.hasPollers( channel ) );
+
+    final long now = System.currentTimeMillis( );
+    LocalQueuePollers.periodicWork( now );
+    assertTrue( "Tracked before expiry", LocalQueuePollers.isTracked( channel ) );
+
+    LocalQueuePollers.periodicWork( now + TimeUnit.MINUTES.toMillis( 5 ) );
+    assertFalse( "Tracked after expiry", LocalQueuePollers.isTracked( channel ) );
+  }
+
+  @Test
+  public void testWaitingPollerRetained( ) throws Exception {
+    final String channel = "arn:aws:sqs:eucalyptus:000000000000:waiting";
+    final BlockingQueue<Boolean> results = new ArrayBlockingQueue<>( 1 );
+    LocalQueuePollers.poll(
+        channel, System.currentTimeMillis( ) + TimeUnit.MINUTES.toMillis( 1 ), results::offer, null );
+
+    LocalQueuePollers.periodicWork( System.currentTimeMillis( ) + TimeUnit.MINUTES.toMillis( 5 ) );
+    assertTrue( "Tracked", LocalQueuePollers.isTracked( channel ) );
+    assertTrue( "Has pollers", LocalQueuePollers.hasPollers( channel ) );
+
+    assertTrue( "Notified", LocalQueuePollers.notify( channel ) );
+    assertEquals( "Poll result", Boolean.TRUE, results.poll( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testPendingNotification( ) throws Exception {
+    final String channel = "arn:aws:sqs:eucalyptus:000000000000:pending";
+    assertFalse( "Notified", LocalQueuePollers.notify( channel ) );
+
+    final BlockingQueue<Boolean> results = new ArrayBlockingQueue<>( 1 );
+    LocalQueuePollers.poll(
+        channel, System.currentTimeMillis( ) + TimeUnit.MINUTES.toMillis( 1 ), results::offer, null );
+    assertEquals( "Poll result", Boolean.TRUE, results.poll( 5, TimeUnit.SECONDS ) );
+  }
+}
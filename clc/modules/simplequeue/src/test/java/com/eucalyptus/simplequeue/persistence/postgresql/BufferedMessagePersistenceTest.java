@@ -0,0 +1,292 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.eucalyptus.simplequeue.Constants;
+import com.eucalyptus.simplequeue.Message;
+import com.eucalyptus.simplequeue.persistence.Queue;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class BufferedMessagePersistenceTest {
+
+  private static final long START = 1500000000L;
+
+  @Test
+  public void testFlush() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue queue = queue( "queue-1" );
+
+    persistence.sendMessage( queue, message( ), Collections.<String, String>emptyMap( ) );
+    assertEquals( "Messages stored on send", 1, store.messages( queue.getKey( ) ).size( ) );
+
+    final Collection<Message> received = persistence.receiveMessages( queue, Collections.<String, String>emptyMap( ) );
+    assertEquals( "Received", 1, received.size( ) );
+    assertEquals( "Receive count before flush", 0, store.messages( queue.getKey( ) ).get( 0 ).getReceiveCount( ) );
+    persistence.flush( );
+    final MessageEntity messageEntity = store.messages( queue.getKey( ) ).get( 0 );
+    assertEquals( "Receive count after flush", 1, messageEntity.getReceiveCount( ) );
+    assertEquals( "Visible timestamp", START + 30, messageEntity.getVisibleTimestampSecs( ) );
+
+    final String receiptHandle = received.iterator( ).next( ).getReceiptHandle( );
+    assertTrue( "Deleted", persistence.deleteMessage( queue.getKey( ), receiptHandle ) );
+    persistence.flush( );
+    assertEquals( "Messages stored after delete", 0, store.messages( queue.getKey( ) ).size( ) );
+  }
+
+  @Test
+  public void testFlushDoesNotRestoreDeletedMessage() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue queue = queue( "queue-1" );
+
+    persistence.sendMessage( queue, message( ), Collections.<String, String>emptyMap( ) );
+    persistence.receiveMessages( queue, Collections.<String, String>emptyMap( ) );
+    store.deleteAll( queue.getKey( ) ); // e.g. expired by a database sweep
+    persistence.flush( );
+    assertEquals( "Messages stored", 0, store.messages( queue.getKey( ) ).size( ) );
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue bufferedQueue = queue( "queue-1" );
+    final Queue.Key unbufferedQueueKey = new Queue.Key( "000000000000", "queue-2" );
+    store.add( unbufferedQueueKey, START + 10 );
+    store.add( bufferedQueue.getKey( ), START + 10 );
+    store.add( bufferedQueue.getKey( ), START + 100 );
+    assertEquals( "Buffered messages", "2", persistence.getApproximateMessageCounts( bufferedQueue.getKey( ) )
+        .get( Constants.APPROXIMATE_NUMBER_OF_MESSAGES ) );
+
+    clock.set( START + 10 );
+    assertEquals( "Expired", 2, persistence.deleteExpiredMessages( ) );
+    assertEquals( "Buffered messages", "1", persistence.getApproximateMessageCounts( bufferedQueue.getKey( ) )
+        .get( Constants.APPROXIMATE_NUMBER_OF_MESSAGES ) );
+    assertEquals( "Buffered queue messages stored", 1, store.messages( bufferedQueue.getKey( ) ).size( ) );
+    assertEquals( "Unbuffered queue messages stored", 0, store.messages( unbufferedQueueKey ).size( ) );
+  }
+
+  @Test
+  public void testRedrive() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue queue = queue( "queue-1" );
+    final Queue deadLetterQueue = queue( "queue-1-dlq" );
+
+    persistence.sendMessage( queue, message( ), Collections.<String, String>emptyMap( ) );
+    persistence.receiveMessages( queue, Collections.<String, String>emptyMap( ) );
+    assertEquals( "Moved while not visible", 0,
+        persistence.moveMessagesToDeadLetterQueue( queue.getKey( ), deadLetterQueue, 1, 10 ) );
+    clock.set( START + 30 );
+    assertEquals( "Moved", 1, persistence.moveMessagesToDeadLetterQueue( queue.getKey( ), deadLetterQueue, 1, 10 ) );
+    persistence.flush( );
+    assertEquals( "Source messages stored", 0, store.messages( queue.getKey( ) ).size( ) );
+    assertEquals( "Dead letter messages stored", 1, store.messages( deadLetterQueue.getKey( ) ).size( ) );
+    assertEquals( "Dead letter messages", "1", persistence.getApproximateMessageCounts( deadLetterQueue.getKey( ) )
+        .get( Constants.APPROXIMATE_NUMBER_OF_MESSAGES ) );
+  }
+
+  @Test
+  public void testPurge() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue queue = queue( "queue-1" );
+
+    persistence.sendMessage( queue, message( ), Collections.<String, String>emptyMap( ) );
+    persistence.receiveMessages( queue, Collections.<String, String>emptyMap( ) );
+    persistence.deleteAllMessages( queue.getKey( ) );
+    persistence.flush( );
+    assertEquals( "Messages stored", 0, store.messages( queue.getKey( ) ).size( ) );
+
+    final Message message = message( );
+    persistence.sendMessage( queue, message, Collections.<String, String>emptyMap( ) );
+    clock.set( START + 30 );
+    final Collection<Message> received = persistence.receiveMessages( queue, ImmutableMap.of( Constants.MAX_NUMBER_OF_MESSAGES, "10" ) );
+    assertEquals( "Received", 1, received.size( ) );
+    assertEquals( "Received message", message.getMessageId( ), received.iterator( ).next( ).getMessageId( ) );
+  }
+
+  @Test
+  public void testPurgeWithConcurrentSends() throws Exception {
+    final AtomicLong clock = new AtomicLong( START );
+    final TestMessageStore store = new TestMessageStore( clock );
+    final BufferedMessagePersistence persistence = new BufferedMessagePersistence( store, clock::get );
+    final Queue queue = queue( "queue-1" );
+    final int threads = 4;
+    final ExecutorService executor = Executors.newFixedThreadPool( threads );
+    try {
+      final CountDownLatch latch = new CountDownLatch( 1 );
+      final List<Future<?>> futures = Lists.newArrayList( );
+      for ( int i = 0; i < threads; i++ ) {
+        futures.add( executor.submit( ( ) -> {
+          latch.await( );
+          for ( int j = 0; j < 200; j++ ) {
+            persistence.sendMessage( queue, message( ), Collections.<String, String>emptyMap( ) );
+          }
+          return null;
+        } ) );
+      }
+      latch.countDown( );
+      for ( int i = 0; i < 20; i++ ) {
+        persistence.deleteAllMessages( queue.getKey( ) );
+        Thread.sleep( 1 );
+      }
+      for ( final Future<?> future : futures ) {
+        future.get( 1, TimeUnit.MINUTES );
+      }
+    } finally {
+      executor.shutdownNow( );
+    }
+    persistence.flush( );
+    assertEquals( "Buffered messages match stored messages",
+        String.valueOf( store.messages( queue.getKey( ) ).size( ) ),
+        persistence.getApproximateMessageCounts( queue.getKey( ) ).get( Constants.APPROXIMATE_NUMBER_OF_MESSAGES ) );
+  }
+
+  private static Queue queue( final String name ) {
+    final Queue queue = new Queue( );
+    queue.setAccountId( "000000000000" );
+    queue.setQueueName( name );
+    queue.setAttributes( Maps.newHashMap( ImmutableMap.of(
+        Constants.DELAY_SECONDS, "0",
+        Constants.MESSAGE_RETENTION_PERIOD, "345600",
+        Constants.VISIBILITY_TIMEOUT, "30" ) ) );
+    return queue;
+  }
+
+  private static Message message( ) {
+    final Message message = new Message( );
+    message.setMessageId( UUID.randomUUID( ).toString( ) );
+    message.setBody( "body" );
+    return message;
+  }
+
+  private static final class TestMessageStore implements BufferedMessagePersistence.MessageStore {
+    private final Map<String, MessageEntity> messages = Maps.newLinkedHashMap( );
+    private final AtomicLong clock;
+
+    private TestMessageStore( final AtomicLong clock ) {
+      this.clock = clock;
+    }
+
+    private synchronized void add( final Queue.Key queueKey, final long expiredTimestampSecs ) {
+      final MessageEntity messageEntity = new MessageEntity( );
+      messageEntity.setAccountId( queueKey.getAccountId( ) );
+      messageEntity.setQueueName( queueKey.getQueueName( ) );
+      messageEntity.setMessageId( UUID.randomUUID( ).toString( ) );
+      messageEntity.setSentTimestampSecs( START );
+      messageEntity.setVisibleTimestampSecs( START );
+      messageEntity.setExpiredTimestampSecs( expiredTimestampSecs );
+      messageEntity.setMessageJson( "{\"Body\":\"body\"}" );
+      messages.put( key( queueKey, messageEntity.getMessageId( ) ), messageEntity );
+    }
+
+    private synchronized List<MessageEntity> messages( final Queue.Key queueKey ) {
+      final List<MessageEntity> queueMessages = Lists.newArrayList( );
+      for ( final MessageEntity messageEntity : messages.values( ) ) {
+        if ( queueKey.equals( new Queue.Key( messageEntity.getAccountId( ), messageEntity.getQueueName( ) ) ) ) {
+          queueMessages.add( messageEntity );
+        }
+      }
+      return queueMessages;
+    }
+
+    @Override
+    public synchronized List<MessageEntity> load( final Queue.Key queueKey, final long now ) {
+      final List<MessageEntity> loaded = Lists.newArrayList( );
+      for ( final MessageEntity messageEntity : messages( queueKey ) ) {
+        if ( messageEntity.getExpiredTimestampSecs( ) > now ) {
+          loaded.add( messageEntity );
+        }
+      }
+      return loaded;
+    }
+
+    @Override
+    public synchronized List<BufferedMessagePersistence.MessageWrite> write( final List<BufferedMessagePersistence.MessageWrite> writes ) {
+      final List<BufferedMessagePersistence.MessageWrite> persisted = Lists.newArrayList( );
+      for ( final BufferedMessagePersistence.MessageWrite write : writes ) {
+        final String key = key( write.getQueueKey( ), write.getMessageId( ) );
+        if ( write.isDelete( ) ) {
+          messages.remove( key );
+          continue;
+        }
+        MessageEntity messageEntity = messages.get( key );
+        if ( messageEntity == null ) {
+          if ( write.isPersisted( ) ) {
+            continue;
+          }
+          messageEntity = new MessageEntity( );
+          messageEntity.setAccountId( write.getQueueKey( ).getAccountId( ) );
+          messageEntity.setQueueName( write.getQueueKey( ).getQueueName( ) );
+          messageEntity.setMessageId( write.getMessageId( ) );
+          messages.put( key, messageEntity );
+        }
+        write.update( messageEntity );
+        persisted.add( write );
+      }
+      return persisted;
+    }
+
+    @Override
+    public synchronized void deleteAll( final Queue.Key queueKey ) {
+      for ( final MessageEntity messageEntity : messages( queueKey ) ) {
+        messages.remove( key( queueKey, messageEntity.getMessageId( ) ) );
+      }
+    }
+
+    @Override
+    public synchronized int deleteExpired( ) {
+      int deleted = 0;
+      for ( final MessageEntity messageEntity : Lists.newArrayList( messages.values( ) ) ) {
+        if ( messageEntity.getExpiredTimestampSecs( ) <= clock.get( ) ) {
+          messages.remove( key( new Queue.Key( messageEntity.getAccountId( ), messageEntity.getQueueName( ) ), messageEntity.getMessageId( ) ) );
+          deleted++;
+        }
+      }
+      return deleted;
+    }
+
+    private static String key( final Queue.Key queueKey, final String messageId ) {
+      return queueKey.getAccountId( ) + ":" + queueKey.getQueueName( ) + ":" + messageId;
+    }
+  }
+}
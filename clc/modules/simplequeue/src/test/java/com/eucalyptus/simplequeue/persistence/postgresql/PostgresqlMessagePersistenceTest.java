@@ -0,0 +1,86 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ *  This file may incorporate work covered under the following copyright and permission notice:
+ *
+ *   Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PostgresqlMessagePersistenceTest {
+
+  @Test
+  public void testReceiveSql() {
+    assertEquals("SELECT * FROM messages" +
+        " WHERE account_id = :accountId AND queue_name = :queueName" +
+        " AND expired_timestamp_secs > :now" +
+        " AND visible_timestamp_secs <= :now" +
+        " ORDER BY visible_timestamp_secs" +
+        " LIMIT :maxMessages" +
+        " FOR UPDATE SKIP LOCKED",
+        PostgresqlMessagePersistence.visibleMessagesForUpdateSql(null, null, true));
+  }
+
+  @Test
+  public void testSchemaQualifiedSql() {
+    final String sql = PostgresqlMessagePersistence.visibleMessagesForUpdateSql("eucalyptus_simplequeue", null, true);
+    assertTrue("Schema qualified table: " + sql,
+        sql.startsWith("SELECT * FROM eucalyptus_simplequeue.messages WHERE account_id = :accountId"));
+  }
+
+  @Test
+  public void testReceiveCountSql() {
+    final String sql = PostgresqlMessagePersistence.visibleMessagesForUpdateSql(null, "<", true);
+    assertTrue("Receive count restriction: " + sql,
+        sql.contains(" AND local_receive_count < :maxReceiveCount ORDER BY"));
+    assertTrue("Skip locked: " + sql, sql.endsWith(" FOR UPDATE SKIP LOCKED"));
+
+    final String deadLetterSql = PostgresqlMessagePersistence.visibleMessagesForUpdateSql(null, ">=", true);
+    assertTrue("Receive count restriction: " + deadLetterSql,
+        deadLetterSql.contains(" AND local_receive_count >= :maxReceiveCount ORDER BY"));
+  }
+
+  @Test
+  public void testSkipLockedUnsupportedSql() {
+    final String sql = PostgresqlMessagePersistence.visibleMessagesForUpdateSql(null, null, false);
+    assertTrue("For update: " + sql, sql.endsWith(" LIMIT :maxMessages FOR UPDATE"));
+  }
+
+  @Test
+  public void testSkipLockedSupported() {
+    assertFalse("9.2", PostgresqlMessagePersistence.isSkipLockedSupported("90224"));
+    assertFalse("9.4", PostgresqlMessagePersistence.isSkipLockedSupported("90412"));
+    assertTrue("9.5", PostgresqlMessagePersistence.isSkipLockedSupported("90500"));
+    assertTrue("10", PostgresqlMessagePersistence.isSkipLockedSupported("100001"));
+    assertFalse("Invalid", PostgresqlMessagePersistence.isSkipLockedSupported("null"));
+  }
+}
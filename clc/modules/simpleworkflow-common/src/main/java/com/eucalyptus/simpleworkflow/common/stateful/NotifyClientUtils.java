@@ -34,11 +34,13 @@ import com.eucalyptus.util.async.AsyncRequests;
 import com.eucalyptus.util.async.ConnectionException;
 import com.eucalyptus.util.concurrent.ListenableFuture;
 import com.eucalyptus.ws.WebServicesException;
+import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
 import org.apache.log4j.Logger;
 
 import java.net.ConnectException;
+import java.util.Collection;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
 
@@ -49,9 +51,30 @@ public class NotifyClientUtils {
 
   private static final Logger logger = Logger.getLogger( NotifyClientUtils.class );
 
+  /**
+   * Channel used to notify several channels with one request, the details are the channel names one per line.
+   */
+  public static final String CHANNELS_CHANNEL = "channels";
+
   public static void notifyChannel(final ChannelWrapper channelWrapper) {
+    notifyChannel( channelWrapper, null );
+  }
+
+  /**
+   * Notify each of the given channels using a single request.
+   */
+  public static void notifyChannels(final Collection<String> channels) {
+    if ( channels.size( ) == 1 ) {
+      notifyChannel( new NamedChannelWrapper( channels.iterator( ).next( ) ) );
+    } else if ( !channels.isEmpty( ) ) {
+      notifyChannel( new NamedChannelWrapper( CHANNELS_CHANNEL ), Joiner.on( '\n' ).join( channels ) );
+    }
+  }
+
+  public static void notifyChannel(final ChannelWrapper channelWrapper, final String details) {
     final NotifyType notify = new NotifyType( );
     notify.setChannel(channelWrapper.getChannelName());
+    notify.setDetails( details );
     try {
       final ListenableFuture<NotifyResponseType> dispatchFuture =
           AsyncRequests.dispatch(Topology.lookup(PolledNotifications.class), notify);
@@ -155,4 +178,17 @@ public class NotifyClientUtils {
   public interface ChannelWrapper {
     public String getChannelName();
   }
+
+  private static final class NamedChannelWrapper implements ChannelWrapper {
+    private final String channelName;
+
+    private NamedChannelWrapper( final String channelName ) {
+      this.channelName = channelName;
+    }
+
+    @Override
+    public String getChannelName( ) {
+      return channelName;
+    }
+  }
 }
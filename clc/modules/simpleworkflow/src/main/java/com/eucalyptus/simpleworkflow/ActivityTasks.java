@@ -19,6 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Collection;
 import java.util.List;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
@@ -37,6 +38,16 @@ public interface ActivityTasks {
 
   <T> List<T> listTimedOut( Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
+  <T> List<T> listPending( OwnerFullName ownerFullName,
+                           String domain,
+                           String taskList,
+                           int maximum,
+                           Predicate<? super ActivityTask> filter,
+                           Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+
+  <T> List<T> listByNaturalIds( Collection<String> naturalIds,
+                                Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+
   <T> T updateByExample( ActivityTask example,
                          OwnerFullName ownerFullName,
                          String activityId,
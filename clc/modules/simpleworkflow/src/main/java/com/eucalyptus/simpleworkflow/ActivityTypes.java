@@ -51,8 +51,7 @@ public interface ActivityTypes {
                     Predicate<? super ActivityType> filter,
                     Function<? super ActivityType,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listDeprecatedExpired( long time,
-                                     Function<? super ActivityType,T> transform ) throws SwfMetadataException;
+  int deleteDeprecatedExpired( long time ) throws SwfMetadataException;
 
   ActivityType updateByExample( ActivityType example,
                                 OwnerFullName ownerFullName,
@@ -19,11 +19,19 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Date;
+import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
 import org.apache.log4j.Logger;
 import com.eucalyptus.auth.principal.AccountFullName;
 import com.eucalyptus.util.Consumer;
+import com.eucalyptus.util.Pair;
 import com.google.common.base.Joiner;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -99,6 +107,99 @@ public class NotifyClient {
     }
   }
 
+  /**
+   * Channel used to tell the timeout manager about new or earlier timeouts.
+   */
+  public static final class NotifyTimeouts implements NotifyClientUtils.ChannelWrapper {
+    public static final String CHANNEL = "timeouts";
+
+    public String getChannelName( ) {
+      return CHANNEL;
+    }
+  }
+
+  /**
+   * A timeout for an activity task, timer or workflow execution.
+   *
+   * <p>The timeout is a hint, the timeout manager reloads the item when the
+   * timeout is reached so a timeout that has since moved is harmless.</p>
+   */
+  public static final class NotifyTimeout {
+    public enum Type { ActivityTask, Timer, WorkflowExecution }
+
+    private final Type type;
+    private final String id;
+    private final long timeout;
+
+    public NotifyTimeout( final Type type,
+                          final String id,
+                          final long timeout ) {
+      this.type = type;
+      this.id = id;
+      this.timeout = timeout;
+    }
+
+    @Nullable
+    public static NotifyTimeout of( final ActivityTask activityTask ) {
+      final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
+      return timeout == null ?
+          null :
+          new NotifyTimeout( Type.ActivityTask, activityTask.getNaturalId( ), timeout.getRight( ).getTime( ) );
+    }
+
+    @Nullable
+    public static NotifyTimeout of( final Timer timer ) {
+      final Date timeout = timer.getTimeoutTimestamp( );
+      return timeout == null ?
+          null :
+          new NotifyTimeout( Type.Timer, timer.getNaturalId( ), timeout.getTime( ) );
+    }
+
+    @Nullable
+    public static NotifyTimeout of( final WorkflowExecution workflowExecution ) {
+      final Long timeout = workflowExecution.calculateNextTimeout(
+          SimpleWorkflowProperties.getWorkflowExecutionDurationMillis( ) );
+      return timeout == null ?
+          null :
+          new NotifyTimeout( Type.WorkflowExecution, workflowExecution.getNaturalId( ), timeout );
+    }
+
+    public Type getType( ) {
+      return type;
+    }
+
+    public String getId( ) {
+      return id;
+    }
+
+    public long getTimeout( ) {
+      return timeout;
+    }
+
+    public static String format( final Iterable<NotifyTimeout> timeouts ) {
+      final StringBuilder details = new StringBuilder( );
+      for ( final NotifyTimeout timeout : timeouts ) {
+        details.append( timeout.type ).append( ':' )
+            .append( timeout.id ).append( ':' )
+            .append( timeout.timeout ).append( '\n' );
+      }
+      return details.toString( );
+    }
+
+    public static List<NotifyTimeout> parse( final String details ) {
+      final List<NotifyTimeout> timeouts = Lists.newArrayList( );
+      for ( final String line : Splitter.on( '\n' ).omitEmptyStrings( ).split( details ) ) {
+        final List<String> parts = Splitter.on( ':' ).splitToList( line );
+        if ( parts.size( ) == 3 ) try {
+          timeouts.add( new NotifyTimeout( Type.valueOf( parts.get( 0 ) ), parts.get( 1 ), Long.parseLong( parts.get( 2 ) ) ) );
+        } catch ( final IllegalArgumentException e ) {
+          logger.warn( "Ignoring invalid timeout notification: " + line );
+        }
+      }
+      return timeouts;
+    }
+  }
+
   public static void notifyTaskList( final AccountFullName accountFullName,
                                      final String domain,
                                      final String type,
@@ -110,6 +211,13 @@ public class NotifyClient {
     NotifyClientUtils.notifyChannel(taskList);
   }
 
+  public static void notifyTimeouts( final Iterable<NotifyTimeout> timeouts ) {
+    final List<NotifyTimeout> notifyTimeouts = Lists.newArrayList( Iterables.filter( timeouts, Predicates.notNull( ) ) );
+    if ( !notifyTimeouts.isEmpty( ) ) {
+      NotifyClientUtils.notifyChannel( new NotifyTimeouts( ), NotifyTimeout.format( notifyTimeouts ) );
+    }
+  }
+
   public static void pollTaskList( final AccountFullName accountFullName,
                                    final String domain,
                                    final String type,
@@ -0,0 +1,200 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Queues of tasks that are ready to be claimed, by task list.
+ *
+ * <p>Queues are local to this host and only hint at which tasks to claim,
+ * the claim itself is always made against the database. Tasks are offered
+ * when scheduled and a queue is loaded from the database when it is found
+ * empty, so tasks scheduled on other hosts (or before a failover) are not
+ * lost. Concurrent pollers that find a queue empty share a single load.</p>
+ *
+ * <p>A queue that is never found empty is also loaded at the reload
+ * interval, so older tasks that were not offered on this host are merged in
+ * rather than waiting behind a queue that is kept busy.</p>
+ *
+ * <p>Tasks are only offered to queues that have been polled on this host.</p>
+ */
+class ReadyTaskQueues<K,T> {
+
+  private final ConcurrentMap<K,ReadyTaskQueue<T>> queues = new ConcurrentHashMap<>( );
+  private final int capacity;
+  private final long reloadNanos;
+
+  ReadyTaskQueues( final int capacity ) {
+    this( capacity, Long.MAX_VALUE );
+  }
+
+  ReadyTaskQueues( final int capacity, final long reloadMillis ) {
+    this.capacity = capacity;
+    this.reloadNanos = reloadMillis == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos( reloadMillis );
+  }
+
+  /**
+   * Offer a ready task.
+   *
+   * @return True if the task was queued
+   */
+  boolean offer( final K key, final T task ) {
+    final ReadyTaskQueue<T> queue = queues.get( key );
+    return queue != null && queue.offer( task, capacity );
+  }
+
+  /**
+   * Take the next ready task, loading the queue if empty.
+   *
+   * <p>The loader is not called if the queue was loaded after this poll
+   * began, so it is safe for many pollers to call this concurrently.</p>
+   *
+   * @param key The task list key
+   * @param loader Loads ready tasks, in the order they should be claimed
+   * @return The task or null if there are no ready tasks
+   */
+  @Nullable
+  T poll( final K key, final Callable<? extends Iterable<T>> loader ) throws Exception {
+    final long requested = System.nanoTime( );
+    final ReadyTaskQueue<T> queue = queues.computeIfAbsent( key, k -> new ReadyTaskQueue<>( ) );
+    queue.polled = System.currentTimeMillis( );
+    T task = queue.isReloadDue( requested, reloadNanos ) ? null : queue.poll( );
+    if ( task == null ) {
+      synchronized ( queue ) {
+        if ( !queue.isReloadDue( requested, reloadNanos ) ) {
+          task = queue.poll( );
+        }
+        if ( task == null && ( !queue.loaded || queue.loadedNanos - requested < 0 ) ) {
+          queue.loaded = true;
+          queue.loadedNanos = System.nanoTime( );
+          for ( final T loadedTask : loader.call( ) ) {
+            queue.offer( loadedTask, capacity );
+          }
+          task = queue.poll( );
+        }
+      }
+    }
+    return task;
+  }
+
+  /**
+   * Claim the next ready task, trying each task at most once.
+   *
+   * <p>The claim ends when a task is claimed or a task already tried is
+   * polled again, so tasks that cannot be claimed are not retried
+   * indefinitely. Tasks the claimer skips are offered again once the claim
+   * ends.</p>
+   *
+   * @param key The task list key
+   * @param loader Loads ready tasks, in the order they should be claimed
+   * @param claimer Claims a task, returning null if it was not claimed
+   * @return The claimer result or null if no task was claimed
+   */
+  @Nullable
+  <R> R claim( final K key,
+               final Callable<? extends Iterable<T>> loader,
+               final Claimer<T,R> claimer ) throws Exception {
+    final Set<T> tried = new HashSet<>( );
+    final List<T> skipped = new ArrayList<>( );
+    R result = null;
+    try {
+      T task;
+      while ( result == null && ( task = poll( key, loader ) ) != null ) {
+        if ( !tried.add( task ) ) {
+          skipped.add( task );
+          break;
+        }
+        result = claimer.claim( task, skipped::add );
+      }
+    } finally {
+      for ( final T skippedTask : skipped ) {
+        offer( key, skippedTask );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove queues that have not been polled since the given time.
+   */
+  void expire( final long polledBefore ) {
+    queues.entrySet( ).removeIf( entry -> entry.getValue( ).polled < polledBefore );
+  }
+
+  void clear( ) {
+    queues.clear( );
+  }
+
+  int size( final K key ) {
+    final ReadyTaskQueue<T> queue = queues.get( key );
+    return queue == null ? 0 : queue.queued.size( );
+  }
+
+  interface Claimer<T,R> {
+    /**
+     * @param task The task to claim
+     * @param skip Accepts a task that should be offered again
+     * @return The result or null if the task was not claimed
+     */
+    @Nullable
+    R claim( T task, Consumer<? super T> skip ) throws Exception;
+  }
+
+  private static final class ReadyTaskQueue<T> {
+    private final Queue<T> tasks = new ConcurrentLinkedQueue<>( );
+    private final Set<T> queued = ConcurrentHashMap.newKeySet( );
+    private volatile long polled;
+    private volatile boolean loaded;
+    private volatile long loadedNanos;
+
+    private boolean offer( final T task, final int capacity ) {
+      if ( queued.size( ) < capacity && queued.add( task ) ) {
+        tasks.add( task );
+        return true;
+      }
+      return false;
+    }
+
+    private boolean isReloadDue( final long requested, final long reloadNanos ) {
+      return loaded && reloadNanos != Long.MAX_VALUE && loadedNanos + reloadNanos - requested < 0;
+    }
+
+    @Nullable
+    private T poll( ) {
+      final T task = tasks.poll( );
+      if ( task != null ) {
+        queued.remove( task );
+      }
+      return task;
+    }
+  }
+}
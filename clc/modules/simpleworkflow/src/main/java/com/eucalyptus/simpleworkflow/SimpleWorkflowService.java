@@ -22,7 +22,6 @@ package com.eucalyptus.simpleworkflow;
 import static com.eucalyptus.simpleworkflow.Domain.Status.Registered;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.*;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.WorkflowHistorySizeLimitException;
-import static com.eucalyptus.simpleworkflow.WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE;
 import static com.eucalyptus.simpleworkflow.common.model.ScheduleActivityTaskFailedCause.*;
 import java.lang.System;
 import java.sql.SQLException;
@@ -30,6 +29,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -49,13 +49,13 @@ import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.context.Context;
 import com.eucalyptus.context.Contexts;
 import com.eucalyptus.entities.AbstractPersistent;
-import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.PersistenceExceptions;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
 import com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
+import com.eucalyptus.simpleworkflow.NotifyClient.NotifyTimeout;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
 import com.eucalyptus.simpleworkflow.common.model.*;
 import com.eucalyptus.simpleworkflow.tokens.TaskToken;
@@ -93,6 +93,9 @@ public class SimpleWorkflowService {
 
   private static final Logger logger = Logger.getLogger( SimpleWorkflowService.class );
   private static final ConcurrentMap<NotifyTaskList, Long> taskListActivity = Maps.newConcurrentMap( );
+  private static final ReadyTaskQueues<NotifyTaskList, ReadyTask> readyTasks =
+      new ReadyTaskQueues<>( 1000, TimeUnit.SECONDS.toMillis( 10 ) );
+  private static final int READY_TASK_LOAD_SIZE = 100;
 
   private final Domains domains;
   private final ActivityTasks activityTasks;
@@ -482,17 +485,12 @@ public class SimpleWorkflowService {
           workflowExecution -> {
             final WorkflowExecutionDetail detail =
                 TypeMappers.transform( workflowExecution, WorkflowExecutionDetail.class );
-            final Iterable<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-            final int openActivities =
-                CollectionUtils.reduce( events, 0, CollectionUtils.count(
-                    CollectionUtils.propertyPredicate( "ActivityTaskScheduled", EVENT_TYPE ) ) ) -
-                CollectionUtils.reduce( events, 0, CollectionUtils.count(
-                    CollectionUtils.propertyPredicate( WorkflowExecutions.ACTIVITY_CLOSE_EVENT_TYPES, EVENT_TYPE ) ) );
-            final int openTimers =
-                CollectionUtils.reduce( events, 0, CollectionUtils.count(
-                    CollectionUtils.propertyPredicate( "TimerStarted", EVENT_TYPE ) ) ) -
-                    CollectionUtils.reduce( events, 0, CollectionUtils.count(
-                        CollectionUtils.propertyPredicate( WorkflowExecutions.TIMER_CLOSE_EVENT_TYPES, EVENT_TYPE ) ) );
+            final int openActivities = (int) (
+                WorkflowHistoryEvents.countByType( workflowExecution, Collections.singleton( "ActivityTaskScheduled" ) ) -
+                WorkflowHistoryEvents.countByType( workflowExecution, WorkflowExecutions.ACTIVITY_CLOSE_EVENT_TYPES ) );
+            final int openTimers = (int) (
+                WorkflowHistoryEvents.countByType( workflowExecution, Collections.singleton( "TimerStarted" ) ) -
+                WorkflowHistoryEvents.countByType( workflowExecution, WorkflowExecutions.TIMER_CLOSE_EVENT_TYPES ) );
             detail.withOpenCounts( new WorkflowExecutionOpenCounts( )
               .withOpenActivityTasks( openActivities )
               .withOpenChildWorkflowExecutions( 0 )
@@ -814,7 +812,9 @@ public class SimpleWorkflowService {
       }
     }, WorkflowExecution.class, request.getWorkflowId( ) );
 
+    offerDecisionTask( accountFullName, workflowExecution.getTaskList( ), ReadyTask.decision( workflowExecution ) );
     notifyTaskList( accountFullName, workflowExecution.getDomainName( ), "decision", workflowExecution.getTaskList( ) );
+    NotifyClient.notifyTimeouts( Collections.singleton( NotifyTimeout.of( workflowExecution ) ) );
 
     final Run run = new Run( );
     run.setRunId( workflowExecution.getDisplayName() );
@@ -834,77 +834,83 @@ public class SimpleWorkflowService {
     final String taskList = request.getTaskList( ).getName( );
     final Callable<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskCallable =
         () -> {
-          com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
-          final List<ActivityTask> pending = activityTasks.listByExample(
-              ActivityTask.examplePending( accountFullName, domain, taskList ),
-              accessible,
-              Functions.identity( ) );
-          Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
-          for ( final List<ActivityTask> pendingSegment : shufflePartitions( pending ) ) {
-            for ( final ActivityTask pendingTask : pendingSegment ) {
-              if ( activityTask != null ) break;
-              try ( final WorkflowLock lock = WorkflowLock.tryLock(
-                  accountFullName,
-                  pendingTask.getDomainUuid( ),
-                  pendingTask.getWorkflowRunId() ) ) {
-                if ( !lock.isHeldByCurrentThread( ) ) {
-                  continue;
-                }
-                activityTask = activityTasks.updateByExample(
-                    pendingTask,
+          final List<NotifyTimeout> timeouts = Lists.newArrayList( );
+          final NotifyTaskList readyTaskList = NotifyTaskList.of( accountFullName, domain, "activity", taskList );
+          final com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = readyTasks.claim(
+              readyTaskList,
+              ( ) -> activityTasks.listPending(
+                  accountFullName, domain, taskList, READY_TASK_LOAD_SIZE, accessible, ReadyTask::activity ),
+              ( pendingTask, skip ) -> {
+                try ( final WorkflowLock lock = WorkflowLock.tryLock(
                     accountFullName,
-                    pendingTask.getDisplayName(),
-                    new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
-                      @Nullable
-                      @Override
-                      public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
-                        if ( activityTask.getState( ) == ActivityTask.State.Pending ) {
-                          final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
-                          final Long startedId = workflowExecution.addHistoryEvent(
-                              WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
-                                  .withIdentity( request.getIdentity( ) )
-                                  .withScheduledEventId( activityTask.getScheduledEventId( ) )
-                              )
-                          );
-                          activityTask.setState( ActivityTask.State.Active );
-                          activityTask.setStartedEventId( startedId );
-
-                          return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
-                              .withStartedEventId( startedId )
-                              .withInput( activityTask.getInput() )
-                              .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                                  accountFullName.getAccountNumber(),
-                                  workflowExecution.getDomain().getNaturalId(),
-                                  workflowExecution.getDisplayName(),
-                                  activityTask.getScheduledEventId(),
-                                  startedId,
-                                  System.currentTimeMillis(),
-                                  System.currentTimeMillis() ) ) )
-                              .withActivityId( activityTask.getDisplayName() )
-                              .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
-                                  .withName( activityTask.getActivityType() )
-                                  .withVersion( activityTask.getActivityVersion() ) )
-                              .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
-                                  .withRunId( workflowExecution.getDisplayName() )
-                                  .withWorkflowId( workflowExecution.getWorkflowId() ) );
+                    pendingTask.getDomainUuid( ),
+                    pendingTask.getRunId( ) ) ) {
+                  if ( !lock.isHeldByCurrentThread( ) ) {
+                    skip.accept( pendingTask );
+                    return null;
+                  }
+                  return activityTasks.updateByExample(
+                      ActivityTask.exampleWithUniqueName( accountFullName, pendingTask.getRunId( ), pendingTask.getScheduledEventId( ) ),
+                      accountFullName,
+                      pendingTask.getRunId( ),
+                      new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
+                        @Nullable
+                        @Override
+                        public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
+                          if ( activityTask.getState( ) == ActivityTask.State.Pending ) {
+                            if ( !accessible.apply( activityTask ) ) {
+                              skip.accept( pendingTask );
+                              return null;
+                            }
+                            final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
+                            final Long startedId = workflowExecution.addHistoryEvent(
+                                WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
+                                    .withIdentity( request.getIdentity( ) )
+                                    .withScheduledEventId( activityTask.getScheduledEventId( ) )
+                                )
+                            );
+                            activityTask.setState( ActivityTask.State.Active );
+                            activityTask.setStartedEventId( startedId );
+                            activityTask.updateTimeStamps( );
+                            timeouts.add( NotifyTimeout.of( activityTask ) );
+
+                            return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
+                                .withStartedEventId( startedId )
+                                .withInput( activityTask.getInput() )
+                                .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                                    accountFullName.getAccountNumber(),
+                                    workflowExecution.getDomain().getNaturalId(),
+                                    workflowExecution.getDisplayName(),
+                                    activityTask.getScheduledEventId(),
+                                    startedId,
+                                    System.currentTimeMillis(),
+                                    System.currentTimeMillis() ) ) )
+                                .withActivityId( activityTask.getDisplayName() )
+                                .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
+                                    .withName( activityTask.getActivityType() )
+                                    .withVersion( activityTask.getActivityVersion() ) )
+                                .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
+                                    .withRunId( workflowExecution.getDisplayName() )
+                                    .withWorkflowId( workflowExecution.getWorkflowId() ) );
+                          }
+                          return null;
                         }
-                        return null;
-                      }
-                    });
-
-              } catch ( SwfMetadataException e ) {
-                logger.info( "Activity task for domain " + domain + ", list " + taskList + " not found" );
-              } catch ( Exception e ) {
-                if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " already taken"  );
-                } else if (  PersistenceExceptions.isLockError( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " locking error" );
-                } else {
-                  logger.error( "Error taking activity task for domain " + domain + ", list " + taskList, e );
+                      });
+
+                } catch ( SwfMetadataException e ) {
+                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " not found" );
+                } catch ( Exception e ) {
+                  if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+                    logger.info( "Activity task for domain " + domain + ", list " + taskList + " already taken"  );
+                  } else if (  PersistenceExceptions.isLockError( e ) ) {
+                    logger.info( "Activity task for domain " + domain + ", list " + taskList + " locking error" );
+                  } else {
+                    logger.error( "Error taking activity task for domain " + domain + ", list " + taskList, e );
+                  }
                 }
-              }
-            }
-          }
+                return null;
+              } );
+          NotifyClient.notifyTimeouts( timeouts );
           return activityTask;
         };
 
@@ -1003,6 +1009,8 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
+        offerDecisionTask( accountFullName, domainTaskListPair.getRight( ),
+            ReadyTask.decision( domainTaskListPair.getLeft( ), token.getDomainUuid( ), token.getRunId( ) ) );
         notifyTaskList( accountFullName, domainTaskListPair.getLeft(), "decision", domainTaskListPair.getRight() );
       }
     } catch ( SwfMetadataNotFoundException e ) {
@@ -1080,6 +1088,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus() == Pending ) {
+        offerDecisionTask( accountFullName, workflowExecution.getTaskList( ), ReadyTask.decision( workflowExecution ) );
         notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
       }
     } catch( Exception e ) {
@@ -1154,6 +1163,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus( ) == Pending ) {
+        offerDecisionTask( accountFullName, workflowExecution.getTaskList( ), ReadyTask.decision( workflowExecution ) );
         notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
       }
     } catch( Exception e ) {
@@ -1172,88 +1182,99 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
+    if ( request.getNextPageToken( ) != null ) {
+      return decisionTaskHistoryPage( accountFullName, accessible, request );
+    }
     final Callable<DecisionTask> taskCallable = () -> {
-      final List<WorkflowExecution> pending = workflowExecutions.listByExample(
-          WorkflowExecution.exampleWithPendingDecision( accountFullName, domain, taskList ),
-          accessible,
-          Functions.identity( ) );
-      Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
-      DecisionTask decisionTask = null;
-      for ( final List<WorkflowExecution> pendingSegment : shufflePartitions( pending ) ) {
-        for ( final WorkflowExecution execution : pendingSegment ) {
-          if ( decisionTask != null ) break;
-          try ( final WorkflowLock lock = WorkflowLock.tryLock(
-              accountFullName,
-              execution.getDomainUuid( ),
-              execution.getDisplayName( ) ) ) {
-            if ( !lock.isHeldByCurrentThread( ) ) {
-              continue;
-            }
-            decisionTask = workflowExecutions.updateByExample(
-                WorkflowExecution.exampleWithUniqueName( accountFullName, execution.getDomainName( ), execution.getDisplayName( ) ),
+      final List<NotifyTimeout> timeouts = Lists.newArrayList( );
+      final NotifyTaskList readyTaskList = NotifyTaskList.of( accountFullName, domain, "decision", taskList );
+      final DecisionTask decisionTask = readyTasks.claim(
+          readyTaskList,
+          ( ) -> workflowExecutions.listPendingDecisions(
+              accountFullName, domain, taskList, READY_TASK_LOAD_SIZE, accessible, ReadyTask::decision ),
+          ( execution, skip ) -> {
+            try ( final WorkflowLock lock = WorkflowLock.tryLock(
                 accountFullName,
-                execution.getDisplayName(),
-                new Function<WorkflowExecution,DecisionTask>( ) {
-                  @Nullable
-                  @Override
-                  public DecisionTask apply( final WorkflowExecution workflowExecution ) {
-                    if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-                      final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                      final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                      final WorkflowHistoryEvent scheduled = Iterables.find(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskScheduled", EVENT_TYPE ) );
-                      final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskStarted", EVENT_TYPE ) );
-                      workflowExecution.setDecisionStatus( Active );
-                      workflowExecution.setDecisionTimestamp( new Date( ) );
-                      final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new DecisionTaskStartedEventAttributes()
-                              .withIdentity( request.getIdentity() )
-                              .withScheduledEventId( scheduled.getEventId() ) );
-                      workflowExecution.addHistoryEvent( started );
-                      return new DecisionTask( )
-                          .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
-                              .withWorkflowId( workflowExecution.getWorkflowId( ) )
-                              .withRunId( workflowExecution.getDisplayName( ) ) )
-                          .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
-                              .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
-                              .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
-                          .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                              accountFullName.getAccountNumber( ),
-                              workflowExecution.getDomain( ).getNaturalId( ),
-                              workflowExecution.getDisplayName( ),
-                              scheduled.getEventId( ),
-                              started.getEventId( ),
-                              System.currentTimeMillis( ),
-                              System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
-                          .withStartedEventId( started.getEventId() )
-                          .withPreviousStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).or( 0L ) )
-                          .withEvents( Collections2.transform(
-                              MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
-                              TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                          ) );
+                execution.getDomainUuid( ),
+                execution.getRunId( ) ) ) {
+              if ( !lock.isHeldByCurrentThread( ) ) {
+                skip.accept( execution );
+                return null;
+              }
+              return workflowExecutions.updateByExample(
+                  WorkflowExecution.exampleWithUniqueName( accountFullName, execution.getDomain( ), execution.getRunId( ) ),
+                  accountFullName,
+                  execution.getRunId( ),
+                  new Function<WorkflowExecution,DecisionTask>( ) {
+                    @Nullable
+                    @Override
+                    public DecisionTask apply( final WorkflowExecution workflowExecution ) {
+                      if ( workflowExecution.getDecisionStatus( ) == Pending ) {
+                        if ( !accessible.apply( workflowExecution ) ) {
+                          skip.accept( execution );
+                          return null;
+                        }
+                        final WorkflowHistoryEvent scheduled =
+                            WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskScheduled" ).get( );
+                        final Optional<WorkflowHistoryEvent> previousStarted =
+                            WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskStarted" );
+                        workflowExecution.setDecisionStatus( Active );
+                        workflowExecution.setDecisionTimestamp( new Date( ) );
+                        timeouts.add( NotifyTimeout.of( workflowExecution ) );
+                        final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
+                            workflowExecution,
+                            new DecisionTaskStartedEventAttributes()
+                                .withIdentity( request.getIdentity() )
+                                .withScheduledEventId( scheduled.getEventId() ) );
+                        workflowExecution.addHistoryEvent( started );
+                        final WorkflowHistoryEvents.HistoryPage history = WorkflowHistoryEvents.page(
+                            workflowExecution,
+                            null,
+                            started.getEventId( ),
+                            request.getMaximumPageSize( ),
+                            request.isReverseOrder( ) );
+                        return new DecisionTask( )
+                            .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                                .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                                .withRunId( workflowExecution.getDisplayName( ) ) )
+                            .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                                .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                                .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+                            .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                                accountFullName.getAccountNumber( ),
+                                workflowExecution.getDomain( ).getNaturalId( ),
+                                workflowExecution.getDisplayName( ),
+                                scheduled.getEventId( ),
+                                started.getEventId( ),
+                                System.currentTimeMillis( ),
+                                System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
+                            .withStartedEventId( started.getEventId() )
+                            .withPreviousStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).or( 0L ) )
+                            .withEvents( Collections2.transform(
+                                history.getEvents( ),
+                                TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
+                            ) )
+                            .withNextPageToken( history.getNextPageToken( ) );
+                      }
+                      return null;
                     }
-                    return null;
-                  }
-                } );
-          } catch ( Exception e ) {
-            final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
-            if ( stale != null ) try {
-              Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
-            } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
-            if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " already taken" );
-            } else if (  PersistenceExceptions.isLockError( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " locking error" );
-            } else {
-              logger.error( "Error taking decision task for workflow " + execution.getDisplayName( ), e );
+                  } );
+            } catch ( Exception e ) {
+              final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
+              if ( stale != null ) try {
+                Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
+              } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
+              if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+                logger.info( "Decision task for workflow " + execution.getRunId( ) + " already taken" );
+              } else if (  PersistenceExceptions.isLockError( e ) ) {
+                logger.info( "Decision task for workflow " + execution.getRunId( ) + " locking error" );
+              } else {
+                logger.error( "Error taking decision task for workflow " + execution.getRunId( ), e );
+              }
             }
-          }
-        }
-      }
+            return null;
+          } );
+      NotifyClient.notifyTimeouts( timeouts );
       return decisionTask;
     };
 
@@ -1282,6 +1303,8 @@ public class SimpleWorkflowService {
           Functions.identity( ) );
 
       final Set<Pair<String,String>> notificationTypeListPairs = Sets.newHashSet( );
+      final Map<ReadyTask,Pair<String,String>> readyTaskTypeListPairs = Maps.newLinkedHashMap( );
+      final List<NotifyTimeout> timeouts = Lists.newArrayList( );
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, domain, token.getRunId() ) ) {
         workflowExecutions.withRetries( ).updateByExample(
           WorkflowExecution.exampleWithUniqueName( accountFullName, domain.getDisplayName( ), token.getRunId( ) ),
@@ -1294,19 +1317,16 @@ public class SimpleWorkflowService {
               if ( accessible.apply( workflowExecution ) ) {
                 // clear pending notifications in case of retries
                 notificationTypeListPairs.clear( );
+                readyTaskTypeListPairs.clear( );
 
                 // verify token is valid
-                final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                final WorkflowHistoryEvent started = Iterables.find(
-                    reverseEvents,
-                    CollectionUtils.propertyPredicate( "DecisionTaskStarted", EVENT_TYPE ) );
+                final WorkflowHistoryEvent started =
+                    WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskStarted" ).get( );
                 if ( !started.getEventId( ).equals( token.getStartedEventId( ) ) ) {
                   throw upClient( "ValidationError", "Bad token" );
                 }
-                final WorkflowHistoryEvent scheduled = Iterables.find(
-                    reverseEvents,
-                    CollectionUtils.propertyPredicate( "DecisionTaskScheduled", EVENT_TYPE ) );
+                final WorkflowHistoryEvent scheduled =
+                    WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskScheduled" ).get( );
                 if ( scheduled.getEventId( ) < started.getEventId() ) {
                   workflowExecution.setDecisionStatus( Idle );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
@@ -1314,6 +1334,7 @@ public class SimpleWorkflowService {
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
                   notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  readyTaskTypeListPairs.put( ReadyTask.decision( workflowExecution ), Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
                 }
 
                 // setup activity count supplier
@@ -1494,7 +1515,9 @@ public class SimpleWorkflowService {
                               )
                           );
                           try {
-                            workflowExecutions.save( workflowExecutionContinued );
+                            final WorkflowExecution savedWorkflowExecution = workflowExecutions.save( workflowExecutionContinued );
+                            timeouts.add( NotifyTimeout.of( savedWorkflowExecution ) );
+                            readyTaskTypeListPairs.put( ReadyTask.decision( savedWorkflowExecution ), Pair.pair( "decision", taskList ) );
                           } catch ( SwfMetadataException e ) {
                             throw up( e );
                           }
@@ -1659,7 +1682,7 @@ public class SimpleWorkflowService {
                           throw new ScheduleActivityTaskException( OPEN_ACTIVITIES_LIMIT_EXCEEDED );
                         }
 
-                        activityTasks.save( com.eucalyptus.simpleworkflow.ActivityTask.create(
+                        final ActivityTask activityTask = activityTasks.save( com.eucalyptus.simpleworkflow.ActivityTask.create(
                             userFullName,
                             workflowExecution,
                             domain.getDisplayName(),
@@ -1687,9 +1710,11 @@ public class SimpleWorkflowService {
                                 activityType.getDefaultTaskHeartbeatTimeout( ),
                                 DEFAULT_HEARTBEAT_TIMEOUT_UNDEFINED )
                         ) );
+                        timeouts.add( NotifyTimeout.of( activityTask ) );
                         activityTaskScheduledCount++;
 
                         notificationTypeListPairs.add( Pair.pair( "activity", list ) );
+                        readyTaskTypeListPairs.put( ReadyTask.activity( activityTask ), Pair.pair( "activity", list ) );
                       } catch ( final ScheduleActivityTaskException e ) {
                         workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                             workflowExecution,
@@ -1773,7 +1798,7 @@ public class SimpleWorkflowService {
                             SimpleWorkflowProperties.getOpenTimersPerWorkflowExecution() ) {
                           throw new StartTimerException( StartTimerFailedCause.OPEN_TIMERS_LIMIT_EXCEEDED );
                         }
-                        timers.save( Timer.create(
+                        timeouts.add( NotifyTimeout.of( timers.save( Timer.create(
                             userFullName,
                             workflowExecution,
                             workflowExecution.getDomainName(),
@@ -1783,7 +1808,7 @@ public class SimpleWorkflowService {
                             parsePeriod( startTimer.getStartToFireTimeout(), 0 ),
                             completedId,
                             startedId
-                        ) );
+                        ) ) ) );
                       } catch ( StartTimerException e ) {
                         workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                             workflowExecution,
@@ -1814,6 +1839,7 @@ public class SimpleWorkflowService {
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
                   notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  readyTaskTypeListPairs.put( ReadyTask.decision( workflowExecution ), Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
                 } else {
                   workflowExecution.updateTimeStamps( );
                 }
@@ -1823,6 +1849,16 @@ public class SimpleWorkflowService {
           } );
           }
 
+          for ( final Map.Entry<ReadyTask,Pair<String,String>> readyTaskEntry : readyTaskTypeListPairs.entrySet( ) ) {
+            readyTasks.offer(
+                NotifyTaskList.of(
+                    accountFullName,
+                    domain.getDisplayName( ),
+                    readyTaskEntry.getValue( ).getLeft( ),
+                    readyTaskEntry.getValue( ).getRight( ) ),
+                readyTaskEntry.getKey( ) );
+          }
+
           //TODO:STEVE: update API to allow batch notification
           for ( final Pair<String,String> notificationTypeListPair : notificationTypeListPairs ) {
             notifyTaskList(
@@ -1831,6 +1867,7 @@ public class SimpleWorkflowService {
                 notificationTypeListPair.getLeft( ),
                 notificationTypeListPair.getRight( ) );
           }
+          NotifyClient.notifyTimeouts( timeouts );
     } catch( Exception e ) {
       throw handleException( e );
     }
@@ -1894,6 +1931,8 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
+        offerDecisionTask( accountFullName, domainTaskListPair.getRight( ), ReadyTask.decision(
+            domainTaskListPair.getLeft( ), domainUuidRunIdPair.getLeft( ), domainUuidRunIdPair.getRight( ) ) );
         notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
       }
     } catch ( SwfMetadataNotFoundException e ) {
@@ -1964,6 +2003,8 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
+        offerDecisionTask( accountFullName, domainTaskListPair.getRight( ), ReadyTask.decision(
+            domainTaskListPair.getLeft( ), domainUuidRunIdPair.getLeft( ), domainUuidRunIdPair.getRight( ) ) );
         notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
       }
     } catch ( SwfMetadataNotFoundException e ) {
@@ -2044,6 +2085,13 @@ public class SimpleWorkflowService {
     final Predicate<? super WorkflowExecution> accessible =
         SimpleWorkflowMetadatas.filteringFor( WorkflowExecution.class ).byPrivileges( ).buildPredicate( );
 
+    final WorkflowHistoryEvents.PageToken pageToken = request.getNextPageToken( ) == null ?
+        null :
+        decodePageToken( request.getNextPageToken( ) );
+    if ( pageToken != null && !pageToken.getRunId( ).equals( request.getExecution( ).getRunId( ) ) ) {
+      throw new SimpleWorkflowClientException( "ValidationError", "Invalid next page token" );
+    }
+
     final History history;
     try {
       history = workflowExecutions.lookupByExample(
@@ -2052,13 +2100,18 @@ public class SimpleWorkflowService {
           request.getExecution().getRunId(),
           accessible,
           workflowExecution -> {
-            final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-            final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
+            final WorkflowHistoryEvents.HistoryPage page = WorkflowHistoryEvents.page(
+                workflowExecution,
+                pageToken,
+                null,
+                request.getMaximumPageSize( ),
+                request.isReverseOrder( ) );
             return new History( )
                 .withEvents( Collections2.transform(
-                    MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
+                    page.getEvents( ),
                     TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                ) );
+                ) )
+                .withNextPageToken( page.getNextPageToken( ) );
           }
       );
     } catch ( SwfMetadataNotFoundException e ) {
@@ -2250,12 +2303,6 @@ public class SimpleWorkflowService {
     return MoreObjects.firstNonNull( value, defaultValue );
   }
 
-  private static <T> Iterable<List<T>> shufflePartitions( final List<T> pending ) {
-    return Iterables.transform(
-        Iterables.partition( pending, 40 ),
-        segment -> { List<T> copy = Lists.newArrayList( segment ); Collections.shuffle( copy ); return copy; } );
-  }
-
   private static void noteTaskListActivity( final AccountFullName accountFullName,
                                             final String domain,
                                             final String type,
@@ -2279,6 +2326,12 @@ public class SimpleWorkflowService {
     }
   }
 
+  private static void offerDecisionTask( final AccountFullName accountFullName,
+                                         final String taskList,
+                                         final ReadyTask decision ) {
+    readyTasks.offer( NotifyTaskList.of( accountFullName, decision.getDomain( ), "decision", taskList ), decision );
+  }
+
   private static void notifyTaskList( final AccountFullName accountFullName,
                                       final String domain,
                                       final String type,
@@ -2289,6 +2342,59 @@ public class SimpleWorkflowService {
 
   private static final long EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
 
+  /**
+   * Subsequent pages of history for a decision task do not take a task.
+   */
+  private DecisionTask decisionTaskHistoryPage( final AccountFullName accountFullName,
+                                                final Predicate<? super WorkflowExecution> accessible,
+                                                final PollForDecisionTaskRequest request ) throws SimpleWorkflowException {
+    final WorkflowHistoryEvents.PageToken pageToken = decodePageToken( request.getNextPageToken( ) );
+    try {
+      return request.reply( workflowExecutions.lookupByExample(
+          WorkflowExecution.exampleWithName( accountFullName, pageToken.getRunId( ) ),
+          accountFullName,
+          pageToken.getRunId( ),
+          accessible,
+          workflowExecution -> {
+            if ( !workflowExecution.getDomainName( ).equals( request.getDomain( ) ) ||
+                !workflowExecution.getTaskList( ).equals( request.getTaskList( ).getName( ) ) ) {
+              throw upClient( "ValidationError", "Invalid next page token" );
+            }
+            final WorkflowHistoryEvents.HistoryPage history = WorkflowHistoryEvents.page(
+                workflowExecution,
+                pageToken,
+                null,
+                request.getMaximumPageSize( ),
+                request.isReverseOrder( ) );
+            return new DecisionTask( )
+                .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                    .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                    .withRunId( workflowExecution.getDisplayName( ) ) )
+                .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                    .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                    .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+                .withStartedEventId( pageToken.getLastEventId( ) )
+                .withEvents( Collections2.transform(
+                    history.getEvents( ),
+                    TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
+                ) )
+                .withNextPageToken( history.getNextPageToken( ) );
+          } ) );
+    } catch ( SwfMetadataNotFoundException e ) {
+      throw new SimpleWorkflowClientException( "ValidationError", "Invalid next page token" );
+    } catch ( Exception e ) {
+      throw handleException( e );
+    }
+  }
+
+  private static WorkflowHistoryEvents.PageToken decodePageToken( final String nextPageToken ) throws SimpleWorkflowException {
+    try {
+      return WorkflowHistoryEvents.PageToken.decode( nextPageToken );
+    } catch ( IllegalArgumentException e ) {
+      throw new SimpleWorkflowClientException( "ValidationError", "Invalid next page token" );
+    }
+  }
+
   private static <R extends SimpleWorkflowMessage> R handleTaskPolling( final AccountFullName accountFullName,
                                          final String domain,
                                          final String type,
@@ -2360,6 +2466,78 @@ public class SimpleWorkflowService {
     @Override
     public void fireEvent( final ClockTick event ) {
       taskListActivityCleanup( System.currentTimeMillis( ) - TimeUnit.SECONDS.toMillis( 10 ) );
+      readyTasks.expire( System.currentTimeMillis( ) - TimeUnit.MINUTES.toMillis( 5 ) );
+    }
+  }
+
+  /**
+   * Activity task or workflow execution with a pending decision that may be claimed.
+   */
+  private static final class ReadyTask {
+    private final String domain;
+    private final String domainUuid;
+    private final String runId;
+    @Nullable
+    private final Long scheduledEventId;
+
+    private ReadyTask( final String domain,
+                       final String domainUuid,
+                       final String runId,
+                       @Nullable final Long scheduledEventId ) {
+      this.domain = domain;
+      this.domainUuid = domainUuid;
+      this.runId = runId;
+      this.scheduledEventId = scheduledEventId;
+    }
+
+    static ReadyTask activity( final ActivityTask activityTask ) {
+      return new ReadyTask(
+          activityTask.getDomain( ),
+          activityTask.getDomainUuid( ),
+          activityTask.getWorkflowRunId( ),
+          activityTask.getScheduledEventId( ) );
+    }
+
+    static ReadyTask decision( final WorkflowExecution workflowExecution ) {
+      return decision(
+          workflowExecution.getDomainName( ),
+          workflowExecution.getDomainUuid( ),
+          workflowExecution.getDisplayName( ) );
+    }
+
+    static ReadyTask decision( final String domain, final String domainUuid, final String runId ) {
+      return new ReadyTask( domain, domainUuid, runId, null );
+    }
+
+    String getDomain( ) {
+      return domain;
+    }
+
+    String getDomainUuid( ) {
+      return domainUuid;
+    }
+
+    String getRunId( ) {
+      return runId;
+    }
+
+    @Nullable
+    Long getScheduledEventId( ) {
+      return scheduledEventId;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final ReadyTask readyTask = (ReadyTask) o;
+      return Objects.equals( runId, readyTask.runId ) &&
+          Objects.equals( scheduledEventId, readyTask.scheduledEventId );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( runId, scheduledEventId );
     }
   }
 
@@ -19,6 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Collection;
 import java.util.List;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
@@ -37,6 +38,9 @@ public interface Timers {
 
   <T> List<T> listFired( Function<? super Timer,T> transform ) throws SwfMetadataException;
 
+  <T> List<T> listByNaturalIds( Collection<String> naturalIds,
+                                Function<? super Timer,T> transform ) throws SwfMetadataException;
+
   <T> T updateByExample( Timer example,
                          OwnerFullName ownerFullName,
                          String timerId,
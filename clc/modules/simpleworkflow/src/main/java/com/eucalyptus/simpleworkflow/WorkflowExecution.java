@@ -45,10 +45,12 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.Type;
 import com.eucalyptus.component.ComponentIds;
 import com.eucalyptus.entities.AuxiliaryDatabaseObject;
 import com.eucalyptus.entities.AuxiliaryDatabaseObjects;
+import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.UserMetadata;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
@@ -185,6 +187,9 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
   @Temporal( TemporalType.TIMESTAMP )
   private Date timeoutTimestamp;
 
+  @Column( name = "next_event_order" )
+  private Long nextEventOrder;
+
   @OneToMany( fetch = FetchType.LAZY, cascade = { CascadeType.PERSIST, CascadeType.REMOVE }, orphanRemoval = true, mappedBy = "workflowExecution" )
   @OrderBy( "eventOrder" )
   private List<WorkflowHistoryEvent> workflowHistory;
@@ -230,6 +235,7 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
     workflowExecution.setCancelRequested( false );
     workflowExecution.setDecisionStatus( DecisionStatus.Pending );
     workflowExecution.setDecisionTimestamp( new Date( ) );
+    workflowExecution.setNextEventOrder( 0L );
     workflowExecution.setWorkflowHistory( Lists.<WorkflowHistoryEvent>newArrayList( ) );
     for ( final WorkflowEventAttributes attributes : eventAttributes ) {
       workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create( workflowExecution, attributes ) );
@@ -245,6 +251,26 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
     return timeout == Long.MAX_VALUE ? null : new Date( timeout );
   }
 
+  /**
+   * Calculate the next timeout including any maximum workflow duration.
+   *
+   * @return The timeout or null if none
+   */
+  @Nullable
+  public Long calculateNextTimeout( final long maximumDurationMillis ) {
+    final Date timeout = calculateNextTimeout( );
+    final Long maximumTimeout = maximumDurationMillis > 0 ?
+        getCreationTimestamp( ).getTime( ) + maximumDurationMillis :
+        null;
+    if ( timeout == null ) {
+      return maximumTimeout;
+    } else if ( maximumTimeout == null ) {
+      return timeout.getTime( );
+    } else {
+      return Math.min( timeout.getTime( ), maximumTimeout );
+    }
+  }
+
   public boolean isWorkflowTimedOut( final long timestamp,
                                      final long maximumDurationMillis ){
     final Long timeout = toTimeout( getCreationTimestamp( ), getExecutionStartToCloseTimeout( ) );
@@ -343,9 +369,15 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
   public Long addHistoryEvent( final WorkflowHistoryEvent event ) throws WorkflowHistorySizeLimitException {
     // Order would be filled in on save, but we may need the event
     // identifier before the entity is stored
-    event.setEventOrder( (long) workflowHistory.size( ) );
-    workflowHistory.add( event );
-    if ( workflowHistory.size( ) > SimpleWorkflowProperties.getWorkflowExecutionHistorySize() ) {
+    final long eventOrder = getNextEventOrder( );
+    event.setEventOrder( eventOrder );
+    setNextEventOrder( eventOrder + 1 );
+    if ( Hibernate.isInitialized( workflowHistory ) ) {
+      workflowHistory.add( event );
+    } else { // append without loading the history
+      Entities.persist( event );
+    }
+    if ( getNextEventOrder( ) > SimpleWorkflowProperties.getWorkflowExecutionHistorySize() ) {
       throw new WorkflowHistorySizeLimitException( this );
     }
     updateTimeStamps( ); // ensure workflow version incremented
@@ -530,6 +562,17 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
     this.timeoutTimestamp = timeoutTimestamp;
   }
 
+  public Long getNextEventOrder( ) {
+    if ( nextEventOrder == null && workflowHistory != null ) { // execution started before the order was tracked
+      nextEventOrder = (long) workflowHistory.size( );
+    }
+    return nextEventOrder;
+  }
+
+  public void setNextEventOrder( final Long nextEventOrder ) {
+    this.nextEventOrder = nextEventOrder;
+  }
+
   public List<WorkflowHistoryEvent> getWorkflowHistory() {
     return workflowHistory;
   }
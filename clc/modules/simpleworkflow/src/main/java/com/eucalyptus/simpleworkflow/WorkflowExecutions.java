@@ -19,6 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -61,9 +62,18 @@ public interface WorkflowExecutions {
   <T> List<T> listTimedOut( long timestamp,
                             Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listRetentionExpired( long timestamp,
+  <T> List<T> listByNaturalIds( Collection<String> naturalIds,
+                                Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
+
+  <T> List<T> listPendingDecisions( OwnerFullName ownerFullName,
+                                    String domain,
+                                    String taskList,
+                                    int maximum,
+                                    Predicate<? super WorkflowExecution> filter,
                                     Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
+  int deleteRetentionExpired( long timestamp, int maximum ) throws SwfMetadataException;
+
   <T> T lookupByExample( WorkflowExecution example,
                          @Nullable OwnerFullName ownerFullName,
                          String key,
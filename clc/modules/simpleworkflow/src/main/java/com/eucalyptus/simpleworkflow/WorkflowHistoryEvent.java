@@ -40,7 +40,8 @@ import com.google.common.base.Objects;
 @Entity
 @PersistenceContext( name = "eucalyptus_simpleworkflow" )
 @Table( name = "swf_workflow_history_event", indexes = {
-    @Index( name = "swf_workflow_history_event_execution_id_idx", columnList = "workflow_execution_id" )
+    @Index( name = "swf_workflow_history_event_execution_id_idx", columnList = "workflow_execution_id" ),
+    @Index( name = "swf_workflow_history_event_execution_order_idx", columnList = "workflow_execution_id, event_order" )
 } )
 public class WorkflowHistoryEvent extends AbstractPersistent {
   private static final long serialVersionUID = 1L;
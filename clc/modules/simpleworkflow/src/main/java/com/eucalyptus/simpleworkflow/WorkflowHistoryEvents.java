@@ -0,0 +1,201 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.Entities.EntityCriteriaQuery;
+import com.eucalyptus.entities.Entities.EntityRestrictionBuilder;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Longs;
+
+/**
+ * Workflow history event queries.
+ *
+ * <p>History is read in pages using the event order rather than by loading
+ * the history collection of the execution. Queries must be performed in the
+ * transaction for the workflow execution.</p>
+ */
+public class WorkflowHistoryEvents {
+
+  public static final int MAXIMUM_PAGE_SIZE = 1000;
+
+  /**
+   * Find the most recent event of the given type.
+   */
+  public static Optional<WorkflowHistoryEvent> findLatest( final WorkflowExecution workflowExecution,
+                                                           final String eventType ) {
+    return Optional.fromNullable( Iterables.getFirst(
+        Entities.criteriaQuery( restriction( workflowExecution ).equal( WorkflowHistoryEvent_.eventType, eventType ) )
+            .orderByDesc( WorkflowHistoryEvent_.eventOrder )
+            .maxResults( 1 )
+            .list( ),
+        null ) );
+  }
+
+  /**
+   * Count events with any of the given types.
+   */
+  public static long countByType( final WorkflowExecution workflowExecution,
+                                  final Set<String> eventTypes ) {
+    long count = 0;
+    for ( final String eventType : eventTypes ) {
+      count += Entities.count(
+          restriction( workflowExecution ).equal( WorkflowHistoryEvent_.eventType, eventType ).build( ) ).uniqueResult( );
+    }
+    return count;
+  }
+
+  /**
+   * Get a page of history for the workflow execution.
+   *
+   * @param workflowExecution The workflow execution
+   * @param pageToken The token from the previous page, null for the first page
+   * @param lastEventId The last event to include for the first page, null for all events
+   * @param maximumPageSize The requested page size
+   * @param reverseOrder True to page from the most recent event
+   * @return The page
+   */
+  public static HistoryPage page( final WorkflowExecution workflowExecution,
+                                  @Nullable final PageToken pageToken,
+                                  @Nullable final Long lastEventId,
+                                  @Nullable final Integer maximumPageSize,
+                                  @Nullable final Boolean reverseOrder ) {
+    final boolean reverse = reverseOrder != null && reverseOrder;
+    final int pageSize = maximumPageSize == null || maximumPageSize <= 0 || maximumPageSize > MAXIMUM_PAGE_SIZE ?
+        MAXIMUM_PAGE_SIZE :
+        maximumPageSize;
+    final long last = pageToken != null ?
+        pageToken.getLastEventId( ) :
+        lastEventId != null ? lastEventId : workflowExecution.getNextEventOrder( );
+
+    // event identifiers are the event order plus one
+    final EntityRestrictionBuilder<WorkflowHistoryEvent> restriction =
+        restriction( workflowExecution ).lt( WorkflowHistoryEvent_.eventOrder, last );
+    if ( pageToken != null && reverse ) {
+      restriction.lt( WorkflowHistoryEvent_.eventOrder, pageToken.getPreviousEventId( ) - 1 );
+    } else if ( pageToken != null ) {
+      restriction.ge( WorkflowHistoryEvent_.eventOrder, pageToken.getPreviousEventId( ) );
+    }
+    final EntityCriteriaQuery<WorkflowHistoryEvent,WorkflowHistoryEvent> query = Entities.criteriaQuery( restriction );
+    final List<WorkflowHistoryEvent> events = ( reverse ?
+        query.orderByDesc( WorkflowHistoryEvent_.eventOrder ) :
+        query.orderBy( WorkflowHistoryEvent_.eventOrder ) )
+        .maxResults( pageSize + 1 )
+        .list( );
+
+    if ( events.size( ) > pageSize ) {
+      final List<WorkflowHistoryEvent> pageEvents = events.subList( 0, pageSize );
+      return new HistoryPage( pageEvents, new PageToken(
+          workflowExecution.getDisplayName( ),
+          last,
+          Iterables.getLast( pageEvents ).getEventId( ) ).encode( ) );
+    } else {
+      return new HistoryPage( events, null );
+    }
+  }
+
+  private static EntityRestrictionBuilder<WorkflowHistoryEvent> restriction( final WorkflowExecution workflowExecution ) {
+    return Entities.restriction( WorkflowHistoryEvent.class )
+        .equal( WorkflowHistoryEvent_.workflowExecution, workflowExecution );
+  }
+
+  public static final class HistoryPage {
+    private final List<WorkflowHistoryEvent> events;
+    private final String nextPageToken;
+
+    HistoryPage( final List<WorkflowHistoryEvent> events,
+                 @Nullable final String nextPageToken ) {
+      this.events = events;
+      this.nextPageToken = nextPageToken;
+    }
+
+    public List<WorkflowHistoryEvent> getEvents( ) {
+      return events;
+    }
+
+    @Nullable
+    public String getNextPageToken( ) {
+      return nextPageToken;
+    }
+  }
+
+  /**
+   * Token for the next page of history.
+   *
+   * <p>The token identifies the execution, the last event in the history at
+   * the time the first page was read and the last event of the previous
+   * page.</p>
+   */
+  public static final class PageToken {
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url( ).omitPadding( );
+    private final String runId;
+    private final long lastEventId;
+    private final long previousEventId;
+
+    PageToken( final String runId,
+               final long lastEventId,
+               final long previousEventId ) {
+      this.runId = runId;
+      this.lastEventId = lastEventId;
+      this.previousEventId = previousEventId;
+    }
+
+    /**
+     * Decode the given token.
+     *
+     * @throws IllegalArgumentException If the token is not valid
+     */
+    @Nonnull
+    public static PageToken decode( final String token ) {
+      final List<String> parts = Splitter.on( ':' ).splitToList(
+          new String( ENCODING.decode( token ), StandardCharsets.UTF_8 ) );
+      final Long lastEventId = parts.size( ) == 3 ? Longs.tryParse( parts.get( 1 ) ) : null;
+      final Long previousEventId = parts.size( ) == 3 ? Longs.tryParse( parts.get( 2 ) ) : null;
+      if ( lastEventId == null || previousEventId == null || previousEventId < 1 || previousEventId > lastEventId ) {
+        throw new IllegalArgumentException( "Invalid page token" );
+      }
+      return new PageToken( parts.get( 0 ), lastEventId, previousEventId );
+    }
+
+    public String encode( ) {
+      return ENCODING.encode( ( runId + ":" + lastEventId + ":" + previousEventId ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    public String getRunId( ) {
+      return runId;
+    }
+
+    public long getLastEventId( ) {
+      return lastEventId;
+    }
+
+    public long getPreviousEventId( ) {
+      return previousEventId;
+    }
+  }
+}
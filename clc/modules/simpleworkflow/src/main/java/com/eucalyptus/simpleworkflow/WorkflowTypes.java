@@ -51,8 +51,7 @@ public interface WorkflowTypes {
                     Predicate<? super WorkflowType> filter,
                     Function<? super WorkflowType,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listDeprecatedExpired( long time,
-                                     Function<? super WorkflowType,T> transform ) throws SwfMetadataException;
+  int deleteDeprecatedExpired( long time ) throws SwfMetadataException;
 
   WorkflowType updateByExample( WorkflowType example,
                                 OwnerFullName ownerFullName,
@@ -25,12 +25,20 @@ import java.util.Date;
 import java.util.List;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
+import com.eucalyptus.entities.AbstractOwnedPersistent_;
+import com.eucalyptus.entities.AbstractPersistent_;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simpleworkflow.ActivityTask;
+import com.eucalyptus.simpleworkflow.ActivityTask_;
 import com.eucalyptus.simpleworkflow.ActivityTasks;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.auth.principal.OwnerFullName;
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -51,6 +59,34 @@ public class PersistenceActivityTasks extends SwfPersistenceSupport<ActivityTask
         transform );
   }
 
+  /**
+   * List the oldest pending activity tasks for a task list.
+   *
+   * <p>The filter is applied to the listed tasks, so fewer than the maximum
+   * may be returned.</p>
+   */
+  @Override
+  public <T> List<T> listPending( final OwnerFullName ownerFullName,
+                                  final String domain,
+                                  final String taskList,
+                                  final int maximum,
+                                  final Predicate<? super ActivityTask> filter,
+                                  final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.transactionFor( ActivityTask.class ) ) {
+      return Lists.newArrayList( Iterables.transform( Iterables.filter( Entities.criteriaQuery( ActivityTask.class )
+          .whereEqual( AbstractOwnedPersistent_.ownerAccountNumber, ownerFullName.getAccountNumber( ) )
+          .whereEqual( ActivityTask_.domain, domain )
+          .whereEqual( ActivityTask_.taskList, taskList )
+          .whereEqual( ActivityTask_.state, ActivityTask.State.Pending )
+          .orderBy( AbstractPersistent_.creationTimestamp )
+          .maxResults( maximum )
+          .readonly( )
+          .list( ), filter ), transform ) );
+    } catch ( Exception e ) {
+      throw metadataException( "Error listing pending activity tasks", e );
+    }
+  }
+
   @Override
   public long countByWorkflowExecution( final OwnerFullName ownerFullName,
                                         final String domain,
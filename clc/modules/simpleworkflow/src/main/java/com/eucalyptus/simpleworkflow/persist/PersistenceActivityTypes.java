@@ -23,15 +23,15 @@ import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getDeprecat
 import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.ActivityTypeMetadata;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simpleworkflow.ActivityType;
+import com.eucalyptus.simpleworkflow.ActivityType_;
 import com.eucalyptus.simpleworkflow.ActivityTypes;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.auth.principal.OwnerFullName;
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 
 /**
  *
@@ -51,14 +51,17 @@ public class PersistenceActivityTypes extends SwfPersistenceSupport<ActivityType
         Collections.singletonMap( "domain", "domain" ) );
   }
 
-  public <T> List<T> listDeprecatedExpired( final long time,
-                                            final Function<? super ActivityType,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        ActivityType.exampleWithOwner( null ),
-        Predicates.alwaysTrue( ),
-        Restrictions.lt( "deprecationTimestamp", new Date( time - getDeprecatedActivityTypeRetentionDurationMillis( ) ) ),
-        Collections.<String, String>emptyMap(),
-        transform );
+  public int deleteDeprecatedExpired( final long time ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.transactionFor( ActivityType.class ) ) {
+      final int deleted = Entities.delete( Entities.restriction( ActivityType.class )
+          .before( ActivityType_.deprecationTimestamp, new Date( time - getDeprecatedActivityTypeRetentionDurationMillis( ) ) )
+          .build( ) )
+          .delete( );
+      tx.commit( );
+      return deleted;
+    } catch ( Exception e ) {
+      throw metadataException( "Error deleting expired deprecated activity types", e );
+    }
   }
 
   @Override
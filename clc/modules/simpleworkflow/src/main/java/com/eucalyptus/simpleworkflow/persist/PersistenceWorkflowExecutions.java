@@ -27,12 +27,29 @@ import java.util.Date;
 import java.util.List;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
+import com.eucalyptus.entities.AbstractPersistent_;
+import com.eucalyptus.entities.AbstractStatefulPersistent_;
+import com.eucalyptus.entities.AccountMetadata_;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.EntityRestriction;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.simpleworkflow.ActivityTask;
+import com.eucalyptus.simpleworkflow.ActivityTask_;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
+import com.eucalyptus.simpleworkflow.Timer;
+import com.eucalyptus.simpleworkflow.Timer_;
 import com.eucalyptus.simpleworkflow.WorkflowExecution;
+import com.eucalyptus.simpleworkflow.WorkflowExecution_;
 import com.eucalyptus.simpleworkflow.WorkflowExecutions;
+import com.eucalyptus.simpleworkflow.WorkflowHistoryEvent;
+import com.eucalyptus.simpleworkflow.WorkflowHistoryEvent_;
 import com.eucalyptus.auth.principal.OwnerFullName;
+import com.eucalyptus.util.HasNaturalId;
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -56,16 +73,78 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
         transform );
   }
 
-  public <T> List<T> listRetentionExpired( final long time,
+  /**
+   * List the oldest open workflow executions with a pending decision.
+   *
+   * <p>The filter is applied to the listed executions, so fewer than the
+   * maximum may be returned.</p>
+   */
+  @Override
+  public <T> List<T> listPendingDecisions( final OwnerFullName ownerFullName,
+                                           final String domain,
+                                           final String taskList,
+                                           final int maximum,
+                                           final Predicate<? super WorkflowExecution> filter,
                                            final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        WorkflowExecution.exampleForClosedWorkflow(),
-        Predicates.alwaysTrue(),
-        Restrictions.disjunction()
-            .add( Restrictions.lt( "retentionTimestamp", new Date( time ) ) )
-            .add( Restrictions.lt( "closeTimestamp", new Date( time - getWorkflowExecutionRetentionDurationMillis() ) ) ),
-        Collections.<String, String>emptyMap(),
-        transform );
+    try ( final TransactionResource tx = Entities.transactionFor( WorkflowExecution.class ) ) {
+      return Lists.newArrayList( Iterables.transform( Iterables.filter( Entities.criteriaQuery( WorkflowExecution.class )
+          .whereEqual( AccountMetadata_.ownerAccountNumber, ownerFullName.getAccountNumber( ) )
+          .whereEqual( WorkflowExecution_.domainName, domain )
+          .whereEqual( WorkflowExecution_.taskList, taskList )
+          .whereEqual( WorkflowExecution_.decisionStatus, WorkflowExecution.DecisionStatus.Pending )
+          .whereEqual( AbstractStatefulPersistent_.state, WorkflowExecution.ExecutionStatus.Open )
+          .orderBy( AbstractPersistent_.creationTimestamp )
+          .maxResults( maximum )
+          .readonly( )
+          .list( ), filter ), transform ) );
+    } catch ( Exception e ) {
+      throw metadataException( "Error listing workflow executions with pending decisions", e );
+    }
+  }
+
+  /**
+   * Delete closed workflow executions with expired retention.
+   *
+   * <p>Up to the given maximum executions are deleted. History, activity
+   * tasks and timers for those executions are removed with bulk deletes.</p>
+   */
+  public int deleteRetentionExpired( final long time,
+                                     final int maximum ) throws SwfMetadataException {
+    final EntityRestriction<WorkflowExecution> expired = Entities.restriction( WorkflowExecution.class ).any(
+        Entities.restriction( WorkflowExecution.class )
+            .before( WorkflowExecution_.retentionTimestamp, new Date( time ) ).build( ),
+        Entities.restriction( WorkflowExecution.class )
+            .before( WorkflowExecution_.closeTimestamp, new Date( time - getWorkflowExecutionRetentionDurationMillis( ) ) ).build( )
+    ).build( );
+    try ( final TransactionResource tx = Entities.transactionFor( WorkflowExecution.class ) ) {
+      final List<WorkflowExecution> workflowExecutions =
+          Entities.criteriaQuery( expired ).maxResults( maximum ).list( );
+      if ( workflowExecutions.isEmpty( ) ) {
+        return 0;
+      }
+      final EntityRestriction<WorkflowExecution> batch = Entities.restriction( WorkflowExecution.class )
+          .in( AbstractPersistent_.naturalId, Lists.newArrayList( Iterables.transform( workflowExecutions, HasNaturalId.Utils.toNaturalId( ) ) ) )
+          .build( );
+      Entities.delete( WorkflowHistoryEvent.class )
+          .whereIn( AbstractPersistent_.id, WorkflowHistoryEvent.class, AbstractPersistent_.id, subquery -> subquery
+              .join( WorkflowHistoryEvent_.workflowExecution ).where( batch ) )
+          .delete( );
+      Entities.delete( ActivityTask.class )
+          .whereIn( AbstractPersistent_.id, ActivityTask.class, AbstractPersistent_.id, subquery -> subquery
+              .join( ActivityTask_.workflowExecution ).where( batch ) )
+          .delete( );
+      Entities.delete( Timer.class )
+          .whereIn( AbstractPersistent_.id, Timer.class, AbstractPersistent_.id, subquery -> subquery
+              .join( Timer_.workflowExecution ).where( batch ) )
+          .delete( );
+      for ( final WorkflowExecution workflowExecution : workflowExecutions ) {
+        Entities.delete( workflowExecution );
+      }
+      tx.commit( );
+      return workflowExecutions.size( );
+    } catch ( Exception e ) {
+      throw metadataException( "Error deleting retention expired workflow executions", e );
+    }
   }
 
   @Override
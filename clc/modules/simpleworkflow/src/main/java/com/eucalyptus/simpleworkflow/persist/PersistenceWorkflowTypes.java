@@ -23,15 +23,15 @@ import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getDeprecat
 import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.WorkflowTypeMetadata;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.simpleworkflow.WorkflowTypes;
 import com.eucalyptus.simpleworkflow.WorkflowType;
+import com.eucalyptus.simpleworkflow.WorkflowType_;
 import com.eucalyptus.auth.principal.OwnerFullName;
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 
 /**
  *
@@ -51,16 +51,18 @@ public class PersistenceWorkflowTypes extends SwfPersistenceSupport<WorkflowType
         Collections.singletonMap( "domain", "domain" ) );
   }
 
-  public <T> List<T> listDeprecatedExpired( final long time,
-                                            final Function<? super WorkflowType,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        WorkflowType.exampleWithOwner( null ),
-        Predicates.alwaysTrue(),
-        Restrictions.conjunction( )
-            .add( Restrictions.isEmpty( "executions" ) )
-            .add( Restrictions.lt( "deprecationTimestamp", new Date( time - getDeprecatedWorkflowTypeRetentionDurationMillis( ) ) ) ),
-        Collections.<String, String>emptyMap(),
-        transform );
+  public int deleteDeprecatedExpired( final long time ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.transactionFor( WorkflowType.class ) ) {
+      final int deleted = Entities.delete( Entities.restriction( WorkflowType.class )
+          .isEmpty( WorkflowType_.executions )
+          .before( WorkflowType_.deprecationTimestamp, new Date( time - getDeprecatedWorkflowTypeRetentionDurationMillis( ) ) )
+          .build( ) )
+          .delete( );
+      tx.commit( );
+      return deleted;
+    } catch ( Exception e ) {
+      throw metadataException( "Error deleting expired deprecated workflow types", e );
+    }
   }
 
   @Override
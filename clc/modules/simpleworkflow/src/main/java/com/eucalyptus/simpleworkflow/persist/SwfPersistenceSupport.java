@@ -19,11 +19,17 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.persist;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.entities.AbstractPersistent;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.simpleworkflow.SwfMetadataNotFoundException;
 import com.eucalyptus.auth.type.RestrictedType;
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
 
 /**
  *
@@ -35,6 +41,18 @@ public abstract class SwfPersistenceSupport<RT extends RestrictedType, AP extend
     super( typeDescription );
   }
 
+  public <T> List<T> listByNaturalIds( final Collection<String> naturalIds,
+                                       final Function<? super AP,T> transform ) throws SwfMetadataException {
+    return naturalIds.isEmpty( ) ?
+        Collections.<T>emptyList( ) :
+        listByExample(
+            exampleWithOwner( null ),
+            Predicates.alwaysTrue( ),
+            Restrictions.in( "naturalId", naturalIds ),
+            Collections.<String,String>emptyMap( ),
+            transform );
+  }
+
   @Override
   public AbstractPersistentSupport<RT, AP, SwfMetadataException> withRetries( ) {
     return super.withRetries( 50 );
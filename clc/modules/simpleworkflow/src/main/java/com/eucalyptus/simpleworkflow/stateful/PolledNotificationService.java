@@ -28,6 +28,7 @@ import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotificationChecker;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 import org.apache.log4j.Logger;
@@ -41,12 +42,14 @@ import com.eucalyptus.context.NoSuchContextException;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
+import com.eucalyptus.simpleworkflow.NotifyClient;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.async.CheckedListenableFuture;
 import com.eucalyptus.util.async.Futures;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 
 /**
@@ -70,13 +73,29 @@ public class PolledNotificationService {
     final NotifyResponseType response = notify.getReply( );
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
-      if ( !notifyPollers( notify.getChannel( ), notify.getDetails( ) ) ) {
-        pendingNotificationsByChannel.put( notify.getChannel( ), new PendingNotification( notify.getChannel( ), notify.getDetails() ) );
+      if ( NotifyClient.NotifyTimeouts.CHANNEL.equals( notify.getChannel( ) ) ) {
+        if ( notify.getDetails( ) != null ) {
+          TimeoutManager.schedule( NotifyClient.NotifyTimeout.parse( notify.getDetails( ) ) );
+        }
+      } else if ( NotifyClientUtils.CHANNELS_CHANNEL.equals( notify.getChannel( ) ) ) {
+        if ( notify.getDetails( ) != null ) {
+          for ( final String channel : Splitter.on( '\n' ).omitEmptyStrings( ).split( notify.getDetails( ) ) ) {
+            notifyOrPend( channel, null );
+          }
+        }
+      } else {
+        notifyOrPend( notify.getChannel( ), notify.getDetails( ) );
       }
     }
     return response;
   }
 
+  private static void notifyOrPend( final String channel, final String details ) {
+    if ( !notifyPollers( channel, details ) ) {
+      pendingNotificationsByChannel.put( channel, new PendingNotification( channel, details ) );
+    }
+  }
+
   public PollForNotificationResponseType pollForNotification( final PollForNotificationType poll ) throws EucalyptusCloudException {
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
@@ -380,6 +399,7 @@ public class PolledNotificationService {
     }
   }
 
+  @EventListener.Scheduling( priority = 10, deadline = 10000L )
   public static class PollerClockTickEventListener implements EventListener<ClockTick> {
     public static void register( ) {
       Listeners.register( ClockTick.class, new PollerClockTickEventListener() );
@@ -35,12 +35,14 @@ public class PolledNotificationsBootstrapper extends Simple {
   @Override
   public boolean disable( ) throws Exception {
     PolledNotificationService.evacuate( );
+    TimeoutManager.reset( );
     return super.disable( );
   }
 
   @Override
   public boolean stop() throws Exception {
     PolledNotificationService.evacuate( );
+    TimeoutManager.reset( );
     return super.stop( );
   }
 }
@@ -20,6 +20,7 @@
 package com.eucalyptus.simpleworkflow.stateful;
 
 import static com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
+import static com.eucalyptus.simpleworkflow.NotifyClient.NotifyTimeout;
 import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getWorkflowExecutionDurationMillis;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Idle;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Pending;
@@ -27,6 +28,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
@@ -39,7 +42,6 @@ import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
 import com.eucalyptus.simpleworkflow.ActivityTask;
 import com.eucalyptus.simpleworkflow.ActivityTasks;
-import com.eucalyptus.simpleworkflow.ActivityType;
 import com.eucalyptus.simpleworkflow.ActivityTypes;
 import com.eucalyptus.simpleworkflow.Domain;
 import com.eucalyptus.simpleworkflow.Domains;
@@ -51,8 +53,8 @@ import com.eucalyptus.simpleworkflow.Timers;
 import com.eucalyptus.simpleworkflow.WorkflowExecution;
 import com.eucalyptus.simpleworkflow.WorkflowExecutions;
 import com.eucalyptus.simpleworkflow.WorkflowHistoryEvent;
+import com.eucalyptus.simpleworkflow.WorkflowHistoryEvents;
 import com.eucalyptus.simpleworkflow.WorkflowLock;
-import com.eucalyptus.simpleworkflow.WorkflowType;
 import com.eucalyptus.simpleworkflow.WorkflowTypes;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
 import com.eucalyptus.simpleworkflow.common.model.ActivityTaskTimedOutEventAttributes;
@@ -67,23 +69,39 @@ import com.eucalyptus.simpleworkflow.persist.PersistenceDomains;
 import com.eucalyptus.simpleworkflow.persist.PersistenceTimers;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowExecutions;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowTypes;
-import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.Pair;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
 
 /**
+ * Timeout, timer and expiry handling for the polled notifications host.
  *
+ * <p>Activity tasks, timers and workflow executions are tracked in a timing
+ * wheel that is loaded from the database when the host is enabled and kept
+ * current by timeout notifications from the service. Only items with a due
+ * timeout are loaded on each tick, a full scan is performed periodically in
+ * case of lost notifications.</p>
  */
 public class TimeoutManager {
 
   private static final Logger logger = Logger.getLogger( TimeoutManager.class );
 
+  private static final long RECONCILE_INTERVAL = TimeUnit.MINUTES.toMillis( 5 );
+  private static final long EXPUNGE_INTERVAL = TimeUnit.MINUTES.toMillis( 1 );
+  private static final int EXPUNGE_BATCH_SIZE = 1000;
+  private static final int LOOKUP_BATCH_SIZE = 500;
+
+  private static final TimingWheel<Pair<NotifyTimeout.Type,String>> timeouts =
+      TimingWheel.create( System.currentTimeMillis( ) );
+  private static final AtomicBoolean loaded = new AtomicBoolean( false );
+
   private final WorkflowExecutions workflowExecutions = new PersistenceWorkflowExecutions( );
   private final WorkflowTypes workflowTypes = new PersistenceWorkflowTypes( );
   private final ActivityTasks activityTasks = new PersistenceActivityTasks( );
@@ -91,6 +109,43 @@ public class TimeoutManager {
   private final Domains domains = new PersistenceDomains( );
   private final Timers timers = new PersistenceTimers( );
 
+  private long lastReconcile = 0;
+  private long lastExpunge = 0;
+
+  /**
+   * Schedule timeouts, earlier timeouts for the same item take precedence.
+   */
+  public static void schedule( final Iterable<NotifyTimeout> notifyTimeouts ) {
+    for ( final NotifyTimeout timeout : Iterables.filter( notifyTimeouts, Predicates.notNull( ) ) ) {
+      timeouts.schedule( Pair.pair( timeout.getType( ), timeout.getId( ) ), timeout.getTimeout( ) );
+    }
+  }
+
+  /**
+   * Discard scheduled timeouts, they are reloaded when next enabled.
+   */
+  static void reset( ) {
+    loaded.set( false );
+    timeouts.clear( );
+  }
+
+  public void doWork( final long now ) {
+    if ( !loaded.get( ) ) {
+      loaded.set( load( ) );
+      lastReconcile = now;
+    }
+    doScheduled( now );
+    if ( ( now - lastReconcile ) >= RECONCILE_INTERVAL ) {
+      lastReconcile = now;
+      doTimeouts( );
+      doTimers( );
+    }
+    if ( ( now - lastExpunge ) >= EXPUNGE_INTERVAL ) {
+      lastExpunge = now;
+      doExpunge( );
+    }
+  }
+
   public void doTimeouts( ) {
     timeoutActivityTasks( );
     timeoutDecisionTasksAndWorkflows( );
@@ -99,63 +154,9 @@ public class TimeoutManager {
   public void doTimers( ) {
     final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
     try {
-      for ( final Timer timer : timers.listFired( Functions.<Timer>identity( ) ) ) try {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            timer.getOwnerAccountNumber( ),
-            timer.getDomainUuid( ),
-            timer.getWorkflowRunId( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              WorkflowExecution.exampleWithName( timer.getOwner( ), timer.getWorkflowRunId( ) ),
-              timer.getOwner( ),
-              timer.getWorkflowRunId( ),
-              new Function<WorkflowExecution, Void>( ){
-                @Nullable
-                @Override
-                public Void apply( final WorkflowExecution workflowExecution ) {
-                  try {
-                    timers.updateByExample(
-                        timer,
-                        timer.getOwner( ),
-                        timer.getDisplayName( ),
-                        new Function<Timer, Void>( ) {
-                          @Override
-                          public Void apply( final Timer timer ) {
-                            final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
-                            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                workflowExecution,
-                                new TimerFiredEventAttributes( )
-                                    .withStartedEventId( timer.getStartedEventId( ) )
-                                    .withTimerId( timer.getDisplayName( ) )
-                            ) );
-                            if ( workflowExecution.getDecisionStatus() != Pending ) {
-                              workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                  workflowExecution,
-                                  new DecisionTaskScheduledEventAttributes( )
-                                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                              ) );
-                              if ( workflowExecution.getDecisionStatus() == Idle ) {
-                                workflowExecution.setDecisionStatus( Pending );
-                                workflowExecution.setDecisionTimestamp( new Date( ) );
-                                addToNotifyLists( taskLists, workflowExecution );
-                              }
-                            }
-                            Entities.delete( timer );
-                            return null;
-                          }
-                        } );
-                  } catch ( SwfMetadataException e ) {
-                    throw Exceptions.toUndeclared( e );
-                  }
-                  return null;
-                }
-              }
-          );
-        }
-      } catch ( SwfMetadataException e ) {
-        if ( !handleException( e ) ) {
-          logger.error( "Error processing fired timer: " +  timer.getWorkflowRunId() + "/" + timer.getStartedEventId( ), e );
-        }
+      final long now = System.currentTimeMillis( );
+      for ( final Timer timer : timers.listFired( Functions.<Timer>identity( ) ) ) {
+        fireTimer( timer, now, taskLists );
       }
     } catch ( SwfMetadataException e ) {
       logger.error( "Error processing fired timers", e );
@@ -163,35 +164,72 @@ public class TimeoutManager {
     notifyLists( taskLists );
   }
 
-  public void doExpunge( ) {
-    try {
+  public void doScheduled( final long now ) {
+    final List<Pair<NotifyTimeout.Type,String>> due = timeouts.advance( now );
+    if ( due.isEmpty( ) ) {
+      return;
+    }
+
+    final ListMultimap<NotifyTimeout.Type,String> dueByType = ArrayListMultimap.create( );
+    for ( final Pair<NotifyTimeout.Type,String> item : due ) {
+      dueByType.put( item.getLeft( ), item.getRight( ) );
+    }
+
+    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+    for ( final List<String> ids : Iterables.partition( dueByType.get( NotifyTimeout.Type.ActivityTask ), LOOKUP_BATCH_SIZE ) ) try {
+      for ( final ActivityTask task : activityTasks.listByNaturalIds( ids, Functions.<ActivityTask>identity( ) ) ) {
+        timeoutActivityTask( task, now, taskLists );
+      }
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error processing activity task timeouts", e );
+      reschedule( NotifyTimeout.Type.ActivityTask, ids, now );
+    }
+    for ( final List<String> ids : Iterables.partition( dueByType.get( NotifyTimeout.Type.Timer ), LOOKUP_BATCH_SIZE ) ) try {
+      for ( final Timer timer : timers.listByNaturalIds( ids, Functions.<Timer>identity( ) ) ) {
+        fireTimer( timer, now, taskLists );
+      }
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error processing fired timers", e );
+      reschedule( NotifyTimeout.Type.Timer, ids, now );
+    }
+    for ( final List<String> ids : Iterables.partition( dueByType.get( NotifyTimeout.Type.WorkflowExecution ), LOOKUP_BATCH_SIZE ) ) try {
       for ( final WorkflowExecution workflowExecution :
-          workflowExecutions.listRetentionExpired( System.currentTimeMillis( ), Functions.<WorkflowExecution>identity( ) ) ) {
-        logger.debug( "Removing workflow execution with expired retention period: " +
-            workflowExecution.getDisplayName( ) + "/" + workflowExecution.getWorkflowId( ) );
-        workflowExecutions.deleteByExample( workflowExecution );
+          workflowExecutions.listByNaturalIds( ids, Functions.<WorkflowExecution>identity( ) ) ) {
+        timeoutDecisionTaskOrWorkflow( workflowExecution, now, taskLists );
       }
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error processing workflow execution/decision task timeouts", e );
+      reschedule( NotifyTimeout.Type.WorkflowExecution, ids, now );
+    }
+    notifyLists( taskLists );
+  }
+
+  public void doExpunge( ) {
+    try {
+      int deleted;
+      do {
+        deleted = workflowExecutions.deleteRetentionExpired( System.currentTimeMillis( ), EXPUNGE_BATCH_SIZE );
+        if ( deleted > 0 ) {
+          logger.debug( "Removed " + deleted + " workflow execution(s) with expired retention period" );
+        }
+      } while ( deleted >= EXPUNGE_BATCH_SIZE );
     } catch ( final SwfMetadataException e ) {
       logger.error( "Error processing workflow execution retention expiry", e );
     }
 
     try {
-      for ( final ActivityType activityType :
-          activityTypes.listDeprecatedExpired( System.currentTimeMillis( ), Functions.<ActivityType>identity( ) ) ) {
-        logger.debug( "Removing expired deprecated activity type: " +
-            activityType.getDisplayName( ) + "/" + activityType.getActivityVersion( ) );
-        activityTypes.deleteByExample( activityType );
+      final int deleted = activityTypes.deleteDeprecatedExpired( System.currentTimeMillis( ) );
+      if ( deleted > 0 ) {
+        logger.debug( "Removed " + deleted + " expired deprecated activity type(s)" );
       }
     } catch ( final SwfMetadataException e ) {
       logger.error( "Error processing deprecated activity type expiry", e );
     }
 
     try {
-      for ( final WorkflowType workflowType :
-          workflowTypes.listDeprecatedExpired( System.currentTimeMillis( ), Functions.<WorkflowType>identity( ) ) ) {
-        logger.debug( "Removing expired deprecated workflow type: " +
-            workflowType.getDisplayName( ) + "/" + workflowType.getWorkflowVersion( ) );
-        workflowTypes.deleteByExample( workflowType );
+      final int deleted = workflowTypes.deleteDeprecatedExpired( System.currentTimeMillis( ) );
+      if ( deleted > 0 ) {
+        logger.debug( "Removed " + deleted + " expired deprecated workflow type(s)" );
       }
     } catch ( final SwfMetadataException e ) {
       logger.error( "Error processing deprecated workflow type expiry", e );
@@ -208,62 +246,177 @@ public class TimeoutManager {
     }
   }
 
+  private boolean load( ) {
+    try {
+      schedule( activityTasks.listByExample(
+          ActivityTask.exampleWithOwner( null ),
+          Predicates.alwaysTrue( ),
+          NotifyTimeout::of ) );
+      schedule( timers.listByExample(
+          Timer.exampleWithOwner( null ),
+          Predicates.alwaysTrue( ),
+          NotifyTimeout::of ) );
+      schedule( workflowExecutions.listByExample(
+          WorkflowExecution.exampleForOpenWorkflow( ),
+          Predicates.alwaysTrue( ),
+          NotifyTimeout::of ) );
+      logger.info( "Loaded " + timeouts.size( ) + " timeout(s)" );
+      return true;
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error loading timeouts", e );
+      return false;
+    }
+  }
+
+  private void reschedule( final NotifyTimeout.Type type,
+                           final Iterable<String> ids,
+                           final long now ) {
+    for ( final String id : ids ) {
+      timeouts.schedule( Pair.pair( type, id ), now + TimeUnit.SECONDS.toMillis( 10 ) );
+    }
+  }
+
+  private void fireTimer( final Timer timer,
+                          final long now,
+                          final Set<NotifyTaskList> taskLists ) {
+    if ( timer.getTimeoutTimestamp( ) == null ) {
+      return;
+    } else if ( timer.getTimeoutTimestamp( ).getTime( ) >= now ) {
+      schedule( NotifyTimeout.of( timer ) );
+      return;
+    }
+    try {
+      try ( final WorkflowLock lock = WorkflowLock.lock(
+          timer.getOwnerAccountNumber( ),
+          timer.getDomainUuid( ),
+          timer.getWorkflowRunId( ) ) ) {
+        workflowExecutions.withRetries( ).updateByExample(
+            WorkflowExecution.exampleWithName( timer.getOwner( ), timer.getWorkflowRunId( ) ),
+            timer.getOwner( ),
+            timer.getWorkflowRunId( ),
+            new Function<WorkflowExecution, Void>( ){
+              @Nullable
+              @Override
+              public Void apply( final WorkflowExecution workflowExecution ) {
+                try {
+                  timers.updateByExample(
+                      timer,
+                      timer.getOwner( ),
+                      timer.getDisplayName( ),
+                      new Function<Timer, Void>( ) {
+                        @Override
+                        public Void apply( final Timer timer ) {
+                          final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
+                          workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                              workflowExecution,
+                              new TimerFiredEventAttributes( )
+                                  .withStartedEventId( timer.getStartedEventId( ) )
+                                  .withTimerId( timer.getDisplayName( ) )
+                          ) );
+                          if ( workflowExecution.getDecisionStatus() != Pending ) {
+                            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                                workflowExecution,
+                                new DecisionTaskScheduledEventAttributes( )
+                                    .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                                    .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+                            ) );
+                            if ( workflowExecution.getDecisionStatus() == Idle ) {
+                              workflowExecution.setDecisionStatus( Pending );
+                              workflowExecution.setDecisionTimestamp( new Date( ) );
+                              addToNotifyLists( taskLists, workflowExecution );
+                            }
+                          }
+                          Entities.delete( timer );
+                          return null;
+                        }
+                      } );
+                } catch ( SwfMetadataException e ) {
+                  throw Exceptions.toUndeclared( e );
+                }
+                return null;
+              }
+            }
+        );
+      }
+    } catch ( SwfMetadataException e ) {
+      if ( !handleException( e ) ) {
+        logger.error( "Error processing fired timer: " +  timer.getWorkflowRunId() + "/" + timer.getStartedEventId( ), e );
+      }
+    }
+  }
+
   private void timeoutActivityTasks( ) {
     final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
     try {
+      final long now = System.currentTimeMillis( );
       for ( final ActivityTask task : activityTasks.listTimedOut( Functions.<ActivityTask>identity( ) ) ) {
-        try ( final WorkflowLock lock =
-                  WorkflowLock.lock( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ) ) {
-          activityTasks.withRetries( ).updateByExample(
-              task,
-              task.getOwner( ),
-              task.getDisplayName( ),
-              new Function<ActivityTask, Void>() {
-            @Override
-            public Void apply( final ActivityTask activityTask ) {
-              final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
-              if ( timeout != null ) {
-                final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
-                workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                    workflowExecution,
-                    new ActivityTaskTimedOutEventAttributes()
-                        .withDetails( activityTask.getHeartbeatDetails() )
-                        .withScheduledEventId( activityTask.getScheduledEventId() )
-                        .withStartedEventId( activityTask.getStartedEventId() )
-                        .withTimeoutType( timeout.getLeft() )
-                ) );
-                if ( workflowExecution.getDecisionStatus( ) != Pending ) {
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  if ( workflowExecution.getDecisionStatus() == Idle ) {
-                    workflowExecution.setDecisionStatus( Pending );
-                    workflowExecution.setDecisionTimestamp( new Date( ) );
-                    addToNotifyLists( taskLists, workflowExecution );
-                  }
-                }
-                Entities.delete( activityTask );
+        timeoutActivityTask( task, now, taskLists );
+      }
+    } catch ( SwfMetadataException e ) {
+      logger.error( "Error processing activity task timeouts", e );
+    }
+    notifyLists( taskLists );
+  }
+
+  private void timeoutActivityTask( final ActivityTask task,
+                                    final long now,
+                                    final Set<NotifyTaskList> taskLists ) {
+    final Pair<String,Date> nextTimeout = task.calculateNextTimeout( );
+    if ( nextTimeout == null ) {
+      return;
+    } else if ( nextTimeout.getRight( ).getTime( ) >= now ) {
+      schedule( NotifyTimeout.of( task ) );
+      return;
+    }
+    try ( final WorkflowLock lock =
+              WorkflowLock.lock( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ) ) {
+      activityTasks.withRetries( ).updateByExample(
+          task,
+          task.getOwner( ),
+          task.getDisplayName( ),
+          new Function<ActivityTask, Void>() {
+        @Override
+        public Void apply( final ActivityTask activityTask ) {
+          final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
+          if ( timeout != null && timeout.getRight( ).getTime( ) < now ) {
+            final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new ActivityTaskTimedOutEventAttributes()
+                    .withDetails( activityTask.getHeartbeatDetails() )
+                    .withScheduledEventId( activityTask.getScheduledEventId() )
+                    .withStartedEventId( activityTask.getStartedEventId() )
+                    .withTimeoutType( timeout.getLeft() )
+            ) );
+            if ( workflowExecution.getDecisionStatus( ) != Pending ) {
+              workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                  workflowExecution,
+                  new DecisionTaskScheduledEventAttributes( )
+                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+              ) );
+              if ( workflowExecution.getDecisionStatus() == Idle ) {
+                workflowExecution.setDecisionStatus( Pending );
+                workflowExecution.setDecisionTimestamp( new Date( ) );
+                addToNotifyLists( taskLists, workflowExecution );
               }
-              return null;
-            }
-          } );
-        } catch ( SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
-              logger.debug( "Activity task not found for timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ) );
-            } else {
-              logger.error( "Error processing activity task timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ), e );
             }
+            Entities.delete( activityTask );
+          } else {
+            schedule( NotifyTimeout.of( activityTask ) );
           }
+          return null;
         }
-      }
+      } );
     } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing activity task timeouts", e );
+      if ( !handleException( e ) ) {
+        if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
+          logger.debug( "Activity task not found for timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ) );
+        } else {
+          logger.error( "Error processing activity task timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ), e );
+        }
+      }
     }
-    notifyLists( taskLists );
   }
 
   private void timeoutDecisionTasksAndWorkflows( ) {
@@ -272,63 +425,7 @@ public class TimeoutManager {
       final long now = System.currentTimeMillis();
       for ( final WorkflowExecution workflowExecution :
           workflowExecutions.listTimedOut( now, Functions.<WorkflowExecution>identity( ) ) ) {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            workflowExecution.getOwnerAccountNumber( ),
-            workflowExecution.getDomainUuid( ),
-            workflowExecution.getDisplayName( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              workflowExecution,
-              workflowExecution.getOwner( ),
-              workflowExecution.getDisplayName( ),
-              new Function<WorkflowExecution, Void>() {
-            @Override
-            public Void apply( final WorkflowExecution workflowExecution ) {
-              final Date timeout = workflowExecution.calculateNextTimeout( );
-              if ( timeout != null ) {
-                if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
-                  workflowExecution.closeWorkflow(
-                      WorkflowExecution.CloseStatus.Timed_Out,
-                      WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new WorkflowExecutionTimedOutEventAttributes()
-                              .withTimeoutType( "START_TO_CLOSE" )
-                              .withChildPolicy( workflowExecution.getChildPolicy() )
-                      ) );
-                } else { // decision task timed out
-                  final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                  final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                  final WorkflowHistoryEvent scheduled = Iterables.find(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskTimedOutEventAttributes( )
-                          .withTimeoutType( "START_TO_CLOSE" )
-                          .withScheduledEventId( scheduled.getEventId( ) )
-                          .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
-                  ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  workflowExecution.setDecisionStatus( Pending );
-                  workflowExecution.setDecisionTimestamp( new Date( ) );
-                  addToNotifyLists( taskLists, workflowExecution );
-                }
-              }
-              return null;
-            }
-          } );
-        } catch ( final SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            logger.error( "Error processing workflow execution/decision task timeout: " + workflowExecution.getDisplayName(), e );
-          }
-        }
+        timeoutDecisionTaskOrWorkflow( workflowExecution, now, taskLists );
       }
     } catch ( final SwfMetadataException e ) {
       logger.error( "Error processing workflow execution/decision task timeouts", e );
@@ -336,6 +433,80 @@ public class TimeoutManager {
     notifyLists( taskLists );
   }
 
+  private void timeoutDecisionTaskOrWorkflow( final WorkflowExecution execution,
+                                              final long now,
+                                              final Set<NotifyTaskList> taskLists ) {
+    final Long nextTimeout = execution.calculateNextTimeout( getWorkflowExecutionDurationMillis( ) );
+    if ( execution.getState( ) != WorkflowExecution.ExecutionStatus.Open || nextTimeout == null ) {
+      return;
+    } else if ( nextTimeout >= now ) {
+      schedule( NotifyTimeout.of( execution ) );
+      return;
+    }
+    try ( final WorkflowLock lock = WorkflowLock.lock(
+        execution.getOwnerAccountNumber( ),
+        execution.getDomainUuid( ),
+        execution.getDisplayName( ) ) ) {
+      workflowExecutions.withRetries( ).updateByExample(
+          execution,
+          execution.getOwner( ),
+          execution.getDisplayName( ),
+          new Function<WorkflowExecution, Void>() {
+        @Override
+        public Void apply( final WorkflowExecution workflowExecution ) {
+          final Long timeout = workflowExecution.calculateNextTimeout( getWorkflowExecutionDurationMillis( ) );
+          if ( workflowExecution.getState( ) != WorkflowExecution.ExecutionStatus.Open || timeout == null ) {
+            return null;
+          } else if ( timeout >= now ) {
+            schedule( NotifyTimeout.of( workflowExecution ) );
+          } else if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
+            workflowExecution.closeWorkflow(
+                WorkflowExecution.CloseStatus.Timed_Out,
+                WorkflowHistoryEvent.create(
+                    workflowExecution,
+                    new WorkflowExecutionTimedOutEventAttributes()
+                        .withTimeoutType( "START_TO_CLOSE" )
+                        .withChildPolicy( workflowExecution.getChildPolicy() )
+                ) );
+          } else { // decision task timed out
+            final WorkflowHistoryEvent scheduled =
+                WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskScheduled" ).get( );
+            final Optional<WorkflowHistoryEvent> previousStarted =
+                WorkflowHistoryEvents.findLatest( workflowExecution, "DecisionTaskStarted" );
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new DecisionTaskTimedOutEventAttributes( )
+                    .withTimeoutType( "START_TO_CLOSE" )
+                    .withScheduledEventId( scheduled.getEventId( ) )
+                    .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
+            ) );
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new DecisionTaskScheduledEventAttributes( )
+                    .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                    .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+            ) );
+            workflowExecution.setDecisionStatus( Pending );
+            workflowExecution.setDecisionTimestamp( new Date( ) );
+            addToNotifyLists( taskLists, workflowExecution );
+            schedule( NotifyTimeout.of( workflowExecution ) );
+          }
+          return null;
+        }
+      } );
+    } catch ( final SwfMetadataException e ) {
+      if ( !handleException( e ) ) {
+        logger.error( "Error processing workflow execution/decision task timeout: " + execution.getDisplayName(), e );
+      }
+    }
+  }
+
+  private static void schedule( @Nullable final NotifyTimeout timeout ) {
+    if ( timeout != null ) {
+      timeouts.schedule( Pair.pair( timeout.getType( ), timeout.getId( ) ), timeout.getTimeout( ) );
+    }
+  }
+
   private boolean handleException( final Throwable e ) {
     final WorkflowExecution.WorkflowHistorySizeLimitException historySizeLimitCause =
         Exceptions.findCause( e, WorkflowExecution.WorkflowHistorySizeLimitException.class );
@@ -366,6 +537,7 @@ public class TimeoutManager {
     }
   }
 
+  @EventListener.Scheduling( priority = 10, deadline = 10000L )
   public static class TimeoutManagerEventListener implements EventListener<ClockTick> {
     private final TimeoutManager timeoutManager = new TimeoutManager();
 
@@ -378,9 +550,7 @@ public class TimeoutManager {
       if ( Bootstrap.isOperational( ) &&
           Topology.isEnabledLocally( PolledNotifications.class ) &&
           Topology.isEnabled( SimpleWorkflow.class ) ) {
-        timeoutManager.doTimeouts( );
-        timeoutManager.doTimers( );
-        timeoutManager.doExpunge( );
+        timeoutManager.doWork( System.currentTimeMillis( ) );
       }
     }
   }
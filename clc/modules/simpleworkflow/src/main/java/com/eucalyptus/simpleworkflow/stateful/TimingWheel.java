@@ -0,0 +1,210 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel for scheduling keys by deadline.
+ *
+ * <p>Each level has 64 slots, level 0 slots span a single tick and each
+ * higher level slot spans a full revolution of the level below. Entries
+ * cascade down a level as their slot comes around so scheduling, cancelling
+ * and advancing are independent of the number of scheduled keys.</p>
+ *
+ * <p>A key has at most one deadline, the earliest scheduled. Superseded
+ * entries are discarded when reached.</p>
+ */
+class TimingWheel<K> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 6;
+
+  private final long tickMillis;
+  private final List<List<List<Entry<K>>>> levels;
+  private final Map<K,Long> deadlines = new HashMap<>( );
+  private long currentTick;
+
+  TimingWheel( final long tickMillis, final long now ) {
+    if ( tickMillis < 1 ) throw new IllegalArgumentException( "Invalid tick: " + tickMillis );
+    this.tickMillis = tickMillis;
+    this.levels = new ArrayList<>( LEVELS );
+    for ( int level = 0; level < LEVELS; level++ ) {
+      final List<List<Entry<K>>> slots = new ArrayList<>( SLOTS );
+      for ( int slot = 0; slot < SLOTS; slot++ ) {
+        slots.add( new ArrayList<Entry<K>>( ) );
+      }
+      levels.add( slots );
+    }
+    this.currentTick = toTick( now );
+  }
+
+  static <K> TimingWheel<K> create( final long now ) {
+    return new TimingWheel<>( TimeUnit.SECONDS.toMillis( 1 ), now );
+  }
+
+  /**
+   * Schedule the key for the given deadline.
+   *
+   * @return True if scheduled, false if the key already had an earlier deadline
+   */
+  synchronized boolean schedule( final K key, final long deadline ) {
+    final long tick = Math.max( toTick( deadline ), currentTick + 1 );
+    final Long existing = deadlines.get( key );
+    if ( existing != null && existing <= tick ) {
+      return false;
+    }
+    deadlines.put( key, tick );
+    insert( new Entry<>( key, tick ) );
+    return true;
+  }
+
+  synchronized void cancel( final K key ) {
+    deadlines.remove( key );
+  }
+
+  synchronized boolean isScheduled( final K key ) {
+    return deadlines.containsKey( key );
+  }
+
+  synchronized int size( ) {
+    return deadlines.size( );
+  }
+
+  synchronized void clear( ) {
+    deadlines.clear( );
+    for ( final List<List<Entry<K>>> slots : levels ) {
+      for ( final List<Entry<K>> slot : slots ) {
+        slot.clear( );
+      }
+    }
+  }
+
+  /**
+   * Advance the wheel to the given time, the due keys are removed.
+   *
+   * @return The keys with deadlines at or before the given time.
+   */
+  synchronized List<K> advance( final long now ) {
+    final List<K> due = new ArrayList<>( );
+    final long targetTick = toTick( now );
+    if ( targetTick - currentTick > SLOTS ) {
+      // far behind, cheaper to rebuild than to step every tick
+      final List<Entry<K>> entries = drain( );
+      currentTick = targetTick;
+      for ( final Entry<K> entry : entries ) {
+        if ( entry.tick <= currentTick ) {
+          expire( entry, due );
+        } else {
+          insert( entry );
+        }
+      }
+    } else {
+      while ( currentTick < targetTick ) {
+        currentTick++;
+        cascade( );
+        final List<Entry<K>> slot = levels.get( 0 ).get( (int) ( currentTick & SLOT_MASK ) );
+        final List<Entry<K>> entries = new ArrayList<>( slot );
+        slot.clear( );
+        for ( final Entry<K> entry : entries ) {
+          if ( entry.tick <= currentTick ) {
+            expire( entry, due );
+          } else {
+            slot.add( entry );
+          }
+        }
+      }
+    }
+    return due;
+  }
+
+  private void cascade( ) {
+    for ( int level = 1; level < LEVELS; level++ ) {
+      if ( ( currentTick & ( ( 1L << ( SLOT_BITS * level ) ) - 1 ) ) != 0 ) {
+        break;
+      }
+      final List<Entry<K>> slot =
+          levels.get( level ).get( (int) ( ( currentTick >>> ( SLOT_BITS * level ) ) & SLOT_MASK ) );
+      final List<Entry<K>> entries = new ArrayList<>( slot );
+      slot.clear( );
+      for ( final Entry<K> entry : entries ) {
+        if ( isCurrent( entry ) ) {
+          insert( entry );
+        }
+      }
+    }
+  }
+
+  private void insert( final Entry<K> entry ) {
+    final long delta = Math.max( entry.tick - currentTick, 0 );
+    int level = 0;
+    while ( level < LEVELS - 1 && delta >= ( 1L << ( SLOT_BITS * ( level + 1 ) ) ) ) {
+      level++;
+    }
+    levels.get( level ).get( (int) ( ( entry.tick >>> ( SLOT_BITS * level ) ) & SLOT_MASK ) ).add( entry );
+  }
+
+  private void expire( final Entry<K> entry, final Collection<K> due ) {
+    if ( isCurrent( entry ) ) {
+      deadlines.remove( entry.key );
+      due.add( entry.key );
+    }
+  }
+
+  private boolean isCurrent( final Entry<K> entry ) {
+    return Objects.equals( deadlines.get( entry.key ), entry.tick );
+  }
+
+  private List<Entry<K>> drain( ) {
+    final List<Entry<K>> entries = new ArrayList<>( );
+    for ( final List<List<Entry<K>>> slots : levels ) {
+      for ( final List<Entry<K>> slot : slots ) {
+        for ( final Entry<K> entry : slot ) {
+          if ( isCurrent( entry ) ) {
+            entries.add( entry );
+          }
+        }
+        slot.clear( );
+      }
+    }
+    return entries;
+  }
+
+  private long toTick( final long time ) {
+    return ( time + tickMillis - 1 ) / tickMillis;
+  }
+
+  private static final class Entry<K> {
+    private final K key;
+    private final long tick;
+
+    private Entry( final K key, final long tick ) {
+      this.key = key;
+      this.tick = tick;
+    }
+  }
+}
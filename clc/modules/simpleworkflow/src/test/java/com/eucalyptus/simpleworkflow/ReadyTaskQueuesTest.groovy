@@ -0,0 +1,197 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow
+
+import org.junit.Ignore
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class ReadyTaskQueuesTest {
+
+  @Test
+  void testOfferRequiresPolledQueue( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 10 )
+    assertFalse( 'offer to unpolled queue', queues.offer( 'list', 'a' ) )
+    assertNull( 'empty poll', queues.poll( 'list', { [] } as Callable ) )
+    assertTrue( 'offer to polled queue', queues.offer( 'list', 'a' ) )
+    assertFalse( 'duplicate offer', queues.offer( 'list', 'a' ) )
+    assertEquals( 'size', 1, queues.size( 'list' ) )
+  }
+
+  @Test
+  void testLoadWhenEmpty( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 2 )
+    AtomicInteger loads = new AtomicInteger( )
+    Callable<List<String>> loader = { loads.incrementAndGet( ); [ 'a', 'b', 'c' ] } as Callable
+    assertEquals( 'first task', 'a', queues.poll( 'list', loader ) )
+    assertEquals( 'second task', 'b', queues.poll( 'list', loader ) )
+    assertEquals( 'load count', 1, loads.get( ) )
+    assertEquals( 'task after capacity reload', 'a', queues.poll( 'list', loader ) )
+    assertEquals( 'load count', 2, loads.get( ) )
+  }
+
+  @Test
+  void testExpire( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 10 )
+    queues.poll( 'list', { [] } as Callable )
+    queues.expire( System.currentTimeMillis( ) + 1 )
+    assertFalse( 'offer to expired queue', queues.offer( 'list', 'a' ) )
+  }
+
+  @Test
+  void testClaimUnclaimable( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 10 )
+    AtomicInteger loads = new AtomicInteger( )
+    AtomicInteger attempts = new AtomicInteger( )
+    Callable<List<String>> loader = { loads.incrementAndGet( ); [ 'a', 'b', 'c' ] } as Callable
+    ReadyTaskQueues.Claimer<String,String> skipAll =
+        { String task, skip -> attempts.incrementAndGet( ); skip.accept( task ); null } as ReadyTaskQueues.Claimer
+    assertNull( 'claimed', queues.claim( 'list', loader, skipAll ) )
+    assertEquals( 'claim attempts', 3, attempts.get( ) )
+    assertEquals( 'load count', 2, loads.get( ) )
+    assertEquals( 'skipped tasks offered', 3, queues.size( 'list' ) )
+
+    ReadyTaskQueues.Claimer<String,String> failAll =
+        { String task, skip -> attempts.incrementAndGet( ); null } as ReadyTaskQueues.Claimer
+    attempts.set( 0 )
+    assertNull( 'claimed', queues.claim( 'list', loader, failAll ) )
+    assertEquals( 'claim attempts', 3, attempts.get( ) )
+  }
+
+  @Test
+  void testClaim( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 10 )
+    Callable<List<String>> loader = { [ 'a', 'b', 'c' ] } as Callable
+    ReadyTaskQueues.Claimer<String,String> claimB =
+        { String task, skip -> if ( task == 'b' ) return 'claimed ' + task; skip.accept( task ); null } as ReadyTaskQueues.Claimer
+    assertEquals( 'claimed', 'claimed b', queues.claim( 'list', loader, claimB ) )
+    assertEquals( 'queued tasks', 2, queues.size( 'list' ) )
+  }
+
+  @Test
+  void testReloadMergesOldestPending( ) {
+    ReadyTaskQueues<String,String> queues = new ReadyTaskQueues<>( 10, 0 )
+    AtomicInteger loads = new AtomicInteger( )
+    List<String> pending = [ ]
+    Callable<List<String>> loader = { loads.incrementAndGet( ); pending } as Callable
+    assertNull( 'empty poll', queues.poll( 'list', loader ) )
+    assertTrue( 'offer', queues.offer( 'list', 'new' ) )
+    pending << 'old'
+    assertEquals( 'offered task', 'new', queues.poll( 'list', loader ) )
+    assertEquals( 'load count', 2, loads.get( ) )
+    assertEquals( 'merged task', 'old', queues.poll( 'list', loader ) )
+  }
+
+  @Test
+  void testConcurrentPollers( ) {
+    ReadyTaskQueues<String,Integer> queues = new ReadyTaskQueues<>( 1000 )
+    AtomicInteger loads = new AtomicInteger( )
+    Callable<List<Integer>> loader = { loads.incrementAndGet( ); Thread.sleep( 10 ); ( 1..200 ).toList( ) } as Callable
+    Set<Integer> taken = ConcurrentHashMap.newKeySet( )
+    AtomicInteger duplicates = new AtomicInteger( )
+    runPollers( 200, 1 ) {
+      Integer task = queues.poll( 'list', loader )
+      if ( task != null && !taken.add( task ) ) duplicates.incrementAndGet( )
+    }
+    assertEquals( 'tasks taken', 200, taken.size( ) )
+    assertEquals( 'duplicates', 0, duplicates.get( ) )
+    assertEquals( 'load count', 1, loads.get( ) )
+  }
+
+  /**
+   * Compare listing all pending tasks per poll with dispatch from a ready
+   * queue for 200 concurrent pollers, simulating the database with a latency
+   * per listing and per claim attempt.
+   */
+  @Ignore("Manual development test")
+  @Test
+  void testPollerPerformance( ) {
+    int pollers = 200
+    int tasks = 20000
+    long listMillis = 5
+    long claimMillis = 1
+
+    // list all then claim
+    Set<Integer> claimed = ConcurrentHashMap.newKeySet( )
+    AtomicInteger listings = new AtomicInteger( )
+    AtomicInteger claimAttempts = new AtomicInteger( )
+    long start = System.currentTimeMillis( )
+    runPollers( pollers, tasks / pollers ) {
+      listings.incrementAndGet( )
+      Thread.sleep( listMillis )
+      List<Integer> pending = ( 0..<tasks ).findAll{ !claimed.contains( it ) }.take( 40 )
+      Collections.shuffle( pending )
+      for ( Integer task : pending ) {
+        claimAttempts.incrementAndGet( )
+        Thread.sleep( claimMillis )
+        if ( claimed.add( task ) ) break
+      }
+    }
+    println "List and claim: ${System.currentTimeMillis( ) - start}ms, ${listings.get( )} listings, ${claimAttempts.get( )} claim attempts"
+
+    // ready queue
+    ReadyTaskQueues<String,Integer> queues = new ReadyTaskQueues<>( 1000 )
+    Set<Integer> queueClaimed = ConcurrentHashMap.newKeySet( )
+    AtomicInteger queueListings = new AtomicInteger( )
+    AtomicInteger queueClaimAttempts = new AtomicInteger( )
+    Callable<List<Integer>> loader = {
+      queueListings.incrementAndGet( )
+      Thread.sleep( listMillis )
+      ( 0..<tasks ).findAll{ !queueClaimed.contains( it ) }.take( 100 )
+    } as Callable
+    start = System.currentTimeMillis( )
+    runPollers( pollers, tasks / pollers ) {
+      Integer task
+      while ( ( task = queues.poll( 'list', loader ) ) != null ) {
+        queueClaimAttempts.incrementAndGet( )
+        Thread.sleep( claimMillis )
+        if ( queueClaimed.add( task ) ) break
+      }
+    }
+    println "Ready queue: ${System.currentTimeMillis( ) - start}ms, ${queueListings.get( )} listings, ${queueClaimAttempts.get( )} claim attempts"
+  }
+
+  private static void runPollers( int pollers, int polls, Closure<?> poll ) {
+    ExecutorService executor = Executors.newFixedThreadPool( pollers )
+    try {
+      CountDownLatch startLatch = new CountDownLatch( 1 )
+      List<Future<?>> futures = ( 1..pollers ).collect {
+        executor.submit( { startLatch.await( ); polls.times { poll( ) }; null } as Callable )
+      }
+      startLatch.countDown( )
+      futures*.get( 5, TimeUnit.MINUTES )
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow
+
+import com.eucalyptus.simpleworkflow.WorkflowHistoryEvents.PageToken
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class WorkflowHistoryEventsTest {
+
+  @Test
+  public void testPageTokenRoundTrip( ) {
+    PageToken token = PageToken.decode( new PageToken( 'e39ba1b3-1b3a-4a4a-8b77-d2ad4c0e46e9', 2500, 1000 ).encode( ) )
+    assertEquals( 'run id', 'e39ba1b3-1b3a-4a4a-8b77-d2ad4c0e46e9', token.runId )
+    assertEquals( 'last event id', 2500, token.lastEventId )
+    assertEquals( 'previous event id', 1000, token.previousEventId )
+  }
+
+  @Test
+  public void testInvalidPageTokens( ) {
+    [ 'not a token', new PageToken( 'run', 10, 11 ).encode( ), new PageToken( 'run', 10, 0 ).encode( ) ].each { String value ->
+      try {
+        PageToken.decode( value )
+        fail( "Expected invalid token: ${value}" )
+      } catch ( IllegalArgumentException e ) {
+        // expected
+      }
+    }
+  }
+}
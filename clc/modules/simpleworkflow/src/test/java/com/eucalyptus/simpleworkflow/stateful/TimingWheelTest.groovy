@@ -0,0 +1,62 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class TimingWheelTest {
+
+  @Test
+  public void testAdvance( ) {
+    TimingWheel<String> wheel = new TimingWheel<>( 1000, 0 )
+    wheel.schedule( 'a', 5000 )
+    wheel.schedule( 'b', 70000 )
+    wheel.schedule( 'c', 5000000 )
+    assertEquals( 'nothing due', [], wheel.advance( 4000 ) )
+    assertEquals( 'a due', ['a'], wheel.advance( 5000 ) )
+    assertEquals( 'nothing due', [], wheel.advance( 69000 ) )
+    assertEquals( 'b due', ['b'], wheel.advance( 70000 ) )
+    assertEquals( 'c due', ['c'], wheel.advance( 6000000 ) )
+    assertEquals( 'size', 0, wheel.size( ) )
+  }
+
+  @Test
+  public void testEarliestDeadline( ) {
+    TimingWheel<String> wheel = new TimingWheel<>( 1000, 0 )
+    assertTrue( 'scheduled', wheel.schedule( 'a', 100000 ) )
+    assertTrue( 'earlier scheduled', wheel.schedule( 'a', 10000 ) )
+    assertFalse( 'later ignored', wheel.schedule( 'a', 50000 ) )
+    assertEquals( 'a due', ['a'], wheel.advance( 10000 ) )
+    assertEquals( 'superseded not due', [], wheel.advance( 200000 ) )
+  }
+
+  @Test
+  public void testCancel( ) {
+    TimingWheel<String> wheel = new TimingWheel<>( 1000, 0 )
+    wheel.schedule( 'a', 5000 )
+    wheel.cancel( 'a' )
+    assertFalse( 'not scheduled', wheel.isScheduled( 'a' ) )
+    assertEquals( 'nothing due', [], wheel.advance( 10000 ) )
+  }
+}
@@ -66,6 +66,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 import org.apache.log4j.Logger;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.handler.stream.ChunkedFile;
 
 import edu.ucsb.eucalyptus.constants.IsData;
@@ -73,7 +75,20 @@ import edu.ucsb.eucalyptus.constants.IsData;
 public class ChunkedDataFile extends ChunkedFile implements IsData {
   private static Logger LOG = Logger.getLogger(ChunkedDataFile.class);
 
+  private final RandomAccessFile file;
+
   public ChunkedDataFile(RandomAccessFile file, long offset, long length, int chunkSize) throws IOException {
     super(file, offset, length, chunkSize);
+    this.file = file;
+  }
+
+  /**
+   * Get a region for zero-copy transfer of the remaining data.
+   *
+   * The region owns the underlying file and closes it when its resources are released after the transfer. Neither the file nor this input may be
+   * read or closed while the region is being written. Closing this input after the write completes has no further effect.
+   */
+  public FileRegion toFileRegion() {
+    return new DefaultFileRegion(file.getChannel(), getCurrentOffset(), getEndOffset() - getCurrentOffset());
   }
 }
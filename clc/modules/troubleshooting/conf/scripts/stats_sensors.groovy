@@ -43,10 +43,14 @@ dbTtlSeconds = dbPollingIntervalSeconds + default_ext
 contextsIntervalSeconds = 60
 contextsEventTtlSeconds = contextsIntervalSeconds + default_ext
 
+periodicListenersIntervalSeconds = 60
+periodicListenersTtlSeconds = periodicListenersIntervalSeconds + default_ext
+
 return [ ] +
         Sensors.JvmMemorySensors(memoryUsagePollingIntervalSeconds, memoryUsageTtlSeconds) +
         Sensors.JvmThreadSensors(threadPollingIntervalSeconds, threadTtlSeconds) +
         Sensors.DbConnectionPoolSensors(dbPollingIntervalSeconds, dbTtlSeconds) +
         Sensors.ComponentsSensor(componentsPollingIntervalSeconds, componentsCheckTtlSeconds) +
-        Sensors.ContextSensor(contextsIntervalSeconds, contextsEventTtlSeconds)
+        Sensors.ContextSensor(contextsIntervalSeconds, contextsEventTtlSeconds) +
+        Sensors.PeriodicListenersSensor(periodicListenersIntervalSeconds, periodicListenersTtlSeconds)
 
@@ -34,6 +34,7 @@ public class Sensors {
     private static final Logger LOG = Logger.getLogger(Sensors.class);
     private static final String COMPONENT_NAME_PREFIX = "euca.components";
     private static final String CONTEXT_SENSOR_NAME = COMPONENT_NAME_PREFIX + ".message_contexts";
+    private static final String PERIODIC_LISTENERS_SENSOR_NAME = "euca.events.periodic_listeners";
     private static final String DB_POOL_SENSOR_NAME = "euca.db.connection_pools";
     private static final String MEMORY_NAME_PREFIX = "euca.jvm.memory";
     private static final String THREAD_SENSOR_NAME = "euca.jvm.threads.state";
@@ -195,4 +196,28 @@ public class Sensors {
         }
         return sensors;
     }
+
+    /**
+     * Sensor for periodic event listener durations, lateness and skips
+     * @param pollingInterval
+     * @param ttl
+     * @return
+     */
+    public static List<SensorEntry> PeriodicListenersSensor(final int pollingInterval, final long ttl) {
+        List<SensorEntry> sensors = Lists.newArrayList();
+        List<String> tags = Lists.newArrayList();
+        tags.add(pollingIntervalTag(pollingInterval));
+        try {
+            sensors.add(new SensorEntry(BaseStatsSensor.buildSensor(PERIODIC_LISTENERS_SENSOR_NAME,
+                    "Timing for periodic event listeners",
+                    tags,
+                    ttl,
+                    PeriodicListenersSensor.INSTANCE),
+                    pollingInterval));
+        } catch (Exception e) {
+            LOG.error("Error loading periodic listeners sensor.");
+            throw Exceptions.toUndeclared(e);
+        }
+        return sensors;
+    }
 }
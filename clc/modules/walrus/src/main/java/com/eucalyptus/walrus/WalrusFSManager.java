@@ -155,6 +155,7 @@ import com.eucalyptus.walrus.msgs.WalrusDataMessenger;
 import com.eucalyptus.walrus.msgs.WalrusDataQueue;
 import com.eucalyptus.walrus.msgs.WalrusMonitor;
 import com.eucalyptus.walrus.pipeline.WalrusRESTBinding;
+import com.eucalyptus.walrus.storage.StreamingUpload;
 import com.eucalyptus.walrus.util.WalrusProperties;
 
 import org.apache.commons.lang.StringUtils;
@@ -180,6 +181,9 @@ import java.util.NoSuchElementException;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.LockModeType;
 
 import edu.ucsb.eucalyptus.util.SystemUtil;
 
@@ -392,20 +396,24 @@ public class WalrusFSManager extends WalrusManager {
 
   @Override
   public PutObjectResponseType putObject(PutObjectType request) throws WalrusException {
+    final StreamingUpload streamingUpload = StreamingUpload.claim(request.getRandomKey());
+    if (streamingUpload != null) {
+      try {
+        return putStreamedObject(request, streamingUpload);
+      } finally {
+        streamingUpload.release();
+        if (streamingUpload.isCleanupRequired()) {
+          cleanupTempObject(request.getBucket(), streamingUpload.getTempObjectName());
+        }
+      }
+    }
+
     PutObjectResponseType reply = (PutObjectResponseType) request.getReply();
 
     String bucketName = request.getBucket();
     String objectKey = request.getKey();
 
-    // Lookup bucket
-    try {
-      Transactions.find(new BucketInfo(bucketName));
-    } catch (NoSuchElementException e) {
-      throw new NoSuchBucketException(bucketName);
-    } catch (Exception e) {
-      LOG.error("Failed to look up metadata for bucket=" + bucketName, e);
-      throw new InternalErrorException("Failed to lookup metadata for bucket=" + bucketName, e);
-    }
+    lookupBucket(bucketName);
 
     // writes are unconditional
     long size = 0;
@@ -503,29 +511,7 @@ public class WalrusFSManager extends WalrusManager {
           lastModified = new Date();
 
           // Update object or create a new entity if it does not exist
-          try (TransactionResource tr = Entities.transactionFor(ObjectInfo.class)) {
-            ObjectInfo objectInfo = null;
-            try {
-              objectInfo = Entities.uniqueResult(new ObjectInfo(bucketName, objectKey));
-              prevObjectName = objectInfo.getObjectName();
-            } catch (NoSuchElementException e) {
-              objectInfo = Entities.persist(new ObjectInfo(bucketName, objectKey));
-            }
-
-            objectInfo.replaceMetaData(request.getMetaData());
-            objectInfo.setEtag(md5);
-            objectInfo.setSize(size);
-            objectInfo.setLastModified(lastModified);
-            objectInfo.setObjectName(objectName);
-            objectInfo.setStorageClass("STANDARD");
-            objectInfo.setContentType(request.getContentType());
-            objectInfo.setContentDisposition(request.getContentDisposition());
-
-            tr.commit();
-          } catch (Exception e) {
-            LOG.error("Failed to update metadata for object-key=" + objectKey + ", bucket=" + bucketName, e);
-            throw new InternalErrorException("Failed to update metadata for object-key=" + objectKey + ", bucket=" + bucketName, e);
-          }
+          prevObjectName = updateObjectInfo(request, md5, size, objectName, lastModified);
 
           // Delete the previously uploaded object on the disk
           if (prevObjectName != null) {
@@ -587,6 +573,120 @@ public class WalrusFSManager extends WalrusManager {
     return reply;
   }
 
+  private PutObjectResponseType putStreamedObject(PutObjectType request, StreamingUpload upload) throws WalrusException {
+    PutObjectResponseType reply = (PutObjectResponseType) request.getReply();
+
+    String bucketName = request.getBucket();
+    String objectKey = request.getKey();
+    String uploadKey = bucketName + "." + objectKey + "." + request.getRandomKey();
+
+    lookupBucket(bucketName);
+
+    // wait for the data to be written by the pipeline
+    String md5;
+    try {
+      md5 = upload.await(60L, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      throw new InternalErrorException("Put timed out: " + uploadKey);
+    } catch (InterruptedException e) {
+      LOG.error("Transfer interrupted: " + uploadKey, e);
+      throw new InternalErrorException("Transfer interrupted: " + uploadKey);
+    } catch (IOException e) {
+      LOG.error("Failed to perform put object for object-key=" + objectKey + ", bucket=" + bucketName, e);
+      throw new InternalErrorException("Failed to perform put object for object-key=" + objectKey + ", bucket=" + bucketName, e);
+    }
+
+    String contentMD5 = request.getContentMD5();
+    if (contentMD5 != null) {
+      String contentMD5AsHex = Hashes.bytesToHex(Base64.decode(contentMD5));
+      if (!contentMD5AsHex.equals(md5)) {
+        LOG.error("ETag did not match for: " + request.getRandomKey() + " Expected: " + contentMD5AsHex + " Computed: " + md5);
+        throw new ContentMismatchException(bucketName + "/" + objectKey);
+      }
+    }
+
+    // commit uploads for the same key one at a time so each replaced object is deleted
+    String objectName = UUID.randomUUID().toString();
+    Date lastModified;
+    long size = upload.getSize();
+    WalrusMonitor monitor = WalrusRESTBinding.getWriteMessenger().getMonitor(bucketName + "." + objectKey);
+    synchronized (monitor) {
+      // rename temporary object
+      try {
+        storageManager.renameObject(bucketName, upload.getTempObjectName(), objectName);
+        upload.commit();
+      } catch (IOException ex) {
+        LOG.error("Failed to rename file " + upload.getTempObjectName() + " to " + objectName + ". object-key=" + objectKey + ", bucket=" + bucketName);
+        throw new AccessDeniedException(objectKey);
+      }
+
+      lastModified = new Date();
+      String prevObjectName = updateObjectInfo(request, md5, size, objectName, lastModified);
+
+      // Delete the previously uploaded object on the disk
+      if (prevObjectName != null) {
+        ObjectDeleter objectDeleter = new ObjectDeleter(bucketName, prevObjectName, null, null);
+        Threads.lookup(WalrusBackend.class, WalrusFSManager.ObjectDeleter.class).limitTo(10).submit(objectDeleter);
+      }
+    }
+    LOG.trace("Transfer complete: " + uploadKey);
+
+    reply.setSize(size);
+    reply.setEtag(md5);
+    reply.setLastModified(lastModified);
+    reply.setVersionId(WalrusProperties.NULL_VERSION_ID);
+    return reply;
+  }
+
+  private void lookupBucket(String bucketName) throws WalrusException {
+    try {
+      Transactions.find(new BucketInfo(bucketName));
+    } catch (NoSuchElementException e) {
+      throw new NoSuchBucketException(bucketName);
+    } catch (Exception e) {
+      LOG.error("Failed to look up metadata for bucket=" + bucketName, e);
+      throw new InternalErrorException("Failed to lookup metadata for bucket=" + bucketName, e);
+    }
+  }
+
+  /**
+   * Update object or create a new entity if it does not exist
+   *
+   * The previous object name is read with the object row locked, so a concurrent update cannot replace the same object.
+   *
+   * @return The name of the previously uploaded object (if any)
+   */
+  private String updateObjectInfo(PutObjectType request, String md5, long size, String objectName, Date lastModified) throws WalrusException {
+    String bucketName = request.getBucket();
+    String objectKey = request.getKey();
+    String prevObjectName = null;
+    try (TransactionResource tr = Entities.transactionFor(ObjectInfo.class)) {
+      ObjectInfo objectInfo = null;
+      try {
+        objectInfo = Entities.uniqueResult(new ObjectInfo(bucketName, objectKey));
+        Entities.refresh(objectInfo, LockModeType.PESSIMISTIC_WRITE);
+        prevObjectName = objectInfo.getObjectName();
+      } catch (NoSuchElementException e) {
+        objectInfo = Entities.persist(new ObjectInfo(bucketName, objectKey));
+      }
+
+      objectInfo.replaceMetaData(request.getMetaData());
+      objectInfo.setEtag(md5);
+      objectInfo.setSize(size);
+      objectInfo.setLastModified(lastModified);
+      objectInfo.setObjectName(objectName);
+      objectInfo.setStorageClass("STANDARD");
+      objectInfo.setContentType(request.getContentType());
+      objectInfo.setContentDisposition(request.getContentDisposition());
+
+      tr.commit();
+    } catch (Exception e) {
+      LOG.error("Failed to update metadata for object-key=" + objectKey + ", bucket=" + bucketName, e);
+      throw new InternalErrorException("Failed to update metadata for object-key=" + objectKey + ", bucket=" + bucketName, e);
+    }
+    return prevObjectName;
+  }
+
   private void cleanupTempObject(String bucketName, String tempObjectName) {
     ObjectDeleter objectDeleter = new ObjectDeleter(bucketName, tempObjectName, null, null);
     Threads.lookup(WalrusBackend.class, WalrusFSManager.ObjectDeleter.class).limitTo(10).submit(objectDeleter);
@@ -78,9 +78,11 @@ import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedInput;
 
 import com.eucalyptus.http.MappingHttpResponse;
+import com.eucalyptus.storage.common.ChunkedDataFile;
 import com.eucalyptus.storage.common.DateFormatter;
 import com.eucalyptus.storage.msgs.s3.MetaDataEntry;
 import com.eucalyptus.walrus.exceptions.HeadExceptionInterface;
@@ -92,6 +94,7 @@ import com.eucalyptus.walrus.msgs.WalrusDataResponseType;
 import com.eucalyptus.walrus.msgs.WalrusDeleteResponseType;
 import com.eucalyptus.walrus.msgs.WalrusErrorMessageType;
 import com.eucalyptus.walrus.msgs.WalrusHeadResponseType;
+import com.eucalyptus.walrus.storage.FileSystemStorageManager;
 import com.eucalyptus.walrus.util.WalrusProperties;
 import com.eucalyptus.walrus.util.WalrusUtil;
 import com.eucalyptus.ws.WebServicesException;
@@ -232,8 +235,11 @@ public class WalrusOutboundHandler extends MessageStackHandler {
       Channels.write(ctx, writeFuture, httpResponse);
       List<ChunkedInput> dataStreams = response.getDataInputStream();
       if (dataStreams != null) {
+        // zero-copy is not possible when data must pass through the ssl handler
+        final boolean zeroCopy = FileSystemStorageManager.ZERO_COPY_DOWNLOADS && channel.getPipeline().get(SslHandler.class) == null;
         for (final ChunkedInput dataStream : dataStreams) {
-          channel.write(dataStream).addListener(new ChannelFutureListener() {
+          final Object data = zeroCopy && dataStream instanceof ChunkedDataFile ? ((ChunkedDataFile) dataStream).toFileRegion() : dataStream;
+          channel.write(data).addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
               dataStream.close();
@@ -63,6 +63,7 @@
 package com.eucalyptus.walrus.pipeline;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -135,6 +136,7 @@ import com.eucalyptus.walrus.msgs.WalrusDataMessenger;
 import com.eucalyptus.walrus.msgs.WalrusDataQueue;
 import com.eucalyptus.walrus.msgs.WalrusDataRequestType;
 import com.eucalyptus.walrus.msgs.WalrusRequestType;
+import com.eucalyptus.walrus.storage.StreamingUpload;
 import com.eucalyptus.walrus.util.WalrusProperties;
 import com.eucalyptus.walrus.util.WalrusUtil;
 import com.eucalyptus.ws.MethodNotAllowedException;
@@ -161,6 +163,7 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
   private String key;
   private String randomKey;
   private WalrusDataQueue<WalrusDataMessage> putQueue;
+  private StreamingUpload streamingUpload;
   private final String walrusServicePath;
 
   public WalrusRESTBinding() {
@@ -192,6 +195,10 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
         putMessenger.removeQueue(key, randomKey);
         putQueue = null;
       }
+      if (streamingUpload != null) {
+        streamingUpload.fail(new IOException("Connection closed during upload"));
+        streamingUpload = null;
+      }
     }
     channelHandlerContext.sendUpstream(channelEvent);
   }
@@ -224,7 +231,9 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
         }
       }
     } else if (event.getMessage() instanceof HttpChunk) {
-      if (putQueue != null) {
+      if (streamingUpload != null) {
+        handleStreamingHttpChunk((HttpChunk) event.getMessage());
+      } else if (putQueue != null) {
         HttpChunk httpChunk = (HttpChunk) event.getMessage();
         handleHttpChunk(httpChunk);
       }
@@ -632,8 +641,16 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
             if (contentLengthString != null)
               operationParams.put("ContentLength", (new Long(contentLength).toString()));
             operationParams.put(WalrusProperties.Headers.RandomKey.toString(), randomKey);
-            putQueue = getWriteMessenger().interruptAllAndGetQueue(key, randomKey);
-            handleFirstChunk(httpRequest, contentLength);
+            if (partNumber == null && StreamingUpload.STREAMING_UPLOADS) {
+              // not started for an unknown bucket, the queued upload reports the error
+              streamingUpload = StreamingUpload.start(randomKey, target[0], contentLength);
+            }
+            if (streamingUpload != null) {
+              handleStreamingFirstChunk(httpRequest);
+            } else {
+              putQueue = getWriteMessenger().interruptAllAndGetQueue(key, randomKey);
+              handleFirstChunk(httpRequest, contentLength);
+            }
           }
         } else if (verb.equals(WalrusProperties.HTTPVerb.GET.toString())) {
           if (params.containsKey("torrent")) {
@@ -1317,6 +1334,32 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
     }
   }
 
+  private void handleStreamingHttpChunk(HttpChunk httpChunk) throws Exception {
+    try {
+      streamingUpload.write(httpChunk.getContent());
+      if (httpChunk.isLast()) {
+        streamingUpload.finish();
+        streamingUpload = null;
+      }
+    } catch (Exception ex) {
+      streamingUpload = null;
+      throw new Exception("Error handling HTTP chunk", ex);
+    }
+  }
+
+  private void handleStreamingFirstChunk(MappingHttpRequest httpRequest) throws Exception {
+    try {
+      streamingUpload.write(httpRequest.getContent());
+      if (!httpRequest.isChunked()) {
+        streamingUpload.finish();
+        streamingUpload = null;
+      }
+    } catch (Exception ex) {
+      streamingUpload = null;
+      throw new Exception("Error handling first chunk of PUT in walrus", ex);
+    }
+  }
+
   private void handleFirstChunk(MappingHttpRequest httpRequest, long dataLength) throws Exception {
     ChannelBuffer buffer = httpRequest.getContent();
     try {
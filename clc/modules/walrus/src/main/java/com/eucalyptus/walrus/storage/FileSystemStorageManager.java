@@ -77,6 +77,8 @@ import java.util.List;
 import org.apache.log4j.Logger;
 import org.jboss.netty.handler.stream.ChunkedInput;
 
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.storage.common.ChunkedDataFile;
 import com.eucalyptus.storage.common.CompressedChunkedFile;
@@ -94,11 +96,20 @@ import com.eucalyptus.walrus.msgs.WalrusDataGetResponseType;
 import edu.ucsb.eucalyptus.util.StreamConsumer;
 import edu.ucsb.eucalyptus.util.SystemUtil;
 
+@ConfigurableClass(root = "walrusbackend", description = "WalrusBackend object download configuration.")
 public class FileSystemStorageManager implements StorageManager {
 
   public static final String FILE_SEPARATOR = "/";
   private static Logger LOG = Logger.getLogger(FileSystemStorageManager.class);
 
+  @ConfigurableField(description = "Use zero-copy file transfer for uncompressed object downloads over non-SSL connections",
+      displayName = "Zero-copy downloads", initial = "true")
+  public static volatile boolean ZERO_COPY_DOWNLOADS = true;
+
+  @ConfigurableField(description = "Read-ahead size in bytes for object downloads that are not zero-copy", displayName = "Download read-ahead size",
+      initial = "65536")
+  public static volatile int DOWNLOAD_READ_AHEAD_SIZE = 65536;
+
   public FileSystemStorageManager() {}
 
   public void checkPreconditions() throws EucalyptusCloudException {
@@ -411,7 +422,7 @@ public class FileSystemStorageManager implements StorageManager {
       if (isCompressed) {
         file = new CompressedChunkedFile(raf, size);
       } else {
-        file = new ChunkedDataFile(raf, 0, size, 8192);
+        file = new ChunkedDataFile(raf, 0, size, readAheadSize(size));
       }
       List<ChunkedInput> dataStreams = new ArrayList<ChunkedInput>();
       dataStreams.add(file);
@@ -429,9 +440,9 @@ public class FileSystemStorageManager implements StorageManager {
       final ChunkedInput file;
       isCompressed = isCompressed == null ? false : isCompressed;
       if (isCompressed) {
-        file = new CompressedChunkedFile(raf, byteRangeStart, byteRangeEnd, (int) Math.min((byteRangeEnd - byteRangeStart), 8192));
+        file = new CompressedChunkedFile(raf, byteRangeStart, byteRangeEnd, readAheadSize(byteRangeEnd - byteRangeStart));
       } else {
-        file = new ChunkedDataFile(raf, byteRangeStart, (int) (byteRangeEnd - byteRangeStart), (int) Math.min((byteRangeEnd - byteRangeStart), 8192));
+        file = new ChunkedDataFile(raf, byteRangeStart, byteRangeEnd - byteRangeStart, readAheadSize(byteRangeEnd - byteRangeStart));
       }
       List<ChunkedInput> dataStreams = new ArrayList<>();
       dataStreams.add(file);
@@ -452,7 +463,7 @@ public class FileSystemStorageManager implements StorageManager {
         if (isCompressed) {
           file = new CompressedChunkedFile(raf, part.getSize());
         } else {
-          file = new ChunkedDataFile(raf, 0, part.getSize(), 8192);
+          file = new ChunkedDataFile(raf, 0, part.getSize(), readAheadSize(part.getSize()));
         }
         dataStreams.add(file);
       }
@@ -504,9 +515,9 @@ public class FileSystemStorageManager implements StorageManager {
         }
 
         if (isCompressed) {
-          file = new CompressedChunkedFile(raf, startMarker, tempLength, (int) Math.min(tempLength, 8192));
+          file = new CompressedChunkedFile(raf, startMarker, tempLength, readAheadSize(tempLength));
         } else {
-          file = new ChunkedDataFile(raf, startMarker, tempLength, (int) Math.min(tempLength, 8192));
+          file = new ChunkedDataFile(raf, startMarker, tempLength, readAheadSize(tempLength));
         }
 
         dataStreams.add(file);
@@ -522,4 +533,8 @@ public class FileSystemStorageManager implements StorageManager {
     }
   }
 
+  private static int readAheadSize(long length) {
+    return (int) Math.max(1, Math.min(length, Math.max(1, DOWNLOAD_READ_AHEAD_SIZE)));
+  }
+
 }
@@ -0,0 +1,297 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.eucalyptus.auth.util.Hashes;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.crypto.Digest;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.walrus.entities.WalrusInfo;
+
+/**
+ * Object upload written directly from the request pipeline.
+ *
+ * Data is digested and written to a temporary object in the bucket as each chunk arrives, using gathering writes of the chunk buffers. As the
+ * write completes before the next chunk is read from the channel there is no intermediate queue. The service waits for the upload to complete and
+ * then commits the temporary object.
+ *
+ * Uploads that are not claimed by the service, for example when the client disconnects before the request is dispatched, are expired once idle
+ * and their temporary objects deleted.
+ */
+@ConfigurableClass(root = "walrusbackend", description = "WalrusBackend object upload configuration.")
+public class StreamingUpload {
+  private static Logger LOG = Logger.getLogger(StreamingUpload.class);
+
+  @ConfigurableField(description = "Write object uploads directly from the request pipeline", displayName = "Streaming uploads", initial = "true")
+  public static volatile boolean STREAMING_UPLOADS = true;
+
+  private static final long UPLOAD_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final ConcurrentMap<String, StreamingUpload> uploads = new ConcurrentHashMap<>();
+
+  private final String uploadKey;
+  private final File tempFile;
+  private final String tempObjectName;
+  private final long contentLength;
+  private final CountDownLatch completed = new CountDownLatch(1);
+  private volatile long lastActivity = System.currentTimeMillis();
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private MessageDigest digest;
+  private long size;
+  private volatile String md5;
+  private volatile Throwable failure;
+  private volatile boolean committed;
+
+  StreamingUpload(String uploadKey, File file, long contentLength) {
+    this.uploadKey = uploadKey;
+    this.tempFile = file;
+    this.tempObjectName = file.getName();
+    this.contentLength = contentLength;
+    try {
+      this.file = new RandomAccessFile(file, "rw");
+      if (contentLength > 0) {
+        this.file.setLength(contentLength);
+      }
+      this.channel = this.file.getChannel();
+      this.digest = Digest.MD5.get();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Start an upload to a temporary object in the given bucket.
+   *
+   * Failure to create the temporary object is reported when awaiting the upload.
+   *
+   * @param uploadKey The unique key for the upload request
+   * @param bucketName The target bucket
+   * @param contentLength The expected length, used to pre-allocate the temporary object
+   * @return The upload or null if there is no directory for the bucket
+   */
+  public static StreamingUpload start(String uploadKey, String bucketName, long contentLength) {
+    if (bucketName == null || bucketName.isEmpty() || bucketName.contains(FileSystemStorageManager.FILE_SEPARATOR) || bucketName.startsWith(".")) {
+      return null;
+    }
+    final File bucketDir = new File(WalrusInfo.getWalrusInfo().getStorageDir() + FileSystemStorageManager.FILE_SEPARATOR + bucketName);
+    if (!bucketDir.isDirectory()) {
+      return null;
+    }
+    final File file = new File(bucketDir, UUID.randomUUID().toString());
+    final StreamingUpload upload = new StreamingUpload(uploadKey, file, contentLength);
+    uploads.put(uploadKey, upload);
+    return upload;
+  }
+
+  /**
+   * Claim an in progress upload.
+   *
+   * A claimed upload is no longer expired, the caller must release it.
+   *
+   * @return The upload or null
+   */
+  public static StreamingUpload claim(String uploadKey) {
+    return uploadKey == null ? null : uploads.remove(uploadKey);
+  }
+
+  /**
+   * Expire uploads that are unclaimed and idle.
+   */
+  static void expireUploads(long now) {
+    for (final StreamingUpload upload : uploads.values()) {
+      if (upload.isExpired(now)) {
+        upload.expire();
+      }
+    }
+  }
+
+  public String getTempObjectName() {
+    return tempObjectName;
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Digest and write the readable bytes of the buffer, the buffer reader index is not changed.
+   */
+  public synchronized void write(ChannelBuffer buffer) throws IOException {
+    if (isDone()) {
+      return;
+    }
+    try {
+      final ByteBuffer[] buffers = buffer.toByteBuffers();
+      for (final ByteBuffer data : buffers) {
+        digest.update(data.duplicate());
+      }
+      final long length = buffer.readableBytes();
+      long written = 0;
+      while (written < length) {
+        written += channel.write(buffers);
+      }
+      size += length;
+      lastActivity = System.currentTimeMillis();
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Complete the upload, all data has been written.
+   */
+  public synchronized void finish() {
+    if (isDone()) {
+      return;
+    }
+    try {
+      if (contentLength > size) {
+        channel.truncate(size);
+      }
+      file.close();
+      md5 = Hashes.bytesToHex(digest.digest());
+      completed.countDown();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Fail the upload, for example if the client disconnects.
+   *
+   * The upload is removed and the temporary object deleted.
+   */
+  public synchronized void fail(Throwable cause) {
+    if (isDone()) {
+      return;
+    }
+    failure = cause;
+    uploads.remove(uploadKey, this);
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing temporary object " + tempObjectName + " for failed upload: " + e.getMessage());
+      }
+    }
+    if (tempFile.exists() && !tempFile.delete()) {
+      LOG.warn("Unable to delete temporary object " + tempObjectName + " for failed upload " + uploadKey);
+    }
+    completed.countDown();
+  }
+
+  /**
+   * Mark the upload as committed, the temporary object has been renamed.
+   */
+  public void commit() {
+    committed = true;
+  }
+
+  /**
+   * Check if the temporary object requires cleanup.
+   *
+   * @return True if the upload completed but was not committed
+   */
+  public boolean isCleanupRequired() {
+    return isDone() && failure == null && !committed;
+  }
+
+  /**
+   * Wait for the upload to complete.
+   *
+   * @param idleTimeout The maximum time to wait without any data being written
+   * @return The hex encoded MD5 digest of the uploaded data
+   * @throws TimeoutException If the upload is idle for longer than the timeout
+   * @throws IOException If the upload failed
+   */
+  public String await(long idleTimeout, TimeUnit unit) throws InterruptedException, TimeoutException, IOException {
+    final long idleMillis = unit.toMillis(idleTimeout);
+    while (!completed.await(idleMillis, TimeUnit.MILLISECONDS)) {
+      if ((System.currentTimeMillis() - lastActivity) > idleMillis) {
+        fail(new TimeoutException("Upload timed out: " + uploadKey));
+        throw new TimeoutException("Upload timed out: " + uploadKey);
+      }
+    }
+    if (failure != null) {
+      throw new IOException("Upload failed: " + uploadKey, failure);
+    }
+    return md5;
+  }
+
+  /**
+   * Release the upload, failing it if not complete.
+   */
+  public void release() {
+    uploads.remove(uploadKey, this);
+    fail(new IOException("Upload released: " + uploadKey));
+  }
+
+  boolean isExpired(long now) {
+    return (now - lastActivity) > UPLOAD_EXPIRY_MILLIS;
+  }
+
+  /**
+   * Expire the upload, failing it if not complete and deleting the temporary object.
+   */
+  synchronized void expire() {
+    uploads.remove(uploadKey, this);
+    if (!isDone()) {
+      fail(new TimeoutException("Upload expired: " + uploadKey));
+    } else if (failure == null && !committed && tempFile.exists() && !tempFile.delete()) {
+      LOG.warn("Unable to delete temporary object " + tempObjectName + " for expired upload " + uploadKey);
+    }
+  }
+
+  private boolean isDone() {
+    return completed.getCount() == 0;
+  }
+
+  public static class StreamingUploadEventListener implements EventListener<ClockTick> {
+    public static void register() {
+      Listeners.register(ClockTick.class, new StreamingUploadEventListener());
+    }
+
+    @Override
+    public void fireEvent(final ClockTick event) {
+      expireUploads(System.currentTimeMillis());
+    }
+  }
+}
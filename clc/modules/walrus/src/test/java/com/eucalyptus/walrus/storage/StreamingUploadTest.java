@@ -0,0 +1,191 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.eucalyptus.auth.util.Hashes;
+import com.eucalyptus.crypto.Digest;
+
+/**
+ *
+ */
+public class StreamingUploadTest {
+
+  @Test
+  public void testUpload() throws Exception {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final byte[] data = new byte[10000];
+    Arrays.fill(data, (byte) 'a');
+    final ChannelBuffer composite = ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(data, 0, 100), ChannelBuffers.wrappedBuffer(data, 100, 900));
+
+    final StreamingUpload upload = new StreamingUpload("key", file, 20000);
+    upload.write(composite);
+    assertEquals("Buffer reader index", 0, composite.readerIndex());
+    upload.write(ChannelBuffers.wrappedBuffer(data, 1000, 9000));
+    upload.finish();
+
+    assertEquals("MD5", Hashes.bytesToHex(Digest.MD5.get().digest(data)), upload.await(1, TimeUnit.SECONDS));
+    assertEquals("Size", 10000, upload.getSize());
+    assertEquals("File length", 10000, file.length());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailedUpload() throws Exception {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final StreamingUpload upload = new StreamingUpload("key", file, 0);
+    upload.write(ChannelBuffers.wrappedBuffer(new byte[100]));
+    upload.fail(new IOException("Connection closed"));
+    upload.await(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFailedUploadDeletesTempObject() throws Exception {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final StreamingUpload upload = new StreamingUpload("key", file, 20000);
+    upload.write(ChannelBuffers.wrappedBuffer(new byte[100]));
+    upload.fail(new IOException("Connection closed"));
+    assertFalse("Temporary object exists", file.exists());
+    assertFalse("Cleanup required", upload.isCleanupRequired());
+  }
+
+  @Test
+  public void testCleanupRequired() throws Exception {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final StreamingUpload upload = new StreamingUpload("key", file, 100);
+    assertFalse("Cleanup required in progress", upload.isCleanupRequired());
+    upload.write(ChannelBuffers.wrappedBuffer(new byte[100]));
+    upload.finish();
+    upload.release();
+    assertTrue("Temporary object exists", file.exists());
+    assertTrue("Cleanup required when not committed", upload.isCleanupRequired());
+    upload.commit();
+    assertFalse("Cleanup required when committed", upload.isCleanupRequired());
+  }
+
+  @Test
+  public void testExpiredUploadDeletesTempObject() throws Exception {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final StreamingUpload upload = new StreamingUpload("key", file, 100);
+    upload.write(ChannelBuffers.wrappedBuffer(new byte[100]));
+    upload.finish();
+    assertFalse("Expired when active", upload.isExpired(System.currentTimeMillis()));
+    assertTrue("Expired when idle", upload.isExpired(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    upload.expire();
+    assertFalse("Temporary object exists", file.exists());
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testExpiredUploadInProgress() throws Throwable {
+    final File file = File.createTempFile("upload", ".tmp");
+    file.deleteOnExit();
+    final StreamingUpload upload = new StreamingUpload("key", file, 100);
+    upload.write(ChannelBuffers.wrappedBuffer(new byte[50]));
+    upload.expire();
+    assertFalse("Temporary object exists", file.exists());
+    try {
+      upload.await(1, TimeUnit.SECONDS);
+    } catch (IOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Compare streaming writes of a 1GiB upload with the queued hand-off to a buffered stream.
+   */
+  @Ignore("Manual development test")
+  @Test
+  public void testUploadPerformance() throws Exception {
+    final long uploadSize = 1024L * 1024L * 1024L;
+    final int chunkSize = 8192;
+    final byte[] chunk = new byte[chunkSize];
+    new Random().nextBytes(chunk);
+
+    for (int i = 0; i < 3; i++) {
+      final File streamFile = File.createTempFile("upload", ".tmp");
+      streamFile.deleteOnExit();
+      long start = System.nanoTime();
+      final StreamingUpload upload = new StreamingUpload("key", streamFile, uploadSize);
+      for (long written = 0; written < uploadSize; written += chunkSize) {
+        upload.write(ChannelBuffers.wrappedBuffer(chunk));
+      }
+      upload.finish();
+      upload.await(1, TimeUnit.SECONDS);
+      System.out.println("Streaming upload took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+      streamFile.delete();
+
+      final File queueFile = File.createTempFile("upload", ".tmp");
+      queueFile.deleteOnExit();
+      start = System.nanoTime();
+      final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(3);
+      final Thread writer = new Thread() {
+        @Override
+        public void run() {
+          try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(queueFile))) {
+            final MessageDigest digest = Digest.MD5.get();
+            byte[] data;
+            while ((data = queue.take()).length > 0) {
+              out.write(data);
+              digest.update(data);
+            }
+            Hashes.bytesToHex(digest.digest());
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        }
+      };
+      writer.start();
+      for (long written = 0; written < uploadSize; written += chunkSize) {
+        final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(chunk);
+        final byte[] read = new byte[buffer.readableBytes()];
+        buffer.readBytes(read);
+        queue.put(read);
+      }
+      queue.put(new byte[0]);
+      writer.join();
+      System.out.println("Queued upload took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+      queueFile.delete();
+    }
+  }
+}